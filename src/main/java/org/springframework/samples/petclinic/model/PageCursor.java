@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Link to a page of a list of people ordered by last name and id, as followed from the
+ * pagination controls of the HTML lists. Besides the {@link PersonCursor position} to
+ * seek from, it records in which direction the page lies and its number, so the page
+ * number shown comes from the link that was followed rather than a separate request
+ * parameter.
+ *
+ * @param position the person the page starts after or ends before, or {@code null} for
+ * the last page
+ * @param backward whether the page ends before {@code position} rather than starting
+ * after it
+ * @param page the number of the page, counting from 1
+ */
+public record PageCursor(PersonCursor position, boolean backward, int page) {
+
+	private static final String SEPARATOR = "|";
+
+	private static final String AFTER = "after";
+
+	private static final String BEFORE = "before";
+
+	/**
+	 * @param position the last person of the previous page
+	 * @param page the number of the page
+	 * @return the cursor of the page starting after it
+	 */
+	public static PageCursor after(PersonCursor position, int page) {
+		return new PageCursor(position, false, page);
+	}
+
+	/**
+	 * @param position the first person of the next page
+	 * @param page the number of the page
+	 * @return the cursor of the page ending before it
+	 */
+	public static PageCursor before(PersonCursor position, int page) {
+		return new PageCursor(position, true, page);
+	}
+
+	/**
+	 * @param page the number of the last page
+	 * @return the cursor of the last page
+	 */
+	public static PageCursor last(int page) {
+		return new PageCursor(null, true, page);
+	}
+
+	/**
+	 * @return the opaque, URL-safe form of this cursor
+	 */
+	public String encode() {
+		String value = this.page + SEPARATOR + (this.backward ? BEFORE : AFTER) + SEPARATOR
+				+ ((this.position != null) ? this.position.encode() : "");
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param cursor a cursor as returned by {@link #encode()}
+	 * @return the decoded cursor
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	public static PageCursor decode(String cursor) {
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			// The encoded position does not contain the separator
+			String[] parts = value.split("\\" + SEPARATOR, 3);
+			if (parts.length != 3 || !(AFTER.equals(parts[1]) || BEFORE.equals(parts[1]))) {
+				throw new IllegalArgumentException("Malformed cursor: " + cursor);
+			}
+			int page = Integer.parseInt(parts[0]);
+			boolean backward = BEFORE.equals(parts[1]);
+			PersonCursor position = parts[2].isEmpty() ? null : PersonCursor.decode(parts[2]);
+			// The first page is linked to without a cursor
+			if (page < 1 || (position == null && !backward)) {
+				throw new IllegalArgumentException("Malformed cursor: " + cursor);
+			}
+			return new PageCursor(position, backward, page);
+		}
+		catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Malformed cursor: " + cursor, ex);
+		}
+	}
+
+}
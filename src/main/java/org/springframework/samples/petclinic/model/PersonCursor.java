@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a list of people ordered by last name and id, from which the next page
+ * continues. The database seeks straight to it through the last name index instead of
+ * skipping over the rows of all earlier pages, so deep pages are as fast as the first.
+ *
+ * @param lastName the last name of the last person returned
+ * @param id the id of the last person returned
+ */
+public record PersonCursor(String lastName, Integer id) {
+
+	private static final String SEPARATOR = "|";
+
+	/**
+	 * @param person the last person of a page
+	 * @return the cursor continuing after it
+	 */
+	public static PersonCursor after(Person person) {
+		return new PersonCursor(person.getLastName(), person.getId());
+	}
+
+	/**
+	 * @return the opaque, URL-safe form of this cursor
+	 */
+	public String encode() {
+		String value = this.lastName + SEPARATOR + this.id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param cursor a cursor as returned by {@link #encode()}
+	 * @return the decoded cursor
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	public static PersonCursor decode(String cursor) {
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			// Last names may contain the separator, ids do not
+			int separator = value.lastIndexOf(SEPARATOR);
+			if (separator < 0) {
+				throw new IllegalArgumentException("Malformed cursor: " + cursor);
+			}
+			return new PersonCursor(value.substring(0, separator), Integer.valueOf(value.substring(separator + 1)));
+		}
+		catch (NumberFormatException ex) {
+			throw new IllegalArgumentException("Malformed cursor: " + cursor, ex);
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * A {@link Notification} moved to the archive by the {@link NotificationArchiver}.
+ * Archived notifications are written only by the archiver and otherwise read; they refer
+ * to their owner and pet by id so that the archive does not constrain deleting them.
+ */
+@Entity
+@Table(name = "notifications_archive")
+public class ArchivedNotification {
+
+	@Id
+	private Integer id;
+
+	@Column(name = "message")
+	private String message;
+
+	@Column(name = "type")
+	@Enumerated(EnumType.STRING)
+	private NotificationType type;
+
+	@Column(name = "status")
+	@Enumerated(EnumType.STRING)
+	private NotificationStatus status;
+
+	@Column(name = "scheduled_time")
+	private LocalDateTime scheduledTime;
+
+	@Column(name = "sent_time")
+	private LocalDateTime sentTime;
+
+	@Column(name = "owner_id")
+	private Integer ownerId;
+
+	@Column(name = "pet_id")
+	private Integer petId;
+
+	@Column(name = "idempotency_key")
+	private String idempotencyKey;
+
+	public Integer getId() {
+		return this.id;
+	}
+
+	public String getMessage() {
+		return this.message;
+	}
+
+	public NotificationType getType() {
+		return this.type;
+	}
+
+	public NotificationStatus getStatus() {
+		return this.status;
+	}
+
+	public LocalDateTime getScheduledTime() {
+		return this.scheduledTime;
+	}
+
+	public LocalDateTime getSentTime() {
+		return this.sentTime;
+	}
+
+	public Integer getOwnerId() {
+		return this.ownerId;
+	}
+
+	public Integer getPetId() {
+		return this.petId;
+	}
+
+	public String getIdempotencyKey() {
+		return this.idempotencyKey;
+	}
+
+}
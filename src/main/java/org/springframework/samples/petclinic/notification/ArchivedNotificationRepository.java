@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Repository class for {@link ArchivedNotification} domain objects. Mirrors the read
+ * queries of {@link NotificationRepository} so that the history of notifications can be
+ * read across both tables.
+ */
+public interface ArchivedNotificationRepository extends Repository<ArchivedNotification, Integer> {
+
+	/**
+	 * Copy the given notifications to the archive.
+	 * @param ids the ids of the notifications
+	 * @return the number of notifications copied
+	 */
+	@Modifying
+	@Query("INSERT INTO ArchivedNotification (id, message, type, status, scheduledTime, sentTime, ownerId, petId, idempotencyKey) SELECT n.id, n.message, n.type, n.status, n.scheduledTime, n.sentTime, n.owner.id, n.pet.id, n.idempotencyKey FROM Notification n WHERE n.id IN :ids")
+	int archive(@Param("ids") Collection<Integer> ids);
+
+	/**
+	 * Find a page of archived notifications, as
+	 * {@link NotificationRepository#findViews(Integer, NotificationStatus, NotificationType, LocalDateTime, LocalDateTime, LocalDateTime, Integer, Pageable)
+	 * NotificationRepository.findViews} does for the notifications that are not archived.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @param afterTime continue after the notification scheduled at this time...
+	 * @param afterId ...with this id
+	 * @param pageable the maximum number of notifications to return
+	 * @return the matching archived notifications, newest first
+	 */
+	@Query("SELECT new org.springframework.samples.petclinic.notification.NotificationView(n.id, n.type, n.status, n.message, n.scheduledTime, n.sentTime, n.ownerId, n.petId) FROM ArchivedNotification n WHERE (:ownerId IS NULL OR n.ownerId = :ownerId) AND (:status IS NULL OR n.status = :status) AND (:type IS NULL OR n.type = :type) AND (:from IS NULL OR n.scheduledTime >= :from) AND (:to IS NULL OR n.scheduledTime < :to) AND (:afterTime IS NULL OR n.scheduledTime < :afterTime OR (n.scheduledTime = :afterTime AND n.id < :afterId)) ORDER BY n.scheduledTime DESC, n.id DESC")
+	List<NotificationView> findViews(@Param("ownerId") Integer ownerId, @Param("status") NotificationStatus status,
+			@Param("type") NotificationType type, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+			@Param("afterTime") LocalDateTime afterTime, @Param("afterId") Integer afterId, Pageable pageable);
+
+	/**
+	 * Stream the archived notifications matching the given filters, oldest first, in
+	 * chunks as for {@link NotificationRepository#streamViews}. The stream must be
+	 * closed, and consumed within a transaction.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @return the matching archived notifications
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	@Query("SELECT new org.springframework.samples.petclinic.notification.NotificationView(n.id, n.type, n.status, n.message, n.scheduledTime, n.sentTime, n.ownerId, n.petId) FROM ArchivedNotification n WHERE (:ownerId IS NULL OR n.ownerId = :ownerId) AND (:status IS NULL OR n.status = :status) AND (:type IS NULL OR n.type = :type) AND (:from IS NULL OR n.scheduledTime >= :from) AND (:to IS NULL OR n.scheduledTime < :to) ORDER BY n.id")
+	Stream<NotificationView> streamViews(@Param("ownerId") Integer ownerId, @Param("status") NotificationStatus status,
+			@Param("type") NotificationType type, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+}
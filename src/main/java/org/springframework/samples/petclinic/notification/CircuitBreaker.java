@@ -0,0 +1,239 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker guarding calls to an external provider. While closed, the outcome of
+ * the most recent calls is kept in a sliding window; once enough calls have been made and
+ * the share of failures reaches the threshold the breaker opens and calls fail fast
+ * without reaching the provider. After the open duration a few probe calls are let
+ * through: if they all succeed the breaker closes again, a single failure opens it for
+ * another period.
+ * <p>
+ * Every call permitted by {@link #tryAcquire()} should report its outcome, or be
+ * {@link #release() released} if it is abandoned before reaching the provider. A probe
+ * that does neither is given up on once another open duration has passed.
+ */
+public class CircuitBreaker {
+
+	private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	private static final int DEFAULT_WINDOW_SIZE = 20;
+
+	private static final int DEFAULT_MINIMUM_CALLS = 10;
+
+	private static final int DEFAULT_PROBES = 3;
+
+	/**
+	 * The state of a circuit breaker.
+	 */
+	public enum State {
+
+		CLOSED, OPEN, HALF_OPEN
+
+	}
+
+	private final String name;
+
+	private final int minimumCalls;
+
+	private final int failureRateThreshold;
+
+	private final long openNanos;
+
+	private final int probes;
+
+	private final LongSupplier clock;
+
+	private final boolean[] window;
+
+	private int recorded;
+
+	private int next;
+
+	private int failures;
+
+	private State state = State.CLOSED;
+
+	private long stateSince;
+
+	private int probesIssued;
+
+	private int probesSucceeded;
+
+	/**
+	 * Creates a breaker judging the last 20 calls, once at least 10 have been made, and
+	 * probing with 3 calls when half-open.
+	 * @param name the name of the guarded provider, used in log messages
+	 * @param failureRateThreshold the percentage of failed calls at which to open
+	 * @param openDuration how long to fail fast before probing the provider again
+	 */
+	public CircuitBreaker(String name, int failureRateThreshold, Duration openDuration) {
+		this(name, DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, failureRateThreshold, openDuration, DEFAULT_PROBES,
+				System::nanoTime);
+	}
+
+	CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold, Duration openDuration,
+			int probes, LongSupplier clock) {
+		if (windowSize <= 0 || minimumCalls <= 0 || minimumCalls > windowSize || probes <= 0) {
+			throw new IllegalArgumentException("Window size, minimum calls and probes must be positive");
+		}
+		if (failureRateThreshold <= 0 || failureRateThreshold > 100) {
+			throw new IllegalArgumentException("Failure rate threshold must be a percentage");
+		}
+		if (openDuration == null || openDuration.isNegative()) {
+			throw new IllegalArgumentException("Open duration must not be negative");
+		}
+		this.name = name;
+		this.window = new boolean[windowSize];
+		this.minimumCalls = minimumCalls;
+		this.failureRateThreshold = failureRateThreshold;
+		this.openNanos = openDuration.toNanos();
+		this.probes = probes;
+		this.clock = clock;
+		this.stateSince = clock.getAsLong();
+	}
+
+	/**
+	 * Ask for permission to call the provider.
+	 * @return true if the call may go ahead, false if it should fail fast
+	 */
+	public synchronized boolean tryAcquire() {
+		long now = this.clock.getAsLong();
+		if (this.state == State.CLOSED) {
+			return true;
+		}
+		boolean elapsed = now - this.stateSince >= this.openNanos;
+		if (this.state == State.OPEN) {
+			if (!elapsed) {
+				return false;
+			}
+			transitionTo(State.HALF_OPEN, now);
+		}
+		else if (this.probesIssued >= this.probes && elapsed) {
+			// The outstanding probes never reported back, start probing afresh
+			this.stateSince = now;
+			this.probesIssued = 0;
+			this.probesSucceeded = 0;
+		}
+		if (this.probesIssued < this.probes) {
+			this.probesIssued++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Tell whether {@link #tryAcquire()} would currently let a call through, without
+	 * taking a probe. Callers use it to avoid counting a call that fails fast as an
+	 * attempt.
+	 * @return true if a call may go ahead, false if it would fail fast
+	 */
+	public synchronized boolean isCallPermitted() {
+		if (this.state == State.CLOSED) {
+			return true;
+		}
+		boolean elapsed = this.clock.getAsLong() - this.stateSince >= this.openNanos;
+		if (this.state == State.OPEN) {
+			return elapsed;
+		}
+		return this.probesIssued < this.probes || elapsed;
+	}
+
+	/**
+	 * Report a call the provider handled.
+	 */
+	public synchronized void recordSuccess() {
+		if (this.state == State.HALF_OPEN) {
+			if (++this.probesSucceeded >= this.probes) {
+				transitionTo(State.CLOSED, this.clock.getAsLong());
+			}
+		}
+		else if (this.state == State.CLOSED) {
+			record(false);
+		}
+	}
+
+	/**
+	 * Hand back the permission of a call that was abandoned before it reached the
+	 * provider, so a probe it took can be issued again. Records neither a success nor a
+	 * failure.
+	 */
+	public synchronized void release() {
+		if (this.state == State.HALF_OPEN && this.probesIssued > this.probesSucceeded) {
+			this.probesIssued--;
+		}
+	}
+
+	/**
+	 * Report a call that failed because of the provider.
+	 */
+	public synchronized void recordFailure() {
+		if (this.state == State.HALF_OPEN) {
+			transitionTo(State.OPEN, this.clock.getAsLong());
+		}
+		else if (this.state == State.CLOSED) {
+			record(true);
+			if (this.recorded >= this.minimumCalls
+					&& this.failures * 100 >= this.failureRateThreshold * this.recorded) {
+				transitionTo(State.OPEN, this.clock.getAsLong());
+			}
+		}
+	}
+
+	public synchronized State getState() {
+		return this.state;
+	}
+
+	private void record(boolean failure) {
+		if (this.recorded == this.window.length) {
+			if (this.window[this.next]) {
+				this.failures--;
+			}
+		}
+		else {
+			this.recorded++;
+		}
+		this.window[this.next] = failure;
+		if (failure) {
+			this.failures++;
+		}
+		this.next = (this.next + 1) % this.window.length;
+	}
+
+	private void transitionTo(State state, long now) {
+		if (state == State.OPEN) {
+			log.warn("Circuit breaker for {} opened, failing fast for {} ms", this.name, this.openNanos / 1_000_000);
+		}
+		else if (state == State.CLOSED) {
+			log.info("Circuit breaker for {} closed again", this.name);
+		}
+		this.state = state;
+		this.stateSince = now;
+		this.recorded = 0;
+		this.next = 0;
+		this.failures = 0;
+		this.probesIssued = 0;
+		this.probesSucceeded = 0;
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.Visit;
+
+/**
+ * A notification template parsed once into literal text and placeholder slots, so that
+ * rendering is a single pass over the segments with no pattern matching. Placeholders
+ * that are unknown, or whose value is not available, are rendered as they were written,
+ * e.g. {@code {petName}} when no pet is given.
+ */
+final class CompiledTemplate {
+
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM d, yyyy");
+
+	/**
+	 * Rough allowance per placeholder used to presize the output buffer.
+	 */
+	private static final int PLACEHOLDER_ESTIMATE = 16;
+
+	private final String[] literals;
+
+	private final Placeholder[] placeholders;
+
+	private final int sizeEstimate;
+
+	private CompiledTemplate(String[] literals, Placeholder[] placeholders) {
+		this.literals = literals;
+		this.placeholders = placeholders;
+		int literalLength = 0;
+		for (String literal : literals) {
+			literalLength += literal.length();
+		}
+		this.sizeEstimate = literalLength + placeholders.length * PLACEHOLDER_ESTIMATE;
+	}
+
+	/**
+	 * Parse a template. A placeholder is a <code>{</code> followed by at least one
+	 * character other than <code>}</code> and a closing <code>}</code>.
+	 * @param template the template text, may be {@code null}
+	 * @return the compiled template
+	 */
+	static CompiledTemplate compile(String template) {
+		if (template == null || template.isEmpty()) {
+			return new CompiledTemplate(new String[] { "" }, new Placeholder[0]);
+		}
+
+		List<String> literals = new ArrayList<>();
+		List<Placeholder> placeholders = new ArrayList<>();
+		StringBuilder literal = new StringBuilder();
+		int length = template.length();
+		int position = 0;
+		while (position < length) {
+			int open = template.indexOf('{', position);
+			int close = (open < 0) ? -1 : template.indexOf('}', open + 1);
+			if (close < 0) {
+				literal.append(template, position, length);
+				break;
+			}
+			if (close == open + 1) {
+				// "{}" is not a placeholder, keep scanning after the brace
+				literal.append(template, position, open + 1);
+				position = open + 1;
+				continue;
+			}
+			literal.append(template, position, open);
+			Placeholder placeholder = Placeholder.forName(template.substring(open + 1, close));
+			if (placeholder == null) {
+				literal.append(template, open, close + 1);
+			}
+			else {
+				literals.add(literal.toString());
+				literal.setLength(0);
+				placeholders.add(placeholder);
+			}
+			position = close + 1;
+		}
+		literals.add(literal.toString());
+		return new CompiledTemplate(literals.toArray(new String[0]), placeholders.toArray(new Placeholder[0]));
+	}
+
+	/**
+	 * Render the template for the given entities.
+	 * @param owner the pet owner
+	 * @param pet the pet (can be null)
+	 * @param visit the visit (can be null)
+	 * @return the rendered text
+	 */
+	String render(Owner owner, Pet pet, Visit visit) {
+		if (this.placeholders.length == 0) {
+			return this.literals[0];
+		}
+		StringBuilder result = new StringBuilder(this.sizeEstimate);
+		for (int i = 0; i < this.placeholders.length; i++) {
+			result.append(this.literals[i]);
+			Placeholder placeholder = this.placeholders[i];
+			String value = placeholder.resolve(owner, pet, visit);
+			if (value != null) {
+				result.append(value);
+			}
+			else {
+				result.append('{').append(placeholder.placeholderName).append('}');
+			}
+		}
+		return result.append(this.literals[this.placeholders.length]).toString();
+	}
+
+	/**
+	 * The placeholders a template may use, each with a direct accessor for its value.
+	 */
+	enum Placeholder {
+
+		OWNER_FIRST_NAME("ownerFirstName") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				return owner.getFirstName();
+			}
+		},
+
+		OWNER_LAST_NAME("ownerLastName") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				return owner.getLastName();
+			}
+		},
+
+		OWNER_FULL_NAME("ownerFullName") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				return owner.getFirstName() + " " + owner.getLastName();
+			}
+		},
+
+		PET_NAME("petName") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				return (pet != null) ? pet.getName() : null;
+			}
+		},
+
+		PET_TYPE("petType") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				if (pet == null) {
+					return null;
+				}
+				return (pet.getType() != null) ? pet.getType().getName() : "pet";
+			}
+		},
+
+		PET_BIRTH_DATE("petBirthDate") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				if (pet == null) {
+					return null;
+				}
+				return (pet.getBirthDate() != null) ? pet.getBirthDate().format(DATE_FORMATTER) : "";
+			}
+		},
+
+		VISIT_DATE("visitDate") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				if (visit == null) {
+					return null;
+				}
+				return (visit.getDate() != null) ? visit.getDate().format(DATE_FORMATTER) : "";
+			}
+		},
+
+		VISIT_DESCRIPTION("visitDescription") {
+			@Override
+			String resolve(Owner owner, Pet pet, Visit visit) {
+				return (visit != null) ? visit.getDescription() : null;
+			}
+		};
+
+		private final String placeholderName;
+
+		Placeholder(String placeholderName) {
+			this.placeholderName = placeholderName;
+		}
+
+		/**
+		 * Resolve the value of this placeholder.
+		 * @return the value, or {@code null} if it is not available
+		 */
+		abstract String resolve(Owner owner, Pet pet, Visit visit);
+
+		static Placeholder forName(String name) {
+			for (Placeholder placeholder : values()) {
+				if (placeholder.placeholderName.equals(name)) {
+					return placeholder;
+				}
+			}
+			return null;
+		}
+
+	}
+
+}
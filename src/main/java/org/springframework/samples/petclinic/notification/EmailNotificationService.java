@@ -1,16 +1,35 @@
 package org.springframework.samples.petclinic.notification;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
 /**
  * Service for sending email notifications to pet owners.
+ * <p>
+ * Bulk sends go through {@link #send(List)}, which hands up to
+ * {@code maxMessagesPerConnection} messages at a time to
+ * {@link JavaMailSender#send(SimpleMailMessage...)} so they share one SMTP connection and
+ * STARTTLS handshake. At most {@code poolSize} connections are open concurrently, no
+ * matter how many threads are sending.
+ * <p>
+ * Sends are guarded by a {@link CircuitBreaker}: once too many connections to the SMTP
+ * server fail, further sends fail at once instead of each waiting for the SMTP timeout,
+ * until probe sends find the server healthy again. A recipient rejected by the server
+ * does not count as a failure.
  *
  * @author Claude
  */
@@ -21,51 +40,214 @@ public class EmailNotificationService implements NotificationService {
 
 	private final JavaMailSender emailSender;
 
-	private final NotificationTemplateService templateService;
+	private final Semaphore connections;
+
+	private final int maxMessagesPerConnection;
+
+	private final CircuitBreaker circuitBreaker;
 
 	@Value("${spring.mail.username:petclinic@example.com}")
 	private String senderEmail;
 
 	@Autowired
-	public EmailNotificationService(JavaMailSender emailSender, NotificationTemplateService templateService) {
+	public EmailNotificationService(JavaMailSender emailSender, @Value("${notification.mail.pool-size:4}") int poolSize,
+			@Value("${notification.mail.max-messages-per-connection:50}") int maxMessagesPerConnection,
+			@Value("${notification.mail.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+			@Value("${notification.mail.circuit-breaker.open-duration:30s}") Duration openDuration) {
 		this.emailSender = emailSender;
-		this.templateService = templateService;
+		this.connections = new Semaphore(poolSize);
+		this.maxMessagesPerConnection = maxMessagesPerConnection;
+		this.circuitBreaker = new CircuitBreaker("SMTP", failureRateThreshold, openDuration);
 	}
 
 	@Override
 	public boolean send(Notification notification) {
+		return send(RenderedNotification.of(notification));
+	}
+
+	/**
+	 * Send the prepared content of a single notification.
+	 * @param content the notification content
+	 * @return true if the email was sent
+	 */
+	public boolean send(RenderedNotification content) {
+		Notification notification = content.notification();
 		if (!canHandle(notification)) {
 			log.debug("Email notification skipped for notification: {}", notification.getId());
 			return false;
 		}
 
+		SimpleMailMessage message = createMessage(content);
+		if (!acquireConnection()) {
+			notification.setStatus(NotificationStatus.FAILED);
+			return false;
+		}
+		// Asked last, so a probe is only taken by a send that is actually attempted
+		if (!circuitBreaker.tryAcquire()) {
+			connections.release();
+			notification.setStatus(NotificationStatus.FAILED);
+			log.debug("SMTP circuit is open, email notification {} not sent", notification.getId());
+			return false;
+		}
 		try {
-			// Get the processed message from the template service
-			String messageContent = templateService.processNotification(notification);
-
-			// Create the email message
-			SimpleMailMessage message = new SimpleMailMessage();
-			message.setFrom(senderEmail);
-			message.setTo(notification.getOwner().getEmail());
-			message.setSubject(getSubjectForNotificationType(notification.getType()));
-			message.setText(messageContent);
-
 			// Send the email
 			emailSender.send(message);
 
 			// Update notification status
 			notification.setStatus(NotificationStatus.SENT);
-			notification.setSentTime(java.time.LocalDateTime.now());
+			notification.setSentTime(LocalDateTime.now());
 
+			circuitBreaker.recordSuccess();
 			log.info("Email notification sent successfully to: {}", notification.getOwner().getEmail());
 			return true;
 		}
 		catch (MailException e) {
 			// Handle the email sending failure
+			recordOutcome(e instanceof MailSendException sendFailure && !sendFailure.getFailedMessages().isEmpty());
 			notification.setStatus(NotificationStatus.FAILED);
 			log.error("Failed to send email notification: {}", e.getMessage(), e);
 			return false;
 		}
+		catch (RuntimeException e) {
+			// Not an answer from the server, so it tells nothing about its health
+			circuitBreaker.release();
+			throw e;
+		}
+		finally {
+			connections.release();
+		}
+	}
+
+	/**
+	 * Send a batch of email notifications, reusing one SMTP connection for up to
+	 * {@code maxMessagesPerConnection} messages. Each notification's status is updated
+	 * individually, so one rejected recipient does not fail the rest of its batch.
+	 * @param contents the prepared content of the notifications to send
+	 * @return the notifications that were sent successfully
+	 * @throws CallNotPermittedException if the SMTP circuit did not let the first
+	 * connection through, so no message was attempted
+	 */
+	public List<Notification> send(List<RenderedNotification> contents) {
+		List<RenderedNotification> sendable = new ArrayList<>(contents.size());
+		for (RenderedNotification content : contents) {
+			if (canHandle(content.notification())) {
+				sendable.add(content);
+			}
+			else {
+				log.debug("Email notification skipped for notification: {}", content.notification().getId());
+			}
+		}
+
+		List<Notification> sent = new ArrayList<>(sendable.size());
+		for (int from = 0; from < sendable.size(); from += maxMessagesPerConnection) {
+			try {
+				sent.addAll(sendOverOneConnection(
+						sendable.subList(from, Math.min(from + maxMessagesPerConnection, sendable.size()))));
+			}
+			catch (CallNotPermittedException e) {
+				if (from == 0) {
+					throw e;
+				}
+				// Earlier connections were attempted, so these are reported as not sent
+			}
+		}
+		return sent;
+	}
+
+	public int getMaxMessagesPerConnection() {
+		return maxMessagesPerConnection;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	private List<Notification> sendOverOneConnection(List<RenderedNotification> contents) {
+		SimpleMailMessage[] messages = new SimpleMailMessage[contents.size()];
+		for (int i = 0; i < messages.length; i++) {
+			messages[i] = createMessage(contents.get(i));
+		}
+
+		if (!acquireConnection()) {
+			contents.forEach(content -> content.notification().setStatus(NotificationStatus.FAILED));
+			return List.of();
+		}
+		if (!circuitBreaker.tryAcquire()) {
+			connections.release();
+			contents.forEach(content -> content.notification().setStatus(NotificationStatus.FAILED));
+			log.debug("SMTP circuit is open, {} email notifications not sent", messages.length);
+			throw new CallNotPermittedException("SMTP");
+		}
+		Map<Object, Exception> failures = Map.of();
+		boolean connectionFailed = false;
+		try {
+			emailSender.send(messages);
+		}
+		catch (MailSendException e) {
+			// Rejected messages are reported individually, a connection failure has none
+			failures = e.getFailedMessages();
+			connectionFailed = failures.isEmpty();
+			log.error("Failed to send {} of {} email notifications: {}",
+					connectionFailed ? messages.length : failures.size(), messages.length, e.getMessage(), e);
+		}
+		catch (MailException e) {
+			connectionFailed = true;
+			log.error("Failed to send {} email notifications: {}", messages.length, e.getMessage(), e);
+		}
+		catch (RuntimeException e) {
+			circuitBreaker.release();
+			throw e;
+		}
+		finally {
+			connections.release();
+		}
+		recordOutcome(!connectionFailed);
+
+		List<Notification> sent = new ArrayList<>(messages.length);
+		LocalDateTime now = LocalDateTime.now();
+		for (int i = 0; i < messages.length; i++) {
+			Notification notification = contents.get(i).notification();
+			if (connectionFailed || failures.containsKey(messages[i])) {
+				notification.setStatus(NotificationStatus.FAILED);
+			}
+			else {
+				notification.setStatus(NotificationStatus.SENT);
+				notification.setSentTime(now);
+				sent.add(notification);
+			}
+		}
+		log.info("Sent {} of {} email notifications over one connection", sent.size(), messages.length);
+		return sent;
+	}
+
+	private SimpleMailMessage createMessage(RenderedNotification content) {
+		SimpleMailMessage message = new SimpleMailMessage();
+		message.setFrom(senderEmail);
+		message.setTo(content.notification().getOwner().getEmail());
+		message.setSubject(content.subject());
+		message.setText(content.emailBody());
+		return message;
+	}
+
+	private void recordOutcome(boolean serverResponded) {
+		if (serverResponded) {
+			circuitBreaker.recordSuccess();
+		}
+		else {
+			circuitBreaker.recordFailure();
+		}
+	}
+
+	private boolean acquireConnection() {
+		try {
+			connections.acquire();
+			return true;
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted while waiting for an SMTP connection");
+			return false;
+		}
 	}
 
 	@Override
@@ -79,18 +261,4 @@ public class EmailNotificationService implements NotificationService {
 				&& (preference == NotificationPreference.EMAIL || preference == NotificationPreference.BOTH);
 	}
 
-	/**
-	 * Generate an appropriate subject line based on the notification type
-	 * @param type the notification type
-	 * @return a subject line for the email
-	 */
-	private String getSubjectForNotificationType(NotificationType type) {
-		return switch (type) {
-			case APPOINTMENT_REMINDER -> "Pet Clinic: Appointment Reminder";
-			case MEDICATION_REMINDER -> "Pet Clinic: Medication Reminder";
-			case VACCINATION_REMINDER -> "Pet Clinic: Vaccination Reminder";
-			default -> "Pet Clinic Notification";
-		};
-	}
-
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Hierarchical timing wheel holding keys that become due at a given time. The lowest
+ * level has one bucket per tick; each higher level covers a whole rotation of the level
+ * below per bucket, so far deadlines cost nothing until they move down. Scheduling,
+ * cancelling and advancing by a tick are constant time regardless of how many keys are
+ * held, and deadlines beyond the top level wait in an overflow set.
+ * <p>
+ * Deadlines are rounded up to the next tick, so a key is never reported before it is due
+ * and at most one tick after.
+ *
+ * @param <K> the type of the scheduled keys
+ */
+public class HierarchicalTimingWheel<K> {
+
+	private final long tickMillis;
+
+	private final int wheelSize;
+
+	private final List<List<Set<K>>> levels;
+
+	private final Set<K> overflow = new LinkedHashSet<>();
+
+	private final List<K> due = new ArrayList<>();
+
+	private final Map<K, Long> deadlines = new HashMap<>();
+
+	private final Map<K, Set<K>> buckets = new HashMap<>();
+
+	private long currentTick;
+
+	/**
+	 * Creates a wheel starting at the given time.
+	 * @param tickMillis the duration of one tick in milliseconds
+	 * @param wheelSize the number of buckets per level
+	 * @param levelCount the number of levels
+	 * @param startMillis the current time in milliseconds since the epoch
+	 */
+	public HierarchicalTimingWheel(long tickMillis, int wheelSize, int levelCount, long startMillis) {
+		if (tickMillis <= 0 || wheelSize < 2 || levelCount <= 0) {
+			throw new IllegalArgumentException("Tick, wheel size and level count must be positive");
+		}
+		this.tickMillis = tickMillis;
+		this.wheelSize = wheelSize;
+		this.levels = new ArrayList<>(levelCount);
+		for (int level = 0; level < levelCount; level++) {
+			List<Set<K>> wheel = new ArrayList<>(wheelSize);
+			for (int bucket = 0; bucket < wheelSize; bucket++) {
+				wheel.add(new LinkedHashSet<>());
+			}
+			this.levels.add(wheel);
+		}
+		this.currentTick = Math.floorDiv(startMillis, tickMillis);
+	}
+
+	/**
+	 * Schedule a key, replacing any deadline it already has.
+	 * @param key the key to schedule
+	 * @param deadlineMillis when the key becomes due, in milliseconds since the epoch
+	 */
+	public synchronized void schedule(K key, long deadlineMillis) {
+		cancel(key);
+		long deadlineTick = Math.floorDiv(deadlineMillis + this.tickMillis - 1, this.tickMillis);
+		this.deadlines.put(key, deadlineTick);
+		place(key, deadlineTick);
+	}
+
+	/**
+	 * Remove a key from the wheel.
+	 * @param key the key to remove
+	 * @return true if the key was scheduled
+	 */
+	public synchronized boolean cancel(K key) {
+		if (this.deadlines.remove(key) == null) {
+			return false;
+		}
+		Set<K> bucket = this.buckets.remove(key);
+		if (bucket != null) {
+			bucket.remove(key);
+		}
+		else {
+			this.due.remove(key);
+		}
+		return true;
+	}
+
+	/**
+	 * Advance the wheel to the given time and take the keys that have become due.
+	 * @param nowMillis the current time in milliseconds since the epoch
+	 * @return the due keys, in order of their deadline tick
+	 */
+	public synchronized List<K> advance(long nowMillis) {
+		long targetTick = Math.floorDiv(nowMillis, this.tickMillis);
+		while (this.currentTick < targetTick) {
+			this.currentTick++;
+			// Move keys down from the highest level whose bucket boundary was crossed
+			long unit = 1;
+			int crossed = 0;
+			for (int level = 1; level < this.levels.size(); level++) {
+				unit *= this.wheelSize;
+				if (this.currentTick % unit != 0) {
+					break;
+				}
+				crossed = level;
+			}
+			if (crossed == this.levels.size() - 1) {
+				replace(this.overflow);
+			}
+			for (int level = crossed; level > 0; level--) {
+				replace(bucket(level, this.currentTick));
+			}
+			replace(bucket(0, this.currentTick));
+		}
+		List<K> expired = new ArrayList<>(this.due);
+		this.due.clear();
+		expired.forEach(this.deadlines::remove);
+		return expired;
+	}
+
+	/**
+	 * @return the number of scheduled keys, including due keys not yet taken
+	 */
+	public synchronized int size() {
+		return this.deadlines.size();
+	}
+
+	private void replace(Set<K> bucket) {
+		if (bucket.isEmpty()) {
+			return;
+		}
+		List<K> keys = new ArrayList<>(bucket);
+		bucket.clear();
+		for (K key : keys) {
+			place(key, this.deadlines.get(key));
+		}
+	}
+
+	/**
+	 * Put a key in the lowest level whose rotation reaches its deadline.
+	 */
+	private void place(K key, long deadlineTick) {
+		if (deadlineTick <= this.currentTick) {
+			this.buckets.remove(key);
+			this.due.add(key);
+			return;
+		}
+		long unit = 1;
+		for (int level = 0; level < this.levels.size(); level++) {
+			if (deadlineTick / unit - this.currentTick / unit < this.wheelSize) {
+				Set<K> bucket = bucket(level, deadlineTick);
+				bucket.add(key);
+				this.buckets.put(key, bucket);
+				return;
+			}
+			unit *= this.wheelSize;
+		}
+		this.overflow.add(key);
+		this.buckets.put(key, this.overflow);
+	}
+
+	private Set<K> bucket(int level, long tick) {
+		long unit = 1;
+		for (int i = 0; i < level; i++) {
+			unit *= this.wheelSize;
+		}
+		return this.levels.get(level).get((int) Math.floorMod(tick / unit, (long) this.wheelSize));
+	}
+
+}
@@ -21,24 +21,37 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
-import org.springframework.samples.petclinic.model.BaseEntity;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.Pet;
 
 /**
- * Simple JavaBean domain object representing a notification sent to pet owners.
+ * Simple JavaBean domain object representing a notification sent to pet owners. Ids are
+ * drawn from a pooled sequence rather than an identity column so that notifications
+ * written together are inserted in JDBC batches. A notification may carry an idempotency
+ * key, unique across all notifications, so that repeated requests to create it are
+ * recognised as duplicates.
  *
  * @author Claude
  */
 @Entity
 @Table(name = "notifications")
-public class Notification extends BaseEntity {
+public class Notification {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notifications_seq")
+	@SequenceGenerator(name = "notifications_seq", sequenceName = "notifications_seq", allocationSize = 50)
+	private Integer id;
 
 	@NotBlank
 	@Column(name = "message")
@@ -70,6 +83,10 @@ public class Notification extends BaseEntity {
 	@JoinColumn(name = "pet_id")
 	private Pet pet;
 
+	@Column(name = "idempotency_key", unique = true)
+	@Size(max = 100)
+	private String idempotencyKey;
+
 	/**
 	 * Creates a new instance of Notification without setting any properties
 	 */
@@ -90,6 +107,14 @@ public class Notification extends BaseEntity {
 		this.owner = owner;
 	}
 
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
 	public String getMessage() {
 		return this.message;
 	}
@@ -146,6 +171,14 @@ public class Notification extends BaseEntity {
 		this.pet = pet;
 	}
 
+	public String getIdempotencyKey() {
+		return this.idempotencyKey;
+	}
+
+	public void setIdempotencyKey(String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+
 	@Override
 	public String toString() {
 		return "Notification{" + "id=" + getId() + ", message='" + message + '\'' + ", type=" + type + ", status="
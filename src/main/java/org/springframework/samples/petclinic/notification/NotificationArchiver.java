@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves notifications that have been settled for longer than the retention window from
+ * the notifications table to the archive, so that the hot table and its indexes stay
+ * proportional to recent traffic. Notifications are moved in batches of
+ * {@code notification.archive.batch-size}, each in its own short transaction, and their
+ * deliveries are deleted with them. A notification is only archived once none of its
+ * deliveries is waiting to be attempted. Dead letters are archived like any other settled
+ * notification, so they can only be replayed while they are within the retention window.
+ * <p>
+ * Every archived notification was scheduled before the {@link #archiveBoundary archive
+ * boundary}, which lets {@link NotificationHistory} leave the archive out of reads that
+ * cannot reach it.
+ */
+@Component
+public class NotificationArchiver {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationArchiver.class);
+
+	private final NotificationRepository notificationRepository;
+
+	private final NotificationDeliveryRepository deliveryRepository;
+
+	private final ArchivedNotificationRepository archiveRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final Duration retention;
+
+	private final int batchSize;
+
+	public NotificationArchiver(NotificationRepository notificationRepository,
+			NotificationDeliveryRepository deliveryRepository, ArchivedNotificationRepository archiveRepository,
+			PlatformTransactionManager transactionManager,
+			@Value("${notification.archive.retention:90d}") Duration retention,
+			@Value("${notification.archive.batch-size:1000}") int batchSize) {
+		this.notificationRepository = notificationRepository;
+		this.deliveryRepository = deliveryRepository;
+		this.archiveRepository = archiveRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.retention = retention;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param now the current time
+	 * @return the time before which notifications are archived
+	 */
+	public LocalDateTime archiveBoundary(LocalDateTime now) {
+		return now.minus(this.retention);
+	}
+
+	/**
+	 * Archive the notifications that fell out of the retention window.
+	 */
+	@Scheduled(cron = "${notification.archive.cron:0 30 3 * * *}")
+	public void archiveExpiredNotifications() {
+		try {
+			archive(LocalDateTime.now());
+		}
+		catch (Exception e) {
+			log.error("Error occurred while archiving notifications", e);
+		}
+	}
+
+	/**
+	 * Move every archivable notification scheduled before the archive boundary to the
+	 * archive, one batch at a time.
+	 * @param now the current time
+	 * @return the number of notifications archived
+	 */
+	int archive(LocalDateTime now) {
+		LocalDateTime before = archiveBoundary(now);
+		int archived = 0;
+		int moved;
+		do {
+			moved = archiveBatch(before);
+			archived += moved;
+		}
+		while (moved == this.batchSize);
+		if (archived > 0) {
+			log.info("Archived {} notifications scheduled before {}", archived, before);
+		}
+		return archived;
+	}
+
+	private int archiveBatch(LocalDateTime before) {
+		Integer moved = this.transactionTemplate.execute(status -> {
+			List<Integer> ids = this.notificationRepository.findArchivableIds(before,
+					PageRequest.ofSize(this.batchSize));
+			if (ids.isEmpty()) {
+				return 0;
+			}
+			this.archiveRepository.archive(ids);
+			this.deliveryRepository.deleteByNotificationIds(ids);
+			return this.notificationRepository.deleteByIds(ids);
+		});
+		return (moved != null) ? moved : 0;
+	}
+
+}
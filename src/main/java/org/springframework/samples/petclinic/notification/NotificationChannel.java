@@ -0,0 +1,44 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.util.List;
+
+/**
+ * Enumeration of the channels a notification can be delivered through.
+ */
+public enum NotificationChannel {
+
+	EMAIL, SMS;
+
+	/**
+	 * Resolve the channels an owner wants to be notified through.
+	 * @param preference the owner's notification preference
+	 * @return the channels to deliver to, empty if the owner opted out
+	 */
+	public static List<NotificationChannel> forPreference(NotificationPreference preference) {
+		if (preference == null) {
+			return List.of();
+		}
+		return switch (preference) {
+			case EMAIL -> List.of(EMAIL);
+			case SMS -> List.of(SMS);
+			case BOTH -> List.of(EMAIL, SMS);
+			case NONE -> List.of();
+		};
+	}
+
+}
@@ -3,6 +3,10 @@ package org.springframework.samples.petclinic.notification;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.samples.petclinic.owner.Owner;
@@ -13,6 +17,7 @@ import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
 import java.time.LocalDateTime;
@@ -33,25 +38,35 @@ public class NotificationController {
 
 	private static final Logger log = LoggerFactory.getLogger(NotificationController.class);
 
-	private final NotificationRepository notificationRepository;
+	private static final int DEFAULT_PAGE_SIZE = 50;
 
-	private final OwnerRepository ownerRepository;
+	private static final int MAX_PAGE_SIZE = 500;
+
+	static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
 
-	private final EmailNotificationService emailNotificationService;
+	// Keeps client keys apart from the keys of scheduled notifications
+	private static final String API_IDEMPOTENCY_KEY_PREFIX = "api:";
 
-	private final SmsNotificationService smsNotificationService;
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 100;
+
+	private final NotificationHistory history;
+
+	private final OwnerRepository ownerRepository;
+
+	private final NotificationOutbox outbox;
 
 	private final NotificationTemplateService templateService;
 
+	private final NotificationExporter exporter;
+
 	@Autowired
-	public NotificationController(NotificationRepository notificationRepository, OwnerRepository ownerRepository,
-			EmailNotificationService emailNotificationService, SmsNotificationService smsNotificationService,
-			NotificationTemplateService templateService) {
-		this.notificationRepository = notificationRepository;
+	public NotificationController(NotificationHistory history, OwnerRepository ownerRepository,
+			NotificationOutbox outbox, NotificationTemplateService templateService, NotificationExporter exporter) {
+		this.history = history;
 		this.ownerRepository = ownerRepository;
-		this.emailNotificationService = emailNotificationService;
-		this.smsNotificationService = smsNotificationService;
+		this.outbox = outbox;
 		this.templateService = templateService;
+		this.exporter = exporter;
 	}
 
 	@InitBinder
@@ -108,27 +123,87 @@ public class NotificationController {
 	// REST API ENDPOINTS
 
 	/**
-	 * Get all notifications for a specific owner.
-	 * @param ownerId the ID of the owner whose notifications to retrieve
-	 * @return a list of notifications
+	 * Get a page of notifications, newest first, optionally filtered by owner, status,
+	 * type and scheduled time. Further pages are requested with the {@code nextCursor} of
+	 * the previous page.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @param cursor the {@code nextCursor} of the previous page
+	 * @param size the maximum number of notifications to return
+	 * @return a page of notifications
 	 */
 	@GetMapping("/api/notifications")
 	@ResponseBody
-	public ResponseEntity<List<Notification>> getNotifications(@RequestParam(required = false) Integer ownerId) {
-		List<Notification> notifications;
+	public ResponseEntity<NotificationPage> getNotifications(@RequestParam(required = false) Integer ownerId,
+			@RequestParam(required = false) NotificationStatus status,
+			@RequestParam(required = false) NotificationType type,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+		if (ownerId != null && ownerRepository.findById(ownerId).isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner not found with ID: " + ownerId);
+		}
+		if (size < 1 || size > MAX_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"Page size must be between 1 and " + MAX_PAGE_SIZE + ": " + size);
+		}
 
-		if (ownerId != null) {
-			Optional<Owner> ownerOpt = ownerRepository.findById(ownerId);
-			if (ownerOpt.isEmpty()) {
-				throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner not found with ID: " + ownerId);
-			}
-			notifications = notificationRepository.findByOwner(ownerOpt.get());
+		NotificationCursor after;
+		try {
+			after = (cursor != null) ? NotificationCursor.decode(cursor) : null;
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
 		}
-		else {
-			notifications = notificationRepository.findAll();
+
+		// One more than requested tells whether there is a next page
+		List<NotificationView> notifications = history.findViews(ownerId, status, type, from, to, after, size + 1);
+		String nextCursor = null;
+		if (notifications.size() > size) {
+			notifications = notifications.subList(0, size);
+			nextCursor = NotificationCursor.after(notifications.get(size - 1)).encode();
 		}
 
-		return ResponseEntity.ok(notifications);
+		return ResponseEntity.ok(new NotificationPage(notifications, nextCursor));
+	}
+
+	/**
+	 * Export the full notification history, optionally filtered like
+	 * {@link #getNotifications}. The response is streamed while the notifications are
+	 * read, so exports of any size run in constant memory.
+	 * @param format the format of the export, NDJSON or CSV
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @return the streamed export
+	 */
+	@GetMapping("/api/notifications/export")
+	@ResponseBody
+	public ResponseEntity<StreamingResponseBody> exportNotifications(
+			@RequestParam(defaultValue = "NDJSON") NotificationExportFormat format,
+			@RequestParam(required = false) Integer ownerId, @RequestParam(required = false) NotificationStatus status,
+			@RequestParam(required = false) NotificationType type,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+			@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+		if (ownerId != null && ownerRepository.findById(ownerId).isEmpty()) {
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Owner not found with ID: " + ownerId);
+		}
+
+		StreamingResponseBody body = out -> exporter.export(format, ownerId, status, type, from, to, out);
+		return ResponseEntity.ok()
+			.contentType(format.getMediaType())
+			.header(HttpHeaders.CONTENT_DISPOSITION,
+					ContentDisposition.attachment()
+						.filename("notifications." + format.getExtension())
+						.build()
+						.toString())
+			.body(body);
 	}
 
 	/**
@@ -170,14 +245,23 @@ public class NotificationController {
 	}
 
 	/**
-	 * Send a test notification to an owner.
+	 * Queue a test notification for an owner. The notification is delivered
+	 * asynchronously by the outbox relay, so the response reports which channels it was
+	 * queued for rather than whether the provider accepted it.
+	 * <p>
+	 * Requests carrying an {@code Idempotency-Key} header are queued only once; a
+	 * repeated request with the same key is answered with the notification queued the
+	 * first time.
+	 * @param idempotencyKey the optional client-chosen key identifying the request
 	 * @param testRequest the request containing the owner ID and optional message
 	 * @return the result of the notification test
 	 */
 	@PostMapping("/api/notifications/test")
 	@ResponseBody
-	public ResponseEntity<Map<String, Object>> testNotification(@RequestBody TestNotificationRequest testRequest) {
-		Optional<Owner> ownerOpt = ownerRepository.findById(testRequest.getOwnerId());
+	public ResponseEntity<Map<String, Object>> testNotification(
+			@RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+			@RequestBody TestNotificationRequest testRequest) {
+		Optional<Owner> ownerOpt = ownerRepository.findWithPetsById(testRequest.getOwnerId());
 		if (ownerOpt.isEmpty()) {
 			throw new ResponseStatusException(HttpStatus.NOT_FOUND,
 					"Owner not found with ID: " + testRequest.getOwnerId());
@@ -185,12 +269,28 @@ public class NotificationController {
 
 		Owner owner = ownerOpt.get();
 
+		// Answer a repeated request without creating another notification
+		String key = null;
+		if (idempotencyKey != null) {
+			key = API_IDEMPOTENCY_KEY_PREFIX + idempotencyKey;
+			if (key.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, IDEMPOTENCY_KEY_HEADER + " must be at most "
+						+ (MAX_IDEMPOTENCY_KEY_LENGTH - API_IDEMPOTENCY_KEY_PREFIX.length()) + " characters");
+			}
+			Optional<QueuedNotification> queued = outbox.findQueued(key);
+			if (queued.isPresent()) {
+				log.debug("Notification with idempotency key {} was already queued", idempotencyKey);
+				return ResponseEntity.ok(testNotificationResponse(owner, queued.get(), true));
+			}
+		}
+
 		// Create a test notification
 		String message = testRequest.getMessage() != null ? testRequest.getMessage()
 				: "This is a test notification from Pet Clinic.";
 
 		Notification notification = new Notification(message, NotificationType.APPOINTMENT_REMINDER,
 				LocalDateTime.now(), owner);
+		notification.setIdempotencyKey(key);
 
 		// Set pet if provided
 		if (testRequest.getPetId() != null && !owner.getPets().isEmpty()) {
@@ -201,60 +301,59 @@ public class NotificationController {
 				.ifPresent(notification::setPet);
 		}
 
-		// Initially set status to PENDING
-		notification.setStatus(NotificationStatus.PENDING);
-		notificationRepository.save(notification);
-
-		// Process message template
+		// Process message template and queue the notification with its deliveries
 		notification.setMessage(templateService.processNotification(notification));
-
-		// Handle preferences
-		NotificationPreference preference = owner.getNotificationPreference();
-		boolean emailSent = false;
-		boolean smsSent = false;
-
-		// Early return if preference is NONE
-		if (preference == NotificationPreference.NONE) {
-			notificationRepository.save(notification); // Save with unchanged PENDING
-														// status
-
-			Map<String, Object> response = new HashMap<>();
-			response.put("notificationId", notification.getId());
-			response.put("ownerId", owner.getId());
-			response.put("status", notification.getStatus());
-			response.put("emailSent", false);
-			response.put("smsSent", false);
-			response.put("preference", preference);
-			response.put("message", "No notification sent: owner preference is set to NONE");
-
-			return ResponseEntity.ok(response);
+		QueuedNotification queued;
+		try {
+			List<NotificationChannel> channels = outbox.enqueue(notification)
+				.stream()
+				.map(NotificationDelivery::getChannel)
+				.toList();
+			queued = new QueuedNotification(notification.getId(), notification.getStatus(), channels);
 		}
-
-		// Try sending based on preference
-		if (preference == NotificationPreference.EMAIL || preference == NotificationPreference.BOTH) {
-			emailSent = emailNotificationService.send(notification);
+		catch (DataIntegrityViolationException e) {
+			// A concurrent request with the same key got there first
+			if (key == null) {
+				throw e;
+			}
+			queued = outbox.findQueued(key).orElseThrow(() -> e);
+			return ResponseEntity.ok(testNotificationResponse(owner, queued, true));
 		}
 
-		if (preference == NotificationPreference.SMS || preference == NotificationPreference.BOTH) {
-			smsSent = smsNotificationService.send(notification);
-		}
+		return ResponseEntity.ok(testNotificationResponse(owner, queued, false));
+	}
 
-		// Update status if anything was sent
-		if (emailSent || smsSent) {
-			notification.setStatus(NotificationStatus.SENT);
+	private Map<String, Object> testNotificationResponse(Owner owner, QueuedNotification queued, boolean duplicate) {
+		List<NotificationChannel> channels = queued.channels();
+		Map<String, Object> response = new HashMap<>();
+		response.put("notificationId", queued.notificationId());
+		response.put("ownerId", owner.getId());
+		response.put("status", queued.status());
+		response.put("emailQueued", channels.contains(NotificationChannel.EMAIL));
+		response.put("smsQueued", channels.contains(NotificationChannel.SMS));
+		response.put("preference", owner.getNotificationPreference());
+		response.put("duplicate", duplicate);
+		if (channels.isEmpty()) {
+			response.put("message", "No notification sent: owner preference is set to NONE");
 		}
+		return response;
+	}
 
-		notificationRepository.save(notification);
+	/**
+	 * Queue dead-lettered notification deliveries again, for example after a long
+	 * provider outage.
+	 * @param since only replay deliveries created at or after this time
+	 * @return the number of deliveries queued again
+	 */
+	@PostMapping("/api/notifications/deliveries/replay")
+	@ResponseBody
+	public ResponseEntity<Map<String, Object>> replayFailedDeliveries(
+			@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since) {
+		int requeued = outbox.replayDeadLetters(since);
 
-		// Prepare final response
 		Map<String, Object> response = new HashMap<>();
-		response.put("notificationId", notification.getId());
-		response.put("ownerId", owner.getId());
-		response.put("status", notification.getStatus());
-		response.put("emailSent", emailSent);
-		response.put("smsSent", smsSent);
-		response.put("preference", preference);
-
+		response.put("since", since);
+		response.put("requeued", requeued);
 		return ResponseEntity.ok(response);
 	}
 
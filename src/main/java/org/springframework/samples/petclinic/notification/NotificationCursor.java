@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the notification list, newest first, from which the next page continues.
+ * The list is ordered by scheduled time and id, so a cursor stays valid while
+ * notifications are added and does not require the database to skip over the rows of
+ * earlier pages.
+ *
+ * @param scheduledTime the scheduled time of the last notification returned
+ * @param id the id of the last notification returned
+ */
+public record NotificationCursor(LocalDateTime scheduledTime, Integer id) {
+
+	private static final String SEPARATOR = "|";
+
+	/**
+	 * @param notification the last notification of a page
+	 * @return the cursor continuing after it
+	 */
+	public static NotificationCursor after(NotificationView notification) {
+		return new NotificationCursor(notification.scheduledTime(), notification.id());
+	}
+
+	/**
+	 * @return the opaque, URL-safe form of this cursor
+	 */
+	public String encode() {
+		String value = this.scheduledTime + SEPARATOR + this.id;
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param cursor a cursor as returned by {@link #encode()}
+	 * @return the decoded cursor
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	public static NotificationCursor decode(String cursor) {
+		try {
+			String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+			int separator = value.lastIndexOf(SEPARATOR);
+			if (separator < 0) {
+				throw new IllegalArgumentException("Malformed cursor: " + cursor);
+			}
+			return new NotificationCursor(LocalDateTime.parse(value.substring(0, separator)),
+					Integer.valueOf(value.substring(separator + 1)));
+		}
+		catch (DateTimeParseException | NumberFormatException ex) {
+			throw new IllegalArgumentException("Malformed cursor: " + cursor, ex);
+		}
+	}
+
+}
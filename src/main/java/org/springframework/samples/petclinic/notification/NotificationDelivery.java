@@ -0,0 +1,199 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * Outbox entry for delivering a {@link Notification} through a single channel. Rows are
+ * written in the same transaction as their notification and drained asynchronously by the
+ * {@link NotificationOutboxRelay}, so no provider call is made while the writing
+ * transaction is open. A failed delivery stays in the outbox until its
+ * {@code nextAttemptAt}, and is dead-lettered once it runs out of attempts. Like
+ * notifications, deliveries take their ids from a pooled sequence so they are inserted in
+ * JDBC batches.
+ */
+@Entity
+@Table(name = "notification_deliveries")
+public class NotificationDelivery {
+
+	/**
+	 * Maximum length of the stored provider error, matching the column size.
+	 */
+	private static final int MAX_ERROR_LENGTH = 255;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notification_deliveries_seq")
+	@SequenceGenerator(name = "notification_deliveries_seq", sequenceName = "notification_deliveries_seq",
+			allocationSize = 50)
+	private Integer id;
+
+	@ManyToOne
+	@JoinColumn(name = "notification_id")
+	@NotNull
+	private Notification notification;
+
+	@NotNull
+	@Column(name = "channel")
+	@Enumerated(EnumType.STRING)
+	private NotificationChannel channel;
+
+	@NotNull
+	@Column(name = "status")
+	@Enumerated(EnumType.STRING)
+	private NotificationStatus status = NotificationStatus.PENDING;
+
+	@Column(name = "attempts")
+	private int attempts;
+
+	@NotNull
+	@Column(name = "created_at")
+	private LocalDateTime createdAt;
+
+	@Column(name = "last_attempt_at")
+	private LocalDateTime lastAttemptAt;
+
+	@NotNull
+	@Column(name = "next_attempt_at")
+	private LocalDateTime nextAttemptAt;
+
+	@Column(name = "lease_until")
+	private LocalDateTime leaseUntil;
+
+	@Column(name = "last_error")
+	private String lastError;
+
+	/**
+	 * Creates a new instance of NotificationDelivery without setting any properties
+	 */
+	public NotificationDelivery() {
+	}
+
+	/**
+	 * Creates a new pending delivery of a notification through a channel
+	 * @param notification the notification to deliver
+	 * @param channel the channel to deliver through
+	 */
+	public NotificationDelivery(Notification notification, NotificationChannel channel) {
+		this.notification = notification;
+		this.channel = channel;
+		this.createdAt = LocalDateTime.now();
+		this.nextAttemptAt = this.createdAt;
+	}
+
+	public Integer getId() {
+		return id;
+	}
+
+	public void setId(Integer id) {
+		this.id = id;
+	}
+
+	public Notification getNotification() {
+		return this.notification;
+	}
+
+	public void setNotification(Notification notification) {
+		this.notification = notification;
+	}
+
+	public NotificationChannel getChannel() {
+		return this.channel;
+	}
+
+	public void setChannel(NotificationChannel channel) {
+		this.channel = channel;
+	}
+
+	public NotificationStatus getStatus() {
+		return this.status;
+	}
+
+	public void setStatus(NotificationStatus status) {
+		this.status = status;
+	}
+
+	public int getAttempts() {
+		return this.attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public LocalDateTime getCreatedAt() {
+		return this.createdAt;
+	}
+
+	public void setCreatedAt(LocalDateTime createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	public LocalDateTime getLastAttemptAt() {
+		return this.lastAttemptAt;
+	}
+
+	public void setLastAttemptAt(LocalDateTime lastAttemptAt) {
+		this.lastAttemptAt = lastAttemptAt;
+	}
+
+	public LocalDateTime getNextAttemptAt() {
+		return this.nextAttemptAt;
+	}
+
+	public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+		this.nextAttemptAt = nextAttemptAt;
+	}
+
+	public LocalDateTime getLeaseUntil() {
+		return this.leaseUntil;
+	}
+
+	public void setLeaseUntil(LocalDateTime leaseUntil) {
+		this.leaseUntil = leaseUntil;
+	}
+
+	public String getLastError() {
+		return this.lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = (lastError != null && lastError.length() > MAX_ERROR_LENGTH)
+				? lastError.substring(0, MAX_ERROR_LENGTH) : lastError;
+	}
+
+	@Override
+	public String toString() {
+		return "NotificationDelivery{" + "id=" + getId() + ", notification="
+				+ (notification != null ? notification.getId() : null) + ", channel=" + channel + ", status=" + status
+				+ ", attempts=" + attempts + ", createdAt=" + createdAt + ", lastAttemptAt=" + lastAttemptAt
+				+ ", nextAttemptAt=" + nextAttemptAt + ", leaseUntil=" + leaseUntil + '}';
+	}
+
+}
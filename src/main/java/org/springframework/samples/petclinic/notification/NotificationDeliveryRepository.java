@@ -0,0 +1,96 @@
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * Repository class for <code>NotificationDelivery</code> outbox entries.
+ */
+public interface NotificationDeliveryRepository extends Repository<NotificationDelivery, Integer> {
+
+	/**
+	 * Save a delivery to the data store.
+	 * @param delivery the delivery to save
+	 */
+	void save(NotificationDelivery delivery);
+
+	/**
+	 * Save a batch of deliveries to the data store.
+	 * @param deliveries the deliveries to save
+	 * @return the saved deliveries
+	 */
+	<S extends NotificationDelivery> List<S> saveAll(Iterable<S> deliveries);
+
+	/**
+	 * Find the deliveries of a notification.
+	 * @param notification the notification whose deliveries to find
+	 * @return the deliveries, one per channel
+	 */
+	List<NotificationDelivery> findByNotification(Notification notification);
+
+	/**
+	 * Lock a batch of pending deliveries, and failed deliveries whose retry is due, that
+	 * are not currently leased by a relay, in order of their next attempt. Renders
+	 * {@code FOR UPDATE SKIP LOCKED} where the dialect supports it so concurrent relays
+	 * drain disjoint batches. Only the ids are selected so that no joined row is locked.
+	 * @param currentTime the current time to compare attempt times and leases against
+	 * @param pageable the batch to lock
+	 * @return the ids of the locked deliveries
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+	@Query("SELECT d.id FROM NotificationDelivery d WHERE d.status IN ('PENDING', 'FAILED') AND d.nextAttemptAt <= :currentTime AND (d.leaseUntil IS NULL OR d.leaseUntil < :currentTime) ORDER BY d.nextAttemptAt, d.id")
+	List<Integer> lockDueDeliveryIds(@Param("currentTime") LocalDateTime currentTime, Pageable pageable);
+
+	/**
+	 * Load the given deliveries with everything needed to send them, their notification
+	 * and its owner and pet, in a single query. The other deliveries of the same
+	 * notifications are loaded along with them, so the status of a notification can be
+	 * derived from all of its channels.
+	 * @param ids the ids of the deliveries
+	 * @return the deliveries and the other deliveries of their notifications, in order of
+	 * their next attempt
+	 */
+	@Query("SELECT d FROM NotificationDelivery d JOIN FETCH d.notification n JOIN FETCH n.owner LEFT JOIN FETCH n.pet p LEFT JOIN FETCH p.type WHERE n.id IN (SELECT l.notification.id FROM NotificationDelivery l WHERE l.id IN :ids) ORDER BY d.nextAttemptAt, d.id")
+	List<NotificationDelivery> findForDispatch(@Param("ids") Collection<Integer> ids);
+
+	/**
+	 * Put dead-lettered deliveries back into the outbox with a fresh set of attempts so
+	 * the relay sends them again.
+	 * @param since only replay deliveries created at or after this time
+	 * @param currentTime the time of the first new attempt
+	 * @return the number of deliveries queued again
+	 */
+	@Modifying
+	@Query("UPDATE NotificationDelivery d SET d.status = 'PENDING', d.attempts = 0, d.nextAttemptAt = :currentTime, d.leaseUntil = NULL WHERE d.status = 'DEAD_LETTER' AND d.createdAt >= :since")
+	int requeueDeadLetters(@Param("since") LocalDateTime since, @Param("currentTime") LocalDateTime currentTime);
+
+	/**
+	 * Delete the deliveries of the given notifications.
+	 * @param notificationIds the ids of the notifications
+	 * @return the number of deliveries deleted
+	 */
+	@Modifying
+	@Query("DELETE FROM NotificationDelivery d WHERE d.notification.id IN :notificationIds")
+	int deleteByNotificationIds(@Param("notificationIds") Collection<Integer> notificationIds);
+
+	/**
+	 * Count the deliveries with the given status.
+	 * @param status the status to count
+	 * @return the number of deliveries
+	 */
+	long countByStatus(NotificationStatus status);
+
+}
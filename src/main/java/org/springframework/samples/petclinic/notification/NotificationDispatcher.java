@@ -0,0 +1,479 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Sends queued {@link NotificationDelivery outbox deliveries} through their channels and
+ * writes the resulting statuses back in short batched transactions. No database
+ * connection is held while a provider call is in flight, and the statuses are written by
+ * the {@link NotificationStatusWriter} without reading the rows back first.
+ * <p>
+ * Each channel has its own bounded worker pool, a bulkhead, so a slow provider only ties
+ * up the workers of its own channel: email deliveries are sent in chunks that share one
+ * SMTP connection, SMS deliveries asynchronously at the provider's rate limit, and both
+ * channels are sent side by side. A delivery that finds its channel's queue full fails at
+ * once and is retried later rather than blocking the relay. The status of a notification
+ * is derived from all of its deliveries, including those of other channels that are not
+ * part of the batch, once they have been attempted. Each notification's content is
+ * prepared once as a {@link RenderedNotification} and shared by all of its channels.
+ * <p>
+ * Sends paced by a rate limit may outlast the lease of their batch. Just before each
+ * message is sent the lease of its deliveries is checked; a delivery whose lease is about
+ * to run out is neither sent nor written back, and is left to whichever relay leases it
+ * next, so it is not sent twice.
+ */
+@Component
+public class NotificationDispatcher {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+	// Time a send may still wait for its channel's rate limit once its lease was checked
+	static final Duration LEASE_MARGIN = Duration.ofSeconds(30);
+
+	private final NotificationStatusWriter statusWriter;
+
+	private final NotificationOutbox outbox;
+
+	private final EmailNotificationService emailNotificationService;
+
+	private final SmsNotificationService smsNotificationService;
+
+	private final NotificationMetrics metrics;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ThreadPoolTaskExecutor emailExecutor;
+
+	private final ThreadPoolTaskExecutor smsExecutor;
+
+	private final int persistBatchSize;
+
+	private final boolean coalesce;
+
+	public NotificationDispatcher(NotificationStatusWriter statusWriter, NotificationOutbox outbox,
+			EmailNotificationService emailNotificationService, SmsNotificationService smsNotificationService,
+			NotificationMetrics metrics, PlatformTransactionManager transactionManager,
+			@Value("${notification.dispatch.email.workers:4}") int emailWorkers,
+			@Value("${notification.dispatch.email.queue-capacity:100}") int emailQueueCapacity,
+			@Value("${notification.dispatch.sms.workers:2}") int smsWorkers,
+			@Value("${notification.dispatch.sms.queue-capacity:1000}") int smsQueueCapacity,
+			@Value("${notification.dispatch.persist-batch-size:100}") int persistBatchSize,
+			@Value("${notification.digest.window:0}") Duration digestWindow) {
+		this.statusWriter = statusWriter;
+		this.outbox = outbox;
+		this.emailNotificationService = emailNotificationService;
+		this.smsNotificationService = smsNotificationService;
+		this.metrics = metrics;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.persistBatchSize = persistBatchSize;
+		this.coalesce = !digestWindow.isNegative() && !digestWindow.isZero();
+		this.emailExecutor = bulkhead("notification-email-", emailWorkers, emailQueueCapacity);
+		this.smsExecutor = bulkhead("notification-sms-", smsWorkers, smsQueueCapacity);
+		metrics.monitorWorkers(NotificationChannel.EMAIL, this.emailExecutor.getThreadPoolExecutor());
+		metrics.monitorWorkers(NotificationChannel.SMS, this.smsExecutor.getThreadPoolExecutor());
+	}
+
+	private static ThreadPoolTaskExecutor bulkhead(String threadNamePrefix, int workers, int queueCapacity) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(workers);
+		executor.setMaxPoolSize(workers);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setThreadNamePrefix(threadNamePrefix);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.initialize();
+		return executor;
+	}
+
+	/**
+	 * Send the given deliveries in parallel and persist their final status together with
+	 * the status of their notifications. Blocks until every delivery has been attempted
+	 * and its status has been written.
+	 * @param deliveries the pending deliveries to send, covering every delivery of their
+	 * notifications
+	 */
+	public void dispatch(List<NotificationDelivery> deliveries) {
+		dispatch(deliveries, List.of());
+	}
+
+	/**
+	 * Send the given deliveries like {@link #dispatch(List)}, taking the status of their
+	 * notifications' other deliveries into account when settling the notifications.
+	 * @param deliveries the pending deliveries to send
+	 * @param otherChannels the other deliveries of the same notifications, which are not
+	 * sent
+	 */
+	public void dispatch(List<NotificationDelivery> deliveries, Collection<NotificationDelivery> otherChannels) {
+		if (deliveries.isEmpty()) {
+			return;
+		}
+
+		Map<Notification, List<NotificationDelivery>> byNotification = new LinkedHashMap<>();
+		Map<Notification, NotificationStatus> previousStatus = new HashMap<>();
+		for (NotificationDelivery delivery : deliveries) {
+			Notification notification = delivery.getNotification();
+			byNotification.computeIfAbsent(notification, key -> new ArrayList<>()).add(delivery);
+			previousStatus.putIfAbsent(notification, notification.getStatus());
+		}
+
+		// One message per digest, its content prepared once and shared by all channels
+		Map<List<Notification>, RenderedNotification> contents = new HashMap<>();
+		List<Digest> emails = new ArrayList<>();
+		List<Digest> texts = new ArrayList<>();
+		for (List<NotificationDelivery> group : coalesce(deliveries)) {
+			List<Notification> notifications = group.stream().map(NotificationDelivery::getNotification).toList();
+			Digest digest = new Digest(group, contents.computeIfAbsent(notifications, RenderedNotification::digest));
+			(group.get(0).getChannel() == NotificationChannel.EMAIL ? emails : texts).add(digest);
+		}
+
+		// Emails in chunks over a single SMTP connection each
+		int chunkSize = Math.max(1, this.emailNotificationService.getMaxMessagesPerConnection());
+		List<CompletableFuture<Void>> sends = new ArrayList<>();
+		for (int from = 0; from < emails.size(); from += chunkSize) {
+			List<Digest> chunk = emails.subList(from, Math.min(from + chunkSize, emails.size()));
+			try {
+				sends.add(CompletableFuture.runAsync(() -> sendEmails(chunk), this.emailExecutor));
+			}
+			catch (RejectedExecutionException ex) {
+				rejected(chunk);
+			}
+		}
+
+		// SMS alongside on their own workers, paced by the SMS service's rate limit
+		for (Digest digest : texts) {
+			try {
+				sends.add(CompletableFuture.supplyAsync(() -> sendSms(digest), this.smsExecutor)
+					.thenCompose(send -> send));
+			}
+			catch (RejectedExecutionException ex) {
+				rejected(List.of(digest));
+			}
+		}
+		await(sends);
+
+		// Deliveries that were not sent because their lease ran out still hold it
+		byNotification.values().forEach(channels -> channels.removeIf(delivery -> delivery.getLeaseUntil() != null));
+		byNotification.values().removeIf(List::isEmpty);
+		Map<Notification, List<NotificationStatus>> otherStatuses = new HashMap<>();
+		for (NotificationDelivery delivery : otherChannels) {
+			otherStatuses.computeIfAbsent(delivery.getNotification(), key -> new ArrayList<>())
+				.add(delivery.getStatus());
+		}
+		byNotification.forEach((notification, channels) -> {
+			List<NotificationStatus> statuses = new ArrayList<>(otherStatuses.getOrDefault(notification, List.of()));
+			channels.forEach(delivery -> statuses.add(delivery.getStatus()));
+			settle(notification, statuses, previousStatus.get(notification));
+		});
+		persist(byNotification);
+		// Recorded once written, as the writer settles the status from every channel
+		byNotification.keySet()
+			.forEach(notification -> this.metrics.recordTransition(previousStatus.get(notification),
+					notification.getStatus()));
+	}
+
+	/**
+	 * Group the deliveries to the same owner through the same channel so they are sent as
+	 * one digest. Without a digest window every delivery is sent on its own.
+	 */
+	private Collection<List<NotificationDelivery>> coalesce(List<NotificationDelivery> deliveries) {
+		if (!this.coalesce) {
+			return deliveries.stream().map(List::of).toList();
+		}
+		Map<DigestKey, List<NotificationDelivery>> digests = new LinkedHashMap<>();
+		for (NotificationDelivery delivery : deliveries) {
+			DigestKey key = new DigestKey(delivery.getNotification().getOwner().getId(), delivery.getChannel());
+			digests.computeIfAbsent(key, k -> new ArrayList<>()).add(delivery);
+		}
+		return digests.values();
+	}
+
+	private void await(List<CompletableFuture<Void>> sends) {
+		CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+	}
+
+	/**
+	 * Send a chunk of email digests as one batch.
+	 * @param digests the email digests to send
+	 */
+	void sendEmails(List<Digest> chunk) {
+		List<Digest> digests = chunk.stream().filter(digest -> !leaseLost(digest)).toList();
+		if (digests.isEmpty()) {
+			return;
+		}
+		if (!this.emailNotificationService.getCircuitBreaker().isCallPermitted()) {
+			postpone(digests, "SMTP circuit is open");
+			return;
+		}
+		List<RenderedNotification> emails = digests.stream().map(Digest::content).toList();
+		LocalDateTime attemptedAt = LocalDateTime.now();
+		long start = System.nanoTime();
+		try {
+			Set<Notification> sent = Collections.newSetFromMap(new IdentityHashMap<>());
+			sent.addAll(this.emailNotificationService.send(emails));
+			for (Digest digest : digests) {
+				countAttempt(digest, attemptedAt);
+				if (sent.contains(digest.content().notification())) {
+					sent(digest);
+				}
+				else {
+					fail(digest, "EMAIL delivery was not accepted");
+				}
+			}
+		}
+		catch (CallNotPermittedException ex) {
+			// The circuit opened, or its probes were taken, since it was asked above
+			postpone(digests, ex.getMessage());
+			return;
+		}
+		catch (RuntimeException ex) {
+			log.error("Unexpected error sending {} email notifications: {}", digests.size(), ex.getMessage(), ex);
+			digests.forEach(digest -> {
+				countAttempt(digest, attemptedAt);
+				fail(digest, ex.getMessage());
+			});
+		}
+		// The chunk shared one SMTP connection, so it is one provider call
+		this.metrics.recordSend(NotificationChannel.EMAIL,
+				digests.stream().map(digest -> digest.content().notification().getType()).toList(),
+				digests.stream().map(digest -> digest.deliveries().get(0).getStatus()).toList(),
+				Duration.ofNanos(System.nanoTime() - start));
+	}
+
+	/**
+	 * Start sending a single SMS digest.
+	 * @param digest the SMS digest to send
+	 * @return a future completed once the delivery status is known
+	 */
+	CompletableFuture<Void> sendSms(Digest digest) {
+		if (leaseLost(digest)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		if (!this.smsNotificationService.getCircuitBreaker().isCallPermitted()) {
+			postpone(List.of(digest), "Twilio circuit is open");
+			return CompletableFuture.completedFuture(null);
+		}
+		LocalDateTime attemptedAt = LocalDateTime.now();
+		long start = System.nanoTime();
+		CompletableFuture<Boolean> send;
+		try {
+			send = this.smsNotificationService.sendAsync(digest.content());
+		}
+		catch (RuntimeException ex) {
+			send = CompletableFuture.failedFuture(ex);
+		}
+		return send.handle((sent, ex) -> {
+			Throwable cause = (ex instanceof CompletionException) ? ex.getCause() : ex;
+			if (cause instanceof CallNotPermittedException) {
+				// The circuit opened, or its probes were taken, since it was asked above
+				postpone(List.of(digest), cause.getMessage());
+				return null;
+			}
+			countAttempt(digest, attemptedAt);
+			if (ex != null) {
+				log.error("Unexpected error sending SMS notification {}: {}", digest.content().notification().getId(),
+						ex.getMessage(), ex);
+				fail(digest, ex.getMessage());
+			}
+			else if (sent) {
+				sent(digest);
+			}
+			else if (!this.smsNotificationService.isEnabled()) {
+				// The channel is switched off, retrying will not help
+				digest.deliveries().forEach(delivery -> delivery.setStatus(NotificationStatus.SKIPPED));
+			}
+			else {
+				fail(digest, "SMS delivery was not accepted");
+			}
+			recordSend(digest, Duration.ofNanos(System.nanoTime() - start));
+			return null;
+		});
+	}
+
+	/**
+	 * Postpone digests that did not fit into their channel's bulkhead.
+	 */
+	private void rejected(List<Digest> digests) {
+		NotificationChannel channel = digests.get(0).deliveries().get(0).getChannel();
+		log.warn("All {} workers are busy, postponing {} deliveries", channel, digests.size());
+		postpone(digests, channel + " bulkhead is full");
+	}
+
+	/**
+	 * Retry digests later without sending them. The provider was never called, so this
+	 * does not count as an attempt.
+	 */
+	private void postpone(List<Digest> digests, String reason) {
+		for (Digest digest : digests) {
+			digest.deliveries().forEach(delivery -> delivery.setLeaseUntil(null));
+			fail(digest, reason);
+		}
+	}
+
+	/**
+	 * Tell whether the lease of a digest's deliveries runs out before it can be sent.
+	 * Another relay may lease them again once it has, so they are left untouched.
+	 */
+	private boolean leaseLost(Digest digest) {
+		LocalDateTime deadline = LocalDateTime.now().plus(LEASE_MARGIN);
+		boolean lost = digest.deliveries()
+			.stream()
+			.anyMatch(delivery -> delivery.getLeaseUntil() != null && delivery.getLeaseUntil().isBefore(deadline));
+		if (lost) {
+			log.warn("Lease of notification {} ran out before it was sent, leaving it to the next relay",
+					digest.content().notification().getId());
+		}
+		return lost;
+	}
+
+	private void recordSend(Digest digest, Duration latency) {
+		NotificationDelivery delivery = digest.deliveries().get(0);
+		this.metrics.recordSend(delivery.getChannel(), digest.content().notification().getType(), delivery.getStatus(),
+				latency);
+	}
+
+	private void sent(Digest digest) {
+		for (NotificationDelivery delivery : digest.deliveries()) {
+			delivery.setStatus(NotificationStatus.SENT);
+			delivery.setLastError(null);
+		}
+	}
+
+	/**
+	 * Count the attempt to send a digest. Only called once the provider was asked, so a
+	 * send its circuit breaker refused is postponed instead.
+	 */
+	private void countAttempt(Digest digest, LocalDateTime attemptedAt) {
+		for (NotificationDelivery delivery : digest.deliveries()) {
+			delivery.setAttempts(delivery.getAttempts() + 1);
+			delivery.setLastAttemptAt(attemptedAt);
+			delivery.setLeaseUntil(null);
+		}
+	}
+
+	/**
+	 * Schedule the retry of a failed digest. Its deliveries are retried together so they
+	 * are coalesced again.
+	 */
+	private void fail(Digest digest, String error) {
+		LocalDateTime now = LocalDateTime.now();
+		LocalDateTime retryAt = null;
+		for (NotificationDelivery delivery : digest.deliveries()) {
+			this.outbox.retryLater(delivery, error, now);
+			if (delivery.getStatus() == NotificationStatus.FAILED
+					&& (retryAt == null || delivery.getNextAttemptAt().isAfter(retryAt))) {
+				retryAt = delivery.getNextAttemptAt();
+			}
+		}
+		for (NotificationDelivery delivery : digest.deliveries()) {
+			if (delivery.getStatus() == NotificationStatus.FAILED) {
+				delivery.setNextAttemptAt(retryAt);
+			}
+		}
+	}
+
+	/**
+	 * Derive the notification status from the status of all of its deliveries. The
+	 * channel services update the status themselves; settling it here makes sure one
+	 * failing channel never overrides another that succeeded. A notification is
+	 * dead-lettered only once none of its deliveries is still pending or will be retried.
+	 * The {@link NotificationStatusWriter} settles the stored status again from the
+	 * deliveries as they are when it is written.
+	 */
+	private void settle(Notification notification, List<NotificationStatus> statuses, NotificationStatus previous) {
+		boolean sent = statuses.contains(NotificationStatus.SENT);
+		boolean skipped = statuses.stream().allMatch(status -> status == NotificationStatus.SKIPPED);
+		boolean retrying = statuses.contains(NotificationStatus.FAILED)
+				|| statuses.contains(NotificationStatus.PENDING);
+		if (sent || previous == NotificationStatus.SENT) {
+			notification.setStatus(NotificationStatus.SENT);
+			if (notification.getSentTime() == null) {
+				// Only the first notification of a digest is updated by the channel
+				notification.setSentTime(LocalDateTime.now());
+			}
+		}
+		else if (skipped) {
+			notification.setStatus(NotificationStatus.SKIPPED);
+		}
+		else {
+			notification.setStatus(retrying ? NotificationStatus.FAILED : NotificationStatus.DEAD_LETTER);
+		}
+	}
+
+	private void persist(Map<Notification, List<NotificationDelivery>> byNotification) {
+		List<Notification> notifications = new ArrayList<>();
+		List<NotificationDelivery> deliveries = new ArrayList<>();
+		for (Map.Entry<Notification, List<NotificationDelivery>> entry : byNotification.entrySet()) {
+			notifications.add(entry.getKey());
+			deliveries.addAll(entry.getValue());
+			if (deliveries.size() >= this.persistBatchSize) {
+				persistBatch(notifications, deliveries);
+				notifications = new ArrayList<>();
+				deliveries = new ArrayList<>();
+			}
+		}
+		if (!deliveries.isEmpty()) {
+			persistBatch(notifications, deliveries);
+		}
+	}
+
+	private void persistBatch(List<Notification> notifications, List<NotificationDelivery> deliveries) {
+		this.metrics.timePersist(deliveries, () -> this.transactionTemplate
+			.executeWithoutResult(status -> this.statusWriter.writeStatus(notifications, deliveries)));
+		log.debug("Persisted status of {} dispatched deliveries", deliveries.size());
+	}
+
+	/**
+	 * Deliveries sent as one message, and the content of that message.
+	 */
+	record Digest(List<NotificationDelivery> deliveries, RenderedNotification content) {
+	}
+
+	private record DigestKey(Integer ownerId, NotificationChannel channel) {
+	}
+
+	@PreDestroy
+	void shutdown() {
+		this.emailExecutor.shutdown();
+		this.smsExecutor.shutdown();
+	}
+
+}
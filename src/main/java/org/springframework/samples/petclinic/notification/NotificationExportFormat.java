@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Formats in which the notification history can be exported.
+ */
+public enum NotificationExportFormat {
+
+	/**
+	 * One JSON object per line.
+	 */
+	NDJSON(MediaType.parseMediaType("application/x-ndjson"), "ndjson"),
+
+	/**
+	 * Comma separated values with a header row.
+	 */
+	CSV(MediaType.parseMediaType("text/csv;charset=UTF-8"), "csv");
+
+	private final MediaType mediaType;
+
+	private final String extension;
+
+	NotificationExportFormat(MediaType mediaType, String extension) {
+		this.mediaType = mediaType;
+		this.extension = extension;
+	}
+
+	public MediaType getMediaType() {
+		return this.mediaType;
+	}
+
+	public String getExtension() {
+		return this.extension;
+	}
+
+}
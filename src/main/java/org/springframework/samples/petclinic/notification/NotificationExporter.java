@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Writes the notification history to a stream. Rows are read from a forward-only cursor
+ * as {@link NotificationView projections}, so nothing accumulates in the persistence
+ * context, and each row is written out before the next one is read; memory use does not
+ * depend on the number of rows exported and a slow client simply slows down the read.
+ */
+@Component
+public class NotificationExporter {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationExporter.class);
+
+	private static final String CSV_HEADER = "id,type,status,scheduled_time,sent_time,owner_id,pet_id,message";
+
+	private final NotificationHistory history;
+
+	private final ObjectWriter jsonWriter;
+
+	private final TransactionTemplate transactionTemplate;
+
+	public NotificationExporter(NotificationHistory history, ObjectMapper objectMapper,
+			PlatformTransactionManager transactionManager) {
+		this.history = history;
+		this.jsonWriter = objectMapper.writer()
+			.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+			.withRootValueSeparator("\n");
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.transactionTemplate.setReadOnly(true);
+	}
+
+	/**
+	 * Write the notifications matching the given filters, oldest first. Every filter is
+	 * optional.
+	 * @param format the format to write
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @param out the stream to write to, left open
+	 * @return the number of notifications written
+	 */
+	public long export(NotificationExportFormat format, Integer ownerId, NotificationStatus status,
+			NotificationType type, LocalDateTime from, LocalDateTime to, OutputStream out) {
+		Long exported = this.transactionTemplate.execute(tx -> {
+			// The cursor is only open while the transaction is
+			try (Stream<NotificationView> notifications = this.history.streamViews(ownerId, status, type, from, to)) {
+				Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+				long count = (format == NotificationExportFormat.CSV) ? writeCsv(notifications.iterator(), writer)
+						: writeNdjson(notifications.iterator(), writer);
+				writer.flush();
+				return count;
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		});
+		log.info("Exported {} notifications as {}", exported, format);
+		return (exported != null) ? exported : 0;
+	}
+
+	private long writeNdjson(Iterator<NotificationView> notifications, Writer writer) throws IOException {
+		long count = 0;
+		try (SequenceWriter sequence = this.jsonWriter.writeValues(writer)) {
+			while (notifications.hasNext()) {
+				sequence.write(notifications.next());
+				count++;
+			}
+		}
+		if (count > 0) {
+			writer.write('\n');
+		}
+		return count;
+	}
+
+	private long writeCsv(Iterator<NotificationView> notifications, Writer writer) throws IOException {
+		writer.write(CSV_HEADER);
+		writer.write('\n');
+		long count = 0;
+		while (notifications.hasNext()) {
+			NotificationView notification = notifications.next();
+			writer.write(String.join(",", String.valueOf(notification.id()), csv(notification.type()),
+					csv(notification.status()), csv(notification.scheduledTime()), csv(notification.sentTime()),
+					csv(notification.ownerId()), csv(notification.petId()), csv(notification.message())));
+			writer.write('\n');
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @param value a field value, possibly {@code null}
+	 * @return the value as a CSV field, quoted if needed
+	 */
+	static String csv(Object value) {
+		if (value == null) {
+			return "";
+		}
+		String field = value.toString();
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+			return field;
+		}
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the notification history across the notifications table and the archive. The
+ * archive only holds notifications scheduled before the
+ * {@link NotificationArchiver#archiveBoundary archive boundary}, so it is only queried
+ * when the requested range reaches back past that boundary.
+ */
+@Component
+public class NotificationHistory {
+
+	private static final Comparator<NotificationView> NEWEST_FIRST = Comparator
+		.comparing(NotificationView::scheduledTime, Comparator.nullsLast(Comparator.reverseOrder()))
+		.thenComparing(NotificationView::id, Comparator.reverseOrder());
+
+	private final NotificationRepository notificationRepository;
+
+	private final ArchivedNotificationRepository archiveRepository;
+
+	private final NotificationArchiver archiver;
+
+	public NotificationHistory(NotificationRepository notificationRepository,
+			ArchivedNotificationRepository archiveRepository, NotificationArchiver archiver) {
+		this.notificationRepository = notificationRepository;
+		this.archiveRepository = archiveRepository;
+		this.archiver = archiver;
+	}
+
+	/**
+	 * Find a page of notifications, newest first. Every filter is optional.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @param after continue after this notification, or {@code null} for the first page
+	 * @param limit the maximum number of notifications to return
+	 * @return the matching notifications
+	 */
+	public List<NotificationView> findViews(Integer ownerId, NotificationStatus status, NotificationType type,
+			LocalDateTime from, LocalDateTime to, NotificationCursor after, int limit) {
+		LocalDateTime afterTime = (after != null) ? after.scheduledTime() : null;
+		Integer afterId = (after != null) ? after.id() : null;
+		List<NotificationView> recent = this.notificationRepository.findViews(ownerId, status, type, from, to,
+				afterTime, afterId, PageRequest.ofSize(limit));
+		LocalDateTime boundary = this.archiver.archiveBoundary(LocalDateTime.now());
+		if (!reachesArchive(from, boundary)
+				|| (recent.size() == limit && isAtOrAfter(recent.get(limit - 1).scheduledTime(), boundary))) {
+			// The page is complete before any archived notification would sort into it
+			return recent;
+		}
+
+		List<NotificationView> archived = this.archiveRepository.findViews(ownerId, status, type, from, to, afterTime,
+				afterId, PageRequest.ofSize(limit));
+		if (archived.isEmpty()) {
+			return recent;
+		}
+		List<NotificationView> merged = new ArrayList<>(recent.size() + archived.size());
+		merged.addAll(recent);
+		merged.addAll(archived);
+		merged.sort(NEWEST_FIRST);
+		return (merged.size() > limit) ? merged.subList(0, limit) : merged;
+	}
+
+	/**
+	 * Stream the notifications matching the given filters, the archived ones first and
+	 * each part oldest first. Every filter is optional. The stream must be closed, and
+	 * consumed within a transaction.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @return the matching notifications
+	 */
+	public Stream<NotificationView> streamViews(Integer ownerId, NotificationStatus status, NotificationType type,
+			LocalDateTime from, LocalDateTime to) {
+		List<Supplier<Stream<NotificationView>>> parts = new ArrayList<>(2);
+		if (reachesArchive(from, this.archiver.archiveBoundary(LocalDateTime.now()))) {
+			parts.add(() -> this.archiveRepository.streamViews(ownerId, status, type, from, to));
+		}
+		parts.add(() -> this.notificationRepository.streamViews(ownerId, status, type, from, to));
+		// Each part is opened when the previous one has been read, and closed after it
+		return parts.stream().flatMap(Supplier::get);
+	}
+
+	private static boolean reachesArchive(LocalDateTime from, LocalDateTime boundary) {
+		return from == null || from.isBefore(boundary);
+	}
+
+	private static boolean isAtOrAfter(LocalDateTime time, LocalDateTime boundary) {
+		return time != null && !time.isBefore(boundary);
+	}
+
+}
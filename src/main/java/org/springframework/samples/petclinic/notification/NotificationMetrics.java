@@ -0,0 +1,206 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer instrumentation of the notification pipeline, exported through
+ * {@code /actuator/metrics} and {@code /actuator/prometheus}:
+ * <ul>
+ * <li>{@code notification.render}: time to render a notification, by type</li>
+ * <li>{@code notification.send}: provider latency, by channel, type and outcome, with a
+ * percentile histogram. Each SMS is one sample, and so is each chunk of emails sent over
+ * one SMTP connection; a chunk whose messages differ in type or outcome is tagged
+ * {@code MIXED}</li>
+ * <li>{@code notification.persist}: time to write the status of a batch of deliveries,
+ * by channel and type, tagged {@code MIXED} like the send timer</li>
+ * <li>{@code notification.status.transitions}: status changes of notifications, by the
+ * status they left and entered. Queued notifications leave {@code NEW}</li>
+ * <li>{@code notification.schedules.due}, {@code notification.deliveries.pending} and
+ * {@code notification.deliveries.retrying}: the backlog of due schedules, of deliveries
+ * waiting for their first attempt and of deliveries waiting for a retry</li>
+ * </ul>
+ * The backlog gauges are sampled every {@code notification.metrics.backlog-interval}
+ * rather than on every scrape, so scrapes never reach the database.
+ */
+@Component
+public class NotificationMetrics {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationMetrics.class);
+
+	private static final double[] PERCENTILES = { 0.5, 0.95, 0.99 };
+
+	static final String MIXED = "MIXED";
+
+	static final String NEW = "NEW";
+
+	private final MeterRegistry registry;
+
+	private final NotificationScheduleRepository scheduleRepository;
+
+	private final NotificationDeliveryRepository deliveryRepository;
+
+	private final AtomicLong dueSchedules = new AtomicLong();
+
+	private final AtomicLong pendingDeliveries = new AtomicLong();
+
+	private final AtomicLong retryingDeliveries = new AtomicLong();
+
+	public NotificationMetrics(MeterRegistry registry, NotificationScheduleRepository scheduleRepository,
+			NotificationDeliveryRepository deliveryRepository) {
+		this.registry = registry;
+		this.scheduleRepository = scheduleRepository;
+		this.deliveryRepository = deliveryRepository;
+		Gauge.builder("notification.schedules.due", this.dueSchedules, AtomicLong::get)
+			.description("Enabled schedules that are due but have not fired")
+			.register(registry);
+		Gauge.builder("notification.deliveries.pending", this.pendingDeliveries, AtomicLong::get)
+			.description("Deliveries waiting for their first attempt")
+			.register(registry);
+		Gauge.builder("notification.deliveries.retrying", this.retryingDeliveries, AtomicLong::get)
+			.description("Failed deliveries waiting for a retry")
+			.register(registry);
+	}
+
+	/**
+	 * Sample the backlog gauges.
+	 */
+	@Scheduled(fixedDelayString = "${notification.metrics.backlog-interval:30s}")
+	public void sampleBacklog() {
+		try {
+			this.dueSchedules.set(this.scheduleRepository.countDueSchedules(LocalDateTime.now()));
+			this.pendingDeliveries.set(this.deliveryRepository.countByStatus(NotificationStatus.PENDING));
+			this.retryingDeliveries.set(this.deliveryRepository.countByStatus(NotificationStatus.FAILED));
+		}
+		catch (Exception e) {
+			log.warn("Could not sample the notification backlog: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Expose the pool and queue of a channel's worker pool.
+	 * @param channel the channel the workers send through
+	 * @param executor the worker pool
+	 */
+	void monitorWorkers(NotificationChannel channel, ThreadPoolExecutor executor) {
+		new ExecutorServiceMetrics(executor, "notification.dispatch." + channel.name().toLowerCase(), Tags.empty())
+			.bindTo(this.registry);
+	}
+
+	/**
+	 * Render a notification and record how long it took.
+	 * @param type the type of the notification
+	 * @param render renders the notification
+	 * @return the rendered result
+	 */
+	<T> T timeRender(NotificationType type, Supplier<T> render) {
+		return Timer.builder("notification.render")
+			.description("Time to render a notification")
+			.tag("type", String.valueOf(type))
+			.register(this.registry)
+			.record(render);
+	}
+
+	/**
+	 * Record the latency of a provider call.
+	 * @param channel the channel sent through
+	 * @param type the type of the notification sent
+	 * @param outcome the status of the delivery after the call
+	 * @param latency how long the provider took
+	 */
+	void recordSend(NotificationChannel channel, NotificationType type, NotificationStatus outcome, Duration latency) {
+		recordSend(channel, String.valueOf(type), String.valueOf(outcome), latency);
+	}
+
+	/**
+	 * Record the latency of a provider call that sent several notifications at once.
+	 * @param channel the channel sent through
+	 * @param types the types of the notifications sent
+	 * @param outcomes the statuses of the deliveries after the call
+	 * @param latency how long the provider took
+	 */
+	void recordSend(NotificationChannel channel, Collection<NotificationType> types,
+			Collection<NotificationStatus> outcomes, Duration latency) {
+		recordSend(channel, tag(types), tag(outcomes), latency);
+	}
+
+	private void recordSend(NotificationChannel channel, String type, String outcome, Duration latency) {
+		Timer.builder("notification.send")
+			.description("Latency of the notification providers")
+			.tags("channel", channel.name(), "type", type, "outcome", outcome)
+			.publishPercentileHistogram()
+			.publishPercentiles(PERCENTILES)
+			.register(this.registry)
+			.record(latency);
+	}
+
+	private static String tag(Collection<?> values) {
+		List<String> distinct = values.stream().map(String::valueOf).distinct().toList();
+		return (distinct.size() == 1) ? distinct.get(0) : MIXED;
+	}
+
+	/**
+	 * Write the status of dispatched deliveries and record how long it took.
+	 * @param deliveries the deliveries whose status is written
+	 * @param persist writes the status
+	 */
+	void timePersist(Collection<NotificationDelivery> deliveries, Runnable persist) {
+		String channel = tag(deliveries.stream().map(NotificationDelivery::getChannel).toList());
+		String type = tag(deliveries.stream().map(delivery -> delivery.getNotification().getType()).toList());
+		Timer.builder("notification.persist")
+			.description("Time to write the status of a batch of dispatched deliveries")
+			.tags("channel", channel, "type", type)
+			.register(this.registry)
+			.record(persist);
+	}
+
+	/**
+	 * Count a status change of a notification. Unchanged statuses are not counted.
+	 * @param from the status the notification left, or {@code null} if it was just
+	 * queued
+	 * @param to the status the notification entered
+	 */
+	void recordTransition(NotificationStatus from, NotificationStatus to) {
+		if (from == to) {
+			return;
+		}
+		Counter.builder("notification.status.transitions")
+			.description("Status changes of notifications")
+			.tags("from", (from != null) ? from.name() : NEW, "to", String.valueOf(to))
+			.register(this.registry)
+			.increment();
+	}
+
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Writes notifications together with their per-channel {@link NotificationDelivery}
+ * outbox rows. Both are stored in the caller's transaction, so a notification is never
+ * committed without the deliveries that will send it, and nothing is sent until it is.
+ * <p>
+ * A failed delivery is retried after a jittered exponential backoff, so a provider outage
+ * spreads the retries out instead of resending everything at once when it ends. After
+ * {@code notification.outbox.max-attempts} attempts it is dead-lettered.
+ * <p>
+ * Notifications queued {@link #enqueueForDigest for a digest} are held back until the end
+ * of the current {@code notification.digest.window}, so that all of an owner's
+ * notifications created within one window fall due together and the
+ * {@link NotificationDispatcher} can send them as a single message per channel. Digests
+ * are opt-in: without a window, notifications are due as soon as they fire.
+ * <p>
+ * A notification with an idempotency key is queued at most once: the key is unique in the
+ * database, and the keys queued within the last few minutes are also remembered in memory
+ * so that client retries and overlapping scheduler runs are recognised without a query,
+ * let alone a provider call.
+ */
+@Component
+public class NotificationOutbox {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationOutbox.class);
+
+	private static final int RECENT_KEYS = 10_000;
+
+	private static final Duration RECENT_KEY_RETENTION = Duration.ofMinutes(10);
+
+	private final NotificationRepository notificationRepository;
+
+	private final NotificationDeliveryRepository deliveryRepository;
+
+	private final NotificationMetrics metrics;
+
+	private final int maxAttempts;
+
+	private final Duration initialBackoff;
+
+	private final Duration maxBackoff;
+
+	private final Duration digestWindow;
+
+	// Keys of recently queued notifications, so repeats are answered without a query
+	private final Cache<String, QueuedNotification> recentlyQueued = Caffeine.newBuilder()
+		.maximumSize(RECENT_KEYS)
+		.expireAfterWrite(RECENT_KEY_RETENTION)
+		.recordStats()
+		.build();
+
+	public NotificationOutbox(NotificationRepository notificationRepository,
+			NotificationDeliveryRepository deliveryRepository, NotificationMetrics metrics,
+			@Value("${notification.outbox.max-attempts:5}") int maxAttempts,
+			@Value("${notification.outbox.retry.initial-backoff:30s}") Duration initialBackoff,
+			@Value("${notification.outbox.retry.max-backoff:1h}") Duration maxBackoff,
+			@Value("${notification.digest.window:0}") Duration digestWindow) {
+		this.notificationRepository = notificationRepository;
+		this.deliveryRepository = deliveryRepository;
+		this.metrics = metrics;
+		this.maxAttempts = maxAttempts;
+		this.initialBackoff = initialBackoff;
+		this.maxBackoff = maxBackoff;
+		this.digestWindow = digestWindow;
+	}
+
+	/**
+	 * Save a notification and queue one delivery per channel the owner wants to be
+	 * notified through. A notification for an owner who opted out is stored as SKIPPED.
+	 * @param notification the rendered notification to queue
+	 * @return the queued deliveries, empty if the notification was skipped
+	 */
+	@Transactional
+	public List<NotificationDelivery> enqueue(Notification notification) {
+		return enqueue(notification, false);
+	}
+
+	/**
+	 * Save a notification like {@link #enqueue(Notification)}, but hold its deliveries
+	 * back until the end of the current digest window so they can be coalesced with the
+	 * owner's other notifications of that window.
+	 * @param notification the rendered notification to queue
+	 * @return the queued deliveries, empty if the notification was skipped
+	 */
+	@Transactional
+	public List<NotificationDelivery> enqueueForDigest(Notification notification) {
+		return enqueue(notification, true);
+	}
+
+	private List<NotificationDelivery> enqueue(Notification notification, boolean digest) {
+		List<NotificationChannel> channels = NotificationChannel
+			.forPreference(notification.getOwner().getNotificationPreference());
+		if (channels.isEmpty()) {
+			notification.setStatus(NotificationStatus.SKIPPED);
+		}
+		this.notificationRepository.save(notification);
+
+		List<NotificationDelivery> deliveries = new ArrayList<>(channels.size());
+		for (NotificationChannel channel : channels) {
+			NotificationDelivery delivery = new NotificationDelivery(notification, channel);
+			if (digest) {
+				delivery.setNextAttemptAt(endOfDigestWindow(delivery.getCreatedAt()));
+			}
+			deliveries.add(delivery);
+		}
+		this.deliveryRepository.saveAll(deliveries);
+		log.debug("Queued notification {} for delivery via {}", notification.getId(), channels);
+		NotificationStatus status = notification.getStatus();
+		afterCommit(() -> this.metrics.recordTransition(null, status));
+
+		String key = notification.getIdempotencyKey();
+		if (key != null) {
+			QueuedNotification queued = new QueuedNotification(notification.getId(), notification.getStatus(),
+					channels);
+			afterCommit(() -> this.recentlyQueued.put(key, queued));
+		}
+		return deliveries;
+	}
+
+	private static void afterCommit(Runnable action) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			action.run();
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				action.run();
+			}
+		});
+	}
+
+	/**
+	 * Find the notification queued with the given idempotency key, if any. Keys queued
+	 * recently are answered from memory.
+	 * @param idempotencyKey the idempotency key of the notification
+	 * @return the outcome of queueing the notification, empty if no notification was
+	 * queued with the key
+	 */
+	@Transactional(readOnly = true)
+	public Optional<QueuedNotification> findQueued(String idempotencyKey) {
+		QueuedNotification queued = this.recentlyQueued.getIfPresent(idempotencyKey);
+		if (queued != null) {
+			return Optional.of(queued);
+		}
+		return this.notificationRepository.findByIdempotencyKey(idempotencyKey).map(notification -> {
+			List<NotificationChannel> channels = this.deliveryRepository.findByNotification(notification)
+				.stream()
+				.map(NotificationDelivery::getChannel)
+				.toList();
+			QueuedNotification found = new QueuedNotification(notification.getId(), notification.getStatus(), channels);
+			this.recentlyQueued.put(idempotencyKey, found);
+			return found;
+		});
+	}
+
+	/**
+	 * Find which of the given idempotency keys a notification was queued with already.
+	 * Keys queued recently are answered from memory, the rest with a single query.
+	 * @param idempotencyKeys the keys to look for
+	 * @return the keys that are taken
+	 */
+	@Transactional(readOnly = true)
+	public Set<String> findQueuedKeys(Collection<String> idempotencyKeys) {
+		Set<String> queued = new HashSet<>();
+		List<String> unknown = new ArrayList<>();
+		for (String key : idempotencyKeys) {
+			(this.recentlyQueued.getIfPresent(key) != null ? queued : unknown).add(key);
+		}
+		if (!unknown.isEmpty()) {
+			queued.addAll(this.notificationRepository.findIdempotencyKeys(unknown));
+		}
+		return queued;
+	}
+
+	/**
+	 * @return hit and miss statistics of the recently queued idempotency keys
+	 */
+	public CacheStats getRecentlyQueuedStats() {
+		return this.recentlyQueued.stats();
+	}
+
+	/**
+	 * @param time a point in time
+	 * @return the end of the digest window the time falls into
+	 */
+	LocalDateTime endOfDigestWindow(LocalDateTime time) {
+		long window = this.digestWindow.toMillis();
+		if (window <= 0) {
+			return time;
+		}
+		// Windows are aligned to the epoch so every node agrees on their boundaries
+		long millis = time.toInstant(ZoneOffset.UTC).toEpochMilli();
+		long end = Math.floorDiv(millis + window - 1, window) * window;
+		return LocalDateTime.ofInstant(Instant.ofEpochMilli(end), ZoneOffset.UTC);
+	}
+
+	/**
+	 * Record a failed attempt of a delivery. The delivery is retried after a backoff that
+	 * doubles with each attempt, up to {@code maxBackoff}, and is randomised between half
+	 * and all of it; once all attempts are used up it is dead-lettered instead.
+	 * @param delivery the delivery whose attempt failed
+	 * @param error the reason of the failure
+	 * @param now the time of the failed attempt
+	 */
+	public void retryLater(NotificationDelivery delivery, String error, LocalDateTime now) {
+		delivery.setLastError(error);
+		if (delivery.getAttempts() >= this.maxAttempts) {
+			delivery.setStatus(NotificationStatus.DEAD_LETTER);
+			log.warn("Giving up on {} notification {} after {} attempts: {}", delivery.getChannel(),
+					delivery.getNotification().getId(), delivery.getAttempts(), error);
+			return;
+		}
+		delivery.setStatus(NotificationStatus.FAILED);
+		delivery.setNextAttemptAt(now.plus(backoff(delivery.getAttempts())));
+		log.warn("Failed to send {} notification {}, retrying at {}: {}", delivery.getChannel(),
+				delivery.getNotification().getId(), delivery.getNextAttemptAt(), error);
+	}
+
+	/**
+	 * @param attempts the number of attempts made so far
+	 * @return the jittered delay before the next attempt
+	 */
+	Duration backoff(int attempts) {
+		long initial = this.initialBackoff.toMillis();
+		long max = this.maxBackoff.toMillis();
+		int doublings = Math.min(Math.max(attempts - 1, 0), 62);
+		// Compared before shifting so large attempt counts cannot overflow
+		long delay = (initial > (max >> doublings)) ? max : initial << doublings;
+		long half = delay / 2;
+		return Duration.ofMillis(half + ThreadLocalRandom.current().nextLong(delay - half + 1));
+	}
+
+	/**
+	 * Queue dead-lettered deliveries again with a fresh set of attempts, for example once
+	 * a long provider outage is over.
+	 * @param since only replay deliveries created at or after this time
+	 * @return the number of deliveries queued again
+	 */
+	@Transactional
+	public int replayDeadLetters(LocalDateTime since) {
+		int requeued = this.deliveryRepository.requeueDeadLetters(since, LocalDateTime.now());
+		if (requeued > 0) {
+			log.info("Queued {} dead-lettered notification deliveries created since {} again", requeued, since);
+		}
+		return requeued;
+	}
+
+}
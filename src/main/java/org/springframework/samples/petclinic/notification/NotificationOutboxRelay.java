@@ -0,0 +1,132 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Drains the notification outbox. Pending deliveries and failed deliveries whose retry is
+ * due are leased in short transactions, one batch at a time in order of their next
+ * attempt, and handed to the {@link NotificationDispatcher} which sends them on its own
+ * worker pool. Retries therefore go out continuously as their backoff expires rather than
+ * in periodic sweeps. A delivery whose lease expires before its status is written (for
+ * example because the node died mid-send) is picked up again by the next run.
+ * <p>
+ * The other deliveries of a leased delivery's notification are read along with the batch
+ * but not leased, so the dispatcher can settle the notification's status from all of its
+ * channels.
+ */
+@Component
+public class NotificationOutboxRelay {
+
+	private static final Logger log = LoggerFactory.getLogger(NotificationOutboxRelay.class);
+
+	private final NotificationDeliveryRepository deliveryRepository;
+
+	private final NotificationDispatcher dispatcher;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int batchSize;
+
+	private final Duration leaseDuration;
+
+	public NotificationOutboxRelay(NotificationDeliveryRepository deliveryRepository, NotificationDispatcher dispatcher,
+			PlatformTransactionManager transactionManager,
+			@Value("${notification.dispatch.batch-size:500}") int batchSize,
+			@Value("${notification.claim.lease-duration:5m}") Duration leaseDuration) {
+		this.deliveryRepository = deliveryRepository;
+		this.dispatcher = dispatcher;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.leaseDuration = leaseDuration;
+	}
+
+	/**
+	 * Send due deliveries until none are left.
+	 */
+	@Scheduled(fixedDelayString = "${notification.outbox.poll-interval:5s}")
+	public void relay() {
+		try {
+			int relayed = 0;
+			LeasedBatch batch;
+			do {
+				batch = leaseDueDeliveries(LocalDateTime.now());
+				if (!batch.deliveries().isEmpty()) {
+					this.dispatcher.dispatch(batch.deliveries(), batch.otherChannels());
+					relayed += batch.deliveries().size();
+				}
+			}
+			while (batch.deliveries().size() == this.batchSize);
+
+			if (relayed > 0) {
+				log.info("Relayed {} notification deliveries from the outbox", relayed);
+			}
+		}
+		catch (Exception e) {
+			log.error("Error occurred while relaying notification deliveries", e);
+		}
+	}
+
+	/**
+	 * Lease the next batch of due deliveries to this relay.
+	 * @param now the time against which attempt times and leases are considered due
+	 * @return the leased deliveries and the other deliveries of their notifications
+	 */
+	LeasedBatch leaseDueDeliveries(LocalDateTime now) {
+		LeasedBatch batch = this.transactionTemplate.execute(status -> {
+			List<Integer> ids = this.deliveryRepository.lockDueDeliveryIds(now, PageRequest.ofSize(this.batchSize));
+			if (ids.isEmpty()) {
+				return LeasedBatch.EMPTY;
+			}
+			Set<Integer> lockedIds = new HashSet<>(ids);
+			List<NotificationDelivery> locked = new ArrayList<>(ids.size());
+			List<NotificationDelivery> otherChannels = new ArrayList<>();
+			for (NotificationDelivery delivery : this.deliveryRepository.findForDispatch(ids)) {
+				(lockedIds.contains(delivery.getId()) ? locked : otherChannels).add(delivery);
+			}
+			LocalDateTime leaseUntil = now.plus(this.leaseDuration);
+			// Written back on commit while the rows are still locked
+			locked.forEach(delivery -> delivery.setLeaseUntil(leaseUntil));
+			return new LeasedBatch(locked, otherChannels);
+		});
+		return (batch != null) ? batch : LeasedBatch.EMPTY;
+	}
+
+	/**
+	 * Deliveries leased to this relay, and the other deliveries of their notifications.
+	 */
+	record LeasedBatch(List<NotificationDelivery> deliveries, List<NotificationDelivery> otherChannels) {
+
+		static final LeasedBatch EMPTY = new LeasedBatch(List.of(), List.of());
+
+	}
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.util.List;
+
+/**
+ * A page of notifications and the cursor to request the next one with.
+ *
+ * @param content the notifications of this page
+ * @param nextCursor the cursor of the next page, or {@code null} on the last page
+ */
+public record NotificationPage(List<NotificationView> content, String nextCursor) {
+
+}
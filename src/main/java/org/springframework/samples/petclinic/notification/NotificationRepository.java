@@ -1,9 +1,17 @@
 package org.springframework.samples.petclinic.notification;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.samples.petclinic.owner.Owner;
@@ -22,6 +30,13 @@ public interface NotificationRepository extends Repository<Notification, Integer
 	 */
 	void save(Notification notification);
 
+	/**
+	 * Save a batch of notifications to the data store.
+	 * @param notifications the notifications to save
+	 * @return the saved notifications
+	 */
+	<S extends Notification> List<S> saveAll(Iterable<S> notifications);
+
 	/**
 	 * Retrieve a {@link Notification} by its id.
 	 * @param id the id to search for
@@ -36,12 +51,77 @@ public interface NotificationRepository extends Repository<Notification, Integer
 	List<Notification> findAll();
 
 	/**
-	 * Find all pending notifications that should be sent.
-	 * @param currentTime the current time to compare against scheduled time
-	 * @return a collection of notifications to be sent
+	 * Retrieve a {@link Notification} by its idempotency key.
+	 * @param idempotencyKey the key to search for
+	 * @return the notification if found
+	 */
+	Optional<Notification> findByIdempotencyKey(String idempotencyKey);
+
+	/**
+	 * Find which of the given idempotency keys are already taken.
+	 * @param idempotencyKeys the keys to look for
+	 * @return the keys of existing notifications
+	 */
+	@Query("SELECT n.idempotencyKey FROM Notification n WHERE n.idempotencyKey IN :keys")
+	List<String> findIdempotencyKeys(@Param("keys") Collection<String> idempotencyKeys);
+
+	/**
+	 * Find a page of notifications matching the given filters, newest first, as
+	 * {@link NotificationView projections}. Every filter is optional. Pages are continued
+	 * from the last notification of the previous one (keyset pagination) rather than by
+	 * offset, so deep pages are as cheap as the first.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @param afterTime continue after the notification scheduled at this time...
+	 * @param afterId ...with this id
+	 * @param pageable the maximum number of notifications to return
+	 * @return the matching notifications
+	 */
+	@Query("SELECT new org.springframework.samples.petclinic.notification.NotificationView(n.id, n.type, n.status, n.message, n.scheduledTime, n.sentTime, n.owner.id, n.pet.id) FROM Notification n WHERE (:ownerId IS NULL OR n.owner.id = :ownerId) AND (:status IS NULL OR n.status = :status) AND (:type IS NULL OR n.type = :type) AND (:from IS NULL OR n.scheduledTime >= :from) AND (:to IS NULL OR n.scheduledTime < :to) AND (:afterTime IS NULL OR n.scheduledTime < :afterTime OR (n.scheduledTime = :afterTime AND n.id < :afterId)) ORDER BY n.scheduledTime DESC, n.id DESC")
+	List<NotificationView> findViews(@Param("ownerId") Integer ownerId, @Param("status") NotificationStatus status,
+			@Param("type") NotificationType type, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to,
+			@Param("afterTime") LocalDateTime afterTime, @Param("afterId") Integer afterId, Pageable pageable);
+
+	/**
+	 * Stream the notifications matching the given filters, oldest first, as
+	 * {@link NotificationView projections}. Rows are fetched from the database in chunks
+	 * while the stream is consumed; the stream must be closed, and consumed within a
+	 * transaction. PostgreSQL only honours the fetch size outside auto-commit, and MySQL
+	 * only with {@code useCursorFetch} (set in the {@code mysql} profile); otherwise the
+	 * driver buffers the whole result.
+	 * @param ownerId only notifications for this owner
+	 * @param status only notifications with this status
+	 * @param type only notifications of this type
+	 * @param from only notifications scheduled at or after this time
+	 * @param to only notifications scheduled before this time
+	 * @return the matching notifications
+	 */
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+	@Query("SELECT new org.springframework.samples.petclinic.notification.NotificationView(n.id, n.type, n.status, n.message, n.scheduledTime, n.sentTime, n.owner.id, n.pet.id) FROM Notification n WHERE (:ownerId IS NULL OR n.owner.id = :ownerId) AND (:status IS NULL OR n.status = :status) AND (:type IS NULL OR n.type = :type) AND (:from IS NULL OR n.scheduledTime >= :from) AND (:to IS NULL OR n.scheduledTime < :to) ORDER BY n.id")
+	Stream<NotificationView> streamViews(@Param("ownerId") Integer ownerId, @Param("status") NotificationStatus status,
+			@Param("type") NotificationType type, @Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+	/**
+	 * Find the next notifications that can be archived: sent, skipped, failed or dead
+	 * lettered before the given time, with no delivery still waiting to be attempted.
+	 * @param before only notifications scheduled before this time
+	 * @param pageable the maximum number of ids to return
+	 * @return the ids of the notifications, lowest first
+	 */
+	@Query("SELECT n.id FROM Notification n WHERE n.status IN ('SENT', 'SKIPPED', 'FAILED', 'DEAD_LETTER') AND n.scheduledTime < :before AND NOT EXISTS (SELECT d.id FROM NotificationDelivery d WHERE d.notification = n AND d.status IN ('PENDING', 'FAILED')) ORDER BY n.id")
+	List<Integer> findArchivableIds(@Param("before") LocalDateTime before, Pageable pageable);
+
+	/**
+	 * Delete the given notifications. Their deliveries must have been deleted first.
+	 * @param ids the ids of the notifications
+	 * @return the number of notifications deleted
 	 */
-	@Query("SELECT n FROM Notification n WHERE n.status = 'PENDING' AND n.scheduledTime <= :currentTime")
-	List<Notification> findPendingNotifications(@Param("currentTime") LocalDateTime currentTime);
+	@Modifying
+	@Query("DELETE FROM Notification n WHERE n.id IN :ids")
+	int deleteByIds(@Param("ids") Collection<Integer> ids);
 
 	/**
 	 * Find notifications by owner.
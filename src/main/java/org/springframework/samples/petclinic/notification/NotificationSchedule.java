@@ -16,6 +16,7 @@
 package org.springframework.samples.petclinic.notification;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -27,6 +28,7 @@ import jakarta.persistence.Table;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 
+import org.springframework.data.domain.DomainEvents;
 import org.springframework.samples.petclinic.model.BaseEntity;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.Pet;
@@ -62,6 +64,12 @@ public class NotificationSchedule extends BaseEntity {
 	@Column(name = "enabled")
 	private boolean enabled = true;
 
+	@Column(name = "claimed_by")
+	private String claimedBy;
+
+	@Column(name = "lease_until")
+	private LocalDateTime leaseUntil;
+
 	@ManyToOne
 	@JoinColumn(name = "owner_id")
 	@NotNull
@@ -163,6 +171,22 @@ public class NotificationSchedule extends BaseEntity {
 		this.enabled = enabled;
 	}
 
+	public String getClaimedBy() {
+		return this.claimedBy;
+	}
+
+	public void setClaimedBy(String claimedBy) {
+		this.claimedBy = claimedBy;
+	}
+
+	public LocalDateTime getLeaseUntil() {
+		return this.leaseUntil;
+	}
+
+	public void setLeaseUntil(LocalDateTime leaseUntil) {
+		this.leaseUntil = leaseUntil;
+	}
+
 	public Owner getOwner() {
 		return this.owner;
 	}
@@ -206,15 +230,27 @@ public class NotificationSchedule extends BaseEntity {
 			notification.setPet(this.pet);
 		}
 
+		// A schedule fires once per scheduled time, however often it is processed
+		notification.setIdempotencyKey("schedule:" + getId() + ":" + this.scheduledTime);
 		return notification;
 	}
 
+	/**
+	 * Announce the saved state of this schedule to the scheduler's timing wheel.
+	 * @return the event published by the repository on save
+	 */
+	@DomainEvents
+	List<NotificationScheduleChangedEvent> scheduleChanged() {
+		return List.of(new NotificationScheduleChangedEvent(getId(), this.scheduledTime, this.enabled));
+	}
+
 	@Override
 	public String toString() {
 		return "NotificationSchedule{" + "id=" + getId() + ", messageTemplate='" + messageTemplate + '\'' + ", type="
 				+ type + ", scheduledTime=" + scheduledTime + ", daysBefore=" + daysBefore + ", enabled=" + enabled
-				+ ", owner=" + (owner != null ? owner.getId() : null) + ", pet=" + (pet != null ? pet.getId() : null)
-				+ ", visit=" + (visit != null ? visit.getId() : null) + '}';
+				+ ", claimedBy=" + claimedBy + ", leaseUntil=" + leaseUntil + ", owner="
+				+ (owner != null ? owner.getId() : null) + ", pet=" + (pet != null ? pet.getId() : null) + ", visit="
+				+ (visit != null ? visit.getId() : null) + '}';
 	}
 
 }
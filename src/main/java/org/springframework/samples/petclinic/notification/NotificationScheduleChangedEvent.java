@@ -0,0 +1,30 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published when a {@link NotificationSchedule} is saved, so the in-memory timing wheel
+ * of the {@link NotificationSchedulerService} can follow the change without polling.
+ *
+ * @param scheduleId the id of the saved schedule
+ * @param scheduledTime when the schedule is due
+ * @param enabled whether the schedule is still to be processed
+ */
+public record NotificationScheduleChangedEvent(Integer scheduleId, LocalDateTime scheduledTime, boolean enabled) {
+
+}
@@ -2,9 +2,17 @@ package org.springframework.samples.petclinic.notification;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.Repository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.samples.petclinic.owner.Owner;
@@ -45,6 +53,61 @@ public interface NotificationScheduleRepository extends Repository<NotificationS
 	@Query("SELECT ns FROM NotificationSchedule ns WHERE ns.enabled = true AND ns.scheduledTime <= :currentTime")
 	List<NotificationSchedule> findActiveSchedulesDue(@Param("currentTime") LocalDateTime currentTime);
 
+	/**
+	 * Lock a batch of due schedules that are not currently leased by another node. The
+	 * lock timeout hint makes Hibernate render {@code FOR UPDATE SKIP LOCKED} on
+	 * PostgreSQL and MySQL, so concurrent nodes partition the due set instead of blocking
+	 * on each other. Dialects without SKIP LOCKED support (H2) fall back to a plain
+	 * {@code FOR UPDATE}; {@link #claim} still guarantees a single owner per schedule.
+	 * <p>
+	 * Only the ids are selected: they are all the claim step needs, and together with the
+	 * {@code (enabled, scheduled_time)} index the due rows are found without reading the
+	 * schedules or joining their owners.
+	 * @param currentTime the current time to compare against scheduled time and leases
+	 * @param pageable the batch to lock
+	 * @return the ids of the locked schedules, oldest first
+	 */
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+	@Query("SELECT ns.id FROM NotificationSchedule ns WHERE ns.enabled = true AND ns.scheduledTime <= :currentTime AND (ns.leaseUntil IS NULL OR ns.leaseUntil < :currentTime) ORDER BY ns.scheduledTime, ns.id")
+	List<Integer> lockClaimableScheduleIds(@Param("currentTime") LocalDateTime currentTime, Pageable pageable);
+
+	/**
+	 * Find the enabled schedules falling due within a time window, without loading the
+	 * schedules themselves.
+	 * @param from the start of the window, exclusive
+	 * @param until the end of the window, inclusive
+	 * @return the id and due time of each schedule in the window
+	 */
+	@Query("SELECT new org.springframework.samples.petclinic.notification.NotificationScheduleTime(ns.id, ns.scheduledTime) FROM NotificationSchedule ns WHERE ns.enabled = true AND ns.scheduledTime > :from AND ns.scheduledTime <= :until")
+	List<NotificationScheduleTime> findUpcomingScheduleTimes(@Param("from") LocalDateTime from,
+			@Param("until") LocalDateTime until);
+
+	/**
+	 * Lease the given schedules to a node, unless they are not due yet or another node
+	 * holds a live lease on them.
+	 * @param ids the ids of the schedules to lease
+	 * @param node the identifier of the claiming node
+	 * @param leaseUntil when the lease expires
+	 * @param currentTime the current time, leases ending before it are considered expired
+	 * @return the number of schedules leased to the node
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query("UPDATE NotificationSchedule ns SET ns.claimedBy = :node, ns.leaseUntil = :leaseUntil WHERE ns.id IN :ids AND ns.enabled = true AND ns.scheduledTime <= :currentTime AND (ns.leaseUntil IS NULL OR ns.leaseUntil < :currentTime)")
+	int claim(@Param("ids") Collection<Integer> ids, @Param("node") String node,
+			@Param("leaseUntil") LocalDateTime leaseUntil, @Param("currentTime") LocalDateTime currentTime);
+
+	/**
+	 * Find the schedules leased to a node by a given {@link #claim} call.
+	 * @param ids the ids passed to the claim
+	 * @param node the identifier of the claiming node
+	 * @param leaseUntil the lease expiry passed to the claim
+	 * @return the schedules the node actually holds
+	 */
+	@Query("SELECT ns FROM NotificationSchedule ns WHERE ns.id IN :ids AND ns.claimedBy = :node AND ns.leaseUntil = :leaseUntil ORDER BY ns.scheduledTime, ns.id")
+	List<NotificationSchedule> findClaimed(@Param("ids") Collection<Integer> ids, @Param("node") String node,
+			@Param("leaseUntil") LocalDateTime leaseUntil);
+
 	/**
 	 * Find notification schedules by owner.
 	 * @param owner the owner whose notification schedules to find
@@ -91,10 +154,49 @@ public interface NotificationScheduleRepository extends Repository<NotificationS
 	List<NotificationSchedule> findUpcomingVisitSchedules(@Param("startDate") LocalDate startDate,
 			@Param("endDate") LocalDate endDate);
 
+	/**
+	 * Find the next chunk of visits dated within a window, in order of their id.
+	 * @param from the earliest visit date
+	 * @param until the latest visit date
+	 * @param afterId only visits with a greater id
+	 * @param pageable the size of the chunk
+	 * @return the ids of the visits
+	 */
+	@Query("SELECT v.id FROM Visit v WHERE v.date BETWEEN :from AND :until AND v.id > :afterId ORDER BY v.id")
+	List<Integer> findVisitIds(@Param("from") LocalDate from, @Param("until") LocalDate until,
+			@Param("afterId") int afterId, Pageable pageable);
+
+	/**
+	 * Create the reminder schedules of a range of visits in one set-based statement,
+	 * scheduled the given number of days before the start of each visit's date. Visits
+	 * that already have a reminder of the type for that many days before are left alone.
+	 * @param messageTemplate the template of the reminders
+	 * @param type the type of the reminders
+	 * @param daysBefore how many days before the visit to remind
+	 * @param from the earliest visit date
+	 * @param until the latest visit date
+	 * @param afterId only visits with a greater id
+	 * @param lastId only visits with this id or lower
+	 * @return the number of schedules created
+	 */
+	@Modifying
+	@Query("INSERT INTO NotificationSchedule (messageTemplate, type, scheduledTime, daysBefore, enabled, owner.id, pet.id, visit.id) SELECT :template, :type, cast(v.date - (:daysBefore) day as LocalDateTime), :daysBefore, true, o.id, p.id, v.id FROM Owner o JOIN o.pets p JOIN p.visits v WHERE v.id > :afterId AND v.id <= :lastId AND v.date BETWEEN :from AND :until AND NOT EXISTS (SELECT 1 FROM NotificationSchedule ns WHERE ns.visit = v AND ns.type = :type AND ns.daysBefore = :daysBefore)")
+	int insertVisitReminders(@Param("template") String messageTemplate, @Param("type") NotificationType type,
+			@Param("daysBefore") int daysBefore, @Param("from") LocalDate from, @Param("until") LocalDate until,
+			@Param("afterId") int afterId, @Param("lastId") int lastId);
+
 	/**
 	 * Delete a notification schedule from the data store.
 	 * @param notificationSchedule the notification schedule to remove
 	 */
 	void delete(NotificationSchedule notificationSchedule);
 
+	/**
+	 * Count the enabled schedules that are due but have not fired yet.
+	 * @param currentTime the time against which schedules are considered due
+	 * @return the number of due schedules
+	 */
+	@Query("SELECT count(ns) FROM NotificationSchedule ns WHERE ns.enabled = true AND ns.scheduledTime <= :currentTime")
+	long countDueSchedules(@Param("currentTime") LocalDateTime currentTime);
+
 }
@@ -1,19 +1,63 @@
 package org.springframework.samples.petclinic.notification;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * Service to schedule and process notification sending at regular intervals. This service
  * handles checking for pending notification schedules and sending notifications according
  * to owner preferences.
+ * <p>
+ * Due schedules are processed as a pipeline: a batch is leased to this node in a short
+ * transaction, rendered, and queued in the {@link NotificationOutbox} from which the
+ * {@link NotificationOutboxRelay} sends them. Leasing lets several application instances
+ * share the due set without sending duplicates; a lease that is not completed (for
+ * example because the node died) expires and the schedule becomes claimable again.
+ * <p>
+ * Schedules falling due within the next {@code notification.schedule.horizon} are held on
+ * an in-memory {@link HierarchicalTimingWheel} and fired within a tick of their scheduled
+ * time. Saved schedules are added through their {@link NotificationScheduleChangedEvent};
+ * a low-frequency reconciliation against the database picks up anything the wheel missed,
+ * such as changes made on other nodes or schedules that fell due while no node was
+ * running.
+ * <p>
+ * The timer thread only advances the wheel; the schedules that fell due are claimed,
+ * rendered and queued on a small worker pool, so a slow database does not delay later
+ * ticks. A batch that cannot be fired, because the workers are busy or the database call
+ * fails, is put back on the wheel and fired again shortly, or once its lease has expired
+ * if it was already claimed.
  *
  * @author Claude
  */
@@ -22,162 +66,332 @@ public class NotificationSchedulerService {
 
 	private static final Logger log = LoggerFactory.getLogger(NotificationSchedulerService.class);
 
-	private final NotificationScheduleRepository scheduleRepository;
+	private static final Duration TICK = Duration.ofMillis(100);
+
+	private static final int WHEEL_SIZE = 64;
+
+	private static final int WHEEL_LEVELS = 4;
 
-	private final NotificationRepository notificationRepository;
+	// Delay before a batch that could not be fired is fired again
+	static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+	private final NotificationScheduleRepository scheduleRepository;
 
 	private final NotificationTemplateService templateService;
 
-	private final EmailNotificationService emailNotificationService;
+	private final NotificationOutbox outbox;
+
+	private final NotificationStatusWriter statusWriter;
+
+	private final NotificationMetrics metrics;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final int batchSize;
+
+	private final String nodeId;
+
+	private final Duration leaseDuration;
 
-	private final SmsNotificationService smsNotificationService;
+	private final Duration horizon;
+
+	private final HierarchicalTimingWheel<Integer> timingWheel;
+
+	private final ScheduledExecutorService timer;
+
+	private final ThreadPoolTaskExecutor workers;
 
 	@Autowired
 	public NotificationSchedulerService(NotificationScheduleRepository scheduleRepository,
-			NotificationRepository notificationRepository, NotificationTemplateService templateService,
-			EmailNotificationService emailNotificationService, SmsNotificationService smsNotificationService) {
+			NotificationTemplateService templateService, NotificationOutbox outbox,
+			NotificationStatusWriter statusWriter, NotificationMetrics metrics,
+			PlatformTransactionManager transactionManager,
+			@Value("${notification.dispatch.batch-size:500}") int batchSize,
+			@Value("${notification.claim.node-id:${HOSTNAME:${random.uuid}}}") String nodeId,
+			@Value("${notification.claim.lease-duration:5m}") Duration leaseDuration,
+			@Value("${notification.schedule.horizon:6h}") Duration horizon,
+			@Value("${notification.schedule.workers:2}") int workers,
+			@Value("${notification.schedule.queue-capacity:100}") int queueCapacity) {
 		this.scheduleRepository = scheduleRepository;
-		this.notificationRepository = notificationRepository;
 		this.templateService = templateService;
-		this.emailNotificationService = emailNotificationService;
-		this.smsNotificationService = smsNotificationService;
+		this.outbox = outbox;
+		this.statusWriter = statusWriter;
+		this.metrics = metrics;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.batchSize = batchSize;
+		this.nodeId = nodeId;
+		this.leaseDuration = leaseDuration;
+		this.horizon = horizon;
+		this.timingWheel = new HierarchicalTimingWheel<>(TICK.toMillis(), WHEEL_SIZE, WHEEL_LEVELS,
+				toEpochMilli(LocalDateTime.now()));
+		this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "notification-timer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.workers = new ThreadPoolTaskExecutor();
+		this.workers.setCorePoolSize(workers);
+		this.workers.setMaxPoolSize(workers);
+		this.workers.setQueueCapacity(queueCapacity);
+		this.workers.setThreadNamePrefix("notification-schedule-");
+		this.workers.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		this.workers.initialize();
 	}
 
 	/**
-	 * Scheduled task that runs every minute to check for and process due notifications.
-	 * This method will create and send notifications based on active schedules.
+	 * Start firing schedules from the timing wheel once the application is ready.
 	 */
-	@Scheduled(fixedRate = 60000) // Run every 60 seconds (1 minute)
-	@Transactional
-	public void processScheduledNotifications() {
-		log.debug("Running scheduled notification check at {}", LocalDateTime.now());
-
-		try {
-			// Step 1: Find all active notification schedules that are due
-			List<NotificationSchedule> dueSchedules = scheduleRepository.findActiveSchedulesDue(LocalDateTime.now());
+	@EventListener(ApplicationReadyEvent.class)
+	public void startTimer() {
+		this.timer.scheduleAtFixedRate(this::fireDueSchedules, TICK.toMillis(), TICK.toMillis(), TimeUnit.MILLISECONDS);
+	}
 
-			if (dueSchedules.isEmpty()) {
-				log.debug("No notification schedules due for processing");
-				return;
-			}
+	@PreDestroy
+	void stopTimer() {
+		this.timer.shutdownNow();
+		this.workers.shutdown();
+	}
 
-			log.info("Found {} notification schedules due for processing", dueSchedules.size());
+	/**
+	 * Follow a saved schedule on the timing wheel once its transaction has committed.
+	 * @param event the saved state of the schedule
+	 */
+	@TransactionalEventListener(fallbackExecution = true)
+	public void onScheduleChanged(NotificationScheduleChangedEvent event) {
+		if (event.scheduleId() == null) {
+			return;
+		}
+		LocalDateTime until = LocalDateTime.now().plus(this.horizon);
+		if (event.enabled() && event.scheduledTime() != null && !event.scheduledTime().isAfter(until)) {
+			this.timingWheel.schedule(event.scheduleId(), toEpochMilli(event.scheduledTime()));
+		}
+		else {
+			this.timingWheel.cancel(event.scheduleId());
+		}
+	}
 
-			// Step 2: Process each due schedule
-			for (NotificationSchedule schedule : dueSchedules) {
-				processSchedule(schedule);
-			}
+	/**
+	 * Load the schedules falling due within the horizon onto the timing wheel.
+	 * @param now the start of the horizon
+	 */
+	void loadUpcomingSchedules(LocalDateTime now) {
+		List<NotificationScheduleTime> upcoming = this.scheduleRepository.findUpcomingScheduleTimes(now,
+				now.plus(this.horizon));
+		for (NotificationScheduleTime schedule : upcoming) {
+			this.timingWheel.schedule(schedule.id(), toEpochMilli(schedule.scheduledTime()));
+		}
+		log.debug("Loaded {} notification schedules due within {} onto the timing wheel", upcoming.size(),
+				this.horizon);
+	}
 
+	private void fireDueSchedules() {
+		try {
+			fireDueSchedules(LocalDateTime.now());
 		}
 		catch (Exception e) {
-			log.error("Error occurred while processing scheduled notifications", e);
+			log.error("Error occurred while firing due notification schedules", e);
 		}
 	}
 
 	/**
-	 * Process a single notification schedule by generating and sending the notification.
-	 * @param schedule the notification schedule to process
+	 * Advance the timing wheel and hand the schedules that fell due to the workers, one
+	 * batch at a time. Does not wait for them to be processed.
+	 * @param now the current time
+	 * @return a future completed with the number of notifications queued
 	 */
-	private void processSchedule(NotificationSchedule schedule) {
+	CompletableFuture<Integer> fireDueSchedules(LocalDateTime now) {
+		List<Integer> due = this.timingWheel.advance(toEpochMilli(now));
+		List<CompletableFuture<Integer>> batches = new ArrayList<>();
+		for (int from = 0; from < due.size(); from += this.batchSize) {
+			List<Integer> batch = List.copyOf(due.subList(from, Math.min(from + this.batchSize, due.size())));
+			try {
+				batches.add(CompletableFuture.supplyAsync(() -> fireBatch(batch, now), this.workers));
+			}
+			catch (RejectedExecutionException ex) {
+				log.warn("All notification schedule workers are busy, firing {} schedules again shortly",
+						batch.size());
+				fireAgain(batch, now.plus(RETRY_DELAY));
+			}
+		}
+		return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+			.thenApply(done -> batches.stream().mapToInt(CompletableFuture::join).sum());
+	}
+
+	/**
+	 * Claim, render and queue a batch of schedules fired by the timing wheel. A batch
+	 * that fails is put back on the wheel rather than left to the reconciliation.
+	 */
+	private int fireBatch(List<Integer> batch, LocalDateTime now) {
+		List<NotificationSchedule> claimed = List.of();
 		try {
-			// Step 1: Generate the notification from the schedule
-			Notification notification = schedule.generateNotification();
+			claimed = claimSchedules(batch, now);
+			int processed = createNotifications(claimed).size();
+			if (processed > 0) {
+				log.info("Fired {} notification schedules on node {}", processed, this.nodeId);
+			}
+			return processed;
+		}
+		catch (Exception e) {
+			log.error("Error occurred while firing {} due notification schedules, firing them again",
+					batch.size(), e);
+			// Claimed schedules can only be claimed again once their lease has expired
+			fireAgain(batch, claimed.isEmpty() ? now.plus(RETRY_DELAY) : now.plus(this.leaseDuration).plus(TICK));
+			return 0;
+		}
+	}
 
-			// Step 2: Process the template to replace placeholders
-			String processedMessage = templateService.processSchedule(schedule);
-			notification.setMessage(processedMessage);
+	private void fireAgain(List<Integer> batch, LocalDateTime at) {
+		long deadline = toEpochMilli(at);
+		batch.forEach(id -> this.timingWheel.schedule(id, deadline));
+	}
 
-			// Step 3: Save the notification with PENDING status
-			notificationRepository.save(notification);
-			log.debug("Created notification {} from schedule {}", notification.getId(), schedule.getId());
+	private static long toEpochMilli(LocalDateTime time) {
+		return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+	}
 
-			// Step 4: Send the notification based on owner's preference
-			boolean sent = sendNotification(notification);
+	/**
+	 * Reconcile the timing wheel with the database. Due schedules the wheel did not fire
+	 * are created and queued, one batch at a time, and the schedules falling due within
+	 * the horizon are loaded onto the wheel.
+	 */
+	@Scheduled(fixedDelayString = "${notification.schedule.reconcile-interval:10m}")
+	public void processScheduledNotifications() {
+		LocalDateTime now = LocalDateTime.now();
+		log.debug("Running scheduled notification reconciliation at {}", now);
 
-			// Step 5: Update the schedule status (disable it after processing)
-			schedule.setEnabled(false);
-			scheduleRepository.save(schedule);
+		try {
+			int processed = 0;
+			List<NotificationSchedule> claimed;
+			do {
+				// Step 1: Lease a batch of due schedules to this node
+				claimed = claimDueSchedules(now);
+
+				// Step 2: Render the leased schedules and queue them for delivery
+				processed += createNotifications(claimed).size();
+			}
+			while (claimed.size() == this.batchSize);
 
-			log.info("Processed notification schedule {}: notification {} - status: {}", schedule.getId(),
-					notification.getId(), notification.getStatus());
+			if (processed == 0) {
+				log.debug("No notification schedules due for processing");
+			}
+			else {
+				log.info("Processed {} due notification schedules on node {}", processed, this.nodeId);
+			}
 
+			loadUpcomingSchedules(now);
 		}
 		catch (Exception e) {
-			log.error("Failed to process notification schedule {}: {}", schedule.getId(), e.getMessage(), e);
+			log.error("Error occurred while processing scheduled notifications", e);
 		}
 	}
 
 	/**
-	 * Send a notification using the appropriate notification service based on the owner's
-	 * preference.
-	 * @param notification the notification to send
-	 * @return true if the notification was sent successfully by at least one service
+	 * Lease the next batch of due schedules to this node in a single short transaction.
+	 * Rows locked by another node are skipped rather than waited for.
+	 * @param now the time against which schedules and leases are considered due
+	 * @return the schedules now leased to this node
 	 */
-	private boolean sendNotification(Notification notification) {
-		NotificationPreference preference = notification.getOwner().getNotificationPreference();
-		boolean sent = false;
-
-		// Skip sending if the owner has opted out of notifications
-		if (preference == NotificationPreference.NONE) {
-			notification.setStatus(NotificationStatus.SKIPPED);
-			notificationRepository.save(notification);
-			log.info("Notification {} skipped: owner preference is set to NONE", notification.getId());
-			return false;
-		}
+	List<NotificationSchedule> claimDueSchedules(LocalDateTime now) {
+		return claim(now,
+				() -> this.scheduleRepository.lockClaimableScheduleIds(now, PageRequest.ofSize(this.batchSize)));
+	}
 
-		// Try sending via email if the owner's preference includes email
-		if (preference == NotificationPreference.EMAIL || preference == NotificationPreference.BOTH) {
-			boolean emailSent = emailNotificationService.send(notification);
-			sent = sent || emailSent;
+	/**
+	 * Lease the given schedules to this node, provided they are due and not leased by
+	 * another node.
+	 * @param ids the ids of the schedules fired by the timing wheel
+	 * @param now the time against which schedules and leases are considered due
+	 * @return the schedules now leased to this node
+	 */
+	List<NotificationSchedule> claimSchedules(Collection<Integer> ids, LocalDateTime now) {
+		return claim(now, () -> ids);
+	}
 
-			if (emailSent) {
-				log.debug("Email notification sent successfully: {}", notification.getId());
-			}
-			else {
-				log.warn("Failed to send email notification: {}", notification.getId());
+	private List<NotificationSchedule> claim(LocalDateTime now, Supplier<Collection<Integer>> candidates) {
+		// Truncated so the lease compares equal on databases storing whole seconds
+		LocalDateTime leaseUntil = now.plus(this.leaseDuration).truncatedTo(ChronoUnit.SECONDS);
+		List<NotificationSchedule> claimed = this.transactionTemplate.execute(status -> {
+			Collection<Integer> ids = candidates.get();
+			if (ids.isEmpty()) {
+				return List.<NotificationSchedule>of();
 			}
-		}
+			this.scheduleRepository.claim(ids, this.nodeId, leaseUntil, now);
+			return this.scheduleRepository.findClaimed(ids, this.nodeId, leaseUntil);
+		});
+		return (claimed != null) ? claimed : List.of();
+	}
 
-		// Try sending via SMS if the owner's preference includes SMS
-		if (preference == NotificationPreference.SMS || preference == NotificationPreference.BOTH) {
-			boolean smsSent = smsNotificationService.send(notification);
-			sent = sent || smsSent;
+	/**
+	 * Render the leased schedules and, in one short transaction, complete the schedules
+	 * and queue the resulting notifications in the outbox. The schedules are completed in
+	 * one JDBC batch and the notifications are inserted in batches when the transaction
+	 * commits.
+	 * @param schedules the schedules leased to this node
+	 * @return the queued notifications
+	 */
+	private List<Notification> createNotifications(List<NotificationSchedule> schedules) {
+		if (schedules.isEmpty()) {
+			return List.of();
+		}
 
-			if (smsSent) {
-				log.debug("SMS notification sent successfully: {}", notification.getId());
-			}
-			else {
-				log.warn("Failed to send SMS notification: {}", notification.getId());
+		Map<NotificationSchedule, Notification> rendered = new LinkedHashMap<>();
+		for (NotificationSchedule schedule : schedules) {
+			Notification notification = renderSchedule(schedule);
+			if (notification != null) {
+				rendered.put(schedule, notification);
 			}
 		}
-
-		// Update notification status if it wasn't already updated by the notification
-		// services
-		if (notification.getStatus() == NotificationStatus.PENDING) {
-			notification.setStatus(sent ? NotificationStatus.SENT : NotificationStatus.FAILED);
-			notificationRepository.save(notification);
+		if (rendered.isEmpty()) {
+			return List.of();
 		}
 
-		return sent;
+		List<Notification> created = this.transactionTemplate.execute(status -> {
+			// Disable the schedules only if this node still holds their lease
+			Set<NotificationSchedule> completed = new HashSet<>(
+					this.statusWriter.completeSchedules(new ArrayList<>(rendered.keySet()), this.nodeId));
+			// A schedule may already have fired, for example under a lease that expired
+			Set<String> fired = this.outbox
+				.findQueuedKeys(rendered.values().stream().map(Notification::getIdempotencyKey).toList());
+			List<Notification> notifications = new ArrayList<>(completed.size());
+			rendered.forEach((schedule, notification) -> {
+				if (!completed.contains(schedule)) {
+					log.warn("Lease on notification schedule {} was lost, skipping it", schedule.getId());
+					return;
+				}
+				schedule.setEnabled(false);
+				if (fired.contains(notification.getIdempotencyKey())) {
+					log.info("Notification schedule {} already fired at {}, skipping it", schedule.getId(),
+							schedule.getScheduledTime());
+					return;
+				}
+				this.outbox.enqueueForDigest(notification);
+				log.debug("Created notification {} from schedule {}", notification.getId(), schedule.getId());
+				notifications.add(notification);
+			});
+			return notifications;
+		});
+		return (created != null) ? created : List.of();
 	}
 
 	/**
-	 * Check and process any pending notifications that haven't been sent yet. This is
-	 * useful for sending notifications that failed during previous runs.
+	 * Generate the notification for a single schedule and render its message.
+	 * @param schedule the notification schedule to process
+	 * @return the rendered notification, or {@code null} if rendering failed
 	 */
-	@Scheduled(cron = "0 0 * * * *") // Run every hour at minute 0
-	@Transactional
-	public void retryPendingNotifications() {
-		log.debug("Checking for pending notifications to retry");
-
-		List<Notification> pendingNotifications = notificationRepository.findPendingNotifications(LocalDateTime.now());
-
-		if (!pendingNotifications.isEmpty()) {
-			log.info("Found {} pending notifications to retry", pendingNotifications.size());
+	private Notification renderSchedule(NotificationSchedule schedule) {
+		try {
+			// Generate the notification from the schedule
+			Notification notification = schedule.generateNotification();
 
-			for (Notification notification : pendingNotifications) {
-				sendNotification(notification);
-			}
+			// Process the template to replace placeholders
+			String processedMessage = this.metrics.timeRender(schedule.getType(),
+					() -> this.templateService.processSchedule(schedule));
+			notification.setMessage(processedMessage);
+			return notification;
+		}
+		catch (Exception e) {
+			log.error("Failed to process notification schedule {}: {}", schedule.getId(), e.getMessage(), e);
+			return null;
 		}
 	}
 
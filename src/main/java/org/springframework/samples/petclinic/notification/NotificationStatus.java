@@ -23,6 +23,11 @@ public enum NotificationStatus {
 	/**
 	 * Notification was skipped
 	 */
-	SKIPPED
+	SKIPPED,
+
+	/**
+	 * Notification failed on every allowed attempt and is no longer retried
+	 */
+	DEAD_LETTER
 
 }
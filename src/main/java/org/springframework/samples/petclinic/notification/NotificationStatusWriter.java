@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes status transitions of notifications, their deliveries and their schedules as
+ * JDBC batches. Only the changed columns are written, keyed by id, so the entities do not
+ * have to be loaded or merged first and a whole batch costs a single round trip per
+ * table. Runs in the caller's transaction.
+ * <p>
+ * The deliveries of one notification may be sent by relays on different nodes, each
+ * knowing only the status its own batch saw. The status of a notification is therefore
+ * derived in SQL from the current status of all of its deliveries, with the notification
+ * rows locked first so concurrent writers settle a notification one after the other, and
+ * a sent notification is never downgraded.
+ */
+@Component
+public class NotificationStatusWriter {
+
+	private static final String LOCK_NOTIFICATION = "UPDATE notifications SET status = status WHERE id = ?";
+
+	private static final String SETTLE_NOTIFICATION = "UPDATE notifications SET status = CASE "
+			+ "WHEN status = 'SENT' OR EXISTS (SELECT 1 FROM notification_deliveries d "
+			+ "WHERE d.notification_id = ? AND d.status = 'SENT') THEN 'SENT' "
+			+ "WHEN NOT EXISTS (SELECT 1 FROM notification_deliveries d "
+			+ "WHERE d.notification_id = ? AND d.status <> 'SKIPPED') THEN 'SKIPPED' "
+			+ "WHEN EXISTS (SELECT 1 FROM notification_deliveries d "
+			+ "WHERE d.notification_id = ? AND d.status IN ('PENDING', 'FAILED')) THEN 'FAILED' "
+			+ "ELSE 'DEAD_LETTER' END, sent_time = COALESCE(sent_time, ?) WHERE id = ?";
+
+	private static final String SELECT_SETTLED = "SELECT id, status, sent_time FROM notifications WHERE id IN (%s)";
+
+	private static final String UPDATE_DELIVERY = "UPDATE notification_deliveries SET status = ?, attempts = ?, "
+			+ "last_attempt_at = ?, next_attempt_at = ?, lease_until = ?, last_error = ? WHERE id = ?";
+
+	private static final String COMPLETE_SCHEDULE = "UPDATE notification_schedules SET enabled = FALSE "
+			+ "WHERE id = ? AND claimed_by = ? AND lease_until = ?";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public NotificationStatusWriter(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * Write the status of dispatched deliveries and settle the status of their
+	 * notifications from all of their deliveries. The settled status and sent time are
+	 * set on the given notifications.
+	 * @param notifications the notifications of the deliveries
+	 * @param deliveries the deliveries that were attempted
+	 */
+	public void writeStatus(List<Notification> notifications, List<NotificationDelivery> deliveries) {
+		// Locked in id order so that writers sharing notifications cannot deadlock
+		List<Notification> locked = new ArrayList<>(notifications);
+		locked.sort(Comparator.comparing(Notification::getId));
+		if (!locked.isEmpty()) {
+			this.jdbcTemplate.batchUpdate(LOCK_NOTIFICATION,
+					locked.stream().map(notification -> new Object[] { notification.getId() }).toList());
+		}
+		if (!deliveries.isEmpty()) {
+			this.jdbcTemplate.batchUpdate(UPDATE_DELIVERY,
+					deliveries.stream()
+						.map(delivery -> new Object[] { delivery.getStatus().name(), delivery.getAttempts(),
+								delivery.getLastAttemptAt(), delivery.getNextAttemptAt(), delivery.getLeaseUntil(),
+								delivery.getLastError(), delivery.getId() })
+						.toList());
+		}
+		if (!locked.isEmpty()) {
+			this.jdbcTemplate.batchUpdate(SETTLE_NOTIFICATION, locked.stream().map(notification -> {
+				Integer id = notification.getId();
+				return new Object[] { id, id, id, notification.getSentTime(), id };
+			}).toList());
+			readSettled(locked);
+		}
+	}
+
+	private void readSettled(List<Notification> notifications) {
+		Map<Integer, Notification> byId = new HashMap<>();
+		notifications.forEach(notification -> byId.put(notification.getId(), notification));
+		String sql = String.format(SELECT_SETTLED, String.join(", ", Collections.nCopies(byId.size(), "?")));
+		this.jdbcTemplate.query(sql, rs -> {
+			Notification notification = byId.get(rs.getInt("id"));
+			notification.setStatus(NotificationStatus.valueOf(rs.getString("status")));
+			notification.setSentTime(rs.getObject("sent_time", LocalDateTime.class));
+		}, byId.keySet().toArray());
+	}
+
+	/**
+	 * Disable schedules whose notification has been created, provided the given node
+	 * still holds their lease.
+	 * @param schedules the schedules leased to the node
+	 * @param node the id of the node holding the leases
+	 * @return the schedules that were completed, leaving out those whose lease was lost
+	 */
+	public List<NotificationSchedule> completeSchedules(List<NotificationSchedule> schedules, String node) {
+		if (schedules.isEmpty()) {
+			return List.of();
+		}
+		int[] updated = this.jdbcTemplate.batchUpdate(COMPLETE_SCHEDULE,
+				schedules.stream()
+					.map(schedule -> new Object[] { schedule.getId(), node, schedule.getLeaseUntil() })
+					.toList());
+		List<NotificationSchedule> completed = new ArrayList<>(schedules.size());
+		for (int i = 0; i < updated.length; i++) {
+			// Drivers that cannot tell report SUCCESS_NO_INFO, a lost lease updates no
+			// row
+			if (updated[i] != 0) {
+				completed.add(schedules.get(i));
+			}
+		}
+		return completed;
+	}
+
+}
@@ -18,25 +18,41 @@ package org.springframework.samples.petclinic.notification;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.Visit;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StreamUtils;
+import org.springframework.util.StringUtils;
 
 /**
  * Service class for managing notification templates and processing placeholders.
+ * <p>
+ * Templates are read from the classpath, or from an external directory when
+ * {@code notification.templates.directory} is set, and kept in a concurrent cache so
+ * lookups from parallel dispatch threads never block. With
+ * {@code notification.templates.watch} enabled the external directory is watched and
+ * edited templates are picked up without a restart.
  *
  * @author Claude
  */
@@ -47,11 +63,111 @@ public class NotificationTemplateService {
 
 	private static final String TEMPLATE_BASE_PATH = "templates/notifications/";
 
-	private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([^}]+)\\}");
+	private static final int MAX_COMPILED_TEMPLATES = 1000;
+
+	private static final CompiledTemplate EMPTY_TEMPLATE = CompiledTemplate.compile(null);
+
+	private final Cache<NotificationType, String> templateCache = Caffeine.newBuilder()
+		.maximumSize(NotificationType.values().length)
+		.recordStats()
+		.build();
+
+	// Ad hoc messages are rendered too, so the compiled forms are bounded
+	private final Cache<String, CompiledTemplate> compiledTemplates = Caffeine.newBuilder()
+		.maximumSize(MAX_COMPILED_TEMPLATES)
+		.recordStats()
+		.build();
+
+	@Value("${notification.templates.directory:}")
+	private String templateDirectory;
+
+	@Value("${notification.templates.watch:false}")
+	private boolean watchTemplates;
+
+	private WatchService watchService;
+
+	/**
+	 * Start watching the external template directory, if configured.
+	 */
+	@PostConstruct
+	void initialize() {
+		if (!StringUtils.hasText(templateDirectory)) {
+			return;
+		}
+		log.info("Loading notification templates from {}", templateDirectory);
+		if (!watchTemplates) {
+			return;
+		}
+		Path directory = Path.of(templateDirectory);
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+		}
+		catch (IOException e) {
+			log.error("Failed to watch notification template directory {}, templates will not be reloaded", directory,
+					e);
+			return;
+		}
+		Thread watcher = new Thread(this::watchTemplateDirectory, "notification-template-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
 
-	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM d, yyyy");
+	@PreDestroy
+	void shutdown() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
 
-	private final Map<NotificationType, String> templateCache = new HashMap<>();
+	/**
+	 * Evict cached templates whenever a file in the watched directory changes, so the
+	 * next lookup reads the new content.
+	 */
+	private void watchTemplateDirectory() {
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					log.info("Notification template {} changed, reloading templates", event.context());
+				}
+				// Overflow events carry no file name, so always reload everything
+				reloadTemplates();
+				if (!key.reset()) {
+					log.warn("Notification template directory {} is no longer accessible", templateDirectory);
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ClosedWatchServiceException e) {
+			// Shutting down
+		}
+	}
+
+	/**
+	 * Discard the cached templates so they are read again on next use.
+	 */
+	public void reloadTemplates() {
+		templateCache.invalidateAll();
+	}
+
+	/**
+	 * @return hit and miss statistics of the template cache
+	 */
+	public CacheStats getTemplateCacheStats() {
+		return templateCache.stats();
+	}
+
+	/**
+	 * @return hit and miss statistics of the compiled template cache
+	 */
+	public CacheStats getCompiledTemplateCacheStats() {
+		return compiledTemplates.stats();
+	}
 
 	/**
 	 * Load a template for the given notification type.
@@ -59,18 +175,12 @@ public class NotificationTemplateService {
 	 * @return the template content
 	 */
 	public String loadTemplate(NotificationType type) {
-		if (templateCache.containsKey(type)) {
-			return templateCache.get(type);
-		}
-
-		String templateFileName = getTemplateFileName(type);
-		String templateContent = loadTemplateFromFile(templateFileName);
-		templateCache.put(type, templateContent);
-		return templateContent;
+		return templateCache.get(type, key -> loadTemplateFromFile(getTemplateFileName(key)));
 	}
 
 	/**
-	 * Process a notification message by replacing placeholders with actual values.
+	 * Process a notification message by replacing placeholders with actual values. The
+	 * template is parsed once and the compiled form is reused for later messages.
 	 * @param templateContent the template content with placeholders
 	 * @param owner the pet owner
 	 * @param pet the pet (can be null)
@@ -78,28 +188,7 @@ public class NotificationTemplateService {
 	 * @return the processed message with placeholders replaced
 	 */
 	public String processTemplate(String templateContent, Owner owner, Pet pet, Visit visit) {
-		Map<String, String> placeholders = new HashMap<>();
-
-		// Add owner-related placeholders
-		placeholders.put("ownerFirstName", owner.getFirstName());
-		placeholders.put("ownerLastName", owner.getLastName());
-		placeholders.put("ownerFullName", owner.getFirstName() + " " + owner.getLastName());
-
-		// Add pet-related placeholders if pet is provided
-		if (pet != null) {
-			placeholders.put("petName", pet.getName());
-			placeholders.put("petType", pet.getType() != null ? pet.getType().getName() : "pet");
-			placeholders.put("petBirthDate",
-					pet.getBirthDate() != null ? pet.getBirthDate().format(DATE_FORMATTER) : "");
-		}
-
-		// Add visit-related placeholders if visit is provided
-		if (visit != null) {
-			placeholders.put("visitDate", visit.getDate() != null ? visit.getDate().format(DATE_FORMATTER) : "");
-			placeholders.put("visitDescription", visit.getDescription());
-		}
-
-		return replacePlaceholders(templateContent, placeholders);
+		return compile(templateContent).render(owner, pet, visit);
 	}
 
 	/**
@@ -132,29 +221,15 @@ public class NotificationTemplateService {
 	}
 
 	/**
-	 * Replace placeholders in the template content with actual values.
+	 * Get the compiled form of a template, parsing it on first use.
 	 * @param content the template content
-	 * @param placeholders a map of placeholder names to their values
-	 * @return the processed content
+	 * @return the compiled template
 	 */
-	private String replacePlaceholders(String content, Map<String, String> placeholders) {
+	private CompiledTemplate compile(String content) {
 		if (content == null) {
-			return "";
+			return EMPTY_TEMPLATE;
 		}
-
-		Matcher matcher = PLACEHOLDER_PATTERN.matcher(content);
-		StringBuffer sb = new StringBuffer();
-
-		while (matcher.find()) {
-			String placeholderName = matcher.group(1);
-			String value = placeholders.getOrDefault(placeholderName, matcher.group(0));
-			// Escape $ and \ for the replacement string in appendReplacement
-			value = value.replace("\\", "\\\\").replace("$", "\\$");
-			matcher.appendReplacement(sb, value);
-		}
-		matcher.appendTail(sb);
-
-		return sb.toString();
+		return compiledTemplates.get(content, CompiledTemplate::compile);
 	}
 
 	/**
@@ -172,13 +247,20 @@ public class NotificationTemplateService {
 	}
 
 	/**
-	 * Load template content from a file.
+	 * Load template content from a file, preferring the external template directory over
+	 * the classpath.
 	 * @param fileName the template file name
 	 * @return the template content
 	 */
 	private String loadTemplateFromFile(String fileName) {
-		String path = TEMPLATE_BASE_PATH + fileName;
-		Resource resource = new ClassPathResource(path);
+		Resource resource = new ClassPathResource(TEMPLATE_BASE_PATH + fileName);
+		if (StringUtils.hasText(templateDirectory)) {
+			Resource external = new FileSystemResource(Path.of(templateDirectory, fileName));
+			if (external.exists()) {
+				resource = external;
+			}
+		}
+		String path = resource.getDescription();
 
 		try (InputStream inputStream = resource.getInputStream()) {
 			return StreamUtils.copyToString(inputStream, StandardCharsets.UTF_8);
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDateTime;
+
+/**
+ * Read-only projection of a {@link Notification} for the REST API. Unlike the entity it
+ * refers to the owner and pet by id only, so listing notifications does not load their
+ * object graphs.
+ *
+ * @param id the id of the notification
+ * @param type the type of the notification
+ * @param status the delivery status of the notification
+ * @param message the rendered message
+ * @param scheduledTime when the notification is scheduled to be sent
+ * @param sentTime when the notification was sent, if it was
+ * @param ownerId the id of the owner receiving the notification
+ * @param petId the id of the pet the notification is about, if any
+ */
+public record NotificationView(Integer id, NotificationType type, NotificationStatus status, String message,
+		LocalDateTime scheduledTime, LocalDateTime sentTime, Integer ownerId, Integer petId) {
+
+}
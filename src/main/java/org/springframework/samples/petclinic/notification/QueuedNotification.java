@@ -0,0 +1,31 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.util.List;
+
+/**
+ * Outcome of queueing a notification in the {@link NotificationOutbox}, kept for its
+ * idempotency key so a repeated request can be answered with the original outcome.
+ *
+ * @param notificationId the id of the queued notification
+ * @param status the status of the notification when it was queued
+ * @param channels the channels a delivery was queued for
+ */
+public record QueuedNotification(Integer notificationId, NotificationStatus status,
+		List<NotificationChannel> channels) {
+
+}
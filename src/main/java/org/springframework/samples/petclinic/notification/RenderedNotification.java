@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.samples.petclinic.owner.Pet;
+
+/**
+ * The content of a {@link Notification} prepared once for every channel it is sent
+ * through: the email subject and body and the SMS body, already cut to a single SMS
+ * segment. The notification's message is rendered from its template when the notification
+ * is created, so preparing it here involves no further template processing.
+ * <p>
+ * Several notifications for the same owner can be combined into a {@link #digest digest}
+ * that lists each of them in one message.
+ *
+ * @param notification the notification the content belongs to, the first one for a digest
+ * @param subject the email subject
+ * @param emailBody the email body
+ * @param smsBody the SMS body
+ */
+public record RenderedNotification(Notification notification, String subject, String emailBody, String smsBody) {
+
+	// Standard SMS has a limit of 160 characters for a single message
+	static final int SMS_CHAR_LIMIT = 160;
+
+	/**
+	 * Prepare the content of a notification for all channels.
+	 * @param notification the notification with its rendered message
+	 * @return the content to send
+	 */
+	public static RenderedNotification of(Notification notification) {
+		String message = notification.getMessage();
+		return new RenderedNotification(notification, getSubjectForNotificationType(notification.getType()), message,
+				truncateIfNeeded(message));
+	}
+
+	/**
+	 * Prepare a single message for all channels listing the given notifications of one
+	 * owner. The SMS body lists the messages if they fit into one segment and otherwise
+	 * only names the pets concerned.
+	 * @param notifications the notifications with their rendered messages
+	 * @return the content to send, the same as {@link #of} for a single notification
+	 */
+	public static RenderedNotification digest(List<Notification> notifications) {
+		Notification first = notifications.get(0);
+		if (notifications.size() == 1) {
+			return of(first);
+		}
+
+		boolean sameType = notifications.stream().allMatch(notification -> notification.getType() == first.getType());
+		String subject = sameType ? getSubjectForNotificationType(first.getType())
+				: "Pet Clinic: Updates for Your Pets";
+
+		StringBuilder emailBody = new StringBuilder("You have ").append(notifications.size())
+			.append(" notifications from Pet Clinic:\n");
+		for (Notification notification : notifications) {
+			emailBody.append("\n- ").append(notification.getMessage());
+		}
+
+		String smsBody = notifications.stream().map(Notification::getMessage).collect(Collectors.joining(" | "));
+		if (smsBody.length() > SMS_CHAR_LIMIT) {
+			String pets = notifications.stream()
+				.map(Notification::getPet)
+				.filter(Objects::nonNull)
+				.map(Pet::getName)
+				.distinct()
+				.collect(Collectors.joining(", "));
+			smsBody = "Pet Clinic: " + notifications.size() + " reminders" + (pets.isEmpty() ? "" : " for " + pets)
+					+ ". Please contact the clinic for details.";
+		}
+		return new RenderedNotification(first, subject, emailBody.toString(), truncateIfNeeded(smsBody));
+	}
+
+	/**
+	 * Generate an appropriate subject line based on the notification type
+	 * @param type the notification type
+	 * @return a subject line for the email
+	 */
+	private static String getSubjectForNotificationType(NotificationType type) {
+		return switch (type) {
+			case APPOINTMENT_REMINDER -> "Pet Clinic: Appointment Reminder";
+			case MEDICATION_REMINDER -> "Pet Clinic: Medication Reminder";
+			case VACCINATION_REMINDER -> "Pet Clinic: Vaccination Reminder";
+			default -> "Pet Clinic Notification";
+		};
+	}
+
+	/**
+	 * Truncate the message if it exceeds SMS character limits.
+	 * @param message The message to send
+	 * @return Truncated message if needed, or the original message
+	 */
+	private static String truncateIfNeeded(String message) {
+		if (message != null && message.length() > SMS_CHAR_LIMIT) {
+			// Truncate and add ellipsis
+			return message.substring(0, SMS_CHAR_LIMIT - 3) + "...";
+		}
+		return message;
+	}
+
+}
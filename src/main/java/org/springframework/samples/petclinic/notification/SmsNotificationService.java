@@ -1,18 +1,38 @@
 package org.springframework.samples.petclinic.notification;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import jakarta.annotation.PostConstruct;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
-import com.twilio.Twilio;
 import com.twilio.exception.ApiException;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.Request;
+import com.twilio.http.Response;
+import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.rest.api.v2010.account.MessageCreator;
 import com.twilio.type.PhoneNumber;
 
 /**
  * Service for sending SMS notifications to pet owners using Twilio API.
+ * <p>
+ * A single {@link TwilioRestClient} is shared by all sends. Requests are paced by a
+ * {@link TokenBucketRateLimiter} set to the account's messages per second and at most
+ * {@code twilio.max-in-flight} of them are outstanding at any time. A
+ * {@link CircuitBreaker} makes sends fail fast while Twilio keeps failing to accept them,
+ * rather than tying up the in-flight slots with requests that time out. Setting
+ * {@code twilio.base-url} points the client at another server, for example a local stub
+ * in tests.
  *
  * @author Claude
  */
@@ -21,8 +41,6 @@ public class SmsNotificationService implements NotificationService {
 
 	private static final Logger log = LoggerFactory.getLogger(SmsNotificationService.class);
 
-	private final NotificationTemplateService templateService;
-
 	@Value("${twilio.account.sid}")
 	private String twilioAccountSid;
 
@@ -35,60 +53,166 @@ public class SmsNotificationService implements NotificationService {
 	@Value("${twilio.enabled:false}")
 	private boolean twilioEnabled;
 
-	@Autowired
-	public SmsNotificationService(NotificationTemplateService templateService) {
-		this.templateService = templateService;
+	@Value("${twilio.base-url:}")
+	private String twilioBaseUrl;
+
+	@Value("${twilio.max-in-flight:20}")
+	private int maxInFlight;
+
+	@Value("${twilio.messages-per-second:1}")
+	private double messagesPerSecond;
+
+	@Value("${twilio.circuit-breaker.failure-rate-threshold:50}")
+	private int circuitBreakerFailureRateThreshold;
+
+	@Value("${twilio.circuit-breaker.open-duration:30s}")
+	private Duration circuitBreakerOpenDuration;
+
+	private TwilioRestClient client;
+
+	private Semaphore inFlight;
+
+	private TokenBucketRateLimiter rateLimiter;
+
+	private CircuitBreaker circuitBreaker;
+
+	/**
+	 * Build the long-lived Twilio client once. It is thread-safe and keeps its HTTP
+	 * connections alive between messages, unlike the global client rebuilt by
+	 * {@code Twilio.init}.
+	 */
+	@PostConstruct
+	void initialize() {
+		this.inFlight = new Semaphore(maxInFlight);
+		this.rateLimiter = new TokenBucketRateLimiter(messagesPerSecond, Math.max(1, (int) messagesPerSecond));
+		this.circuitBreaker = new CircuitBreaker("Twilio", circuitBreakerFailureRateThreshold,
+				circuitBreakerOpenDuration);
+		if (twilioEnabled) {
+			TwilioRestClient.Builder builder = new TwilioRestClient.Builder(twilioAccountSid, twilioAuthToken);
+			if (StringUtils.hasText(twilioBaseUrl)) {
+				builder.httpClient(new BaseUrlHttpClient(twilioBaseUrl));
+			}
+			this.client = builder.build();
+		}
 	}
 
 	@Override
 	public boolean send(Notification notification) {
+		try {
+			return sendAsync(RenderedNotification.of(notification)).join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof CallNotPermittedException) {
+				return false;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Send an SMS without waiting for Twilio to respond. The caller is held back only by
+	 * the rate limit and the cap on requests in flight, which keeps bulk sends at the
+	 * account's maximum rate without running into 429 responses.
+	 * @param content the prepared content of the notification to send
+	 * @return a future completed with true if the message was accepted by Twilio, or
+	 * completed with a {@link CallNotPermittedException} if the Twilio circuit did not let
+	 * the request through
+	 */
+	public CompletableFuture<Boolean> sendAsync(RenderedNotification content) {
+		Notification notification = content.notification();
 		if (!canHandle(notification)) {
 			log.debug("SMS notification skipped for notification: {}", notification.getId());
-			return false;
+			return CompletableFuture.completedFuture(false);
 		}
 
-		// Initialize Twilio client if SMS is enabled
 		if (!twilioEnabled) {
 			log.warn("Twilio SMS service is disabled. Set twilio.enabled=true in application properties to enable.");
 			notification.setStatus(NotificationStatus.SKIPPED);
-			return false;
+			return CompletableFuture.completedFuture(false);
 		}
 
+		String phoneNumber;
+		MessageCreator creator;
 		try {
-			// Initialize Twilio with account credentials
-			Twilio.init(twilioAccountSid, twilioAuthToken);
-
-			// Process the notification message content
-			String messageContent = templateService.processNotification(notification);
-
 			// Format phone number for Twilio (add '+' prefix if not present)
-			String phoneNumber = formatPhoneNumber(notification.getOwner().getTelephone());
+			phoneNumber = formatPhoneNumber(notification.getOwner().getTelephone());
 
-			// Create and send the SMS message
-			Message message = Message
-				.creator(new PhoneNumber(phoneNumber), new PhoneNumber(twilioPhoneNumber),
-						truncateIfNeeded(messageContent))
-				.create();
+			creator = Message.creator(new PhoneNumber(phoneNumber), new PhoneNumber(twilioPhoneNumber),
+					content.smsBody());
 
-			// Log the message SID from Twilio and update status
-			log.info("SMS sent to {}, Twilio message SID: {}", phoneNumber, message.getSid());
-			notification.setStatus(NotificationStatus.SENT);
-			notification.setSentTime(java.time.LocalDateTime.now());
-
-			return true;
+			rateLimiter.acquire();
+			inFlight.acquire();
 		}
-		catch (ApiException e) {
-			// Handle Twilio API exceptions
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
 			notification.setStatus(NotificationStatus.FAILED);
-			log.error("Failed to send SMS notification: {}", e.getMessage(), e);
-			return false;
+			log.warn("Interrupted while waiting to send SMS notification {}", notification.getId());
+			return CompletableFuture.completedFuture(false);
 		}
 		catch (Exception e) {
-			// Handle other unexpected exceptions
 			notification.setStatus(NotificationStatus.FAILED);
 			log.error("Unexpected error sending SMS notification: {}", e.getMessage(), e);
-			return false;
+			return CompletableFuture.completedFuture(false);
+		}
+
+		// Asked last, so a probe is only taken by a request that is actually made
+		if (!circuitBreaker.tryAcquire()) {
+			inFlight.release();
+			notification.setStatus(NotificationStatus.FAILED);
+			log.debug("Twilio circuit is open, SMS notification {} not sent", notification.getId());
+			return CompletableFuture.failedFuture(new CallNotPermittedException("Twilio"));
+		}
+
+		CompletableFuture<Message> request;
+		try {
+			request = creator.createAsync(client);
 		}
+		catch (RuntimeException e) {
+			inFlight.release();
+			circuitBreaker.recordFailure();
+			throw e;
+		}
+		return request.handle((message, failure) -> {
+			inFlight.release();
+			if (failure == null) {
+				circuitBreaker.recordSuccess();
+				// Log the message SID from Twilio and update status
+				log.info("SMS sent to {}, Twilio message SID: {}", phoneNumber, message.getSid());
+				notification.setStatus(NotificationStatus.SENT);
+				notification.setSentTime(LocalDateTime.now());
+				return true;
+			}
+			Throwable cause = (failure instanceof CompletionException) ? failure.getCause() : failure;
+			if (cause instanceof ApiException apiException && isRejection(apiException)) {
+				// Twilio is up and refused this particular message
+				circuitBreaker.recordSuccess();
+			}
+			else {
+				circuitBreaker.recordFailure();
+			}
+			notification.setStatus(NotificationStatus.FAILED);
+			if (cause instanceof ApiException) {
+				// Handle Twilio API exceptions
+				log.error("Failed to send SMS notification: {}", cause.getMessage(), cause);
+			}
+			else {
+				log.error("Unexpected error sending SMS notification: {}", cause.getMessage(), cause);
+			}
+			return false;
+		});
+	}
+
+	private static boolean isRejection(ApiException exception) {
+		Integer status = exception.getStatusCode();
+		return status != null && status >= 400 && status < 500 && status != 429;
+	}
+
+	public boolean isEnabled() {
+		return twilioEnabled;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
 	}
 
 	@Override
@@ -130,20 +254,31 @@ public class SmsNotificationService implements NotificationService {
 	}
 
 	/**
-	 * Truncate the message if it exceeds SMS character limits.
-	 * @param message The message to send
-	 * @return Truncated message if needed, or the original message
+	 * Sends Twilio API requests to a different base URL, such as a local stub server.
 	 */
-	private String truncateIfNeeded(String message) {
-		// Standard SMS has a limit of 160 characters for a single message
-		final int SMS_CHAR_LIMIT = 160;
+	static class BaseUrlHttpClient extends NetworkHttpClient {
+
+		private final String baseUrl;
 
-		if (message != null && message.length() > SMS_CHAR_LIMIT) {
-			// Truncate and add ellipsis
-			return message.substring(0, SMS_CHAR_LIMIT - 3) + "...";
+		BaseUrlHttpClient(String baseUrl) {
+			this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		}
+
+		@Override
+		public Response makeRequest(Request request) {
+			Request rebased = new Request(request.getMethod(), this.baseUrl + request.constructURL().getPath());
+			if (request.requiresAuthentication()) {
+				rebased.setAuth(request.getUsername(), request.getPassword());
+			}
+			request.getQueryParams()
+				.forEach((name, values) -> values.forEach(value -> rebased.addQueryParam(name, value)));
+			request.getPostParams()
+				.forEach((name, values) -> values.forEach(value -> rebased.addPostParam(name, value)));
+			request.getHeaderParams()
+				.forEach((name, values) -> values.forEach(value -> rebased.addHeaderParam(name, value)));
+			return super.makeRequest(rebased);
 		}
 
-		return message;
 	}
 
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting how fast requests are sent to an external provider. The bucket
+ * refills at a steady rate up to its capacity, so short bursts are allowed while the
+ * long-run rate never exceeds the configured permits per second.
+ */
+public class TokenBucketRateLimiter {
+
+	private final double capacity;
+
+	private final double tokensPerNano;
+
+	private double tokens;
+
+	private long lastRefill;
+
+	/**
+	 * Creates a limiter that starts with a full bucket.
+	 * @param permitsPerSecond the sustained rate
+	 * @param burst the maximum number of permits that can be taken at once
+	 */
+	public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+		if (permitsPerSecond <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("Rate and burst must be positive");
+		}
+		this.capacity = burst;
+		this.tokensPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.tokens = burst;
+		this.lastRefill = System.nanoTime();
+	}
+
+	/**
+	 * Take a permit if one is available right now.
+	 * @return true if a permit was taken
+	 */
+	public synchronized boolean tryAcquire() {
+		refill();
+		if (this.tokens >= 1) {
+			this.tokens -= 1;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Take a permit, waiting until the bucket has refilled enough to hand one out.
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void acquire() throws InterruptedException {
+		long waitNanos;
+		while ((waitNanos = reserveOrGetWait()) > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	private synchronized long reserveOrGetWait() {
+		refill();
+		if (this.tokens >= 1) {
+			this.tokens -= 1;
+			return 0;
+		}
+		return Math.max(1, nanosUntilNextToken());
+	}
+
+	private long nanosUntilNextToken() {
+		return (this.tokens >= 1) ? 0 : (long) Math.ceil((1 - this.tokens) / this.tokensPerNano);
+	}
+
+	private void refill() {
+		long now = System.nanoTime();
+		this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+		this.lastRefill = now;
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Creates the reminder schedules of upcoming visits in bulk. For every visit and every
+ * configured {@code notification.visit-reminders.days-before}, a schedule is created to
+ * remind the owner that many days before the visit.
+ * <p>
+ * Visits are walked in chunks of ascending id, and the schedules of each chunk are
+ * created with one {@code INSERT ... SELECT} per reminder policy in their own short
+ * transaction, so neither memory use nor transaction size grows with the number of
+ * visits. A unique key on visit, type and days before, and the statement skipping visits
+ * that already have their reminder, make it safe to run the generator again at any time,
+ * also concurrently: a chunk that races with another run is tried again. Reminders of
+ * other types, such as those created by staff, do not stand in the way.
+ */
+@Service
+public class VisitReminderGenerator {
+
+	private static final Logger log = LoggerFactory.getLogger(VisitReminderGenerator.class);
+
+	private static final int MAX_CHUNK_ATTEMPTS = 3;
+
+	private final NotificationScheduleRepository scheduleRepository;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final List<Integer> daysBefore;
+
+	private final String messageTemplate;
+
+	private final int lookaheadDays;
+
+	private final int chunkSize;
+
+	public VisitReminderGenerator(NotificationScheduleRepository scheduleRepository,
+			PlatformTransactionManager transactionManager,
+			@Value("${notification.visit-reminders.days-before:7,1}") List<Integer> daysBefore,
+			@Value("${notification.visit-reminders.message-template:Dear {ownerFirstName}, {petName} has a visit at Pet Clinic on {visitDate}.}") String messageTemplate,
+			@Value("${notification.visit-reminders.lookahead-days:30}") int lookaheadDays,
+			@Value("${notification.visit-reminders.chunk-size:5000}") int chunkSize) {
+		this.scheduleRepository = scheduleRepository;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.daysBefore = daysBefore;
+		this.messageTemplate = messageTemplate;
+		this.lookaheadDays = lookaheadDays;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Create the missing reminders of the visits within the lookahead, once a day.
+	 */
+	@Scheduled(cron = "${notification.visit-reminders.cron:0 0 2 * * *}")
+	public void generateUpcomingReminders() {
+		LocalDate today = LocalDate.now();
+		try {
+			generate(today, today.plusDays(this.lookaheadDays));
+		}
+		catch (Exception e) {
+			log.error("Error occurred while generating visit reminders", e);
+		}
+	}
+
+	/**
+	 * Create the missing reminders due on or after {@code from} for the visits dated up
+	 * to {@code until}. A reminder that would already be due before {@code from} is not
+	 * created.
+	 * @param from the earliest time of a reminder
+	 * @param until the latest visit date
+	 * @return the number of schedules created
+	 */
+	public int generate(LocalDate from, LocalDate until) {
+		int earliest = this.daysBefore.stream().mapToInt(Integer::intValue).min().orElse(0);
+		int created = 0;
+		int afterId = 0;
+		List<Integer> chunk;
+		do {
+			chunk = this.scheduleRepository.findVisitIds(from.plusDays(earliest), until, afterId,
+					PageRequest.ofSize(this.chunkSize));
+			if (chunk.isEmpty()) {
+				break;
+			}
+			int lastId = chunk.get(chunk.size() - 1);
+			created += insertChunk(from, until, afterId, lastId);
+			afterId = lastId;
+		}
+		while (chunk.size() == this.chunkSize);
+
+		log.info("Created {} visit reminders for visits until {}", created, until);
+		return created;
+	}
+
+	/**
+	 * Create the missing reminders of the visits of one chunk. Another run inserting the
+	 * same reminders at the same time makes the unique key reject the chunk; its rows are
+	 * committed by then, so the chunk is tried again and only inserts the rest.
+	 */
+	private int insertChunk(LocalDate from, LocalDate until, int afterId, int lastId) {
+		for (int attempt = 1;; attempt++) {
+			try {
+				Integer inserted = this.transactionTemplate.execute(status -> {
+					int count = 0;
+					for (int days : this.daysBefore) {
+						count += this.scheduleRepository.insertVisitReminders(this.messageTemplate,
+								NotificationType.APPOINTMENT_REMINDER, days, from.plusDays(days), until, afterId,
+								lastId);
+					}
+					return count;
+				});
+				return (inserted != null) ? inserted : 0;
+			}
+			catch (DataIntegrityViolationException ex) {
+				if (attempt == MAX_CHUNK_ATTEMPTS) {
+					// The next run creates whatever is still missing
+					log.warn("Skipping the reminders of visits {} to {}, another run keeps creating them: {}",
+							afterId + 1, lastId, ex.getMessage());
+					return 0;
+				}
+				log.debug("Reminders of visits {} to {} were created concurrently, trying again", afterId + 1, lastId);
+			}
+		}
+	}
+
+}
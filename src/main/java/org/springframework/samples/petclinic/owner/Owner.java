@@ -15,8 +15,10 @@
  */
 package org.springframework.samples.petclinic.owner;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
@@ -63,10 +65,12 @@ public class Owner extends Person {
 	@Enumerated(EnumType.STRING)
 	private NotificationPreference notificationPreference = NotificationPreference.NONE;
 
-	@OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+	// A set rather than a list, so fetching the pets together with their visits does not
+	// repeat a pet for each of its visits
+	@OneToMany(cascade = CascadeType.ALL, fetch = FetchType.LAZY)
 	@JoinColumn(name = "owner_id")
 	@OrderBy("name")
-	private final List<Pet> pets = new ArrayList<>();
+	private final Set<Pet> pets = new LinkedHashSet<>();
 
 	public String getAddress() {
 		return this.address;
@@ -108,13 +112,18 @@ public class Owner extends Person {
 		this.notificationPreference = notificationPreference;
 	}
 
-	public List<Pet> getPets() {
-		return this.pets;
+	/**
+	 * Return the pets of this owner, in order of their name. The collection is a
+	 * read-only view that reflects later changes; add pets through {@link #addPet(Pet)}.
+	 * @return the pets of this owner
+	 */
+	public Collection<Pet> getPets() {
+		return Collections.unmodifiableCollection(this.pets);
 	}
 
 	public void addPet(Pet pet) {
 		if (pet.isNew()) {
-			getPets().add(pet);
+			this.pets.add(pet);
 		}
 	}
 
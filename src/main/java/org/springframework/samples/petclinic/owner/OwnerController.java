@@ -15,12 +15,18 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.model.PageCursor;
+import org.springframework.samples.petclinic.model.PersonCursor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -31,6 +37,8 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.ModelAndView;
 
 import jakarta.validation.Valid;
@@ -48,10 +56,26 @@ class OwnerController {
 
 	private static final String VIEWS_OWNER_CREATE_OR_UPDATE_FORM = "owners/createOrUpdateOwnerForm";
 
+	private static final int PAGE_SIZE = 5;
+
+	private static final int DEFAULT_API_PAGE_SIZE = 20;
+
+	private static final int MAX_API_PAGE_SIZE = 100;
+
+	private static final int DEFAULT_SUGGESTIONS = 10;
+
+	private static final int MAX_SUGGESTIONS = 50;
+
 	private final OwnerRepository owners;
 
-	public OwnerController(OwnerRepository owners) {
+	private final OwnerSearchCounts searchCounts;
+
+	private final OwnerNameIndex nameIndex;
+
+	public OwnerController(OwnerRepository owners, OwnerSearchCounts searchCounts, OwnerNameIndex nameIndex) {
 		this.owners = owners;
+		this.searchCounts = searchCounts;
+		this.nameIndex = nameIndex;
 	}
 
 	@InitBinder
@@ -60,11 +84,16 @@ class OwnerController {
 	}
 
 	@ModelAttribute("owner")
-	public Owner findOwner(@PathVariable(name = "ownerId", required = false) Integer ownerId) {
-		return ownerId == null ? new Owner()
-				: this.owners.findById(ownerId)
-					.orElseThrow(() -> new IllegalArgumentException("Owner not found with id: " + ownerId
-							+ ". Please ensure the ID is correct " + "and the owner exists in the database."));
+	public Owner findOwner(@PathVariable(name = "ownerId", required = false) Integer ownerId, HttpMethod method) {
+		if (ownerId == null) {
+			return new Owner();
+		}
+		// Pages show the owner with its pets and visits in one statement; submitted forms
+		// are saved, and saving would merge every pet and visit that was loaded
+		Optional<Owner> owner = (method == HttpMethod.GET) ? this.owners.findWithPetsAndVisitsById(ownerId)
+				: this.owners.findById(ownerId);
+		return owner.orElseThrow(() -> new IllegalArgumentException("Owner not found with id: " + ownerId
+				+ ". Please ensure the ID is correct " + "and the owner exists in the database."));
 	}
 
 	@GetMapping("/owners/new")
@@ -80,6 +109,8 @@ class OwnerController {
 		}
 
 		this.owners.save(owner);
+		this.searchCounts.invalidate();
+		this.nameIndex.update(owner);
 		redirectAttributes.addFlashAttribute("message", "New Owner Created");
 		return "redirect:/owners/" + owner.getId();
 	}
@@ -90,44 +121,159 @@ class OwnerController {
 	}
 
 	@GetMapping("/owners")
-	public String processFindForm(@RequestParam(defaultValue = "1") int page, Owner owner, BindingResult result,
+	public String processFindForm(@RequestParam(required = false) String cursor, Owner owner, BindingResult result,
 			Model model) {
 		// allow parameterless GET request for /owners to return all records
 		if (owner.getLastName() == null) {
 			owner.setLastName(""); // empty string signifies broadest possible search
 		}
 
-		// find owners by last name
-		Page<Owner> ownersResults = findPaginatedForOwnersLastName(page, owner.getLastName());
-		if (ownersResults.isEmpty()) {
+		// find owners by last name, seeking from the cursor of the page linked to
+		PageCursor at = decodePageCursor(cursor);
+		OwnersPage ownersResults = findPageForOwnersLastName(owner.getLastName(), at);
+		if (ownersResults.owners().isEmpty()) {
 			// no owners found
 			result.rejectValue("lastName", "notFound", "not found");
 			return "owners/findOwners";
 		}
 
-		if (ownersResults.getTotalElements() == 1) {
+		if (at == null && !ownersResults.hasNext() && ownersResults.owners().size() == 1) {
 			// 1 owner found
-			owner = ownersResults.iterator().next();
-			return "redirect:/owners/" + owner.getId();
+			return "redirect:/owners/" + ownersResults.owners().get(0).id();
 		}
 
 		// multiple owners found
-		return addPaginationModel(page, model, ownersResults);
+		return addPaginationModel(model, ownersResults, owner.getLastName());
+	}
+
+	/**
+	 * Get a page of owners whose last name starts with the given name, in order of their
+	 * last name. Further pages are requested with the {@code nextCursor} of the previous
+	 * page.
+	 * @param lastName Value to search for
+	 * @param cursor the {@code nextCursor} of the previous page
+	 * @param size the maximum number of owners to return
+	 * @return a page of owner summaries
+	 */
+	@GetMapping("/api/owners")
+	@ResponseBody
+	public OwnerPage listOwners(@RequestParam(defaultValue = "") String lastName,
+			@RequestParam(required = false) String cursor,
+			@RequestParam(defaultValue = "" + DEFAULT_API_PAGE_SIZE) int size) {
+		if (size < 1 || size > MAX_API_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"Page size must be between 1 and " + MAX_API_PAGE_SIZE + ": " + size);
+		}
+		Slice<OwnerSummary> paginated = findPaginatedForOwnersLastName(lastName, decodeCursor(cursor), size);
+		return new OwnerPage(paginated.getContent(), nextCursor(paginated));
 	}
 
-	private String addPaginationModel(int page, Model model, Page<Owner> paginated) {
-		List<Owner> listOwners = paginated.getContent();
+	/**
+	 * Suggest owners whose last name starts with the given prefix, ignoring case, while
+	 * it is typed. The suggestions are served from memory.
+	 * @param prefix the beginning of the last name
+	 * @param limit the maximum number of owners to return
+	 * @return the matching owners, in order of their last name
+	 */
+	@GetMapping("/api/owners/suggest")
+	@ResponseBody
+	public List<OwnerSuggestion> suggestOwners(@RequestParam(defaultValue = "") String prefix,
+			@RequestParam(defaultValue = "" + DEFAULT_SUGGESTIONS) int limit) {
+		if (limit < 1 || limit > MAX_SUGGESTIONS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"Limit must be between 1 and " + MAX_SUGGESTIONS + ": " + limit);
+		}
+		return this.nameIndex.suggest(prefix, limit);
+	}
+
+	private String addPaginationModel(Model model, OwnersPage paginated, String lastname) {
+		List<OwnerSummary> listOwners = paginated.owners();
+		int page = paginated.number();
+		long totalItems = estimateTotalItems(paginated, lastname);
+		int totalPages = (int) ((totalItems + PAGE_SIZE - 1) / PAGE_SIZE);
 		model.addAttribute("currentPage", page);
-		model.addAttribute("totalPages", paginated.getTotalPages());
-		model.addAttribute("totalItems", paginated.getTotalElements());
+		model.addAttribute("totalPages", totalPages);
+		model.addAttribute("totalItems", totalItems);
+		model.addAttribute("lastName", lastname);
+		model.addAttribute("previousCursor",
+				paginated.hasPrevious() ? PageCursor.before(position(listOwners.get(0)), page - 1).encode() : null);
+		model.addAttribute("nextCursor", paginated.hasNext()
+				? PageCursor.after(position(listOwners.get(listOwners.size() - 1)), page + 1).encode() : null);
+		model.addAttribute("lastCursor", paginated.hasNext() ? PageCursor.last(totalPages).encode() : null);
 		model.addAttribute("listOwners", listOwners);
 		return "owners/ownersList";
 	}
 
-	private Page<Owner> findPaginatedForOwnersLastName(int page, String lastname) {
-		int pageSize = 5;
-		Pageable pageable = PageRequest.of(page - 1, pageSize);
-		return owners.findByLastNameStartingWith(lastname, pageable);
+	private long estimateTotalItems(OwnersPage paginated, String lastname) {
+		long seen = (long) (paginated.number() - 1) * PAGE_SIZE + paginated.owners().size();
+		if (!paginated.hasNext()) {
+			// the last page, so the total is exact
+			return seen;
+		}
+		// the cached count may be stale, but there is at least one more owner
+		return Math.max(this.searchCounts.estimate(lastname), seen + 1);
+	}
+
+	private OwnersPage findPageForOwnersLastName(String lastname, PageCursor at) {
+		if (at == null) {
+			Slice<OwnerSummary> first = findPaginatedForOwnersLastName(lastname, null, PAGE_SIZE);
+			return new OwnersPage(first.getContent(), 1, false, first.hasNext());
+		}
+		if (!at.backward()) {
+			Slice<OwnerSummary> next = findPaginatedForOwnersLastName(lastname, at.position(), PAGE_SIZE);
+			// owners precede the cursor, so this is not the first page whatever it says
+			return new OwnersPage(next.getContent(), Math.max(at.page(), 2), true, next.hasNext());
+		}
+		PersonCursor before = at.position();
+		// the last page is a full page sought back from the end, numbered from the
+		// estimated count, and the pages before it line up with it rather than with the
+		// first page
+		Pageable pageable = PageRequest.ofSize(PAGE_SIZE);
+		Slice<OwnerSummary> previous = (before != null)
+				? owners.findPreviousSummariesByLastNameStartingWith(lastname, before.lastName(), before.id(), pageable)
+				: owners.findPreviousSummariesByLastNameStartingWith(lastname, null, null, pageable);
+		List<OwnerSummary> content = new ArrayList<>(previous.getContent());
+		Collections.reverse(content);
+		// with nothing before it, this is the first page whatever the cursor says
+		int page = previous.hasNext() ? Math.max(at.page(), 2) : 1;
+		return new OwnersPage(content, page, previous.hasNext(), before != null);
+	}
+
+	private Slice<OwnerSummary> findPaginatedForOwnersLastName(String lastname, PersonCursor after, int pageSize) {
+		// always the first page: the cursor, not an offset, skips the earlier owners
+		Pageable pageable = PageRequest.ofSize(pageSize);
+		return (after != null)
+				? owners.findSummariesByLastNameStartingWith(lastname, after.lastName(), after.id(), pageable)
+				: owners.findSummariesByLastNameStartingWith(lastname, null, null, pageable);
+	}
+
+	private static String nextCursor(Slice<OwnerSummary> paginated) {
+		if (!paginated.hasNext()) {
+			return null;
+		}
+		return position(paginated.getContent().get(paginated.getNumberOfElements() - 1)).encode();
+	}
+
+	private static PersonCursor position(OwnerSummary owner) {
+		return new PersonCursor(owner.lastName(), owner.id());
+	}
+
+	private static PersonCursor decodeCursor(String cursor) {
+		try {
+			return (cursor != null) ? PersonCursor.decode(cursor) : null;
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+		}
+	}
+
+	private static PageCursor decodePageCursor(String cursor) {
+		try {
+			return (cursor != null) ? PageCursor.decode(cursor) : null;
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+		}
 	}
 
 	@GetMapping("/owners/{ownerId}/edit")
@@ -151,23 +297,34 @@ class OwnerController {
 
 		owner.setId(ownerId);
 		this.owners.save(owner);
+		this.searchCounts.invalidate();
+		this.nameIndex.update(owner);
 		redirectAttributes.addFlashAttribute("message", "Owner Values Updated");
 		return "redirect:/owners/{ownerId}";
 	}
 
 	/**
 	 * Custom handler for displaying an owner.
-	 * @param ownerId the ID of the owner to display
+	 * @param owner the owner to display, with its pets and visits
 	 * @return a ModelMap with the model attributes for the view
 	 */
 	@GetMapping("/owners/{ownerId}")
-	public ModelAndView showOwner(@PathVariable("ownerId") int ownerId) {
+	public ModelAndView showOwner(@ModelAttribute(name = "owner", binding = false) Owner owner) {
 		ModelAndView mav = new ModelAndView("owners/ownerDetails");
-		Optional<Owner> optionalOwner = this.owners.findById(ownerId);
-		Owner owner = optionalOwner.orElseThrow(() -> new IllegalArgumentException(
-				"Owner not found with id: " + ownerId + ". Please ensure the ID is correct "));
 		mav.addObject(owner);
 		return mav;
 	}
 
+	/**
+	 * The owners shown on a page of the HTML list, in order.
+	 *
+	 * @param owners the owners of the page
+	 * @param number the number of the page, counting from 1
+	 * @param hasPrevious whether owners precede the page
+	 * @param hasNext whether owners follow the page
+	 */
+	private record OwnersPage(List<OwnerSummary> owners, int number, boolean hasPrevious, boolean hasNext) {
+
+	}
+
 }
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory index of the owner ids by their case-folded last name, to suggest owners
+ * while a last name is typed without scanning the owners on every keystroke. Matching is
+ * case-insensitive on every database, whatever the collation of the last name column.
+ * <p>
+ * Each folded last name is kept once, with the sorted ids of the owners bearing it. The
+ * names of the suggested owners are loaded by id, and ids whose owner was renamed or
+ * deleted since it was indexed are dropped as they are found.
+ * <p>
+ * The index is loaded when the application is ready and kept up to date with the owners
+ * saved through {@link #update}. Owners added by other nodes are read every
+ * {@code owner.search.index.refresh-interval}, from the highest id read so far, and the
+ * whole index is rebuilt every {@code owner.search.index.rebuild-interval} to pick up
+ * their renames. Owners are read in batches of {@code owner.search.index.batch-size}, and
+ * owners saved during a rebuild are applied to the rebuilt index before it replaces the
+ * current one.
+ */
+@Component
+class OwnerNameIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(OwnerNameIndex.class);
+
+	private final OwnerRepository owners;
+
+	private final int batchSize;
+
+	private final Object lock = new Object();
+
+	// Only read concurrently, written under the lock or before it is published
+	private volatile ConcurrentNavigableMap<String, int[]> idsByName = new ConcurrentSkipListMap<>();
+
+	// Highest owner id read from the database, guarded by this
+	private int lastReadId;
+
+	// Owners saved while the index is rebuilt, or null when it is not
+	private List<Candidate> savedDuringRebuild;
+
+	OwnerNameIndex(OwnerRepository owners, @Value("${owner.search.index.batch-size:10000}") int batchSize) {
+		this.owners = owners;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Return the owners whose last name starts with the given prefix, ignoring case, in
+	 * order of their last name and id.
+	 * @param prefix the beginning of the last name
+	 * @param limit the maximum number of owners to return
+	 * @return the matching owners, none if the prefix is blank
+	 */
+	List<OwnerSuggestion> suggest(String prefix, int limit) {
+		String folded = fold(prefix).strip();
+		if (folded.isEmpty() || limit <= 0) {
+			return List.of();
+		}
+		// Every name starting with the prefix sorts between these two
+		Iterator<Map.Entry<String, int[]>> names = this.idsByName.subMap(folded, folded + Character.MAX_VALUE)
+			.entrySet()
+			.iterator();
+		List<OwnerSuggestion> suggestions = new ArrayList<>(limit);
+		String name = null;
+		int[] ids = new int[0];
+		int next = 0;
+		while (suggestions.size() < limit) {
+			List<Candidate> candidates = new ArrayList<>();
+			while (candidates.size() < limit - suggestions.size()) {
+				if (next < ids.length) {
+					candidates.add(new Candidate(ids[next++], name));
+				}
+				else if (names.hasNext()) {
+					Map.Entry<String, int[]> entry = names.next();
+					name = entry.getKey();
+					ids = entry.getValue();
+					next = 0;
+				}
+				else {
+					break;
+				}
+			}
+			if (candidates.isEmpty()) {
+				break;
+			}
+			List<Integer> candidateIds = candidates.stream().map(Candidate::id).distinct().toList();
+			Map<Integer, OwnerSuggestion> found = new HashMap<>();
+			for (OwnerSuggestion owner : this.owners.findSuggestions(candidateIds)) {
+				found.put(owner.id(), owner);
+			}
+			for (Candidate candidate : candidates) {
+				OwnerSuggestion owner = found.get(candidate.id());
+				if (owner != null && fold(owner.lastName()).equals(candidate.name())) {
+					suggestions.add(owner);
+				}
+				else {
+					remove(candidate);
+				}
+			}
+		}
+		return suggestions;
+	}
+
+	/**
+	 * Add a saved owner to the index under its last name. If the owner was renamed, it is
+	 * dropped from its previous last name when that name is next suggested.
+	 * @param owner the saved owner
+	 */
+	void update(Owner owner) {
+		Candidate saved = new Candidate(owner.getId(), fold(owner.getLastName()));
+		synchronized (this.lock) {
+			add(this.idsByName, saved.name(), saved.id());
+			if (this.savedDuringRebuild != null) {
+				this.savedDuringRebuild.add(saved);
+			}
+		}
+	}
+
+	/**
+	 * Load the index when the application has started. If the database cannot be read,
+	 * the owners are read by the next refresh instead.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		try {
+			rebuild();
+		}
+		catch (Exception e) {
+			log.error("Error occurred while loading the owner name index", e);
+		}
+	}
+
+	/**
+	 * Add the owners created since the last read to the index.
+	 */
+	@Scheduled(fixedDelayString = "${owner.search.index.refresh-interval:1m}",
+			initialDelayString = "${owner.search.index.refresh-interval:1m}")
+	public void refresh() {
+		try {
+			readNewOwners();
+		}
+		catch (Exception e) {
+			log.error("Error occurred while refreshing the owner name index", e);
+		}
+	}
+
+	/**
+	 * Rebuild the index from the database.
+	 */
+	@Scheduled(fixedDelayString = "${owner.search.index.rebuild-interval:1d}",
+			initialDelayString = "${owner.search.index.rebuild-interval:1d}")
+	public void reload() {
+		try {
+			rebuild();
+		}
+		catch (Exception e) {
+			log.error("Error occurred while rebuilding the owner name index", e);
+		}
+	}
+
+	/**
+	 * Read the owners with an id above the highest one read so far into the index.
+	 * @return the number of owners read
+	 */
+	synchronized int readNewOwners() {
+		int read = 0;
+		List<OwnerSuggestion> batch;
+		do {
+			batch = readBatch(this.lastReadId, this.idsByName);
+			read += batch.size();
+			if (!batch.isEmpty()) {
+				this.lastReadId = batch.get(batch.size() - 1).id();
+			}
+		}
+		while (batch.size() == this.batchSize);
+		log.debug("Indexed the last names of {} new owners", read);
+		return read;
+	}
+
+	/**
+	 * Read all owners into a new index and replace the current one with it.
+	 * @return the number of owners indexed
+	 */
+	synchronized int rebuild() {
+		synchronized (this.lock) {
+			this.savedDuringRebuild = new ArrayList<>();
+		}
+		try {
+			ConcurrentNavigableMap<String, int[]> rebuilt = new ConcurrentSkipListMap<>();
+			int indexed = 0;
+			int afterId = 0;
+			List<OwnerSuggestion> batch;
+			do {
+				batch = readBatch(afterId, rebuilt);
+				indexed += batch.size();
+				if (!batch.isEmpty()) {
+					afterId = batch.get(batch.size() - 1).id();
+				}
+			}
+			while (batch.size() == this.batchSize);
+
+			synchronized (this.lock) {
+				for (Candidate owner : this.savedDuringRebuild) {
+					add(rebuilt, owner.name(), owner.id());
+				}
+				this.idsByName = rebuilt;
+			}
+			this.lastReadId = afterId;
+			log.debug("Indexed the last names of {} owners", indexed);
+			return indexed;
+		}
+		finally {
+			synchronized (this.lock) {
+				this.savedDuringRebuild = null;
+			}
+		}
+	}
+
+	private List<OwnerSuggestion> readBatch(int afterId, ConcurrentNavigableMap<String, int[]> names) {
+		List<OwnerSuggestion> batch = this.owners.findSuggestionsAfter(afterId, PageRequest.ofSize(this.batchSize));
+		Map<String, List<Integer>> idsByName = new HashMap<>();
+		for (OwnerSuggestion owner : batch) {
+			idsByName.computeIfAbsent(fold(owner.lastName()), name -> new ArrayList<>()).add(owner.id());
+		}
+		synchronized (this.lock) {
+			idsByName.forEach((name, ids) -> add(names, name, ids.stream().mapToInt(Integer::intValue).toArray()));
+		}
+		return batch;
+	}
+
+	private void remove(Candidate stale) {
+		synchronized (this.lock) {
+			this.idsByName.computeIfPresent(stale.name(), (name, ids) -> without(ids, stale.id()));
+		}
+	}
+
+	// Only called under the lock, so the existing key is kept as the shared name
+	private static void add(ConcurrentNavigableMap<String, int[]> names, String name, int... ids) {
+		int[] sorted = ids.clone();
+		Arrays.sort(sorted);
+		names.merge(name, sorted, OwnerNameIndex::union);
+	}
+
+	private static int[] union(int[] left, int[] right) {
+		int[] union = new int[left.length + right.length];
+		int size = 0;
+		int l = 0;
+		int r = 0;
+		while (l < left.length || r < right.length) {
+			int next;
+			if (r == right.length || (l < left.length && left[l] <= right[r])) {
+				next = left[l++];
+			}
+			else {
+				next = right[r++];
+			}
+			if (size == 0 || union[size - 1] != next) {
+				union[size++] = next;
+			}
+		}
+		return Arrays.copyOf(union, size);
+	}
+
+	private static int[] without(int[] ids, int id) {
+		int index = Arrays.binarySearch(ids, id);
+		if (index < 0) {
+			return ids;
+		}
+		if (ids.length == 1) {
+			return null;
+		}
+		int[] remaining = new int[ids.length - 1];
+		System.arraycopy(ids, 0, remaining, 0, index);
+		System.arraycopy(ids, index + 1, remaining, index, remaining.length - index);
+		return remaining;
+	}
+
+	private static String fold(String name) {
+		return (name != null) ? name.toLowerCase(Locale.ROOT) : "";
+	}
+
+	private record Candidate(int id, String name) {
+	}
+
+}
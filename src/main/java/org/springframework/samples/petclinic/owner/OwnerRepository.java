@@ -15,14 +15,18 @@
  */
 package org.springframework.samples.petclinic.owner;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import jakarta.annotation.Nonnull;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repository class for <code>Owner</code> domain objects All method names are compliant
@@ -46,13 +50,62 @@ public interface OwnerRepository extends JpaRepository<Owner, Integer> {
 	List<PetType> findPetTypes();
 
 	/**
-	 * Retrieve {@link Owner}s from the data store by last name, returning all owners
-	 * whose last name <i>starts</i> with the given name.
+	 * Count the {@link Owner}s whose last name <i>starts</i> with the given name.
 	 * @param lastName Value to search for
-	 * @return a Collection of matching {@link Owner}s (or an empty Collection if none
-	 * found)
+	 * @return the number of matching owners
 	 */
-	Page<Owner> findByLastNameStartingWith(String lastName, Pageable pageable);
+	long countByLastNameStartingWith(String lastName);
+
+	/**
+	 * Retrieve a slice of {@link OwnerSummary summaries} of the owners whose last name
+	 * <i>starts</i> with the given name, together with the names of their pets, in a
+	 * single statement. The matching owners are not counted; one more row than the page
+	 * size is read to tell whether a next page exists. Further slices seek past the last
+	 * owner of the previous one rather than skipping over its rows, so only the first
+	 * page of {@code pageable} should be requested.
+	 * @param lastName Value to search for, wildcards in it are matched literally
+	 * @param afterLastName continue after the owner with this last name...
+	 * @param afterId ...and this id, or {@code null} for the first slice
+	 * @param pageable the size of the slice
+	 * @return a slice of matching owner summaries, in order of their last name and id
+	 */
+	@Query(value = "SELECT new org.springframework.samples.petclinic.owner.OwnerSummary(o.id, o.firstName, o.lastName, o.address, o.city, o.telephone, o.email, o.notificationPreference, listagg(p.name, ', ') WITHIN GROUP (ORDER BY p.name)) FROM Owner o LEFT JOIN o.pets p WHERE o.lastName LIKE :#{escape([0])}% ESCAPE :#{escapeCharacter()} AND (:afterLastName IS NULL OR o.lastName > :afterLastName OR (o.lastName = :afterLastName AND o.id > :afterId)) GROUP BY o.id, o.firstName, o.lastName, o.address, o.city, o.telephone, o.email, o.notificationPreference ORDER BY o.lastName, o.id")
+	Slice<OwnerSummary> findSummariesByLastNameStartingWith(@Param("lastName") String lastName,
+			@Param("afterLastName") String afterLastName, @Param("afterId") Integer afterId, Pageable pageable);
+
+	/**
+	 * Retrieve a slice of {@link OwnerSummary summaries} of the owners whose last name
+	 * <i>starts</i> with the given name, seeking backwards from the first owner of the
+	 * following page. The slice is in reverse order of last name and id; it has a next
+	 * slice if more owners precede it.
+	 * @param lastName Value to search for, wildcards in it are matched literally
+	 * @param beforeLastName end before the owner with this last name...
+	 * @param beforeId ...and this id, or {@code null} for the end of the list
+	 * @param pageable the size of the slice
+	 * @return a slice of matching owner summaries, in reverse order of their last name
+	 * and id
+	 */
+	@Query(value = "SELECT new org.springframework.samples.petclinic.owner.OwnerSummary(o.id, o.firstName, o.lastName, o.address, o.city, o.telephone, o.email, o.notificationPreference, listagg(p.name, ', ') WITHIN GROUP (ORDER BY p.name)) FROM Owner o LEFT JOIN o.pets p WHERE o.lastName LIKE :#{escape([0])}% ESCAPE :#{escapeCharacter()} AND (:beforeLastName IS NULL OR o.lastName < :beforeLastName OR (o.lastName = :beforeLastName AND o.id < :beforeId)) GROUP BY o.id, o.firstName, o.lastName, o.address, o.city, o.telephone, o.email, o.notificationPreference ORDER BY o.lastName DESC, o.id DESC")
+	Slice<OwnerSummary> findPreviousSummariesByLastNameStartingWith(@Param("lastName") String lastName,
+			@Param("beforeLastName") String beforeLastName, @Param("beforeId") Integer beforeId, Pageable pageable);
+
+	/**
+	 * Retrieve the names of the owners with an id greater than the given one, in order of
+	 * their id, to load them in batches.
+	 * @param afterId continue after the owner with this id
+	 * @param pageable the size of the batch
+	 * @return the next batch of owner names
+	 */
+	@Query("SELECT new org.springframework.samples.petclinic.owner.OwnerSuggestion(o.id, o.firstName, o.lastName) FROM Owner o WHERE o.id > :afterId ORDER BY o.id")
+	List<OwnerSuggestion> findSuggestionsAfter(@Param("afterId") Integer afterId, Pageable pageable);
+
+	/**
+	 * Retrieve the names of the given owners.
+	 * @param ids the ids of the owners
+	 * @return the names of the owners that exist, in no particular order
+	 */
+	@Query("SELECT new org.springframework.samples.petclinic.owner.OwnerSuggestion(o.id, o.firstName, o.lastName) FROM Owner o WHERE o.id IN :ids")
+	List<OwnerSuggestion> findSuggestions(@Param("ids") Collection<Integer> ids);
 
 	/**
 	 * Retrieve an {@link Owner} from the data store by id.
@@ -69,6 +122,23 @@ public interface OwnerRepository extends JpaRepository<Owner, Integer> {
 	 */
 	Optional<Owner> findById(@Nonnull Integer id);
 
+	/**
+	 * Retrieve an {@link Owner} together with its pets, in a single query.
+	 * @param id the id to search for
+	 * @return an {@link Optional} containing the {@link Owner} if found
+	 */
+	@EntityGraph(attributePaths = { "pets", "pets.type" })
+	Optional<Owner> findWithPetsById(Integer id);
+
+	/**
+	 * Retrieve an {@link Owner} together with its pets and their visits, in a single
+	 * query.
+	 * @param id the id to search for
+	 * @return an {@link Optional} containing the {@link Owner} if found
+	 */
+	@EntityGraph(attributePaths = { "pets", "pets.type", "pets.visits" })
+	Optional<Owner> findWithPetsAndVisitsById(Integer id);
+
 	/**
 	 * Returns all the owners from data store
 	 **/
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2025 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.owner;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Caches the number of owners matching a last name search, so that paging through the
+ * results does not count them again on every page. The counts are estimates: they are
+ * refreshed after the configured time to live, and dropped whenever an owner is saved.
+ */
+@Component
+class OwnerSearchCounts {
+
+	private static final int MAX_SEARCHES = 1000;
+
+	private final OwnerRepository owners;
+
+	private final Cache<String, Long> counts;
+
+	OwnerSearchCounts(OwnerRepository owners, @Value("${owner.search.count-ttl:1m}") Duration timeToLive) {
+		this.owners = owners;
+		this.counts = Caffeine.newBuilder()
+			.maximumSize(MAX_SEARCHES)
+			.expireAfterWrite(timeToLive)
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * Return the possibly stale number of owners whose last name starts with the given
+	 * name, counting them only if no recent count is cached.
+	 * @param lastName the last name searched for
+	 * @return the estimated number of matching owners
+	 */
+	long estimate(String lastName) {
+		return counts.get(lastName, owners::countByLastNameStartingWith);
+	}
+
+	/**
+	 * Drop all cached counts, after owners were added or renamed.
+	 */
+	void invalidate() {
+		counts.invalidateAll();
+	}
+
+	/**
+	 * @return hit and miss statistics of the count cache
+	 */
+	public CacheStats getStats() {
+		return counts.stats();
+	}
+
+}
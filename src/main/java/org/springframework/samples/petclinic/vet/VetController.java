@@ -15,16 +15,22 @@
  */
 package org.springframework.samples.petclinic.vet;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
+import org.springframework.samples.petclinic.model.PageCursor;
+import org.springframework.samples.petclinic.model.PersonCursor;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.server.ResponseStatusException;
 
 /**
  * @author Juergen Hoeller
@@ -35,6 +41,12 @@ import org.springframework.web.bind.annotation.ResponseBody;
 @Controller
 class VetController {
 
+	private static final int PAGE_SIZE = 5;
+
+	private static final int DEFAULT_API_PAGE_SIZE = 20;
+
+	private static final int MAX_API_PAGE_SIZE = 100;
+
 	private final VetRepository vetRepository;
 
 	public VetController(VetRepository vetRepository) {
@@ -42,37 +54,130 @@ class VetController {
 	}
 
 	@GetMapping("/vets.html")
-	public String showVetList(@RequestParam(defaultValue = "1") int page, Model model) {
+	public String showVetList(@RequestParam(required = false) String cursor, Model model) {
 		// Here we are returning an object of type 'Vets' rather than a collection of Vet
 		// objects so it is simpler for Object-Xml mapping
 		Vets vets = new Vets();
-		Page<Vet> paginated = findPaginated(page);
-		vets.getVetList().addAll(paginated.toList());
-		return addPaginationModel(page, paginated, model);
+		VetsPage paginated = findPage(decodePageCursor(cursor));
+		vets.getVetList().addAll(paginated.vets());
+		return addPaginationModel(paginated, model);
 	}
 
-	private String addPaginationModel(int page, Page<Vet> paginated, Model model) {
-		List<Vet> listVets = paginated.getContent();
+	private String addPaginationModel(VetsPage paginated, Model model) {
+		List<Vet> listVets = paginated.vets();
+		int page = paginated.number();
+		int totalPages = Math.max(totalPages(), page);
 		model.addAttribute("currentPage", page);
-		model.addAttribute("totalPages", paginated.getTotalPages());
-		model.addAttribute("totalItems", paginated.getTotalElements());
+		model.addAttribute("totalPages", totalPages);
+		// a page emptied since it was linked to has nothing to seek from but the first
+		// page
+		model.addAttribute("previousCursor", (paginated.hasPrevious() && !listVets.isEmpty())
+				? PageCursor.before(PersonCursor.after(listVets.get(0)), page - 1).encode() : null);
+		model.addAttribute("nextCursor", (paginated.hasNext() && !listVets.isEmpty())
+				? PageCursor.after(PersonCursor.after(listVets.get(listVets.size() - 1)), page + 1).encode() : null);
+		model.addAttribute("lastCursor", paginated.hasNext() ? PageCursor.last(totalPages).encode() : null);
 		model.addAttribute("listVets", listVets);
 		return "vets/vetList";
 	}
 
-	private Page<Vet> findPaginated(int page) {
-		int pageSize = 5;
-		Pageable pageable = PageRequest.of(page - 1, pageSize);
-		return vetRepository.findAll(pageable);
+	private VetsPage findPage(PageCursor at) {
+		if (at == null) {
+			Slice<Vet> first = findPaginated(null, PAGE_SIZE);
+			return new VetsPage(first.getContent(), 1, false, first.hasNext());
+		}
+		if (!at.backward()) {
+			Slice<Vet> next = findPaginated(at.position(), PAGE_SIZE);
+			// vets precede the cursor, so this is not the first page whatever it says
+			return new VetsPage(next.getContent(), Math.max(at.page(), 2), true, next.hasNext());
+		}
+		PersonCursor before = at.position();
+		// the last page is a full page sought back from the end, numbered from the cached
+		// count, and the pages before it line up with it rather than with the first page
+		Pageable pageable = PageRequest.ofSize(PAGE_SIZE);
+		Slice<Vet> previous = (before != null) ? vetRepository.findSliceBefore(before.lastName(), before.id(), pageable)
+				: vetRepository.findSliceBefore(null, null, pageable);
+		List<Vet> content = new ArrayList<>(previous.getContent());
+		Collections.reverse(content);
+		// with nothing before it, this is the first page whatever the cursor says
+		int page = previous.hasNext() ? Math.max(at.page(), 2) : 1;
+		return new VetsPage(content, page, previous.hasNext(), before != null);
+	}
+
+	private int totalPages() {
+		return (int) ((this.vetRepository.count() + PAGE_SIZE - 1) / PAGE_SIZE);
+	}
+
+	private Slice<Vet> findPaginated(PersonCursor after, int pageSize) {
+		// always the first page: the cursor, not an offset, skips the earlier vets
+		Pageable pageable = PageRequest.ofSize(pageSize);
+		return (after != null) ? vetRepository.findSliceAfter(after.lastName(), after.id(), pageable)
+				: vetRepository.findSliceAfter(null, null, pageable);
+	}
+
+	private static String nextCursor(Slice<Vet> paginated) {
+		if (!paginated.hasNext()) {
+			return null;
+		}
+		return PersonCursor.after(paginated.getContent().get(paginated.getNumberOfElements() - 1)).encode();
+	}
+
+	private static PersonCursor decodeCursor(String cursor) {
+		try {
+			return (cursor != null) ? PersonCursor.decode(cursor) : null;
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+		}
+	}
+
+	private static PageCursor decodePageCursor(String cursor) {
+		try {
+			return (cursor != null) ? PageCursor.decode(cursor) : null;
+		}
+		catch (IllegalArgumentException e) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor: " + cursor);
+		}
 	}
 
+	/**
+	 * List the vets, all of them or, when a page size or cursor is given, one page in
+	 * order of their last name. Further pages are requested with the {@code nextCursor}
+	 * of the previous page.
+	 * @param cursor the {@code nextCursor} of the previous page
+	 * @param size the maximum number of vets to return
+	 * @return the vets
+	 */
 	@GetMapping({ "/vets" })
-	public @ResponseBody Vets showResourcesVetList() {
+	public @ResponseBody Vets showResourcesVetList(@RequestParam(required = false) String cursor,
+			@RequestParam(required = false) Integer size) {
 		// Here we are returning an object of type 'Vets' rather than a collection of Vet
 		// objects so it is simpler for JSon/Object mapping
 		Vets vets = new Vets();
-		vets.getVetList().addAll(this.vetRepository.findAll());
+		if (cursor == null && size == null) {
+			vets.getVetList().addAll(this.vetRepository.findAll());
+			return vets;
+		}
+		int pageSize = (size != null) ? size : DEFAULT_API_PAGE_SIZE;
+		if (pageSize < 1 || pageSize > MAX_API_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+					"Page size must be between 1 and " + MAX_API_PAGE_SIZE + ": " + pageSize);
+		}
+		Slice<Vet> paginated = findPaginated(decodeCursor(cursor), pageSize);
+		vets.getVetList().addAll(paginated.getContent());
+		vets.setNextCursor(nextCursor(paginated));
 		return vets;
 	}
 
+	/**
+	 * The vets shown on a page of the HTML list, in order.
+	 *
+	 * @param vets the vets of the page
+	 * @param number the number of the page, counting from 1
+	 * @param hasPrevious whether vets precede the page
+	 * @param hasNext whether vets follow the page
+	 */
+	private record VetsPage(List<Vet> vets, int number, boolean hasPrevious, boolean hasNext) {
+
+	}
+
 }
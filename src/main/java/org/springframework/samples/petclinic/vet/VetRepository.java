@@ -17,9 +17,11 @@ package org.springframework.samples.petclinic.vet;
 
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.dao.DataAccessException;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.Repository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Collection;
@@ -46,13 +48,45 @@ public interface VetRepository extends Repository<Vet, Integer> {
 	Collection<Vet> findAll() throws DataAccessException;
 
 	/**
-	 * Retrieve all <code>Vet</code>s from data store in Pages
-	 * @param pageable
-	 * @return
+	 * Count the <code>Vet</code>s in the data store.
+	 * @return the number of <code>Vet</code>s
+	 * @throws DataAccessException
+	 */
+	@Transactional(readOnly = true)
+	@Cacheable(cacheNames = "vets", key = "'count'")
+	long count() throws DataAccessException;
+
+	/**
+	 * Retrieve a slice of <code>Vet</code>s in order of their last name and id, seeking
+	 * past the last vet of the previous slice rather than skipping over its rows. Only
+	 * the first page of {@code pageable} should be requested.
+	 * @param afterLastName continue after the vet with this last name...
+	 * @param afterId ...and this id, or {@code null} for the first slice
+	 * @param pageable the size of the slice
+	 * @return a slice of <code>Vet</code>s
 	 * @throws DataAccessException
 	 */
 	@Transactional(readOnly = true)
 	@Cacheable("vets")
-	Page<Vet> findAll(Pageable pageable) throws DataAccessException;
+	@Query("SELECT v FROM Vet v WHERE :afterLastName IS NULL OR v.lastName > :afterLastName OR (v.lastName = :afterLastName AND v.id > :afterId) ORDER BY v.lastName, v.id")
+	Slice<Vet> findSliceAfter(@Param("afterLastName") String afterLastName, @Param("afterId") Integer afterId,
+			Pageable pageable) throws DataAccessException;
+
+	/**
+	 * Retrieve a slice of <code>Vet</code>s in reverse order of their last name and id,
+	 * seeking backwards from the first vet of the following slice. The slice has a next
+	 * slice if more vets precede it. Only the first page of {@code pageable} should be
+	 * requested.
+	 * @param beforeLastName end before the vet with this last name...
+	 * @param beforeId ...and this id, or {@code null} for the end of the list
+	 * @param pageable the size of the slice
+	 * @return a slice of <code>Vet</code>s
+	 * @throws DataAccessException
+	 */
+	@Transactional(readOnly = true)
+	@Cacheable(cacheNames = "vets", key = "'before|' + #p0 + '|' + #p1 + '|' + #p2.pageSize")
+	@Query("SELECT v FROM Vet v WHERE :beforeLastName IS NULL OR v.lastName < :beforeLastName OR (v.lastName = :beforeLastName AND v.id < :beforeId) ORDER BY v.lastName DESC, v.id DESC")
+	Slice<Vet> findSliceBefore(@Param("beforeLastName") String beforeLastName, @Param("beforeId") Integer beforeId,
+			Pageable pageable) throws DataAccessException;
 
 }
@@ -32,6 +32,8 @@ public class Vets {
 
 	private List<Vet> vets;
 
+	private String nextCursor;
+
 	@XmlElement
 	public List<Vet> getVetList() {
 		if (vets == null) {
@@ -40,4 +42,17 @@ public class Vets {
 		return vets;
 	}
 
+	/**
+	 * @return the cursor of the next page of a paged list, or {@code null} on its last
+	 * page and when all vets are listed
+	 */
+	@XmlElement
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	public void setNextCursor(String nextCursor) {
+		this.nextCursor = nextCursor;
+	}
+
 }
@@ -1,3 +1,5 @@
+DROP TABLE notifications_archive IF EXISTS;
+DROP TABLE notification_deliveries IF EXISTS;
 DROP TABLE notification_schedules IF EXISTS;
 DROP TABLE notifications IF EXISTS;
 DROP TABLE vet_specialties IF EXISTS;
@@ -7,6 +9,8 @@ DROP TABLE visits IF EXISTS;
 DROP TABLE pets IF EXISTS;
 DROP TABLE types IF EXISTS;
 DROP TABLE owners IF EXISTS;
+DROP SEQUENCE notifications_seq IF EXISTS;
+DROP SEQUENCE notification_deliveries_seq IF EXISTS;
 
 
 CREATE TABLE vets (
@@ -14,7 +18,7 @@ CREATE TABLE vets (
   first_name VARCHAR(30),
   last_name  VARCHAR(30)
 );
-CREATE INDEX vets_last_name ON vets (last_name);
+CREATE INDEX vets_last_name ON vets (last_name, id);
 
 CREATE TABLE specialties (
   id   INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -45,7 +49,7 @@ CREATE TABLE owners (
   email                  VARCHAR(255),
   notification_preference VARCHAR(10)
 );
-CREATE INDEX owners_last_name ON owners (last_name);
+CREATE INDEX owners_last_name ON owners (last_name, id);
 
 CREATE TABLE pets (
   id         INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -67,21 +71,44 @@ CREATE TABLE visits (
 ALTER TABLE visits ADD CONSTRAINT fk_visits_pets FOREIGN KEY (pet_id) REFERENCES pets (id);
 CREATE INDEX visits_pet_id ON visits (pet_id);
 
+-- Notifications and their deliveries take ids from pooled sequences, so their inserts
+-- can be batched
+CREATE SEQUENCE notifications_seq START WITH 100 INCREMENT BY 50;
 CREATE TABLE notifications (
-  id             INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  id             INTEGER PRIMARY KEY,
   message        VARCHAR(255) NOT NULL,
   type           VARCHAR(30) NOT NULL,
   status         VARCHAR(30) NOT NULL,
   scheduled_time TIMESTAMP NOT NULL,
   sent_time      TIMESTAMP,
   owner_id       INTEGER NOT NULL,
-  pet_id         INTEGER
+  pet_id         INTEGER,
+  idempotency_key VARCHAR(100)
 );
+ALTER TABLE notifications ADD CONSTRAINT uk_notifications_idempotency_key UNIQUE (idempotency_key);
 ALTER TABLE notifications ADD CONSTRAINT fk_notifications_owners FOREIGN KEY (owner_id) REFERENCES owners (id);
 ALTER TABLE notifications ADD CONSTRAINT fk_notifications_pets FOREIGN KEY (pet_id) REFERENCES pets (id);
-CREATE INDEX notifications_owner_id ON notifications (owner_id);
+CREATE INDEX notifications_owner_id_scheduled_time ON notifications (owner_id, scheduled_time);
 CREATE INDEX notifications_pet_id ON notifications (pet_id);
-CREATE INDEX notifications_status ON notifications (status);
+CREATE INDEX notifications_status_scheduled_time ON notifications (status, scheduled_time);
+CREATE INDEX notifications_scheduled_time_id ON notifications (scheduled_time, id);
+
+CREATE SEQUENCE notification_deliveries_seq START WITH 100 INCREMENT BY 50;
+CREATE TABLE notification_deliveries (
+  id              INTEGER PRIMARY KEY,
+  notification_id INTEGER NOT NULL,
+  channel         VARCHAR(10) NOT NULL,
+  status          VARCHAR(30) NOT NULL,
+  attempts        INTEGER DEFAULT 0 NOT NULL,
+  created_at      TIMESTAMP NOT NULL,
+  last_attempt_at TIMESTAMP,
+  next_attempt_at TIMESTAMP NOT NULL,
+  lease_until     TIMESTAMP,
+  last_error      VARCHAR(255)
+);
+ALTER TABLE notification_deliveries ADD CONSTRAINT fk_notification_deliveries_notifications FOREIGN KEY (notification_id) REFERENCES notifications (id);
+CREATE INDEX notification_deliveries_notification_id ON notification_deliveries (notification_id);
+CREATE INDEX notification_deliveries_status_next_attempt_at ON notification_deliveries (status, next_attempt_at);
 
 CREATE TABLE notification_schedules (
   id               INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -92,11 +119,29 @@ CREATE TABLE notification_schedules (
   enabled          BOOLEAN DEFAULT TRUE,
   owner_id         INTEGER NOT NULL,
   pet_id           INTEGER,
-  visit_id         INTEGER
+  visit_id         INTEGER,
+  claimed_by       VARCHAR(64),
+  lease_until      TIMESTAMP
 );
 ALTER TABLE notification_schedules ADD CONSTRAINT fk_notification_schedules_owners FOREIGN KEY (owner_id) REFERENCES owners (id);
 ALTER TABLE notification_schedules ADD CONSTRAINT fk_notification_schedules_pets FOREIGN KEY (pet_id) REFERENCES pets (id);
 ALTER TABLE notification_schedules ADD CONSTRAINT fk_notification_schedules_visits FOREIGN KEY (visit_id) REFERENCES visits (id);
 CREATE INDEX notification_schedules_owner_id ON notification_schedules (owner_id);
 CREATE INDEX notification_schedules_pet_id ON notification_schedules (pet_id);
-CREATE INDEX notification_schedules_visit_id ON notification_schedules (visit_id);
+ALTER TABLE notification_schedules ADD CONSTRAINT uk_notification_schedules_visit_id_type_days_before UNIQUE (visit_id, type, days_before);
+CREATE INDEX notification_schedules_enabled_scheduled_time ON notification_schedules (enabled, scheduled_time);
+
+-- Notifications past their retention are moved here, keeping the notifications table small
+CREATE TABLE notifications_archive (
+  id              INTEGER PRIMARY KEY,
+  message         VARCHAR(255) NOT NULL,
+  type            VARCHAR(30) NOT NULL,
+  status          VARCHAR(30) NOT NULL,
+  scheduled_time  TIMESTAMP NOT NULL,
+  sent_time       TIMESTAMP,
+  owner_id        INTEGER NOT NULL,
+  pet_id          INTEGER,
+  idempotency_key VARCHAR(100)
+);
+CREATE INDEX notifications_archive_owner_id_scheduled_time ON notifications_archive (owner_id, scheduled_time);
+CREATE INDEX notifications_archive_scheduled_time_id ON notifications_archive (scheduled_time, id);
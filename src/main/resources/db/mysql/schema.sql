@@ -2,7 +2,7 @@ CREATE TABLE IF NOT EXISTS vets (
   id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
   first_name VARCHAR(30),
   last_name VARCHAR(30),
-  INDEX(last_name)
+  INDEX(last_name, id)
 ) engine=InnoDB;
 
 CREATE TABLE IF NOT EXISTS specialties (
@@ -34,7 +34,7 @@ CREATE TABLE IF NOT EXISTS owners (
   telephone VARCHAR(20),
   email VARCHAR(255),
   notification_preference VARCHAR(10),
-  INDEX(last_name)
+  INDEX(last_name, id)
 ) engine=InnoDB;
 
 CREATE TABLE IF NOT EXISTS pets (
@@ -56,8 +56,20 @@ CREATE TABLE IF NOT EXISTS visits (
   FOREIGN KEY (pet_id) REFERENCES pets(id)
 ) engine=InnoDB;
 
+-- Notifications and their deliveries take ids from pooled sequences, so their inserts
+-- can be batched. MySQL has no sequences, Hibernate keeps them in these tables instead
+CREATE TABLE IF NOT EXISTS notifications_seq (
+  next_val BIGINT NOT NULL
+) engine=InnoDB;
+INSERT INTO notifications_seq (next_val) SELECT 100 FROM DUAL WHERE NOT EXISTS (SELECT * FROM notifications_seq);
+
+CREATE TABLE IF NOT EXISTS notification_deliveries_seq (
+  next_val BIGINT NOT NULL
+) engine=InnoDB;
+INSERT INTO notification_deliveries_seq (next_val) SELECT 100 FROM DUAL WHERE NOT EXISTS (SELECT * FROM notification_deliveries_seq);
+
 CREATE TABLE IF NOT EXISTS notifications (
-  id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+  id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
   message VARCHAR(255) NOT NULL,
   type VARCHAR(30) NOT NULL,
   status VARCHAR(30) NOT NULL,
@@ -65,13 +77,32 @@ CREATE TABLE IF NOT EXISTS notifications (
   sent_time DATETIME,
   owner_id INT(4) UNSIGNED NOT NULL,
   pet_id INT(4) UNSIGNED,
-  INDEX(owner_id),
+  idempotency_key VARCHAR(100),
+  UNIQUE (idempotency_key),
+  INDEX(owner_id, scheduled_time),
   INDEX(pet_id),
-  INDEX(status),
+  INDEX(status, scheduled_time),
+  INDEX(scheduled_time, id),
   FOREIGN KEY (owner_id) REFERENCES owners(id),
   FOREIGN KEY (pet_id) REFERENCES pets(id)
 ) engine=InnoDB;
 
+CREATE TABLE IF NOT EXISTS notification_deliveries (
+  id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
+  notification_id INT(4) UNSIGNED NOT NULL,
+  channel VARCHAR(10) NOT NULL,
+  status VARCHAR(30) NOT NULL,
+  attempts INT(4) NOT NULL DEFAULT 0,
+  created_at DATETIME NOT NULL,
+  last_attempt_at DATETIME,
+  next_attempt_at DATETIME NOT NULL,
+  lease_until DATETIME,
+  last_error VARCHAR(255),
+  INDEX(notification_id),
+  INDEX(status, next_attempt_at),
+  FOREIGN KEY (notification_id) REFERENCES notifications(id)
+) engine=InnoDB;
+
 CREATE TABLE IF NOT EXISTS notification_schedules (
   id INT(4) UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
   message_template VARCHAR(255) NOT NULL,
@@ -82,10 +113,28 @@ CREATE TABLE IF NOT EXISTS notification_schedules (
   owner_id INT(4) UNSIGNED NOT NULL,
   pet_id INT(4) UNSIGNED,
   visit_id INT(4) UNSIGNED,
+  claimed_by VARCHAR(64),
+  lease_until DATETIME,
   INDEX(owner_id),
   INDEX(pet_id),
-  INDEX(visit_id),
+  UNIQUE (visit_id, type, days_before),
+  INDEX(enabled, scheduled_time),
   FOREIGN KEY (owner_id) REFERENCES owners(id),
   FOREIGN KEY (pet_id) REFERENCES pets(id),
   FOREIGN KEY (visit_id) REFERENCES visits(id)
 ) engine=InnoDB;
+
+-- Notifications past their retention are moved here, keeping the notifications table small
+CREATE TABLE IF NOT EXISTS notifications_archive (
+  id INT(4) UNSIGNED NOT NULL PRIMARY KEY,
+  message VARCHAR(255) NOT NULL,
+  type VARCHAR(30) NOT NULL,
+  status VARCHAR(30) NOT NULL,
+  scheduled_time DATETIME NOT NULL,
+  sent_time DATETIME,
+  owner_id INT(4) UNSIGNED NOT NULL,
+  pet_id INT(4) UNSIGNED,
+  idempotency_key VARCHAR(100),
+  INDEX(owner_id, scheduled_time),
+  INDEX(scheduled_time, id)
+) engine=InnoDB;
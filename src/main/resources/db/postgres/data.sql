@@ -73,24 +73,24 @@ INSERT INTO visits (pet_id, visit_date, description) SELECT 8, '2009-06-04', 'ne
 INSERT INTO visits (pet_id, visit_date, description) SELECT 7, '2008-09-04', 'spayed' WHERE NOT EXISTS (SELECT * FROM visits WHERE id=4);
 
 -- Sample data for notifications table
-INSERT INTO notifications (message, type, status, scheduled_time, sent_time, owner_id, pet_id)
-  SELECT 'Reminder: Your appointment with Dr. Carter for Leo is tomorrow at 10:00 AM', 'EMAIL', 'PENDING', '2025-05-20 10:00:00', NULL, 1, 1
+INSERT INTO notifications (id, message, type, status, scheduled_time, sent_time, owner_id, pet_id, idempotency_key)
+  SELECT 1, 'Reminder: Your appointment with Dr. Carter for Leo is tomorrow at 10:00 AM', 'EMAIL', 'PENDING', '2025-05-20 10:00:00', NULL, 1, 1, NULL
   WHERE NOT EXISTS (SELECT * FROM notifications WHERE id=1);
 
-INSERT INTO notifications (message, type, status, scheduled_time, sent_time, owner_id, pet_id)
-  SELECT 'Reminder: Basil is due for annual checkup next week', 'SMS', 'SENT', '2025-05-15 09:00:00', '2025-05-15 09:05:23', 2, 2
+INSERT INTO notifications (id, message, type, status, scheduled_time, sent_time, owner_id, pet_id, idempotency_key)
+  SELECT 2, 'Reminder: Basil is due for annual checkup next week', 'SMS', 'SENT', '2025-05-15 09:00:00', '2025-05-15 09:05:23', 2, 2, NULL
   WHERE NOT EXISTS (SELECT * FROM notifications WHERE id=2);
 
-INSERT INTO notifications (message, type, status, scheduled_time, sent_time, owner_id, pet_id)
-  SELECT 'Time for Rosy''s heartworm medication', 'EMAIL', 'PENDING', '2025-05-25 08:00:00', NULL, 3, 3
+INSERT INTO notifications (id, message, type, status, scheduled_time, sent_time, owner_id, pet_id, idempotency_key)
+  SELECT 3, 'Time for Rosy''s heartworm medication', 'EMAIL', 'PENDING', '2025-05-25 08:00:00', NULL, 3, 3, NULL
   WHERE NOT EXISTS (SELECT * FROM notifications WHERE id=3);
 
-INSERT INTO notifications (message, type, status, scheduled_time, sent_time, owner_id, pet_id)
-  SELECT 'Reminder: Jewel has an appointment on Monday for vaccinations', 'SMS', 'FAILED', '2025-05-18 11:00:00', '2025-05-18 11:02:45', 3, 4
+INSERT INTO notifications (id, message, type, status, scheduled_time, sent_time, owner_id, pet_id, idempotency_key)
+  SELECT 4, 'Reminder: Jewel has an appointment on Monday for vaccinations', 'SMS', 'FAILED', '2025-05-18 11:00:00', '2025-05-18 11:02:45', 3, 4, NULL
   WHERE NOT EXISTS (SELECT * FROM notifications WHERE id=4);
 
-INSERT INTO notifications (message, type, status, scheduled_time, sent_time, owner_id, pet_id)
-  SELECT 'Reminder: Iggy''s dental cleaning is scheduled for next Friday', 'EMAIL', 'SENT', '2025-05-10 14:00:00', '2025-05-10 14:01:12', 4, 5
+INSERT INTO notifications (id, message, type, status, scheduled_time, sent_time, owner_id, pet_id, idempotency_key)
+  SELECT 5, 'Reminder: Iggy''s dental cleaning is scheduled for next Friday', 'EMAIL', 'SENT', '2025-05-10 14:00:00', '2025-05-10 14:01:12', 4, 5, NULL
   WHERE NOT EXISTS (SELECT * FROM notifications WHERE id=5);
 
 -- Sample data for notification_schedules table
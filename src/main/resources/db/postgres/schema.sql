@@ -3,7 +3,7 @@ CREATE TABLE IF NOT EXISTS vets (
   first_name TEXT,
   last_name  TEXT
 );
-CREATE INDEX ON vets (last_name);
+CREATE INDEX ON vets (last_name, id);
 
 CREATE TABLE IF NOT EXISTS specialties (
   id   INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -33,7 +33,7 @@ CREATE TABLE IF NOT EXISTS owners (
   email                 TEXT,
   notification_preference TEXT DEFAULT 'NONE'
 );
-CREATE INDEX ON owners (last_name);
+CREATE INDEX ON owners (last_name, id);
 
 CREATE TABLE IF NOT EXISTS pets (
   id         INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -53,19 +53,41 @@ CREATE TABLE IF NOT EXISTS visits (
 );
 CREATE INDEX ON visits (pet_id);
 
+-- Notifications and their deliveries take ids from pooled sequences, so their inserts
+-- can be batched
+CREATE SEQUENCE IF NOT EXISTS notifications_seq START WITH 100 INCREMENT BY 50;
 CREATE TABLE IF NOT EXISTS notifications (
-  id             INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  id             INT PRIMARY KEY,
   message        TEXT NOT NULL,
   type           TEXT NOT NULL,
   status         TEXT NOT NULL,
   scheduled_time TIMESTAMP NOT NULL,
   sent_time      TIMESTAMP,
   owner_id       INT NOT NULL REFERENCES owners (id),
-  pet_id         INT REFERENCES pets (id)
+  pet_id         INT REFERENCES pets (id),
+  idempotency_key VARCHAR(100) UNIQUE
 );
-CREATE INDEX ON notifications (owner_id);
+CREATE INDEX ON notifications (owner_id, scheduled_time);
 CREATE INDEX ON notifications (pet_id);
-CREATE INDEX ON notifications (status);
+CREATE INDEX ON notifications (status, scheduled_time);
+CREATE INDEX ON notifications (scheduled_time, id);
+
+CREATE SEQUENCE IF NOT EXISTS notification_deliveries_seq START WITH 100 INCREMENT BY 50;
+CREATE TABLE IF NOT EXISTS notification_deliveries (
+  id              INT PRIMARY KEY,
+  notification_id INT NOT NULL REFERENCES notifications (id),
+  channel         TEXT NOT NULL,
+  status          TEXT NOT NULL,
+  attempts        INT NOT NULL DEFAULT 0,
+  created_at      TIMESTAMP NOT NULL,
+  last_attempt_at TIMESTAMP,
+  next_attempt_at TIMESTAMP NOT NULL,
+  lease_until     TIMESTAMP,
+  last_error      TEXT
+);
+CREATE INDEX ON notification_deliveries (notification_id);
+CREATE INDEX ON notification_deliveries (status);
+CREATE INDEX ON notification_deliveries (next_attempt_at) WHERE status IN ('PENDING', 'FAILED');
 
 CREATE TABLE IF NOT EXISTS notification_schedules (
   id               INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -76,8 +98,32 @@ CREATE TABLE IF NOT EXISTS notification_schedules (
   enabled          BOOLEAN DEFAULT TRUE,
   owner_id         INT NOT NULL REFERENCES owners (id),
   pet_id           INT REFERENCES pets (id),
-  visit_id         INT REFERENCES visits (id)
+  visit_id         INT REFERENCES visits (id),
+  claimed_by       TEXT,
+  lease_until      TIMESTAMP
 );
 CREATE INDEX ON notification_schedules (owner_id);
 CREATE INDEX ON notification_schedules (pet_id);
-CREATE INDEX ON notification_schedules (visit_id);
+CREATE UNIQUE INDEX ON notification_schedules (visit_id, type, days_before);
+CREATE INDEX ON notification_schedules (scheduled_time) WHERE enabled;
+
+-- Notifications past their retention are moved here, keeping the notifications table
+-- small. The archive is partitioned by scheduled time so old history can be detached or
+-- dropped a partition at a time; rows without a matching partition land in the default
+-- one, for example: CREATE TABLE notifications_archive_2025 PARTITION OF
+-- notifications_archive FOR VALUES FROM ('2025-01-01') TO ('2026-01-01');
+CREATE TABLE IF NOT EXISTS notifications_archive (
+  id              INT NOT NULL,
+  message         TEXT NOT NULL,
+  type            TEXT NOT NULL,
+  status          TEXT NOT NULL,
+  scheduled_time  TIMESTAMP NOT NULL,
+  sent_time       TIMESTAMP,
+  owner_id        INT NOT NULL,
+  pet_id          INT,
+  idempotency_key VARCHAR(100),
+  PRIMARY KEY (id, scheduled_time)
+) PARTITION BY RANGE (scheduled_time);
+CREATE TABLE IF NOT EXISTS notifications_archive_default PARTITION OF notifications_archive DEFAULT;
+CREATE INDEX ON notifications_archive (owner_id, scheduled_time);
+CREATE INDEX ON notifications_archive (scheduled_time, id);
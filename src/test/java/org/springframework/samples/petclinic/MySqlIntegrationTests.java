@@ -18,6 +18,12 @@ package org.springframework.samples.petclinic;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledInNativeImage;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,9 +35,12 @@ import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.RequestEntity;
 import org.springframework.http.ResponseEntity;
+import org.springframework.samples.petclinic.notification.NotificationRepository;
+import org.springframework.samples.petclinic.notification.NotificationView;
 import org.springframework.samples.petclinic.vet.VetRepository;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.aot.DisabledInAotMode;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.testcontainers.containers.MySQLContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -57,6 +66,15 @@ class MySqlIntegrationTests {
 	@Autowired
 	private RestTemplateBuilder builder;
 
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private NotificationRepository notifications;
+
+	@Autowired
+	private TransactionTemplate transactions;
+
 	@Test
 	void testFindAll() {
 		vets.findAll();
@@ -70,4 +88,15 @@ class MySqlIntegrationTests {
 		assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
 	}
 
+	@Test
+	void testNotificationStreamUsesCursorFetch() {
+		assertThat(((HikariDataSource) dataSource).getDataSourceProperties()).containsEntry("useCursorFetch", "true");
+		List<NotificationView> streamed = transactions.execute(status -> {
+			try (Stream<NotificationView> views = notifications.streamViews(null, null, null, null, null)) {
+				return views.toList();
+			}
+		});
+		assertThat(streamed).isNotEmpty();
+	}
+
 }
@@ -0,0 +1,43 @@
+package org.springframework.samples.petclinic.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PageCursor}.
+ */
+class PageCursorTests {
+
+	@Test
+	void shouldDecodeEncodedCursor() {
+		PageCursor after = PageCursor.after(new PersonCursor("O'Brien|Smith", 42), 3);
+		PageCursor before = PageCursor.before(new PersonCursor("Davis", 7), 2);
+		PageCursor last = PageCursor.last(9);
+
+		assertThat(after.encode()).matches("[A-Za-z0-9_-]+");
+		assertThat(PageCursor.decode(after.encode())).isEqualTo(after);
+		assertThat(PageCursor.decode(before.encode())).isEqualTo(before);
+		assertThat(PageCursor.decode(last.encode())).isEqualTo(last);
+	}
+
+	@Test
+	void shouldRejectMalformedCursor() {
+		assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode("not a cursor"));
+		assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode(encode("x|after|")));
+		assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode(encode("2|sideways|")));
+		assertThatIllegalArgumentException()
+			.isThrownBy(() -> PageCursor.decode(encode("0|after|" + new PersonCursor("Davis", 7).encode())));
+		// Only the first page has no position to seek after, and it has no cursor
+		assertThatIllegalArgumentException().isThrownBy(() -> PageCursor.decode(encode("2|after|")));
+	}
+
+	private static String encode(String value) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+}
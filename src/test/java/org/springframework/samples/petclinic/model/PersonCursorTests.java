@@ -0,0 +1,29 @@
+package org.springframework.samples.petclinic.model;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link PersonCursor}.
+ */
+class PersonCursorTests {
+
+	@Test
+	void shouldDecodeEncodedCursor() {
+		PersonCursor cursor = new PersonCursor("O'Brien|Smith", 42);
+
+		String encoded = cursor.encode();
+
+		assertThat(encoded).matches("[A-Za-z0-9_-]+");
+		assertThat(PersonCursor.decode(encoded)).isEqualTo(cursor);
+	}
+
+	@Test
+	void shouldRejectMalformedCursor() {
+		assertThatIllegalArgumentException().isThrownBy(() -> PersonCursor.decode("not a cursor"));
+		assertThatIllegalArgumentException().isThrownBy(() -> PersonCursor.decode("bm90IGEgY3Vyc29y"));
+	}
+
+}
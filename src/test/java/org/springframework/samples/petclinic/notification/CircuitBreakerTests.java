@@ -0,0 +1,179 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.notification.CircuitBreaker.State;
+
+/**
+ * Unit tests for {@link CircuitBreaker}.
+ */
+class CircuitBreakerTests {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private CircuitBreaker breaker;
+
+	@BeforeEach
+	void setUp() {
+		// A window of four calls, judged from two, opening at half of them failing
+		breaker = new CircuitBreaker("test", 4, 2, 50, Duration.ofSeconds(30), 2, clock::get);
+	}
+
+	private void call(boolean success) {
+		assertThat(breaker.tryAcquire()).isTrue();
+		if (success) {
+			breaker.recordSuccess();
+		}
+		else {
+			breaker.recordFailure();
+		}
+	}
+
+	private void elapse(Duration duration) {
+		clock.addAndGet(duration.toNanos());
+	}
+
+	@Test
+	void shouldStayClosedBelowMinimumCalls() {
+		call(false);
+
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	void shouldOpenAtFailureRateThreshold() {
+		call(true);
+		call(true);
+		call(false);
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+
+		call(false);
+
+		assertThat(breaker.getState()).isEqualTo(State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void shouldOnlyJudgeRecentCalls() {
+		// Failures that slid out of the window no longer count
+		call(false);
+		call(true);
+		call(true);
+		call(true);
+		call(true);
+
+		call(false);
+
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	void shouldProbeOnceOpenDurationHasPassed() {
+		call(false);
+		call(false);
+
+		elapse(Duration.ofSeconds(29));
+		assertThat(breaker.tryAcquire()).isFalse();
+
+		elapse(Duration.ofSeconds(1));
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.getState()).isEqualTo(State.HALF_OPEN);
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void shouldTellWhetherCallIsPermittedWithoutTakingProbe() {
+		assertThat(breaker.isCallPermitted()).isTrue();
+		call(false);
+		call(false);
+		assertThat(breaker.isCallPermitted()).isFalse();
+
+		elapse(Duration.ofSeconds(30));
+		assertThat(breaker.isCallPermitted()).isTrue();
+		assertThat(breaker.isCallPermitted()).isTrue();
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.isCallPermitted()).isFalse();
+	}
+
+	@Test
+	void shouldCloseWhenProbesSucceed() {
+		call(false);
+		call(false);
+		elapse(Duration.ofSeconds(30));
+
+		call(true);
+		call(true);
+
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+		call(false);
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	void shouldOpenAgainWhenProbeFails() {
+		call(false);
+		call(false);
+		elapse(Duration.ofSeconds(30));
+
+		call(true);
+		call(false);
+
+		assertThat(breaker.getState()).isEqualTo(State.OPEN);
+		assertThat(breaker.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void shouldProbeAgainWhenProbesNeverReport() {
+		call(false);
+		call(false);
+		elapse(Duration.ofSeconds(30));
+		breaker.tryAcquire();
+		breaker.tryAcquire();
+
+		elapse(Duration.ofSeconds(30));
+
+		assertThat(breaker.tryAcquire()).isTrue();
+	}
+
+	@Test
+	void shouldReissueAbandonedProbe() {
+		call(false);
+		call(false);
+		elapse(Duration.ofSeconds(30));
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isTrue();
+
+		breaker.release();
+
+		assertThat(breaker.tryAcquire()).isTrue();
+		assertThat(breaker.tryAcquire()).isFalse();
+		breaker.recordSuccess();
+		breaker.recordSuccess();
+		assertThat(breaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	void shouldIgnoreReleaseWhileClosed() {
+		breaker.release();
+		call(false);
+		call(false);
+
+		assertThat(breaker.getState()).isEqualTo(State.OPEN);
+	}
+
+	@Test
+	void shouldRejectInvalidConfiguration() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new CircuitBreaker("test", 0, Duration.ofSeconds(30)));
+		assertThatIllegalArgumentException().isThrownBy(() -> new CircuitBreaker("test", 101, Duration.ofSeconds(30)));
+		assertThatIllegalArgumentException().isThrownBy(() -> new CircuitBreaker("test", 50, Duration.ofSeconds(-1)));
+	}
+
+}
@@ -4,15 +4,19 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -27,10 +31,6 @@ public class EmailNotificationServiceTests {
 	@Mock
 	private JavaMailSender emailSender;
 
-	@Mock
-	private NotificationTemplateService templateService;
-
-	@InjectMocks
 	private EmailNotificationService emailNotificationService;
 
 	private Owner owner;
@@ -39,6 +39,8 @@ public class EmailNotificationServiceTests {
 
 	@BeforeEach
 	void setUp() {
+		emailNotificationService = new EmailNotificationService(emailSender, 2, 2, 50, Duration.ofSeconds(30));
+
 		// Set sender email through reflection since we're not loading application
 		// properties
 		ReflectionTestUtils.setField(emailNotificationService, "senderEmail", "test@petclinic.com");
@@ -67,7 +69,7 @@ public class EmailNotificationServiceTests {
 	void shouldSendEmailNotification() {
 		// Given
 		String processedMessage = "Dear John, this is your processed notification message";
-		when(templateService.processNotification(notification)).thenReturn(processedMessage);
+		notification.setMessage(processedMessage);
 
 		// When
 		boolean result = emailNotificationService.send(notification);
@@ -100,7 +102,6 @@ public class EmailNotificationServiceTests {
 		assertFalse(result);
 		// Service should not attempt to send
 		verifyNoInteractions(emailSender);
-		verifyNoInteractions(templateService);
 	}
 
 	@Test
@@ -114,7 +115,6 @@ public class EmailNotificationServiceTests {
 		// Then
 		assertFalse(result);
 		verifyNoInteractions(emailSender);
-		verifyNoInteractions(templateService);
 	}
 
 	@Test
@@ -168,9 +168,6 @@ public class EmailNotificationServiceTests {
 	@Test
 	void shouldGenerateCorrectSubjectForDifferentNotificationTypes() {
 		// Test different notification types and their corresponding subjects
-		// Given
-		when(templateService.processNotification(any(Notification.class))).thenReturn("Processed message");
-
 		// For Appointment Reminder
 		notification.setType(NotificationType.APPOINTMENT_REMINDER);
 		emailNotificationService.send(notification);
@@ -198,4 +195,134 @@ public class EmailNotificationServiceTests {
 		assertEquals("Pet Clinic: Vaccination Reminder", vaccinationCaptor.getValue().getSubject());
 	}
 
+	private Notification notification(int id, String email) {
+		Owner recipient = new Owner();
+		recipient.setEmail(email);
+		recipient.setNotificationPreference(NotificationPreference.EMAIL);
+		Notification batched = new Notification("Test message", NotificationType.VACCINATION_REMINDER,
+				LocalDateTime.now(), recipient);
+		batched.setId(id);
+		return batched;
+	}
+
+	private List<RenderedNotification> rendered(Notification... notifications) {
+		return Arrays.stream(notifications).map(RenderedNotification::of).toList();
+	}
+
+	@Test
+	void shouldSendBatchOverOneConnection() {
+		// Given
+		Notification first = notification(1, "first@example.com");
+		Notification second = notification(2, "second@example.com");
+
+		// When
+		List<Notification> sent = emailNotificationService.send(rendered(first, second));
+
+		// Then - both messages are handed to the mail sender in a single call
+		ArgumentCaptor<SimpleMailMessage[]> messagesCaptor = ArgumentCaptor.forClass(SimpleMailMessage[].class);
+		verify(emailSender, times(1)).send(messagesCaptor.capture());
+		assertEquals(2, messagesCaptor.getValue().length);
+		assertEquals(List.of(first, second), sent);
+		assertEquals(NotificationStatus.SENT, first.getStatus());
+		assertNotNull(second.getSentTime());
+	}
+
+	@Test
+	void shouldSplitBatchByMaxMessagesPerConnection() {
+		// Given - three messages and room for two per connection
+
+		// When
+		List<Notification> sent = emailNotificationService.send(rendered(notification(1, "first@example.com"),
+				notification(2, "second@example.com"), notification(3, "third@example.com")));
+
+		// Then
+		verify(emailSender, times(2)).send(any(SimpleMailMessage[].class));
+		assertEquals(3, sent.size());
+	}
+
+	@Test
+	void shouldFailOnlyRejectedMessagesOfBatch() {
+		// Given - the server rejects the second recipient
+		Notification first = notification(1, "first@example.com");
+		Notification second = notification(2, "rejected@example.com");
+		doAnswer(invocation -> {
+			SimpleMailMessage rejected = invocation.getArgument(1);
+			throw new MailSendException(Map.of(rejected, new IllegalStateException("550 mailbox unavailable")));
+		}).when(emailSender).send(any(SimpleMailMessage[].class));
+
+		// When
+		List<Notification> sent = emailNotificationService.send(rendered(first, second));
+
+		// Then
+		assertEquals(List.of(first), sent);
+		assertEquals(NotificationStatus.SENT, first.getStatus());
+		assertEquals(NotificationStatus.FAILED, second.getStatus());
+	}
+
+	@Test
+	void shouldFailWholeBatchWhenConnectionFails() {
+		// Given
+		Notification first = notification(1, "first@example.com");
+		Notification second = notification(2, "second@example.com");
+		doThrow(new MailSendException("Connection refused")).when(emailSender).send(any(SimpleMailMessage[].class));
+
+		// When
+		List<Notification> sent = emailNotificationService.send(rendered(first, second));
+
+		// Then
+		assertTrue(sent.isEmpty());
+		assertEquals(NotificationStatus.FAILED, first.getStatus());
+		assertEquals(NotificationStatus.FAILED, second.getStatus());
+	}
+
+	@Test
+	void shouldFailFastOnceSmtpCircuitIsOpen() {
+		// Given - the SMTP server cannot be reached
+		doThrow(new MailSendException("Connection refused")).when(emailSender).send(any(SimpleMailMessage[].class));
+		for (int i = 1; i <= 10; i++) {
+			emailNotificationService.send(rendered(notification(i, "owner" + i + "@example.com")));
+		}
+
+		// When
+		Notification notification = notification(11, "eleventh@example.com");
+		List<RenderedNotification> contents = rendered(notification);
+
+		// Then - the last send never reached the server, and says so
+		assertThrows(CallNotPermittedException.class, () -> emailNotificationService.send(contents));
+		assertEquals(CircuitBreaker.State.OPEN, emailNotificationService.getCircuitBreaker().getState());
+		verify(emailSender, times(10)).send(any(SimpleMailMessage[].class));
+		assertEquals(NotificationStatus.FAILED, notification.getStatus());
+	}
+
+	@Test
+	void shouldNotOpenCircuitForRejectedRecipients() {
+		// Given
+		doAnswer(invocation -> {
+			SimpleMailMessage rejected = invocation.getArgument(0);
+			throw new MailSendException(Map.of(rejected, new IllegalStateException("550 mailbox unavailable")));
+		}).when(emailSender).send(any(SimpleMailMessage[].class));
+
+		// When
+		for (int i = 1; i <= 10; i++) {
+			emailNotificationService.send(rendered(notification(i, "owner" + i + "@example.com")));
+		}
+
+		// Then
+		assertEquals(CircuitBreaker.State.CLOSED, emailNotificationService.getCircuitBreaker().getState());
+	}
+
+	@Test
+	void shouldLeaveOutNotificationsItCannotHandleFromBatch() {
+		// Given
+		Notification first = notification(1, "first@example.com");
+		Notification missingEmail = notification(2, null);
+
+		// When
+		List<Notification> sent = emailNotificationService.send(rendered(first, missingEmail));
+
+		// Then
+		assertEquals(List.of(first), sent);
+		assertEquals(NotificationStatus.PENDING, missingEmail.getStatus());
+	}
+
 }
@@ -0,0 +1,86 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link HierarchicalTimingWheel}.
+ */
+class HierarchicalTimingWheelTests {
+
+	private static final long START = 1_000_000;
+
+	private final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(100, 8, 3, START);
+
+	@Test
+	void shouldFireKeyOnceItsDeadlineIsReached() {
+		wheel.schedule("a", START + 250);
+
+		assertThat(wheel.advance(START + 200)).isEmpty();
+		assertThat(wheel.advance(START + 300)).containsExactly("a");
+		assertThat(wheel.advance(START + 400)).isEmpty();
+		assertThat(wheel.size()).isZero();
+	}
+
+	@Test
+	void shouldMoveFarDeadlinesDownThroughLevels() {
+		// Beyond one rotation of the lowest level (8 ticks) and of the second (64 ticks)
+		wheel.schedule("level1", START + 2_000);
+		wheel.schedule("level2", START + 30_000);
+
+		List<String> fired = new ArrayList<>();
+		long firedLevel1At = -1;
+		for (long now = START; now <= START + 31_000; now += 100) {
+			List<String> due = wheel.advance(now);
+			if (due.contains("level1")) {
+				firedLevel1At = now;
+			}
+			fired.addAll(due);
+		}
+
+		assertThat(fired).containsExactly("level1", "level2");
+		assertThat(firedLevel1At).isEqualTo(START + 2_000);
+	}
+
+	@Test
+	void shouldFireEverythingDueWhenAdvancedInOneStep() {
+		wheel.schedule("late", START + 5_000);
+		wheel.schedule("early", START + 500);
+
+		assertThat(wheel.advance(START + 10_000)).containsExactly("early", "late");
+	}
+
+	@Test
+	void shouldFireOverdueKeyOnNextAdvance() {
+		wheel.schedule("overdue", START - 60_000);
+
+		assertThat(wheel.advance(START)).containsExactly("overdue");
+	}
+
+	@Test
+	void shouldKeepDeadlinesBeyondTopLevelInOverflow() {
+		// The three levels cover 8 * 8 * 8 ticks, 51.2 seconds
+		wheel.schedule("overflow", START + 120_000);
+
+		assertThat(wheel.advance(START + 119_900)).isEmpty();
+		assertThat(wheel.advance(START + 120_000)).containsExactly("overflow");
+	}
+
+	@Test
+	void shouldCancelAndRescheduleKeys() {
+		wheel.schedule("cancelled", START + 500);
+		wheel.schedule("moved", START + 500);
+
+		assertThat(wheel.cancel("cancelled")).isTrue();
+		assertThat(wheel.cancel("unknown")).isFalse();
+		wheel.schedule("moved", START + 5_000);
+
+		assertThat(wheel.advance(START + 1_000)).isEmpty();
+		assertThat(wheel.advance(START + 5_000)).containsExactly("moved");
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Stream;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Tests for {@link NotificationArchiver} and reading the archive through
+ * {@link NotificationHistory}.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+class NotificationArchiverTests {
+
+	@Autowired
+	private NotificationRepository notifications;
+
+	@Autowired
+	private NotificationDeliveryRepository deliveries;
+
+	@Autowired
+	private ArchivedNotificationRepository archive;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+
+	private NotificationArchiver archiver;
+
+	private NotificationHistory history;
+
+	private Notification oldSent;
+
+	private Notification oldSkipped;
+
+	private Notification oldPending;
+
+	private Notification oldRetrying;
+
+	private Notification recentSent;
+
+	@BeforeEach
+	void setUp() {
+		// Only consider the notifications created by this test
+		entityManager.createNativeQuery("DELETE FROM notification_deliveries").executeUpdate();
+		entityManager.createNativeQuery("DELETE FROM notifications").executeUpdate();
+
+		// A batch size of one moves each notification in its own batch
+		archiver = new NotificationArchiver(notifications, deliveries, archive, transactionManager, Duration.ofDays(90),
+				1);
+		history = new NotificationHistory(notifications, archive, archiver);
+
+		Owner owner = entityManager.find(Owner.class, 1);
+		oldSent = notification(owner, NotificationStatus.SENT, now.minusDays(120), NotificationStatus.SENT);
+		oldSkipped = notification(owner, NotificationStatus.SKIPPED, now.minusDays(100), null);
+		oldPending = notification(owner, NotificationStatus.PENDING, now.minusDays(110), null);
+		oldRetrying = notification(owner, NotificationStatus.FAILED, now.minusDays(105), NotificationStatus.FAILED);
+		recentSent = notification(owner, NotificationStatus.SENT, now.minusDays(1), NotificationStatus.SENT);
+		entityManager.flush();
+	}
+
+	private Notification notification(Owner owner, NotificationStatus status, LocalDateTime scheduledTime,
+			NotificationStatus deliveryStatus) {
+		Notification notification = new Notification("Check-up", NotificationType.APPOINTMENT_REMINDER, scheduledTime,
+				owner);
+		notification.setStatus(status);
+		notifications.save(notification);
+		if (deliveryStatus != null) {
+			NotificationDelivery delivery = new NotificationDelivery(notification, NotificationChannel.EMAIL);
+			delivery.setStatus(deliveryStatus);
+			deliveries.save(delivery);
+		}
+		return notification;
+	}
+
+	private List<Integer> ids(List<NotificationView> views) {
+		return views.stream().map(NotificationView::id).toList();
+	}
+
+	@Test
+	void shouldArchiveSettledNotificationsOlderThanRetention() {
+		assertThat(archiver.archive(now)).isEqualTo(2);
+		entityManager.clear();
+
+		assertThat(notifications.findAll()).extracting(Notification::getId)
+			.containsExactlyInAnyOrder(oldPending.getId(), oldRetrying.getId(), recentSent.getId());
+		assertThat(deliveries.findByNotification(oldSent)).isEmpty();
+		assertThat(ids(archive.findViews(null, null, null, null, null, null, null, null)))
+			.containsExactly(oldSkipped.getId(), oldSent.getId());
+		assertThat(archiver.archive(now)).isZero();
+	}
+
+	@Test
+	void shouldArchiveDeadLettersOlderThanRetention() {
+		Owner owner = entityManager.find(Owner.class, 1);
+		Notification oldDeadLetter = notification(owner, NotificationStatus.DEAD_LETTER, now.minusDays(95),
+				NotificationStatus.DEAD_LETTER);
+		Notification recentDeadLetter = notification(owner, NotificationStatus.DEAD_LETTER, now.minusDays(2),
+				NotificationStatus.DEAD_LETTER);
+		entityManager.flush();
+
+		assertThat(archiver.archive(now)).isEqualTo(3);
+		entityManager.clear();
+
+		assertThat(deliveries.findByNotification(oldDeadLetter)).isEmpty();
+		assertThat(deliveries.findByNotification(recentDeadLetter)).hasSize(1);
+		assertThat(ids(archive.findViews(null, NotificationStatus.DEAD_LETTER, null, null, null, null, null, null)))
+			.containsExactly(oldDeadLetter.getId());
+		assertThat(notifications.findAll()).extracting(Notification::getId).contains(recentDeadLetter.getId());
+	}
+
+	@Test
+	void shouldReadArchiveOnlyWhenRangeReachesIt() {
+		archiver.archive(now);
+		entityManager.clear();
+
+		assertThat(ids(history.findViews(null, null, null, null, null, null, 10))).containsExactly(recentSent.getId(),
+				oldSkipped.getId(), oldRetrying.getId(), oldPending.getId(), oldSent.getId());
+		assertThat(ids(history.findViews(null, null, null, now.minusDays(30), null, null, 10)))
+			.containsExactly(recentSent.getId());
+
+		// Pages continue from the hot table into the archive
+		List<NotificationView> first = history.findViews(null, null, null, null, null, null, 2);
+		assertThat(ids(first)).containsExactly(recentSent.getId(), oldSkipped.getId());
+		assertThat(ids(history.findViews(null, null, null, null, null, NotificationCursor.after(first.get(1)), 10)))
+			.containsExactly(oldRetrying.getId(), oldPending.getId(), oldSent.getId());
+	}
+
+	@Test
+	void shouldStreamArchivedNotificationsFirst() {
+		archiver.archive(now);
+		entityManager.clear();
+
+		try (Stream<NotificationView> views = history.streamViews(null, NotificationStatus.SENT, null, null, null)) {
+			assertThat(views.map(NotificationView::id)).containsExactly(oldSent.getId(), recentSent.getId());
+		}
+	}
+
+}
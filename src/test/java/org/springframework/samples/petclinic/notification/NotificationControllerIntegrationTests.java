@@ -1,5 +1,6 @@
 package org.springframework.samples.petclinic.notification;
 
+import com.jayway.jsonpath.JsonPath;
 import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,11 +15,14 @@ import org.springframework.samples.petclinic.owner.OwnerRepository;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
@@ -51,6 +55,9 @@ public class NotificationControllerIntegrationTests {
 	@Autowired
 	private NotificationRepository notificationRepository;
 
+	@Autowired
+	private NotificationDeliveryRepository deliveryRepository;
+
 	@Autowired
 	private OwnerRepository ownerRepository;
 
@@ -67,8 +74,8 @@ public class NotificationControllerIntegrationTests {
 
 	@BeforeEach
 	void setup() {
+		entityManager.createNativeQuery("DELETE FROM notification_deliveries").executeUpdate();
 		entityManager.createNativeQuery("DELETE FROM notifications").executeUpdate();
-		entityManager.createNativeQuery("ALTER TABLE notifications ALTER COLUMN id RESTART WITH 1").executeUpdate();
 		reset(emailNotificationService, smsNotificationService);
 		PetType dogType = entityManager.createQuery("SELECT pt FROM PetType pt WHERE pt.name = :name", PetType.class)
 			.setParameter("name", "dog")
@@ -138,9 +145,76 @@ public class NotificationControllerIntegrationTests {
 		mockMvc.perform(get("/api/notifications").param("ownerId", testOwner.getId().toString()))
 			.andExpect(status().isOk())
 			.andExpect(content().contentType(MediaType.APPLICATION_JSON))
-			.andExpect(jsonPath("$", hasSize(greaterThanOrEqualTo(1))))
-			.andExpect(jsonPath("$[0].owner.id", is(testOwner.getId())))
-			.andExpect(jsonPath("$[0].type", is(NotificationType.APPOINTMENT_REMINDER.toString())));
+			.andExpect(jsonPath("$.content", hasSize(greaterThanOrEqualTo(1))))
+			.andExpect(jsonPath("$.content[0].ownerId", is(testOwner.getId())))
+			.andExpect(jsonPath("$.content[0].type", is(NotificationType.APPOINTMENT_REMINDER.toString())))
+			.andExpect(jsonPath("$.content[0].owner").doesNotExist());
+	}
+
+	@Test
+	void testPageThroughNotificationsWithCursor() throws Exception {
+		LocalDateTime time = LocalDateTime.of(2030, 1, 1, 9, 0);
+		for (int i = 0; i < 5; i++) {
+			notificationRepository.save(new Notification("Message " + i, NotificationType.APPOINTMENT_REMINDER,
+					time.plusMinutes(i), testOwner));
+		}
+
+		String cursor = JsonPath.read(mockMvc.perform(get("/api/notifications").param("size", "3"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.content[*].message", contains("Message 4", "Message 3", "Message 2")))
+			.andExpect(jsonPath("$.nextCursor", notNullValue()))
+			.andReturn()
+			.getResponse()
+			.getContentAsString(), "$.nextCursor");
+
+		mockMvc.perform(get("/api/notifications").param("size", "3").param("cursor", cursor))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.content[*].message", contains("Message 1", "Message 0")))
+			.andExpect(jsonPath("$.nextCursor", nullValue()));
+	}
+
+	@Test
+	void testFilterNotifications() throws Exception {
+		LocalDateTime time = LocalDateTime.of(2030, 1, 1, 9, 0);
+		Notification sent = new Notification("Sent", NotificationType.VACCINATION_REMINDER, time, testOwner);
+		sent.setStatus(NotificationStatus.SENT);
+		notificationRepository.save(sent);
+		notificationRepository
+			.save(new Notification("Pending", NotificationType.VACCINATION_REMINDER, time.plusDays(1), testOwner));
+		notificationRepository
+			.save(new Notification("Other type", NotificationType.MEDICATION_REMINDER, time, testOwner));
+
+		mockMvc
+			.perform(get("/api/notifications").param("type", "VACCINATION_REMINDER")
+				.param("status", "PENDING")
+				.param("from", time.toString())
+				.param("to", time.plusDays(2).toString()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.content", hasSize(1)))
+			.andExpect(jsonPath("$.content[0].message", is("Pending")));
+	}
+
+	@Test
+	void testGetNotificationsWithInvalidCursor() throws Exception {
+		mockMvc.perform(get("/api/notifications").param("cursor", "not-a-cursor")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void testExportNotificationsAsCsv() throws Exception {
+		MvcResult result = mockMvc.perform(get("/api/notifications/export").param("format", "CSV"))
+			.andExpect(request().asyncStarted())
+			.andReturn();
+
+		mockMvc.perform(asyncDispatch(result))
+			.andExpect(status().isOk())
+			.andExpect(content().contentType("text/csv;charset=UTF-8"))
+			.andExpect(header().string("Content-Disposition", containsString("notifications.csv")))
+			.andExpect(content().string(org.hamcrest.Matchers.startsWith("id,type,status,scheduled_time")));
+	}
+
+	@Test
+	void testExportNotificationsWithInvalidOwner() throws Exception {
+		mockMvc.perform(get("/api/notifications/export").param("ownerId", "999999")).andExpect(status().isNotFound());
 	}
 
 	@Test
@@ -195,13 +269,14 @@ public class NotificationControllerIntegrationTests {
 				.content("{\"ownerId\": " + testOwner.getId() + ", \"message\": \"Test notification\"}"))
 			.andExpect(status().isOk())
 			.andExpect(jsonPath("$.ownerId", is(testOwner.getId())))
-			.andExpect(jsonPath("$.status", is("SENT")))
-			.andExpect(jsonPath("$.emailSent", is(true)))
-			.andExpect(jsonPath("$.smsSent", is(false)))
+			.andExpect(jsonPath("$.status", is("PENDING")))
+			.andExpect(jsonPath("$.emailQueued", is(true)))
+			.andExpect(jsonPath("$.smsQueued", is(false)))
 			.andExpect(jsonPath("$.preference", is("EMAIL")));
 
-		// Verify email service was called but not SMS service
-		verify(emailNotificationService, times(1)).send(any(Notification.class));
+		// Verify only an email delivery was queued and nothing was sent inline
+		assertThat(queuedChannels()).containsExactly(NotificationChannel.EMAIL);
+		verify(emailNotificationService, never()).send(any(Notification.class));
 		verify(smsNotificationService, never()).send(any(Notification.class));
 	}
 
@@ -220,14 +295,14 @@ public class NotificationControllerIntegrationTests {
 				.content("{\"ownerId\": " + testOwner.getId() + ", \"message\": \"Test notification\"}"))
 			.andExpect(status().isOk())
 			.andExpect(jsonPath("$.ownerId", is(testOwner.getId())))
-			.andExpect(jsonPath("$.status", is("SENT")))
-			.andExpect(jsonPath("$.emailSent", is(false)))
-			.andExpect(jsonPath("$.smsSent", is(true)))
+			.andExpect(jsonPath("$.status", is("PENDING")))
+			.andExpect(jsonPath("$.emailQueued", is(false)))
+			.andExpect(jsonPath("$.smsQueued", is(true)))
 			.andExpect(jsonPath("$.preference", is("SMS")));
 
-		// Verify SMS service was called but not email service
-		verify(smsNotificationService, times(1)).send(any(Notification.class));
-		verify(emailNotificationService, never()).send(any(Notification.class));
+		// Verify only an SMS delivery was queued
+		assertThat(queuedChannels()).containsExactly(NotificationChannel.SMS);
+		verify(smsNotificationService, never()).send(any(Notification.class));
 	}
 
 	@Test
@@ -245,14 +320,13 @@ public class NotificationControllerIntegrationTests {
 				.content("{\"ownerId\": " + testOwner.getId() + ", \"message\": \"Test notification\"}"))
 			.andExpect(status().isOk())
 			.andExpect(jsonPath("$.ownerId", is(testOwner.getId())))
-			.andExpect(jsonPath("$.status", is("SENT")))
-			.andExpect(jsonPath("$.emailSent", is(true)))
-			.andExpect(jsonPath("$.smsSent", is(true)))
+			.andExpect(jsonPath("$.status", is("PENDING")))
+			.andExpect(jsonPath("$.emailQueued", is(true)))
+			.andExpect(jsonPath("$.smsQueued", is(true)))
 			.andExpect(jsonPath("$.preference", is("BOTH")));
 
-		// Verify both services were called
-		verify(emailNotificationService, times(1)).send(any(Notification.class));
-		verify(smsNotificationService, times(1)).send(any(Notification.class));
+		// Verify a delivery was queued for each channel
+		assertThat(queuedChannels()).containsExactlyInAnyOrder(NotificationChannel.EMAIL, NotificationChannel.SMS);
 	}
 
 	@Test
@@ -267,13 +341,14 @@ public class NotificationControllerIntegrationTests {
 				.content("{\"ownerId\": " + testOwner.getId() + ", \"message\": \"Test notification\"}"))
 			.andExpect(status().isOk())
 			.andExpect(jsonPath("$.ownerId", is(testOwner.getId())))
-			.andExpect(jsonPath("$.status", is("PENDING")))
-			.andExpect(jsonPath("$.emailSent", is(false)))
-			.andExpect(jsonPath("$.smsSent", is(false)))
+			.andExpect(jsonPath("$.status", is("SKIPPED")))
+			.andExpect(jsonPath("$.emailQueued", is(false)))
+			.andExpect(jsonPath("$.smsQueued", is(false)))
 			.andExpect(jsonPath("$.preference", is("NONE")))
 			.andExpect(jsonPath("$.message", containsString("No notification sent")));
 
-		// Verify no services were called
+		// Verify nothing was queued or sent
+		assertThat(queuedChannels()).isEmpty();
 		verify(emailNotificationService, never()).send(any(Notification.class));
 		verify(smsNotificationService, never()).send(any(Notification.class));
 	}
@@ -281,7 +356,7 @@ public class NotificationControllerIntegrationTests {
 	@Test
 	void testSendTestNotificationWithPet() throws Exception {
 		// Get the pet ID from the test owner
-		Pet pet = testOwner.getPets().get(0);
+		Pet pet = testOwner.getPets().iterator().next();
 
 		// Test sending a notification with pet specified
 		mockMvc
@@ -292,8 +367,36 @@ public class NotificationControllerIntegrationTests {
 			.andExpect(jsonPath("$.notificationId", notNullValue()));
 
 		// Verify a notification was created with the pet
-		verify(emailNotificationService, times(1)).send(argThat(
-				notification -> notification.getPet() != null && notification.getPet().getId().equals(pet.getId())));
+		assertThat(notificationRepository.findByOwner(testOwner)).singleElement()
+			.satisfies(notification -> assertThat(notification.getPet().getId()).isEqualTo(pet.getId()));
+	}
+
+	@Test
+	void testSendTestNotificationOnceForIdempotencyKey() throws Exception {
+		String request = "{\"ownerId\": " + testOwner.getId() + ", \"message\": \"Test notification\"}";
+		String first = mockMvc
+			.perform(post("/api/notifications/test").contentType(MediaType.APPLICATION_JSON)
+				.header("Idempotency-Key", "retry-1")
+				.content(request))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.duplicate", is(false)))
+			.andReturn()
+			.getResponse()
+			.getContentAsString();
+		Integer notificationId = JsonPath.read(first, "$.notificationId");
+
+		// The retry is answered with the notification queued the first time
+		mockMvc
+			.perform(post("/api/notifications/test").contentType(MediaType.APPLICATION_JSON)
+				.header("Idempotency-Key", "retry-1")
+				.content(request))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.duplicate", is(true)))
+			.andExpect(jsonPath("$.notificationId", is(notificationId)))
+			.andExpect(jsonPath("$.emailQueued", is(true)));
+
+		assertThat(notificationRepository.findByOwner(testOwner)).hasSize(1);
+		assertThat(queuedChannels()).containsExactly(NotificationChannel.EMAIL);
 	}
 
 	@Test
@@ -304,4 +407,35 @@ public class NotificationControllerIntegrationTests {
 			.andExpect(status().isNotFound());
 	}
 
+	@Test
+	void testReplayDeadLetteredDeliveries() throws Exception {
+		Notification notification = new Notification("Test message", NotificationType.APPOINTMENT_REMINDER,
+				LocalDateTime.now(), testOwner);
+		notification.setStatus(NotificationStatus.DEAD_LETTER);
+		notificationRepository.save(notification);
+		NotificationDelivery delivery = new NotificationDelivery(notification, NotificationChannel.EMAIL);
+		delivery.setStatus(NotificationStatus.DEAD_LETTER);
+		delivery.setAttempts(5);
+		deliveryRepository.save(delivery);
+
+		mockMvc
+			.perform(post("/api/notifications/deliveries/replay").param("since",
+					LocalDateTime.now().minusHours(1).toString()))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.requeued", is(1)));
+
+		entityManager.clear();
+		assertThat(deliveryRepository.findByNotification(notification)).singleElement().satisfies(requeued -> {
+			assertThat(requeued.getStatus()).isEqualTo(NotificationStatus.PENDING);
+			assertThat(requeued.getAttempts()).isZero();
+		});
+	}
+
+	private List<NotificationChannel> queuedChannels() {
+		return entityManager
+			.createQuery("SELECT d.channel FROM NotificationDelivery d WHERE d.status = 'PENDING'",
+					NotificationChannel.class)
+			.getResultList();
+	}
+
 }
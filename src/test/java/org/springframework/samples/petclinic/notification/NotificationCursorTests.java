@@ -0,0 +1,31 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link NotificationCursor}.
+ */
+class NotificationCursorTests {
+
+	@Test
+	void shouldDecodeEncodedCursor() {
+		NotificationCursor cursor = new NotificationCursor(LocalDateTime.of(2030, 1, 1, 9, 0, 30, 500), 42);
+
+		String encoded = cursor.encode();
+
+		assertThat(encoded).matches("[A-Za-z0-9_-]+");
+		assertThat(NotificationCursor.decode(encoded)).isEqualTo(cursor);
+	}
+
+	@Test
+	void shouldRejectMalformedCursor() {
+		assertThatIllegalArgumentException().isThrownBy(() -> NotificationCursor.decode("not a cursor"));
+		assertThatIllegalArgumentException().isThrownBy(() -> NotificationCursor.decode("bm90IGEgY3Vyc29y"));
+	}
+
+}
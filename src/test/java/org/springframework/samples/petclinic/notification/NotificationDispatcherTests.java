@@ -0,0 +1,622 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Unit tests for {@link NotificationDispatcher}.
+ */
+@ExtendWith(MockitoExtension.class)
+class NotificationDispatcherTests {
+
+	@Mock
+	private NotificationRepository notificationRepository;
+
+	@Mock
+	private NotificationDeliveryRepository deliveryRepository;
+
+	@Mock
+	private NotificationStatusWriter statusWriter;
+
+	@Mock
+	private EmailNotificationService emailNotificationService;
+
+	@Mock
+	private SmsNotificationService smsNotificationService;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private NotificationMetrics metrics;
+
+	private NotificationDispatcher dispatcher;
+
+	private Owner owner;
+
+	@BeforeEach
+	void setUp() {
+		metrics = new NotificationMetrics(meterRegistry, mock(NotificationScheduleRepository.class),
+				deliveryRepository);
+		NotificationOutbox outbox = new NotificationOutbox(notificationRepository, deliveryRepository, metrics, 5,
+				Duration.ofSeconds(30), Duration.ofHours(1), Duration.ZERO);
+		dispatcher = new NotificationDispatcher(statusWriter, outbox, emailNotificationService, smsNotificationService,
+				metrics, transactionManager, 4, 10, 2, 10, 2, Duration.ZERO);
+		lenient().when(emailNotificationService.getCircuitBreaker())
+			.thenReturn(new CircuitBreaker("SMTP", 50, Duration.ofSeconds(30)));
+		lenient().when(smsNotificationService.getCircuitBreaker())
+			.thenReturn(new CircuitBreaker("Twilio", 50, Duration.ofSeconds(30)));
+
+		owner = new Owner();
+		owner.setId(1);
+		owner.setFirstName("John");
+		owner.setLastName("Doe");
+		owner.setEmail("john.doe@example.com");
+		owner.setTelephone("1234567890");
+		owner.setNotificationPreference(NotificationPreference.BOTH);
+	}
+
+	@AfterEach
+	void tearDown() {
+		dispatcher.shutdown();
+	}
+
+	private Notification notification(int id) {
+		Notification notification = new Notification("Hello John", NotificationType.APPOINTMENT_REMINDER,
+				LocalDateTime.now(), owner);
+		notification.setId(id);
+		return notification;
+	}
+
+	private NotificationDelivery delivery(Notification notification, NotificationChannel channel) {
+		NotificationDelivery delivery = new NotificationDelivery(notification, channel);
+		delivery.setLeaseUntil(LocalDateTime.now().plusMinutes(5));
+		return delivery;
+	}
+
+	private List<Notification> notifications(List<RenderedNotification> contents) {
+		return contents.stream().map(RenderedNotification::notification).toList();
+	}
+
+	@Test
+	void shouldSendViaEmailAndPersistStatus() {
+		// Given
+		Notification notification = notification(1);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification))))
+			.thenReturn(List.of(notification));
+
+		// When
+		dispatcher.dispatch(List.of(email));
+
+		// Then
+		verify(emailNotificationService).send(List.of(RenderedNotification.of(notification)));
+		verify(smsNotificationService, never()).sendAsync(any(RenderedNotification.class));
+		verify(statusWriter).writeStatus(List.of(notification), List.of(email));
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(email.getAttempts()).isEqualTo(1);
+		assertThat(email.getLastAttemptAt()).isNotNull();
+		assertThat(email.getLeaseUntil()).isNull();
+	}
+
+	@Test
+	void shouldRecordSendLatencyAndStatusTransition() {
+		// Given
+		Notification notification = notification(1);
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification))))
+			.thenReturn(List.of(notification));
+
+		// When
+		dispatcher.dispatch(List.of(delivery(notification, NotificationChannel.EMAIL)));
+
+		// Then
+		assertThat(meterRegistry.get("notification.send")
+			.tags("channel", "EMAIL", "type", "APPOINTMENT_REMINDER", "outcome", "SENT")
+			.timer()
+			.count()).isEqualTo(1);
+		assertThat(meterRegistry.get("notification.status.transitions")
+			.tags("from", "PENDING", "to", "SENT")
+			.counter()
+			.count()).isEqualTo(1);
+		assertThat(meterRegistry.get("notification.persist")
+			.tags("channel", "EMAIL", "type", "APPOINTMENT_REMINDER")
+			.timer()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldRecordOneSendLatencyPerEmailChunk() {
+		// Given
+		Notification accepted = notification(1);
+		Notification refused = notification(2);
+		when(emailNotificationService.getMaxMessagesPerConnection()).thenReturn(10);
+		when(emailNotificationService.send(anyList())).thenReturn(List.of(accepted));
+
+		// When
+		dispatcher.dispatch(
+				List.of(delivery(accepted, NotificationChannel.EMAIL), delivery(refused, NotificationChannel.EMAIL)));
+
+		// Then
+		verify(emailNotificationService).send(anyList());
+		assertThat(meterRegistry.get("notification.send").timers()).hasSize(1);
+		assertThat(meterRegistry.get("notification.send")
+			.tags("channel", "EMAIL", "type", "APPOINTMENT_REMINDER", "outcome", NotificationMetrics.MIXED)
+			.timer()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldSendEachChannelOfNotification() {
+		// Given
+		Notification notification = notification(1);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		NotificationDelivery sms = delivery(notification, NotificationChannel.SMS);
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification))))
+			.thenReturn(List.of(notification));
+		when(smsNotificationService.sendAsync(RenderedNotification.of(notification)))
+			.thenReturn(CompletableFuture.completedFuture(true));
+
+		// When
+		dispatcher.dispatch(List.of(email, sms));
+
+		// Then
+		verify(emailNotificationService).send(List.of(RenderedNotification.of(notification)));
+		verify(smsNotificationService).sendAsync(RenderedNotification.of(notification));
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(sms.getStatus()).isEqualTo(NotificationStatus.SENT);
+	}
+
+	@Test
+	void shouldKeepNotificationSentWhenOtherChannelFails() {
+		// Given - SMS succeeds but the email service reports a failure afterwards
+		Notification notification = notification(1);
+		NotificationDelivery sms = delivery(notification, NotificationChannel.SMS);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		when(smsNotificationService.sendAsync(RenderedNotification.of(notification)))
+			.thenReturn(CompletableFuture.completedFuture(true));
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification)))).thenAnswer(invocation -> {
+			notification.setStatus(NotificationStatus.FAILED);
+			return List.of();
+		});
+
+		// When
+		dispatcher.dispatch(List.of(sms, email));
+
+		// Then
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(sms.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(email.getLastError()).isNotBlank();
+	}
+
+	@Test
+	void shouldMarkFailedWhenNoChannelSucceeds() {
+		// Given
+		Notification notification = notification(1);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification))))
+			.thenThrow(new IllegalStateException("SMTP down"));
+
+		// When
+		dispatcher.dispatch(List.of(email));
+
+		// Then - the delivery is retried once the first backoff has passed
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(email.getLastError()).isEqualTo("SMTP down");
+		assertThat(email.getNextAttemptAt()).isAfter(LocalDateTime.now().plusSeconds(10));
+		verify(statusWriter).writeStatus(List.of(notification), List.of(email));
+	}
+
+	@Test
+	void shouldDeadLetterAfterLastAttempt() {
+		// Given - four attempts already failed
+		Notification notification = notification(1);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		email.setAttempts(4);
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification)))).thenReturn(List.of());
+
+		// When
+		dispatcher.dispatch(List.of(email));
+
+		// Then
+		assertThat(email.getAttempts()).isEqualTo(5);
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.DEAD_LETTER);
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.DEAD_LETTER);
+	}
+
+	@Test
+	void shouldNotDeadLetterWhileOtherChannelIsRetried() {
+		// Given - the email's last attempt, while the SMS waits for a retry not yet due
+		Notification notification = notification(1);
+		notification.setStatus(NotificationStatus.FAILED);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		email.setAttempts(4);
+		NotificationDelivery sms = new NotificationDelivery(notification, NotificationChannel.SMS);
+		sms.setStatus(NotificationStatus.FAILED);
+		sms.setNextAttemptAt(LocalDateTime.now().plusMinutes(10));
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification)))).thenReturn(List.of());
+
+		// When
+		dispatcher.dispatch(List.of(email), List.of(sms));
+
+		// Then - only the email is given up on
+		verify(smsNotificationService, never()).sendAsync(any(RenderedNotification.class));
+		verify(statusWriter).writeStatus(List.of(notification), List.of(email));
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.DEAD_LETTER);
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(meterRegistry.find("notification.status.transitions").tags("to", "DEAD_LETTER").counter())
+			.isNull();
+	}
+
+	@Test
+	void shouldKeepNotificationSentByOtherChannel() {
+		// Given - the SMS was sent by an earlier batch
+		Notification notification = notification(1);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		email.setAttempts(4);
+		NotificationDelivery sms = new NotificationDelivery(notification, NotificationChannel.SMS);
+		sms.setStatus(NotificationStatus.SENT);
+		when(emailNotificationService.send(List.of(RenderedNotification.of(notification)))).thenReturn(List.of());
+
+		// When
+		dispatcher.dispatch(List.of(email), List.of(sms));
+
+		// Then
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.DEAD_LETTER);
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.SENT);
+	}
+
+	@Test
+	void shouldMarkSkippedWhenChannelIsDisabled() {
+		// Given - the SMS service is switched off and skips the notification
+		Notification notification = notification(1);
+		NotificationDelivery sms = delivery(notification, NotificationChannel.SMS);
+		when(smsNotificationService.isEnabled()).thenReturn(false);
+		when(smsNotificationService.sendAsync(RenderedNotification.of(notification))).thenAnswer(invocation -> {
+			notification.setStatus(NotificationStatus.SKIPPED);
+			return CompletableFuture.completedFuture(false);
+		});
+
+		// When
+		dispatcher.dispatch(List.of(sms));
+
+		// Then
+		assertThat(notification.getStatus()).isEqualTo(NotificationStatus.SKIPPED);
+		assertThat(sms.getStatus()).isEqualTo(NotificationStatus.SKIPPED);
+	}
+
+	@Test
+	void shouldPersistStatusInBatches() {
+		// Given - five deliveries and a persist batch size of two
+		List<NotificationDelivery> deliveries = new ArrayList<>();
+		for (int i = 1; i <= 5; i++) {
+			deliveries.add(delivery(notification(i), NotificationChannel.EMAIL));
+		}
+		when(emailNotificationService.send(anyList()))
+			.thenAnswer(invocation -> notifications(invocation.getArgument(0)));
+
+		// When
+		dispatcher.dispatch(deliveries);
+
+		// Then
+		verify(statusWriter, times(3)).writeStatus(anyList(), anyList());
+		assertThat(deliveries).allMatch(delivery -> delivery.getStatus() == NotificationStatus.SENT);
+	}
+
+	@Test
+	void shouldSendNotificationsInParallel() {
+		// Given - every send blocks until all four have started
+		CountDownLatch started = new CountDownLatch(4);
+		when(emailNotificationService.send(anyList())).thenAnswer(invocation -> {
+			started.countDown();
+			return started.await(5, TimeUnit.SECONDS) ? notifications(invocation.getArgument(0)) : List.of();
+		});
+		List<NotificationDelivery> deliveries = new ArrayList<>();
+		for (int i = 1; i <= 4; i++) {
+			deliveries.add(delivery(notification(i), NotificationChannel.EMAIL));
+		}
+
+		// When
+		dispatcher.dispatch(deliveries);
+
+		// Then - only possible if the sends overlapped on the worker pool
+		assertThat(deliveries).allMatch(delivery -> delivery.getStatus() == NotificationStatus.SENT);
+	}
+
+	@Test
+	void shouldSendEmailsInChunksPerConnection() {
+		// Given - three emails and room for two messages per SMTP connection
+		when(emailNotificationService.getMaxMessagesPerConnection()).thenReturn(2);
+		when(emailNotificationService.send(anyList()))
+			.thenAnswer(invocation -> notifications(invocation.getArgument(0)));
+		Notification first = notification(1);
+		Notification second = notification(2);
+		Notification third = notification(3);
+
+		// When
+		dispatcher.dispatch(List.of(delivery(first, NotificationChannel.EMAIL),
+				delivery(second, NotificationChannel.EMAIL), delivery(third, NotificationChannel.EMAIL)));
+
+		// Then
+		verify(emailNotificationService).send(List.of(RenderedNotification.of(first), RenderedNotification.of(second)));
+		verify(emailNotificationService).send(List.of(RenderedNotification.of(third)));
+	}
+
+	@Test
+	void shouldSendChannelsOnSeparateBulkheads() {
+		// Given - email only gets through once the SMS has been sent
+		Notification notification = notification(1);
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		NotificationDelivery sms = delivery(notification, NotificationChannel.SMS);
+		CountDownLatch texted = new CountDownLatch(1);
+		when(emailNotificationService.send(anyList())).thenAnswer(
+				invocation -> texted.await(5, TimeUnit.SECONDS) ? notifications(invocation.getArgument(0)) : List.of());
+		when(smsNotificationService.sendAsync(any(RenderedNotification.class))).thenAnswer(invocation -> {
+			texted.countDown();
+			return CompletableFuture.completedFuture(true);
+		});
+
+		// When
+		dispatcher.dispatch(List.of(email, sms));
+
+		// Then - only possible if SMS did not wait behind the email
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(sms.getStatus()).isEqualTo(NotificationStatus.SENT);
+	}
+
+	@Test
+	void shouldPostponeDeliveriesWhenBulkheadIsFull() {
+		// Given - a single SMS worker with room for one more delivery, both kept busy
+		NotificationOutbox outbox = new NotificationOutbox(notificationRepository, deliveryRepository, metrics, 5,
+				Duration.ofSeconds(30), Duration.ofHours(1), Duration.ZERO);
+		NotificationDispatcher narrow = new NotificationDispatcher(statusWriter, outbox, emailNotificationService,
+				smsNotificationService, metrics, transactionManager, 1, 1, 1, 1, 10, Duration.ZERO);
+		when(smsNotificationService.sendAsync(any(RenderedNotification.class))).thenAnswer(invocation -> {
+			Thread.sleep(200);
+			return CompletableFuture.completedFuture(true);
+		});
+		List<NotificationDelivery> deliveries = List.of(delivery(notification(1), NotificationChannel.SMS),
+				delivery(notification(2), NotificationChannel.SMS), delivery(notification(3), NotificationChannel.SMS));
+
+		try {
+			// When
+			narrow.dispatch(deliveries);
+		}
+		finally {
+			narrow.shutdown();
+		}
+
+		// Then - the third delivery is retried later without using up an attempt
+		assertThat(deliveries.get(0).getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(deliveries.get(1).getStatus()).isEqualTo(NotificationStatus.SENT);
+		NotificationDelivery rejected = deliveries.get(2);
+		assertThat(rejected.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(rejected.getAttempts()).isZero();
+		assertThat(rejected.getLastError()).isEqualTo("SMS bulkhead is full");
+		assertThat(rejected.getNextAttemptAt()).isAfter(LocalDateTime.now());
+		assertThat(rejected.getLeaseUntil()).isNull();
+		verify(smsNotificationService, times(2)).sendAsync(any(RenderedNotification.class));
+	}
+
+	@Test
+	void shouldLeaveDeliveriesWhoseLeaseRanOutWhilePaced() {
+		// Given - a single SMS worker paced at one message per 300 ms, and a lease that
+		// runs out before the second message is due
+		NotificationOutbox outbox = new NotificationOutbox(notificationRepository, deliveryRepository, metrics, 5,
+				Duration.ofSeconds(30), Duration.ofHours(1), Duration.ZERO);
+		NotificationDispatcher paced = new NotificationDispatcher(statusWriter, outbox, emailNotificationService,
+				smsNotificationService, metrics, transactionManager, 1, 10, 1, 10, 10, Duration.ZERO);
+		when(smsNotificationService.sendAsync(any(RenderedNotification.class))).thenAnswer(invocation -> {
+			Thread.sleep(300);
+			return CompletableFuture.completedFuture(true);
+		});
+		LocalDateTime leaseUntil = LocalDateTime.now()
+			.plus(NotificationDispatcher.LEASE_MARGIN)
+			.plus(Duration.ofMillis(200));
+		Notification first = notification(1);
+		Notification second = notification(2);
+		NotificationDelivery sent = delivery(first, NotificationChannel.SMS);
+		NotificationDelivery expired = delivery(second, NotificationChannel.SMS);
+		sent.setLeaseUntil(leaseUntil);
+		expired.setLeaseUntil(leaseUntil);
+
+		try {
+			// When
+			paced.dispatch(List.of(sent, expired));
+		}
+		finally {
+			paced.shutdown();
+		}
+
+		// Then - the second delivery is neither sent nor written back
+		verify(smsNotificationService, times(1)).sendAsync(any(RenderedNotification.class));
+		verify(statusWriter).writeStatus(List.of(first), List.of(sent));
+		assertThat(sent.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(expired.getStatus()).isEqualTo(NotificationStatus.PENDING);
+		assertThat(expired.getAttempts()).isZero();
+		assertThat(expired.getLeaseUntil()).isEqualTo(leaseUntil);
+	}
+
+	@Test
+	void shouldNotCountAttemptWhileCircuitIsOpen() {
+		// Given - a Twilio circuit opened by a single failure
+		CircuitBreaker open = new CircuitBreaker("Twilio", 1, 1, 50, Duration.ofHours(1), 1, System::nanoTime);
+		open.recordFailure();
+		when(smsNotificationService.getCircuitBreaker()).thenReturn(open);
+		NotificationDelivery sms = delivery(notification(1), NotificationChannel.SMS);
+		sms.setAttempts(4);
+
+		// When
+		dispatcher.dispatch(List.of(sms));
+
+		// Then - retried later, the last attempt is still left
+		verify(smsNotificationService, never()).sendAsync(any(RenderedNotification.class));
+		assertThat(sms.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(sms.getAttempts()).isEqualTo(4);
+		assertThat(sms.getLastError()).isEqualTo("Twilio circuit is open");
+		assertThat(sms.getLeaseUntil()).isNull();
+	}
+
+	@Test
+	void shouldNotCountAttemptWhenEmailServiceFindsCircuitOpen() {
+		// Given - the circuit let the dispatcher through, but not the send itself
+		Notification notification = notification(1);
+		when(emailNotificationService.send(anyList())).thenThrow(new CallNotPermittedException("SMTP"));
+		NotificationDelivery email = delivery(notification, NotificationChannel.EMAIL);
+		email.setAttempts(4);
+
+		// When
+		dispatcher.dispatch(List.of(email));
+
+		// Then - retried later, the last attempt is still left
+		assertThat(email.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(email.getAttempts()).isEqualTo(4);
+		assertThat(email.getLastAttemptAt()).isNull();
+		assertThat(email.getLastError()).isEqualTo("SMTP circuit is open");
+		assertThat(email.getLeaseUntil()).isNull();
+	}
+
+	@Test
+	void shouldNotCountAttemptWhenSmsServiceFindsCircuitOpen() {
+		// Given - the circuit let the dispatcher through, but not the send itself
+		Notification notification = notification(1);
+		when(smsNotificationService.sendAsync(any(RenderedNotification.class)))
+			.thenReturn(CompletableFuture.failedFuture(new CallNotPermittedException("Twilio")));
+		NotificationDelivery sms = delivery(notification, NotificationChannel.SMS);
+		sms.setAttempts(4);
+
+		// When
+		dispatcher.dispatch(List.of(sms));
+
+		// Then - retried later, the last attempt is still left
+		assertThat(sms.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(sms.getAttempts()).isEqualTo(4);
+		assertThat(sms.getLastAttemptAt()).isNull();
+		assertThat(sms.getLastError()).isEqualTo("Twilio circuit is open");
+		assertThat(sms.getLeaseUntil()).isNull();
+	}
+
+	@Test
+	void shouldIgnoreEmptyBatch() {
+		// When
+		dispatcher.dispatch(List.of());
+
+		// Then
+		verify(statusWriter, never()).writeStatus(anyList(), anyList());
+	}
+
+	@Test
+	void shouldPrepareContentOnceForAllChannels() {
+		// Given
+		Notification notification = notification(1);
+		List<RenderedNotification> emailed = new ArrayList<>();
+		List<RenderedNotification> texted = new ArrayList<>();
+		when(emailNotificationService.send(anyList())).thenAnswer(invocation -> {
+			emailed.addAll(invocation.getArgument(0));
+			return List.of(notification);
+		});
+		when(smsNotificationService.sendAsync(any(RenderedNotification.class))).thenAnswer(invocation -> {
+			texted.add(invocation.getArgument(0));
+			return CompletableFuture.completedFuture(true);
+		});
+
+		// When
+		dispatcher.dispatch(List.of(delivery(notification, NotificationChannel.EMAIL),
+				delivery(notification, NotificationChannel.SMS)));
+
+		// Then - both channels are handed the very same content
+		assertThat(emailed).hasSize(1);
+		assertThat(texted).hasSize(1);
+		assertThat(texted.get(0)).isSameAs(emailed.get(0));
+	}
+
+	@Test
+	void shouldCoalesceOwnersNotificationsIntoDigest() {
+		// Given - a digest window and two notifications for the same owner
+		NotificationOutbox outbox = new NotificationOutbox(notificationRepository, deliveryRepository, metrics, 5,
+				Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofMinutes(5));
+		NotificationDispatcher digesting = new NotificationDispatcher(statusWriter, outbox, emailNotificationService,
+				smsNotificationService, metrics, transactionManager, 4, 10, 2, 10, 10, Duration.ofMinutes(5));
+		Notification first = notification(1);
+		Notification second = notification(2);
+		List<NotificationDelivery> deliveries = List.of(delivery(first, NotificationChannel.EMAIL),
+				delivery(second, NotificationChannel.EMAIL), delivery(first, NotificationChannel.SMS),
+				delivery(second, NotificationChannel.SMS));
+		when(emailNotificationService.send(anyList()))
+			.thenAnswer(invocation -> notifications(invocation.getArgument(0)));
+		when(smsNotificationService.sendAsync(any(RenderedNotification.class)))
+			.thenReturn(CompletableFuture.completedFuture(true));
+
+		try {
+			// When
+			digesting.dispatch(deliveries);
+		}
+		finally {
+			digesting.shutdown();
+		}
+
+		// Then - one message per channel, every notification and delivery settled
+		RenderedNotification digest = RenderedNotification.digest(List.of(first, second));
+		verify(emailNotificationService).send(List.of(digest));
+		verify(smsNotificationService).sendAsync(digest);
+		assertThat(deliveries).allMatch(delivery -> delivery.getStatus() == NotificationStatus.SENT);
+		assertThat(List.of(first, second)).allSatisfy(notification -> {
+			assertThat(notification.getStatus()).isEqualTo(NotificationStatus.SENT);
+			assertThat(notification.getSentTime()).isNotNull();
+		});
+	}
+
+	@Test
+	void shouldRetryDigestTogether() {
+		// Given
+		NotificationOutbox outbox = new NotificationOutbox(notificationRepository, deliveryRepository, metrics, 5,
+				Duration.ofSeconds(30), Duration.ofHours(1), Duration.ofMinutes(5));
+		NotificationDispatcher digesting = new NotificationDispatcher(statusWriter, outbox, emailNotificationService,
+				smsNotificationService, metrics, transactionManager, 4, 10, 2, 10, 10, Duration.ofMinutes(5));
+		List<NotificationDelivery> deliveries = List.of(delivery(notification(1), NotificationChannel.EMAIL),
+				delivery(notification(2), NotificationChannel.EMAIL));
+		when(emailNotificationService.send(anyList())).thenThrow(new IllegalStateException("SMTP down"));
+
+		try {
+			// When
+			digesting.dispatch(deliveries);
+		}
+		finally {
+			digesting.shutdown();
+		}
+
+		// Then - both deliveries fall due at the same time and are coalesced again
+		assertThat(deliveries).allMatch(delivery -> delivery.getStatus() == NotificationStatus.FAILED);
+		assertThat(deliveries.get(0).getNextAttemptAt()).isEqualTo(deliveries.get(1).getNextAttemptAt());
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.samples.petclinic.owner.Owner;
+
+/**
+ * Tests for {@link NotificationExporter}.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import({ NotificationExporter.class, NotificationHistory.class, NotificationArchiver.class })
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+class NotificationExporterTests {
+
+	@Autowired
+	private NotificationExporter exporter;
+
+	@Autowired
+	private NotificationRepository notifications;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private final LocalDateTime time = LocalDateTime.of(2030, 1, 1, 9, 0);
+
+	@BeforeEach
+	void setUp() {
+		// Only export the notifications created by this test
+		entityManager.createNativeQuery("DELETE FROM notifications").executeUpdate();
+
+		Owner owner = entityManager.find(Owner.class, 1);
+		Notification sent = new Notification("Leo's check-up, \"annual\"", NotificationType.APPOINTMENT_REMINDER, time,
+				owner);
+		sent.setStatus(NotificationStatus.SENT);
+		sent.setSentTime(time.plusMinutes(1));
+		notifications.save(sent);
+		notifications
+			.save(new Notification("Rabies shot", NotificationType.VACCINATION_REMINDER, time.plusDays(1), owner));
+		entityManager.flush();
+	}
+
+	private String export(NotificationExportFormat format, NotificationStatus status) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		exporter.export(format, null, status, null, null, null, out);
+		return out.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	void shouldExportCsvWithHeaderAndQuotedFields() {
+		String[] lines = export(NotificationExportFormat.CSV, null).split("\n");
+
+		assertThat(lines).hasSize(3);
+		assertThat(lines[0]).isEqualTo("id,type,status,scheduled_time,sent_time,owner_id,pet_id,message");
+		assertThat(lines[1]).endsWith(",APPOINTMENT_REMINDER,SENT,2030-01-01T09:00,2030-01-01T09:01,1,,"
+				+ "\"Leo's check-up, \"\"annual\"\"\"");
+		assertThat(lines[2]).endsWith(",VACCINATION_REMINDER,PENDING,2030-01-02T09:00,,1,,Rabies shot");
+	}
+
+	@Test
+	void shouldExportFilteredNotificationsAsNdjson() throws Exception {
+		String export = export(NotificationExportFormat.NDJSON, NotificationStatus.PENDING);
+
+		assertThat(export).endsWith("\n");
+		String[] lines = export.split("\n");
+		assertThat(lines).hasSize(1);
+		JsonNode notification = objectMapper.readTree(lines[0]);
+		assertThat(notification.get("message").asText()).isEqualTo("Rabies shot");
+		assertThat(notification.get("status").asText()).isEqualTo("PENDING");
+		assertThat(notification.get("ownerId").asInt()).isEqualTo(1);
+		assertThat(notification.get("scheduledTime").asText()).isEqualTo("2030-01-02T09:00:00");
+	}
+
+	@Test
+	void shouldExportNothingButHeaderWhenNoneMatch() {
+		assertThat(export(NotificationExportFormat.CSV, NotificationStatus.DEAD_LETTER)).hasLineCount(1);
+		assertThat(export(NotificationExportFormat.NDJSON, NotificationStatus.DEAD_LETTER)).isEmpty();
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Unit tests for {@link NotificationMetrics}.
+ */
+@ExtendWith(MockitoExtension.class)
+class NotificationMetricsTests {
+
+	@Mock
+	private NotificationScheduleRepository scheduleRepository;
+
+	@Mock
+	private NotificationDeliveryRepository deliveryRepository;
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private NotificationMetrics metrics;
+
+	@BeforeEach
+	void setUp() {
+		metrics = new NotificationMetrics(registry, scheduleRepository, deliveryRepository);
+	}
+
+	@Test
+	void shouldSampleBacklogGauges() {
+		when(scheduleRepository.countDueSchedules(any(LocalDateTime.class))).thenReturn(3L);
+		when(deliveryRepository.countByStatus(NotificationStatus.PENDING)).thenReturn(5L);
+		when(deliveryRepository.countByStatus(NotificationStatus.FAILED)).thenReturn(2L);
+
+		metrics.sampleBacklog();
+
+		assertThat(registry.get("notification.schedules.due").gauge().value()).isEqualTo(3);
+		assertThat(registry.get("notification.deliveries.pending").gauge().value()).isEqualTo(5);
+		assertThat(registry.get("notification.deliveries.retrying").gauge().value()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldPublishSendLatencyPercentiles() {
+		metrics.recordSend(NotificationChannel.SMS, NotificationType.VACCINATION_REMINDER, NotificationStatus.SENT,
+				Duration.ofMillis(120));
+
+		assertThat(registry.get("notification.send")
+			.tags("channel", "SMS", "type", "VACCINATION_REMINDER", "outcome", "SENT")
+			.timer()
+			.takeSnapshot()
+			.percentileValues()).hasSize(3);
+	}
+
+	@Test
+	void shouldTagBatchSendByCommonTypeAndOutcome() {
+		metrics.recordSend(NotificationChannel.EMAIL,
+				List.of(NotificationType.VACCINATION_REMINDER, NotificationType.VACCINATION_REMINDER),
+				List.of(NotificationStatus.SENT, NotificationStatus.FAILED), Duration.ofMillis(300));
+
+		assertThat(registry.get("notification.send")
+			.tags("channel", "EMAIL", "type", "VACCINATION_REMINDER", "outcome", "MIXED")
+			.timer()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotCountUnchangedStatus() {
+		metrics.recordTransition(NotificationStatus.FAILED, NotificationStatus.FAILED);
+		metrics.recordTransition(NotificationStatus.FAILED, NotificationStatus.DEAD_LETTER);
+
+		assertThat(registry.find("notification.status.transitions").counters()).hasSize(1);
+	}
+
+	@Test
+	void shouldTimeRenderByType() {
+		assertThat(metrics.timeRender(NotificationType.APPOINTMENT_REMINDER, () -> "Hello")).isEqualTo("Hello");
+		assertThat(registry.get("notification.render").timer().count()).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Unit tests for {@link NotificationOutboxRelay}.
+ */
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxRelayTests {
+
+	@Mock
+	private NotificationDeliveryRepository deliveryRepository;
+
+	@Mock
+	private NotificationDispatcher dispatcher;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	private NotificationOutboxRelay relay;
+
+	private Notification notification;
+
+	@BeforeEach
+	void setUp() {
+		relay = new NotificationOutboxRelay(deliveryRepository, dispatcher, transactionManager, 2,
+				Duration.ofMinutes(5));
+
+		Owner owner = new Owner();
+		owner.setId(1);
+		owner.setNotificationPreference(NotificationPreference.EMAIL);
+		notification = new Notification("Hello John", NotificationType.APPOINTMENT_REMINDER, LocalDateTime.now(),
+				owner);
+	}
+
+	private NotificationDelivery delivery(int id, NotificationChannel channel) {
+		NotificationDelivery delivery = new NotificationDelivery(notification, channel);
+		delivery.setId(id);
+		return delivery;
+	}
+
+	@Test
+	void shouldLeaseAndDispatchDueDeliveries() {
+		// Given
+		NotificationDelivery delivery = delivery(1, NotificationChannel.EMAIL);
+		when(deliveryRepository.lockDueDeliveryIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(List.of(1));
+		when(deliveryRepository.findForDispatch(List.of(1))).thenReturn(List.of(delivery));
+
+		// When
+		relay.relay();
+
+		// Then
+		verify(dispatcher).dispatch(List.of(delivery), List.of());
+		assertThat(delivery.getLeaseUntil()).isAfter(LocalDateTime.now().plusMinutes(4));
+	}
+
+	@Test
+	void shouldPassOtherChannelsWithoutLeasingThem() {
+		// Given - the notification's SMS is not due yet
+		NotificationDelivery email = delivery(1, NotificationChannel.EMAIL);
+		NotificationDelivery sms = delivery(2, NotificationChannel.SMS);
+		sms.setStatus(NotificationStatus.FAILED);
+		when(deliveryRepository.lockDueDeliveryIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(List.of(1));
+		when(deliveryRepository.findForDispatch(List.of(1))).thenReturn(List.of(email, sms));
+
+		// When
+		relay.relay();
+
+		// Then
+		verify(dispatcher).dispatch(List.of(email), List.of(sms));
+		assertThat(email.getLeaseUntil()).isNotNull();
+		assertThat(sms.getLeaseUntil()).isNull();
+	}
+
+	@Test
+	void shouldDrainOutboxInBatches() {
+		// Given - a batch size of two and three pending deliveries
+		NotificationDelivery first = delivery(1, NotificationChannel.EMAIL);
+		NotificationDelivery second = delivery(2, NotificationChannel.SMS);
+		NotificationDelivery third = delivery(3, NotificationChannel.EMAIL);
+		when(deliveryRepository.lockDueDeliveryIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(List.of(1, 2), List.of(3));
+		when(deliveryRepository.findForDispatch(List.of(1, 2))).thenReturn(List.of(first, second));
+		when(deliveryRepository.findForDispatch(List.of(3))).thenReturn(List.of(third));
+
+		// When
+		relay.relay();
+
+		// Then - the second batch was short so the outbox is drained
+		verify(deliveryRepository, times(2)).lockDueDeliveryIds(any(LocalDateTime.class), any(Pageable.class));
+		verify(dispatcher).dispatch(List.of(first, second), List.of());
+		verify(dispatcher).dispatch(List.of(third), List.of());
+	}
+
+	@Test
+	void shouldNotDispatchWhenOutboxIsEmpty() {
+		// Given
+		when(deliveryRepository.lockDueDeliveryIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(List.of());
+
+		// When
+		relay.relay();
+
+		// Then
+		verify(dispatcher, never()).dispatch(anyList(), anyCollection());
+	}
+
+}
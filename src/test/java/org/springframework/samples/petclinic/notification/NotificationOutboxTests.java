@@ -0,0 +1,171 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.samples.petclinic.owner.Owner;
+
+/**
+ * Unit tests for the retry and digest policies of {@link NotificationOutbox}.
+ */
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxTests {
+
+	@Mock
+	private NotificationRepository notificationRepository;
+
+	@Mock
+	private NotificationDeliveryRepository deliveryRepository;
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private NotificationOutbox outbox;
+
+	@BeforeEach
+	void setUp() {
+		NotificationMetrics metrics = new NotificationMetrics(meterRegistry, mock(NotificationScheduleRepository.class),
+				deliveryRepository);
+		outbox = new NotificationOutbox(notificationRepository, deliveryRepository, metrics, 5, Duration.ofSeconds(30),
+				Duration.ofMinutes(5), Duration.ofMinutes(5));
+	}
+
+	@Test
+	void shouldDoubleBackoffWithEachAttempt() {
+		for (int i = 0; i < 100; i++) {
+			assertThat(outbox.backoff(1)).isBetween(Duration.ofSeconds(15), Duration.ofSeconds(30));
+			assertThat(outbox.backoff(2)).isBetween(Duration.ofSeconds(30), Duration.ofSeconds(60));
+			assertThat(outbox.backoff(3)).isBetween(Duration.ofSeconds(60), Duration.ofSeconds(120));
+		}
+	}
+
+	@Test
+	void shouldCapBackoff() {
+		for (int i = 0; i < 100; i++) {
+			assertThat(outbox.backoff(5)).isBetween(Duration.ofSeconds(150), Duration.ofMinutes(5));
+			assertThat(outbox.backoff(Integer.MAX_VALUE)).isBetween(Duration.ofSeconds(150), Duration.ofMinutes(5));
+		}
+	}
+
+	@Test
+	void shouldJitterBackoff() {
+		assertThat(IntStream.range(0, 100).mapToObj(i -> outbox.backoff(3)).distinct().count()).isGreaterThan(1);
+	}
+
+	@Test
+	void shouldScheduleRetryOfFailedDelivery() {
+		NotificationDelivery delivery = delivery(2);
+		LocalDateTime now = LocalDateTime.of(2030, 1, 1, 9, 0);
+
+		outbox.retryLater(delivery, "SMTP down", now);
+
+		assertThat(delivery.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(delivery.getLastError()).isEqualTo("SMTP down");
+		assertThat(delivery.getNextAttemptAt()).isBetween(now.plusSeconds(30), now.plusSeconds(60));
+	}
+
+	@Test
+	void shouldDeadLetterOnceAttemptsAreUsedUp() {
+		NotificationDelivery delivery = delivery(5);
+		LocalDateTime nextAttemptAt = delivery.getNextAttemptAt();
+
+		outbox.retryLater(delivery, "SMTP down", LocalDateTime.of(2030, 1, 1, 9, 0));
+
+		assertThat(delivery.getStatus()).isEqualTo(NotificationStatus.DEAD_LETTER);
+		assertThat(delivery.getNextAttemptAt()).isEqualTo(nextAttemptAt);
+	}
+
+	@Test
+	void shouldEndDigestWindowOnItsBoundary() {
+		LocalDateTime boundary = LocalDateTime.of(2030, 1, 1, 9, 5);
+
+		assertThat(outbox.endOfDigestWindow(LocalDateTime.of(2030, 1, 1, 9, 0, 1))).isEqualTo(boundary);
+		assertThat(outbox.endOfDigestWindow(LocalDateTime.of(2030, 1, 1, 9, 4, 59))).isEqualTo(boundary);
+		assertThat(outbox.endOfDigestWindow(boundary)).isEqualTo(boundary);
+	}
+
+	@Test
+	void shouldHoldDigestDeliveriesUntilEndOfWindow() {
+		Notification notification = delivery(0).getNotification();
+		notification.getOwner().setNotificationPreference(NotificationPreference.BOTH);
+
+		List<NotificationDelivery> deliveries = outbox.enqueueForDigest(notification);
+
+		assertThat(deliveries).hasSize(2).allSatisfy(delivery -> {
+			assertThat(delivery.getNextAttemptAt()).isAfterOrEqualTo(delivery.getCreatedAt());
+			assertThat(delivery.getNextAttemptAt()).isEqualTo(outbox.endOfDigestWindow(delivery.getCreatedAt()))
+				.isEqualTo(outbox.endOfDigestWindow(delivery.getNextAttemptAt()));
+		});
+		verify(deliveryRepository).saveAll(deliveries);
+	}
+
+	@Test
+	void shouldRememberQueuedIdempotencyKeys() {
+		Notification notification = delivery(0).getNotification();
+		notification.getOwner().setNotificationPreference(NotificationPreference.EMAIL);
+		notification.setIdempotencyKey("api:abc");
+
+		outbox.enqueue(notification);
+
+		assertThat(outbox.findQueued("api:abc"))
+			.contains(new QueuedNotification(null, NotificationStatus.PENDING, List.of(NotificationChannel.EMAIL)));
+		assertThat(outbox.findQueuedKeys(List.of("api:abc"))).containsExactly("api:abc");
+		verify(notificationRepository, never()).findByIdempotencyKey("api:abc");
+		verify(notificationRepository, never()).findIdempotencyKeys(anyCollection());
+	}
+
+	@Test
+	void shouldCountQueuedNotificationsByStatus() {
+		Notification pending = delivery(0).getNotification();
+		pending.getOwner().setNotificationPreference(NotificationPreference.SMS);
+		Notification skipped = delivery(0).getNotification();
+		skipped.getOwner().setNotificationPreference(NotificationPreference.NONE);
+
+		outbox.enqueue(pending);
+		outbox.enqueue(skipped);
+
+		assertThat(meterRegistry.get("notification.status.transitions")
+			.tags("from", "NEW", "to", "PENDING")
+			.counter()
+			.count()).isEqualTo(1);
+		assertThat(meterRegistry.get("notification.status.transitions")
+			.tags("from", "NEW", "to", "SKIPPED")
+			.counter()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldLookUpUnknownIdempotencyKeysInOneQuery() {
+		when(notificationRepository.findIdempotencyKeys(List.of("schedule:1", "schedule:2")))
+			.thenReturn(List.of("schedule:2"));
+
+		assertThat(outbox.findQueuedKeys(List.of("schedule:1", "schedule:2"))).containsExactly("schedule:2");
+		assertThat(outbox.findQueued("schedule:1")).isEmpty();
+	}
+
+	private NotificationDelivery delivery(int attempts) {
+		Owner owner = new Owner();
+		owner.setId(1);
+		Notification notification = new Notification("Hello John", NotificationType.APPOINTMENT_REMINDER,
+				LocalDateTime.now(), owner);
+		NotificationDelivery delivery = new NotificationDelivery(notification, NotificationChannel.EMAIL);
+		delivery.setAttempts(attempts);
+		return delivery;
+	}
+
+}
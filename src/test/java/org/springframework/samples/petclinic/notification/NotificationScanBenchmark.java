@@ -0,0 +1,137 @@
+package org.springframework.samples.petclinic.notification;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+/**
+ * JMH benchmark of the two hot polls of the notification pipeline, the due-schedule claim
+ * and the outbox relay's due-delivery lease, against tables of growing size on the H2
+ * schema. Nearly all rows are history (completed schedules, sent deliveries) and a fixed
+ * number are due, so with the composite indexes the scan time should stay flat as the
+ * tables grow; run with {@code indexed=false} to compare against single-column status
+ * indexes. Not run as part of the test suite; run {@link #main} from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NotificationScanBenchmark {
+
+	private static final int DUE_ROWS = 100;
+
+	private static final int BATCH_SIZE = 500;
+
+	private static final String DUE_SCHEDULE_IDS = "SELECT id FROM notification_schedules WHERE enabled = TRUE "
+			+ "AND scheduled_time <= ? AND (lease_until IS NULL OR lease_until < ?) "
+			+ "ORDER BY scheduled_time, id FETCH FIRST " + BATCH_SIZE + " ROWS ONLY";
+
+	// The query NotificationDeliveryRepository.lockDueDeliveryIds renders, without the lock
+	private static final String DUE_DELIVERY_IDS = "SELECT id FROM notification_deliveries "
+			+ "WHERE status IN ('PENDING', 'FAILED') AND next_attempt_at <= ? "
+			+ "AND (lease_until IS NULL OR lease_until < ?) "
+			+ "ORDER BY next_attempt_at, id FETCH FIRST " + BATCH_SIZE + " ROWS ONLY";
+
+	@Param({ "10000", "100000", "1000000" })
+	private int rows;
+
+	@Param({ "true", "false" })
+	private boolean indexed;
+
+	private EmbeddedDatabase database;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private Timestamp now;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		database = new EmbeddedDatabaseBuilder().generateUniqueName(true)
+			.setType(EmbeddedDatabaseType.H2)
+			.addScript("db/h2/schema.sql")
+			.build();
+		jdbcTemplate = new JdbcTemplate(database);
+		if (!indexed) {
+			jdbcTemplate.execute("DROP INDEX notification_schedules_enabled_scheduled_time");
+			jdbcTemplate.execute("DROP INDEX notification_deliveries_status_next_attempt_at");
+			jdbcTemplate.execute(
+					"CREATE INDEX notification_deliveries_status ON notification_deliveries (status)");
+		}
+		jdbcTemplate.update("INSERT INTO owners (id, first_name, last_name, address, city, telephone) "
+				+ "VALUES (1, 'George', 'Franklin', '110 W. Liberty St.', 'Madison', '6085551023')");
+
+		LocalDateTime start = LocalDateTime.of(2025, 1, 1, 9, 0);
+		now = Timestamp.valueOf(start.plusMinutes(rows));
+		List<Object[]> schedules = new ArrayList<>();
+		List<Object[]> notifications = new ArrayList<>();
+		List<Object[]> deliveries = new ArrayList<>();
+		for (int i = 1; i <= rows; i++) {
+			// The last rows are due and still to be processed, the rest is history
+			boolean due = i > rows - DUE_ROWS;
+			Timestamp scheduledTime = Timestamp.valueOf(start.plusMinutes(i));
+			schedules.add(new Object[] { i, scheduledTime, due });
+			notifications.add(new Object[] { i, due ? "PENDING" : "SENT", scheduledTime });
+			deliveries.add(new Object[] { i, i, due ? "PENDING" : "SENT", scheduledTime, scheduledTime });
+			if (schedules.size() == 10_000 || i == rows) {
+				jdbcTemplate.batchUpdate("INSERT INTO notification_schedules (id, message_template, type, "
+						+ "scheduled_time, enabled, owner_id) VALUES (?, 'Hello {ownerFirstName}', "
+						+ "'APPOINTMENT_REMINDER', ?, ?, 1)", schedules);
+				jdbcTemplate.batchUpdate(
+						"INSERT INTO notifications (id, message, type, status, scheduled_time, "
+								+ "owner_id) VALUES (?, 'Hello George', 'APPOINTMENT_REMINDER', ?, ?, 1)",
+						notifications);
+				jdbcTemplate.batchUpdate("INSERT INTO notification_deliveries (id, notification_id, channel, status, "
+						+ "created_at, next_attempt_at) VALUES (?, ?, 'EMAIL', ?, ?, ?)", deliveries);
+				schedules.clear();
+				notifications.clear();
+				deliveries.clear();
+			}
+		}
+		jdbcTemplate.execute("ANALYZE");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		database.shutdown();
+	}
+
+	@Benchmark
+	public List<Integer> dueScheduleIds() {
+		return jdbcTemplate.queryForList(DUE_SCHEDULE_IDS, Integer.class, now, now);
+	}
+
+	@Benchmark
+	public List<Integer> dueDeliveryIds() {
+		return jdbcTemplate.queryForList(DUE_DELIVERY_IDS, Integer.class, now, now);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(NotificationScanBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+
+/**
+ * Tests for the lease based claiming queries of {@link NotificationScheduleRepository}.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+class NotificationScheduleRepositoryTests {
+
+	@Autowired
+	private NotificationScheduleRepository schedules;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private final LocalDateTime now = LocalDateTime.of(2030, 1, 1, 9, 0);
+
+	private List<Integer> ids;
+
+	@BeforeEach
+	void setUp() {
+		// Only consider the schedules created by this test
+		entityManager.createQuery("UPDATE NotificationSchedule ns SET ns.enabled = false").executeUpdate();
+
+		// Explicit ids, the sample data does not advance the identity column
+		insertSchedule(1001, now.minusMinutes(10));
+		insertSchedule(1002, now.minusMinutes(5));
+		insertSchedule(1003, now.plusHours(1));
+		ids = List.of(1001, 1002);
+	}
+
+	private void insertSchedule(int id, LocalDateTime scheduledTime) {
+		entityManager
+			.createNativeQuery(
+					"INSERT INTO notification_schedules (id, message_template, type, scheduled_time, enabled, "
+							+ "owner_id) VALUES (?, 'Hello {ownerFirstName}', 'APPOINTMENT_REMINDER', ?, TRUE, 1)")
+			.setParameter(1, id)
+			.setParameter(2, scheduledTime)
+			.executeUpdate();
+	}
+
+	@Test
+	void shouldLockOnlyDueSchedulesOldestFirst() {
+		List<Integer> locked = schedules.lockClaimableScheduleIds(now, PageRequest.ofSize(10));
+
+		assertThat(locked).containsExactlyElementsOf(ids);
+	}
+
+	@Test
+	void shouldLeaseSchedulesToSingleNode() {
+		LocalDateTime leaseUntil = now.plusMinutes(5);
+
+		assertThat(schedules.claim(ids, "node-a", leaseUntil, now)).isEqualTo(2);
+		assertThat(schedules.claim(ids, "node-b", leaseUntil, now)).isZero();
+
+		assertThat(schedules.findClaimed(ids, "node-a", leaseUntil)).hasSize(2);
+		assertThat(schedules.findClaimed(ids, "node-b", leaseUntil)).isEmpty();
+		assertThat(schedules.lockClaimableScheduleIds(now, PageRequest.ofSize(10))).isEmpty();
+	}
+
+	@Test
+	void shouldReleaseExpiredLeases() {
+		schedules.claim(ids, "node-a", now.plusMinutes(5), now);
+
+		LocalDateTime later = now.plusMinutes(6);
+		assertThat(schedules.lockClaimableScheduleIds(later, PageRequest.ofSize(10))).hasSize(2);
+		assertThat(schedules.claim(ids, "node-b", later.plusMinutes(5), later)).isEqualTo(2);
+	}
+
+	@Test
+	void shouldNotLeaseSchedulesBeforeTheyAreDue() {
+		assertThat(schedules.claim(List.of(1003), "node-a", now.plusMinutes(5), now)).isZero();
+		assertThat(schedules.claim(List.of(1003), "node-a", now.plusHours(2), now.plusHours(1))).isEqualTo(1);
+	}
+
+	@Test
+	void shouldFindUpcomingScheduleTimes() {
+		List<NotificationScheduleTime> upcoming = schedules.findUpcomingScheduleTimes(now, now.plusHours(6));
+
+		assertThat(upcoming).containsExactly(new NotificationScheduleTime(1003, now.plusHours(1)));
+	}
+
+}
@@ -1,25 +1,40 @@
 package org.springframework.samples.petclinic.notification;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Pageable;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.transaction.PlatformTransactionManager;
 
 @ExtendWith(MockitoExtension.class)
 public class NotificationSchedulerServiceTests {
@@ -28,18 +43,19 @@ public class NotificationSchedulerServiceTests {
 	private NotificationScheduleRepository scheduleRepository;
 
 	@Mock
-	private NotificationRepository notificationRepository;
+	private NotificationTemplateService templateService;
 
 	@Mock
-	private NotificationTemplateService templateService;
+	private NotificationOutbox outbox;
 
 	@Mock
-	private EmailNotificationService emailNotificationService;
+	private NotificationStatusWriter statusWriter;
 
 	@Mock
-	private SmsNotificationService smsNotificationService;
+	private PlatformTransactionManager transactionManager;
+
+	private static final String NODE_ID = "petclinic-test-node";
 
-	@InjectMocks
 	private NotificationSchedulerService schedulerService;
 
 	private Owner owner;
@@ -48,10 +64,10 @@ public class NotificationSchedulerServiceTests {
 
 	private NotificationSchedule schedule;
 
-	private Notification notification;
-
 	@BeforeEach
 	void setUp() {
+		schedulerService = schedulerService(10);
+
 		// Setup test data
 		owner = new Owner();
 		owner.setId(1);
@@ -82,112 +98,262 @@ public class NotificationSchedulerServiceTests {
 		schedule.setEnabled(true);
 		schedule.setOwner(owner);
 		schedule.setPet(pet);
+	}
 
-		// Create a notification that the schedule would generate
-		notification = new Notification();
-		notification.setId(1);
-		notification.setMessage("Hello John, your pet Max has an upcoming appointment.");
-		notification.setType(NotificationType.APPOINTMENT_REMINDER);
-		notification.setStatus(NotificationStatus.PENDING);
-		notification.setScheduledTime(LocalDateTime.now().minusMinutes(5));
-		notification.setOwner(owner);
-		notification.setPet(pet);
+	@AfterEach
+	void tearDown() {
+		schedulerService.stopTimer();
+	}
+
+	private NotificationSchedulerService schedulerService(int batchSize) {
+		NotificationMetrics metrics = new NotificationMetrics(new SimpleMeterRegistry(), scheduleRepository,
+				mock(NotificationDeliveryRepository.class));
+		return new NotificationSchedulerService(scheduleRepository, templateService, outbox, statusWriter, metrics,
+				transactionManager, batchSize, NODE_ID, Duration.ofMinutes(5), Duration.ofHours(6), 2, 100);
+	}
+
+	/**
+	 * Stub the repository so that each given batch is locked and successfully leased to
+	 * this node in turn.
+	 */
+	@SafeVarargs
+	private void givenClaimableBatches(List<NotificationSchedule>... batches) {
+		List<List<Integer>> lockedIds = Arrays.stream(batches)
+			.map(batch -> batch.stream().map(NotificationSchedule::getId).toList())
+			.toList();
+		when(scheduleRepository.lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(lockedIds.get(0), lockedIds.subList(1, lockedIds.size()).toArray(List[]::new));
+		when(scheduleRepository.findClaimed(anyCollection(), eq(NODE_ID), any(LocalDateTime.class)))
+			.thenAnswer(invocation -> {
+				LocalDateTime leaseUntil = invocation.getArgument(2);
+				Collection<Integer> ids = invocation.getArgument(0);
+				return Arrays.stream(batches)
+					.flatMap(List::stream)
+					.filter(schedule -> ids.contains(schedule.getId()))
+					.peek(schedule -> schedule.setLeaseUntil(leaseUntil))
+					.toList();
+			});
+	}
+
+	private void givenLeasesHeld() {
+		when(statusWriter.completeSchedules(anyList(), eq(NODE_ID)))
+			.thenAnswer(invocation -> invocation.getArgument(0));
 	}
 
 	@Test
 	void shouldProcessDueSchedules() {
 		// Given
-		when(scheduleRepository.findActiveSchedulesDue(any(LocalDateTime.class))).thenReturn(Arrays.asList(schedule));
+		givenClaimableBatches(List.of(schedule));
+		givenLeasesHeld();
 		when(templateService.processSchedule(schedule))
 			.thenReturn("Hello John, your pet Max has an upcoming appointment.");
-		when(emailNotificationService.send(any(Notification.class))).thenReturn(true);
 
 		// When
 		schedulerService.processScheduledNotifications();
 
-		// Then
-		verify(scheduleRepository).findActiveSchedulesDue(any(LocalDateTime.class));
-		// The repository save is called twice - once after creating the notification and
-		// again when updating its status
-		verify(notificationRepository, times(2)).save(any(Notification.class));
-		verify(emailNotificationService).send(any(Notification.class));
-		verify(smsNotificationService, never()).send(any(Notification.class)); // Owner
-																				// prefers
-																				// email
-																				// only
-		verify(scheduleRepository).save(schedule);
+		// Then - the schedule is leased to this node
+		ArgumentCaptor<LocalDateTime> leaseUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+		verify(scheduleRepository).claim(eq(List.of(1)), eq(NODE_ID), leaseUntil.capture(), any(LocalDateTime.class));
+		assertThat(leaseUntil.getValue()).isAfter(LocalDateTime.now().plusMinutes(4));
+
+		// The lease is completed and the rendered notification is queued in the outbox
+		verify(statusWriter).completeSchedules(List.of(schedule), NODE_ID);
+		assertThat(schedule.getLeaseUntil()).isEqualTo(leaseUntil.getValue());
+		assertThat(schedule.isEnabled()).isFalse();
+
+		ArgumentCaptor<Notification> queued = ArgumentCaptor.forClass(Notification.class);
+		verify(outbox).enqueueForDigest(queued.capture());
+		assertThat(queued.getValue()).satisfies(notification -> {
+			assertThat(notification.getMessage()).isEqualTo("Hello John, your pet Max has an upcoming appointment.");
+			assertThat(notification.getStatus()).isEqualTo(NotificationStatus.PENDING);
+			assertThat(notification.getOwner()).isSameAs(owner);
+			assertThat(notification.getPet()).isSameAs(pet);
+			assertThat(notification.getIdempotencyKey()).isEqualTo("schedule:1:" + schedule.getScheduledTime());
+		});
+	}
+
+	@Test
+	void shouldNotQueueScheduleThatAlreadyFired() {
+		// Given - a notification was queued for this firing under an earlier lease
+		givenClaimableBatches(List.of(schedule));
+		givenLeasesHeld();
+		when(templateService.processSchedule(schedule)).thenReturn("Hello John");
+		when(outbox.findQueuedKeys(List.of("schedule:1:" + schedule.getScheduledTime())))
+			.thenReturn(Set.of("schedule:1:" + schedule.getScheduledTime()));
+
+		// When
+		schedulerService.processScheduledNotifications();
+
+		// Then - the schedule is completed without a second notification
+		assertThat(schedule.isEnabled()).isFalse();
+		verify(outbox, never()).enqueueForDigest(any(Notification.class));
 	}
 
 	@Test
 	void shouldNotProcessWhenNoSchedulesDue() {
 		// Given
-		when(scheduleRepository.findActiveSchedulesDue(any(LocalDateTime.class))).thenReturn(Collections.emptyList());
+		when(scheduleRepository.lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(Collections.emptyList());
 
 		// When
 		schedulerService.processScheduledNotifications();
 
 		// Then
-		verify(scheduleRepository).findActiveSchedulesDue(any(LocalDateTime.class));
-		verify(notificationRepository, never()).save(any(Notification.class));
-		verify(emailNotificationService, never()).send(any(Notification.class));
-		verify(smsNotificationService, never()).send(any(Notification.class));
+		verify(scheduleRepository).lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class));
+		verify(scheduleRepository, never()).claim(anyCollection(), any(), any(), any());
+		verify(outbox, never()).enqueueForDigest(any(Notification.class));
 	}
 
 	@Test
-	void shouldProcessPendingNotifications() {
-		// Given
-		when(notificationRepository.findPendingNotifications(any(LocalDateTime.class)))
-			.thenReturn(Arrays.asList(notification));
-		when(emailNotificationService.send(notification)).thenReturn(true);
+	void shouldSkipSchedulesLeasedByAnotherNode() {
+		// Given - the schedule is locked but another node won the lease
+		when(scheduleRepository.lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(List.of(1));
+		when(scheduleRepository.findClaimed(anyCollection(), eq(NODE_ID), any(LocalDateTime.class)))
+			.thenReturn(List.of());
 
 		// When
-		schedulerService.retryPendingNotifications();
+		schedulerService.processScheduledNotifications();
 
 		// Then
-		verify(notificationRepository).findPendingNotifications(any(LocalDateTime.class));
-		verify(emailNotificationService).send(notification);
-		verify(smsNotificationService, never()).send(notification);
+		verify(templateService, never()).processSchedule(any(NotificationSchedule.class));
+		verify(outbox, never()).enqueueForDigest(any(Notification.class));
 	}
 
 	@Test
-	void shouldSendBasedOnPreference() {
-		// Given - owner prefers both email and SMS
-		owner.setNotificationPreference(NotificationPreference.BOTH);
-
-		when(scheduleRepository.findActiveSchedulesDue(any(LocalDateTime.class))).thenReturn(Arrays.asList(schedule));
-		when(templateService.processSchedule(schedule))
-			.thenReturn("Hello John, your pet Max has an upcoming appointment.");
-		when(emailNotificationService.send(any(Notification.class))).thenReturn(true);
-		when(smsNotificationService.send(any(Notification.class))).thenReturn(true);
+	void shouldNotSendWhenLeaseIsLostBeforeCompletion() {
+		// Given - the lease expired and was taken over while rendering
+		givenClaimableBatches(List.of(schedule));
+		when(statusWriter.completeSchedules(anyList(), eq(NODE_ID))).thenReturn(List.of());
+		when(templateService.processSchedule(schedule)).thenReturn("Processed message");
 
 		// When
 		schedulerService.processScheduledNotifications();
 
 		// Then
-		verify(emailNotificationService).send(any(Notification.class));
-		verify(smsNotificationService).send(any(Notification.class));
+		verify(outbox, never()).enqueueForDigest(any(Notification.class));
+		assertThat(schedule.isEnabled()).isTrue();
 	}
 
 	@Test
-	void shouldSkipNotificationWhenPreferenceIsNone() {
-		// Given - owner prefers no notifications
-		owner.setNotificationPreference(NotificationPreference.NONE);
+	void shouldClaimDueSchedulesInBatches() {
+		// Given - a batch size of one and two due schedules
+		schedulerService = schedulerService(1);
+		NotificationSchedule second = new NotificationSchedule(schedule.getMessageTemplate(),
+				NotificationType.APPOINTMENT_REMINDER, LocalDateTime.now().minusMinutes(1), owner);
+		second.setId(2);
+		givenClaimableBatches(List.of(schedule), List.of(second), List.of());
+		givenLeasesHeld();
+		when(templateService.processSchedule(any(NotificationSchedule.class))).thenReturn("Processed message");
 
-		when(scheduleRepository.findActiveSchedulesDue(any(LocalDateTime.class))).thenReturn(Arrays.asList(schedule));
-		when(templateService.processSchedule(schedule))
-			.thenReturn("Hello John, your pet Max has an upcoming appointment.");
+		// When
+		schedulerService.processScheduledNotifications();
+
+		// Then - each batch is queued on its own before the next one is claimed
+		verify(scheduleRepository, times(3)).lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class));
+		verify(outbox, times(2)).enqueueForDigest(any(Notification.class));
+		assertThat(schedule.isEnabled()).isFalse();
+		assertThat(second.isEnabled()).isFalse();
+	}
+
+	@Test
+	void shouldSkipScheduleThatFailsToRender() {
+		// Given
+		givenClaimableBatches(List.of(schedule));
+		when(templateService.processSchedule(schedule)).thenThrow(new IllegalStateException("broken template"));
 
 		// When
 		schedulerService.processScheduledNotifications();
 
+		// Then - the lease is left to expire so the schedule is retried later
+		verify(statusWriter, never()).completeSchedules(anyList(), any());
+		verify(outbox, never()).enqueueForDigest(any(Notification.class));
+		assertThat(schedule.isEnabled()).isTrue();
+	}
+
+	@Test
+	void shouldFireScheduleFromTimingWheelWhenDue() {
+		// Given - a saved schedule due in two seconds
+		LocalDateTime now = LocalDateTime.now();
+		schedule.setScheduledTime(now.plusSeconds(2));
+		schedulerService.onScheduleChanged(new NotificationScheduleChangedEvent(1, schedule.getScheduledTime(), true));
+		when(scheduleRepository.findClaimed(anyCollection(), eq(NODE_ID), any(LocalDateTime.class)))
+			.thenAnswer(invocation -> {
+				schedule.setLeaseUntil(invocation.getArgument(2));
+				return List.of(schedule);
+			});
+		givenLeasesHeld();
+		when(templateService.processSchedule(schedule)).thenReturn("Processed message");
+
+		// When / Then - nothing fires early, and the schedule fires once it is due
+		assertThat(schedulerService.fireDueSchedules(now.plusSeconds(1)).join()).isZero();
+		verify(scheduleRepository, never()).claim(anyCollection(), any(), any(), any());
+
+		assertThat(schedulerService.fireDueSchedules(now.plusSeconds(3)).join()).isEqualTo(1);
+		verify(scheduleRepository).claim(eq(List.of(1)), eq(NODE_ID), any(LocalDateTime.class),
+				any(LocalDateTime.class));
+		verify(outbox).enqueueForDigest(any(Notification.class));
+		verify(scheduleRepository, never()).lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class));
+	}
+
+	@Test
+	void shouldFireBatchAgainWhenItFails() {
+		// Given - a schedule due now, whose claim fails the first time
+		LocalDateTime now = LocalDateTime.now();
+		schedule.setScheduledTime(now);
+		schedulerService.onScheduleChanged(new NotificationScheduleChangedEvent(1, now, true));
+		when(scheduleRepository.findClaimed(anyCollection(), eq(NODE_ID), any(LocalDateTime.class)))
+			.thenThrow(new QueryTimeoutException("Database is slow"))
+			.thenAnswer(invocation -> {
+				schedule.setLeaseUntil(invocation.getArgument(2));
+				return List.of(schedule);
+			});
+		givenLeasesHeld();
+		when(templateService.processSchedule(schedule)).thenReturn("Processed message");
+
+		// When
+		assertThat(schedulerService.fireDueSchedules(now.plusSeconds(1)).join()).isZero();
+
+		// Then - the schedule is back on the wheel and fires once the retry delay passed
+		assertThat(schedulerService.fireDueSchedules(now.plusSeconds(2)).join()).isZero();
+		assertThat(schedulerService.fireDueSchedules(now.plusSeconds(1).plus(NotificationSchedulerService.RETRY_DELAY))
+			.join()).isEqualTo(1);
+		verify(outbox).enqueueForDigest(any(Notification.class));
+		verify(scheduleRepository, never()).lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class));
+	}
+
+	@Test
+	void shouldNotFireDisabledSchedule() {
+		// Given - the schedule was saved and then disabled again
+		LocalDateTime now = LocalDateTime.now();
+		schedulerService.onScheduleChanged(new NotificationScheduleChangedEvent(1, now.plusSeconds(1), true));
+		schedulerService.onScheduleChanged(new NotificationScheduleChangedEvent(1, now.plusSeconds(1), false));
+
+		// When
+		int processed = schedulerService.fireDueSchedules(now.plusSeconds(5)).join();
+
 		// Then
-		verify(notificationRepository, times(2)).save(any(Notification.class)); // Initial
-																				// save
-																				// and
-																				// status
-																				// update
-		verify(emailNotificationService, never()).send(any(Notification.class));
-		verify(smsNotificationService, never()).send(any(Notification.class));
+		assertThat(processed).isZero();
+		verify(scheduleRepository, never()).claim(anyCollection(), any(), any(), any());
+	}
+
+	@Test
+	void shouldLoadUpcomingSchedulesWhenReconciling() {
+		// Given - nothing is overdue but one schedule falls due within the horizon
+		LocalDateTime dueSoon = LocalDateTime.now().plusSeconds(1);
+		when(scheduleRepository.lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class)))
+			.thenReturn(Collections.emptyList());
+		when(scheduleRepository.findUpcomingScheduleTimes(any(LocalDateTime.class), any(LocalDateTime.class)))
+			.thenReturn(List.of(new NotificationScheduleTime(1, dueSoon)));
+
+		// When
+		schedulerService.processScheduledNotifications();
+		schedulerService.fireDueSchedules(dueSoon.plusSeconds(1)).join();
+
+		// Then - the wheel fires it without another database scan
+		verify(scheduleRepository).claim(eq(List.of(1)), eq(NODE_ID), any(LocalDateTime.class),
+				any(LocalDateTime.class));
+		verify(scheduleRepository, times(1)).lockClaimableScheduleIds(any(LocalDateTime.class), any(Pageable.class));
 	}
 
 }
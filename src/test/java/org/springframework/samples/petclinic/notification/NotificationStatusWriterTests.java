@@ -0,0 +1,183 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.samples.petclinic.owner.Owner;
+
+/**
+ * Tests for the batched status writes of {@link NotificationStatusWriter}.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@Import(NotificationStatusWriter.class)
+class NotificationStatusWriterTests {
+
+	@Autowired
+	private NotificationStatusWriter writer;
+
+	@Autowired
+	private NotificationScheduleRepository schedules;
+
+	@Autowired
+	private NotificationRepository notifications;
+
+	@Autowired
+	private NotificationDeliveryRepository deliveries;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private final LocalDateTime now = LocalDateTime.of(2030, 1, 1, 9, 0);
+
+	@Test
+	void shouldWriteStatusOfDetachedNotificationsAndDeliveries() {
+		// Given - a queued notification, detached as it is by the time it was sent
+		Notification notification = new Notification("Hello John", NotificationType.APPOINTMENT_REMINDER, now,
+				entityManager.find(Owner.class, 1));
+		notifications.save(notification);
+		NotificationDelivery delivery = new NotificationDelivery(notification, NotificationChannel.EMAIL);
+		deliveries.save(delivery);
+		entityManager.flush();
+		entityManager.clear();
+
+		notification.setStatus(NotificationStatus.SENT);
+		notification.setSentTime(now.plusMinutes(1));
+		delivery.setStatus(NotificationStatus.SENT);
+		delivery.setAttempts(1);
+		delivery.setLastAttemptAt(now.plusMinutes(1));
+
+		// When
+		writer.writeStatus(List.of(notification), List.of(delivery));
+
+		// Then
+		assertThat(notifications.findById(notification.getId())).satisfies(written -> {
+			assertThat(written.getStatus()).isEqualTo(NotificationStatus.SENT);
+			assertThat(written.getSentTime()).isEqualTo(now.plusMinutes(1));
+		});
+		assertThat(deliveries.findByNotification(notification)).singleElement().satisfies(written -> {
+			assertThat(written.getStatus()).isEqualTo(NotificationStatus.SENT);
+			assertThat(written.getAttempts()).isEqualTo(1);
+			assertThat(written.getLastAttemptAt()).isEqualTo(now.plusMinutes(1));
+		});
+	}
+
+	@Test
+	void shouldNotDowngradeNotificationSentByAnotherDispatch() {
+		// Given - a notification sent by email and texted, each channel on its own node
+		Notification notification = queue(NotificationChannel.EMAIL, NotificationChannel.SMS);
+		List<NotificationDelivery> queued = deliveries.findByNotification(notification);
+		entityManager.clear();
+
+		// When - one node sends the email, then the other gives up on the SMS while its
+		// copy still shows the email as retrying
+		writer.writeStatus(List.of(copy(notification, NotificationStatus.SENT)),
+				List.of(copy(queued, NotificationChannel.EMAIL, NotificationStatus.SENT)));
+		Notification stale = copy(notification, NotificationStatus.FAILED);
+		writer.writeStatus(List.of(stale),
+				List.of(copy(queued, NotificationChannel.SMS, NotificationStatus.DEAD_LETTER)));
+
+		// Then
+		assertThat(stale.getStatus()).isEqualTo(NotificationStatus.SENT);
+		assertThat(stale.getSentTime()).isEqualTo(now.plusMinutes(1));
+		assertThat(notifications.findById(notification.getId()).getStatus()).isEqualTo(NotificationStatus.SENT);
+	}
+
+	@Test
+	void shouldDeadLetterOnceEveryDispatchGaveUp() {
+		// Given
+		Notification notification = queue(NotificationChannel.EMAIL, NotificationChannel.SMS);
+		List<NotificationDelivery> queued = deliveries.findByNotification(notification);
+		entityManager.clear();
+
+		// When - each node gives up on its channel while its copy shows the other retrying
+		Notification first = copy(notification, NotificationStatus.FAILED);
+		writer.writeStatus(List.of(first),
+				List.of(copy(queued, NotificationChannel.SMS, NotificationStatus.DEAD_LETTER)));
+		Notification second = copy(notification, NotificationStatus.FAILED);
+		writer.writeStatus(List.of(second),
+				List.of(copy(queued, NotificationChannel.EMAIL, NotificationStatus.DEAD_LETTER)));
+
+		// Then - the last writer sees both deliveries dead-lettered
+		assertThat(first.getStatus()).isEqualTo(NotificationStatus.FAILED);
+		assertThat(second.getStatus()).isEqualTo(NotificationStatus.DEAD_LETTER);
+		assertThat(notifications.findById(notification.getId()).getStatus())
+			.isEqualTo(NotificationStatus.DEAD_LETTER);
+	}
+
+	private Notification queue(NotificationChannel... channels) {
+		Notification notification = new Notification("Hello John", NotificationType.APPOINTMENT_REMINDER, now,
+				entityManager.find(Owner.class, 1));
+		notifications.save(notification);
+		for (NotificationChannel channel : channels) {
+			deliveries.save(new NotificationDelivery(notification, channel));
+		}
+		entityManager.flush();
+		return notification;
+	}
+
+	private Notification copy(Notification notification, NotificationStatus status) {
+		Notification copy = new Notification(notification.getMessage(), notification.getType(),
+				notification.getScheduledTime(), notification.getOwner());
+		copy.setId(notification.getId());
+		copy.setStatus(status);
+		if (status == NotificationStatus.SENT) {
+			copy.setSentTime(now.plusMinutes(1));
+		}
+		return copy;
+	}
+
+	private NotificationDelivery copy(List<NotificationDelivery> queued, NotificationChannel channel,
+			NotificationStatus status) {
+		NotificationDelivery delivery = queued.stream()
+			.filter(candidate -> candidate.getChannel() == channel)
+			.findFirst()
+			.orElseThrow();
+		NotificationDelivery copy = new NotificationDelivery(delivery.getNotification(), channel);
+		copy.setId(delivery.getId());
+		copy.setStatus(status);
+		copy.setAttempts(1);
+		copy.setLastAttemptAt(now.plusMinutes(1));
+		return copy;
+	}
+
+	@Test
+	void shouldCompleteOnlySchedulesWhoseLeaseIsHeld() {
+		// Given - two schedules leased to one node, explicit ids as the sample data does
+		// not advance the identity column
+		entityManager.createQuery("UPDATE NotificationSchedule ns SET ns.enabled = false").executeUpdate();
+		for (int id = 1001; id <= 1002; id++) {
+			entityManager
+				.createNativeQuery("INSERT INTO notification_schedules (id, message_template, type, scheduled_time, "
+						+ "enabled, owner_id) VALUES (?, 'Hello {ownerFirstName}', 'APPOINTMENT_REMINDER', ?, TRUE, 1)")
+				.setParameter(1, id)
+				.setParameter(2, now.minusMinutes(5))
+				.executeUpdate();
+		}
+		LocalDateTime leaseUntil = now.plusMinutes(5);
+		schedules.claim(List.of(1001, 1002), "node-a", leaseUntil, now);
+		List<NotificationSchedule> leased = schedules.findClaimed(List.of(1001, 1002), "node-a", leaseUntil);
+		entityManager.clear();
+
+		// When - the second lease was taken over in the meantime
+		leased.get(1).setLeaseUntil(now.plusMinutes(1));
+		List<NotificationSchedule> completed = writer.completeSchedules(leased, "node-a");
+
+		// Then
+		assertThat(completed).containsExactly(leased.get(0));
+		assertThat(writer.completeSchedules(List.of(leased.get(0)), "node-b")).isEmpty();
+		assertThat(schedules.findById(1001).isEnabled()).isFalse();
+		assertThat(schedules.findById(1002).isEnabled()).isTrue();
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.springframework.samples.petclinic.notification;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.Pet;
+import org.springframework.samples.petclinic.owner.PetType;
+import org.springframework.samples.petclinic.owner.Visit;
+
+/**
+ * JMH benchmark comparing the former regex based placeholder replacement with the
+ * compiled templates of {@link NotificationTemplateService}, one million renders per
+ * invocation. Not run as part of the test suite; run {@link #main} from the IDE or
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main NotificationTemplateBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NotificationTemplateBenchmark {
+
+	private static final int RENDERS = 1_000_000;
+
+	private static final String TEMPLATE = "Dear {ownerFullName}, {petName} the {petType} (born {petBirthDate}) "
+			+ "is due for {visitDescription} on {visitDate}. Reply to this message to reschedule, {ownerFirstName}.";
+
+	private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{([^}]+)\\}");
+
+	private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM d, yyyy");
+
+	private NotificationTemplateService templateService;
+
+	private Owner owner;
+
+	private Pet pet;
+
+	private Visit visit;
+
+	@Setup
+	public void setUp() {
+		templateService = new NotificationTemplateService();
+
+		owner = new Owner();
+		owner.setFirstName("George");
+		owner.setLastName("Franklin");
+
+		PetType cat = new PetType();
+		cat.setName("cat");
+		pet = new Pet();
+		pet.setName("Leo");
+		pet.setType(cat);
+		pet.setBirthDate(LocalDate.of(2010, 9, 7));
+
+		visit = new Visit();
+		visit.setDate(LocalDate.of(2025, 6, 15));
+		visit.setDescription("rabies shot");
+	}
+
+	@Benchmark
+	public void regexReplacement(Blackhole blackhole) {
+		for (int i = 0; i < RENDERS; i++) {
+			blackhole.consume(regexProcessTemplate(TEMPLATE, owner, pet, visit));
+		}
+	}
+
+	@Benchmark
+	public void compiledTemplate(Blackhole blackhole) {
+		for (int i = 0; i < RENDERS; i++) {
+			blackhole.consume(templateService.processTemplate(TEMPLATE, owner, pet, visit));
+		}
+	}
+
+	/**
+	 * The rendering previously done by {@link NotificationTemplateService}, kept here as
+	 * the baseline.
+	 */
+	private static String regexProcessTemplate(String templateContent, Owner owner, Pet pet, Visit visit) {
+		Map<String, String> placeholders = new HashMap<>();
+		placeholders.put("ownerFirstName", owner.getFirstName());
+		placeholders.put("ownerLastName", owner.getLastName());
+		placeholders.put("ownerFullName", owner.getFirstName() + " " + owner.getLastName());
+		if (pet != null) {
+			placeholders.put("petName", pet.getName());
+			placeholders.put("petType", pet.getType() != null ? pet.getType().getName() : "pet");
+			placeholders.put("petBirthDate",
+					pet.getBirthDate() != null ? pet.getBirthDate().format(DATE_FORMATTER) : "");
+		}
+		if (visit != null) {
+			placeholders.put("visitDate", visit.getDate() != null ? visit.getDate().format(DATE_FORMATTER) : "");
+			placeholders.put("visitDescription", visit.getDescription());
+		}
+
+		Matcher matcher = PLACEHOLDER_PATTERN.matcher(templateContent);
+		StringBuffer sb = new StringBuffer();
+		while (matcher.find()) {
+			String value = placeholders.getOrDefault(matcher.group(1), matcher.group(0));
+			value = value.replace("\\", "\\\\").replace("$", "\\$");
+			matcher.appendReplacement(sb, value);
+		}
+		matcher.appendTail(sb);
+		return sb.toString();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(NotificationTemplateBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -1,19 +1,26 @@
 package org.springframework.samples.petclinic.notification;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetType;
 import org.springframework.samples.petclinic.owner.Visit;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @ExtendWith(MockitoExtension.class)
 public class NotificationTemplateServiceTest {
@@ -31,6 +38,9 @@ public class NotificationTemplateServiceTest {
 
 	private NotificationSchedule schedule;
 
+	@TempDir
+	Path templateDirectory;
+
 	@BeforeEach
 	void setUp() {
 		// Set up test data for owner
@@ -65,6 +75,11 @@ public class NotificationTemplateServiceTest {
 		schedule.setVisit(visit);
 	}
 
+	@AfterEach
+	void tearDown() throws IOException {
+		templateService.shutdown();
+	}
+
 	@Test
 	void shouldProcessTemplateWithOwnerPlaceholders() {
 		// Given
@@ -179,4 +194,101 @@ public class NotificationTemplateServiceTest {
 		assertEquals("Dear John, this is for John Doe.", processed);
 	}
 
+	@Test
+	void shouldKeepUnknownAndEmptyPlaceholders() {
+		// Given
+		String template = "Hi {ownerFirstName}, {} and {unknown} stay, {petName} too";
+
+		// When
+		String processed = templateService.processTemplate(template, owner, pet, null);
+
+		// Then
+		assertEquals("Hi John, {} and {unknown} stay, Fluffy too", processed);
+	}
+
+	@Test
+	void shouldInsertValuesContainingSpecialCharactersVerbatim() {
+		// Given
+		owner.setFirstName("J$hn\\");
+
+		// When
+		String processed = templateService.processTemplate("Dear {ownerFirstName}", owner, null, null);
+
+		// Then
+		assertEquals("Dear J$hn\\", processed);
+	}
+
+	@Test
+	void shouldRenderSameTemplateForDifferentOwners() {
+		// Given
+		Owner other = new Owner();
+		other.setFirstName("Jane");
+		other.setLastName("Roe");
+
+		// When
+		String first = templateService.processTemplate("Hello {ownerFullName}", owner, null, null);
+		String second = templateService.processTemplate("Hello {ownerFullName}", other, null, null);
+
+		// Then
+		assertEquals("Hello John Doe", first);
+		assertEquals("Hello Jane Roe", second);
+	}
+
+	@Test
+	void shouldCacheLoadedTemplates() {
+		// When
+		String first = templateService.loadTemplate(NotificationType.APPOINTMENT_REMINDER);
+		String second = templateService.loadTemplate(NotificationType.APPOINTMENT_REMINDER);
+
+		// Then
+		assertEquals(first, second);
+		assertEquals(1, templateService.getTemplateCacheStats().missCount());
+		assertEquals(1, templateService.getTemplateCacheStats().hitCount());
+	}
+
+	@Test
+	void shouldPreferExternalTemplateDirectory() throws IOException {
+		// Given
+		Files.writeString(templateDirectory.resolve("appointment_reminder.txt"), "External {petName}");
+		ReflectionTestUtils.setField(templateService, "templateDirectory", templateDirectory.toString());
+
+		// When
+		String template = templateService.loadTemplate(NotificationType.APPOINTMENT_REMINDER);
+
+		// Then
+		assertEquals("External {petName}", template);
+	}
+
+	@Test
+	void shouldReloadEditedTemplateWhenWatching() throws Exception {
+		// Given
+		Path file = templateDirectory.resolve("appointment_reminder.txt");
+		Files.writeString(file, "Version 1");
+		ReflectionTestUtils.setField(templateService, "templateDirectory", templateDirectory.toString());
+		ReflectionTestUtils.setField(templateService, "watchTemplates", true);
+		templateService.initialize();
+		assertEquals("Version 1", templateService.loadTemplate(NotificationType.APPOINTMENT_REMINDER));
+
+		// When
+		Files.writeString(file, "Version 2");
+
+		// Then
+		long deadline = System.currentTimeMillis() + 30_000;
+		while (!"Version 2".equals(templateService.loadTemplate(NotificationType.APPOINTMENT_REMINDER))
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(50);
+		}
+		assertEquals("Version 2", templateService.loadTemplate(NotificationType.APPOINTMENT_REMINDER));
+	}
+
+	@Test
+	void shouldReuseCompiledTemplates() {
+		// When
+		templateService.processTemplate("Hello {ownerFirstName}", owner, null, null);
+		templateService.processTemplate("Hello {ownerFirstName}", owner, null, null);
+
+		// Then
+		assertTrue(templateService.getCompiledTemplateCacheStats().hitCount() >= 1);
+	}
+
 }
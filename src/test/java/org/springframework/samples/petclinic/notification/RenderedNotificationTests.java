@@ -0,0 +1,71 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.owner.Owner;
+
+/**
+ * Unit tests for {@link RenderedNotification}.
+ */
+class RenderedNotificationTests {
+
+	@Test
+	void shouldPrepareContentForEachChannel() {
+		Notification notification = new Notification("Max is due for a check-up", NotificationType.MEDICATION_REMINDER,
+				LocalDateTime.now(), new Owner());
+
+		RenderedNotification content = RenderedNotification.of(notification);
+
+		assertThat(content.notification()).isSameAs(notification);
+		assertThat(content.subject()).isEqualTo("Pet Clinic: Medication Reminder");
+		assertThat(content.emailBody()).isEqualTo("Max is due for a check-up");
+		assertThat(content.smsBody()).isEqualTo("Max is due for a check-up");
+	}
+
+	@Test
+	void shouldTruncateSmsBodyToSingleSegment() {
+		String message = "x".repeat(200);
+		Notification notification = new Notification(message, NotificationType.APPOINTMENT_REMINDER,
+				LocalDateTime.now(), new Owner());
+
+		RenderedNotification content = RenderedNotification.of(notification);
+
+		assertThat(content.emailBody()).isEqualTo(message);
+		assertThat(content.smsBody()).hasSize(RenderedNotification.SMS_CHAR_LIMIT).endsWith("...");
+	}
+
+	@Test
+	void shouldListEveryNotificationOfDigest() {
+		Owner owner = new Owner();
+		Notification max = new Notification("Max is due for a check-up", NotificationType.MEDICATION_REMINDER,
+				LocalDateTime.now(), owner);
+		Notification bella = new Notification("Bella is due for a check-up", NotificationType.MEDICATION_REMINDER,
+				LocalDateTime.now(), owner);
+
+		RenderedNotification content = RenderedNotification.digest(List.of(max, bella));
+
+		assertThat(content.notification()).isSameAs(max);
+		assertThat(content.subject()).isEqualTo("Pet Clinic: Medication Reminder");
+		assertThat(content.emailBody()).isEqualTo("You have 2 notifications from Pet Clinic:\n"
+				+ "\n- Max is due for a check-up\n- Bella is due for a check-up");
+		assertThat(content.smsBody()).isEqualTo("Max is due for a check-up | Bella is due for a check-up");
+	}
+
+	@Test
+	void shouldSummariseDigestTooLongForSms() {
+		Owner owner = new Owner();
+		List<Notification> notifications = List.of(
+				new Notification("x".repeat(100), NotificationType.APPOINTMENT_REMINDER, LocalDateTime.now(), owner),
+				new Notification("y".repeat(100), NotificationType.VACCINATION_REMINDER, LocalDateTime.now(), owner));
+
+		RenderedNotification content = RenderedNotification.digest(notifications);
+
+		assertThat(content.subject()).isEqualTo("Pet Clinic: Updates for Your Pets");
+		assertThat(content.smsBody()).isEqualTo("Pet Clinic: 2 reminders. Please contact the clinic for details.");
+	}
+
+}
@@ -1,41 +1,36 @@
 package org.springframework.samples.petclinic.notification;
 
-import com.twilio.Twilio;
-import com.twilio.rest.api.v2010.account.Message;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
-import org.mockito.Mock;
-import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.samples.petclinic.owner.Owner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.verifyNoInteractions;
-import static org.mockito.Mockito.when;
 
 /**
- * Unit tests for {@link SmsNotificationService}. Uses PowerMock to mock static methods in
- * Twilio API.
+ * Unit tests for {@link SmsNotificationService}. Sends go to a local stub of the Twilio
+ * API.
  */
 @ExtendWith(MockitoExtension.class)
 public class SmsNotificationServiceTest {
 
-	@Mock
-	private NotificationTemplateService templateService;
-
 	@InjectMocks
 	private SmsNotificationService smsNotificationService;
 
-	// Using mockito-inline for static mocking
-	private static MockedStatic<Twilio> twilioMock;
-
-	private static MockedStatic<Message> messageMock;
-
 	private Owner owner;
 
 	private Notification notification;
@@ -69,11 +64,6 @@ public class SmsNotificationServiceTest {
 		notification.setOwner(owner);
 	}
 
-	// Note: This is a simplified test that doesn't actually mock Twilio's static methods.
-	// In a real implementation, you would use mockito-inline or PowerMock to mock these
-	// static calls.
-	// Here we'll just test the parts that don't require static mocking.
-
 	@Test
 	void canHandleShouldReturnTrueForSmsPreference() {
 		// Given
@@ -156,7 +146,189 @@ public class SmsNotificationServiceTest {
 
 		// Then
 		assertFalse(result);
-		verifyNoInteractions(templateService);
+	}
+
+	private HttpServer startTwilioStub(int status, String body, List<String> requests) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", exchange -> {
+			requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath() + " "
+					+ new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+			byte[] response = body.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, response.length);
+			exchange.getResponseBody().write(response);
+			exchange.close();
+		});
+		server.start();
+		ReflectionTestUtils.setField(smsNotificationService, "twilioBaseUrl",
+				"http://localhost:" + server.getAddress().getPort());
+		ReflectionTestUtils.setField(smsNotificationService, "maxInFlight", 2);
+		ReflectionTestUtils.setField(smsNotificationService, "messagesPerSecond", 100.0);
+		ReflectionTestUtils.setField(smsNotificationService, "circuitBreakerFailureRateThreshold", 50);
+		ReflectionTestUtils.setField(smsNotificationService, "circuitBreakerOpenDuration", Duration.ofSeconds(30));
+		smsNotificationService.initialize();
+		return server;
+	}
+
+	@Test
+	void shouldSendSmsThroughTwilioClient() throws IOException {
+		// Given
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = startTwilioStub(201, "{\"sid\": \"SM123\", \"status\": \"queued\"}", requests);
+		notification.setMessage("Your appointment is tomorrow");
+
+		try {
+			// When
+			boolean result = smsNotificationService.sendAsync(RenderedNotification.of(notification)).join();
+
+			// Then
+			assertTrue(result);
+			assertEquals(NotificationStatus.SENT, notification.getStatus());
+			assertNotNull(notification.getSentTime());
+			assertEquals(1, requests.size());
+			assertTrue(requests.get(0).startsWith("POST /2010-04-01/Accounts/AC123456789/Messages.json"));
+			assertTrue(requests.get(0).contains("To=%2B11234567890"));
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void shouldMarkFailedWhenTwilioRejectsMessage() throws IOException {
+		// Given
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = startTwilioStub(400,
+				"{\"code\": 21211, \"message\": \"Invalid 'To' Phone Number\", \"status\": 400}", requests);
+		notification.setMessage("Your appointment is tomorrow");
+
+		try {
+			// When
+			boolean result = smsNotificationService.send(notification);
+
+			// Then
+			assertFalse(result);
+			assertEquals(NotificationStatus.FAILED, notification.getStatus());
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void shouldFailFastOnceTwilioCircuitIsOpen() throws IOException {
+		// Given - Twilio keeps answering with server errors
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = startTwilioStub(503,
+				"{\"code\": 20503, \"message\": \"Service unavailable\", \"status\": 503}", requests);
+		notification.setMessage("Your appointment is tomorrow");
+
+		try {
+			for (int i = 0; i < 10; i++) {
+				smsNotificationService.send(notification);
+			}
+			int requestsSoFar = requests.size();
+
+			// When
+			boolean result = smsNotificationService.send(notification);
+
+			// Then - the last message never reached Twilio
+			assertFalse(result);
+			assertEquals(NotificationStatus.FAILED, notification.getStatus());
+			assertEquals(CircuitBreaker.State.OPEN, smsNotificationService.getCircuitBreaker().getState());
+			assertEquals(requestsSoFar, requests.size());
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void shouldNotOpenCircuitForRejectedMessages() throws IOException {
+		// Given
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = startTwilioStub(400,
+				"{\"code\": 21211, \"message\": \"Invalid 'To' Phone Number\", \"status\": 400}", requests);
+		notification.setMessage("Your appointment is tomorrow");
+
+		try {
+			// When
+			for (int i = 0; i < 10; i++) {
+				smsNotificationService.send(notification);
+			}
+
+			// Then
+			assertEquals(CircuitBreaker.State.CLOSED, smsNotificationService.getCircuitBreaker().getState());
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void shouldNotTakeProbeWhenInterruptedBeforeSending() throws IOException {
+		// Given - a half-open circuit that lets a single probe through
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = startTwilioStub(201, "{\"sid\": \"SM123\", \"status\": \"queued\"}", requests);
+		notification.setMessage("Your appointment is tomorrow");
+		AtomicLong clock = new AtomicLong();
+		CircuitBreaker circuitBreaker = new CircuitBreaker("Twilio", 1, 1, 50, Duration.ofSeconds(30), 1, clock::get);
+		circuitBreaker.recordFailure();
+		clock.addAndGet(Duration.ofSeconds(30).toNanos());
+		ReflectionTestUtils.setField(smsNotificationService, "circuitBreaker", circuitBreaker);
+
+		try {
+			// When - the first send is interrupted while waiting for an in-flight slot
+			Thread.currentThread().interrupt();
+			boolean interrupted = smsNotificationService.sendAsync(RenderedNotification.of(notification)).join();
+			assertTrue(Thread.interrupted());
+			boolean probed = smsNotificationService.sendAsync(RenderedNotification.of(notification)).join();
+
+			// Then - the probe was left for the next send, which closed the circuit
+			assertFalse(interrupted);
+			assertTrue(probed);
+			assertEquals(1, requests.size());
+			assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		}
+		finally {
+			Thread.interrupted();
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void shouldReuseClientAcrossMessages() throws IOException {
+		// Given
+		List<String> requests = new CopyOnWriteArrayList<>();
+		HttpServer server = startTwilioStub(201, "{\"sid\": \"SM123\", \"status\": \"queued\"}", requests);
+		notification.setMessage("Your appointment is tomorrow");
+		Object client = ReflectionTestUtils.getField(smsNotificationService, "client");
+
+		try {
+			// When
+			smsNotificationService.send(notification);
+			smsNotificationService.send(notification);
+
+			// Then
+			assertEquals(2, requests.size());
+			assertSame(client, ReflectionTestUtils.getField(smsNotificationService, "client"));
+		}
+		finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	void shouldSkipWhenTwilioIsDisabled() {
+		// Given
+		ReflectionTestUtils.setField(smsNotificationService, "twilioEnabled", false);
+
+		// When
+		boolean result = smsNotificationService.send(notification);
+
+		// Then
+		assertFalse(result);
+		assertEquals(NotificationStatus.SKIPPED, notification.getStatus());
 	}
 
 }
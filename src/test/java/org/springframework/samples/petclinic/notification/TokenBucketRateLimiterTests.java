@@ -0,0 +1,46 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for {@link TokenBucketRateLimiter}.
+ */
+class TokenBucketRateLimiterTests {
+
+	@Test
+	void shouldAllowBurstThenRefuse() {
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(1, 3);
+
+		assertThat(limiter.tryAcquire()).isTrue();
+		assertThat(limiter.tryAcquire()).isTrue();
+		assertThat(limiter.tryAcquire()).isTrue();
+		assertThat(limiter.tryAcquire()).isFalse();
+	}
+
+	@Test
+	void shouldPaceAcquireAtConfiguredRate() throws InterruptedException {
+		// 50 permits per second with no burst allowance beyond one
+		TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(50, 1);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < 6; i++) {
+			limiter.acquire();
+		}
+		Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+		// The first permit is free, the other five take 20ms each
+		assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(95));
+	}
+
+	@Test
+	void shouldRejectInvalidConfiguration() {
+		assertThatIllegalArgumentException().isThrownBy(() -> new TokenBucketRateLimiter(0, 1));
+		assertThatIllegalArgumentException().isThrownBy(() -> new TokenBucketRateLimiter(1, 0));
+	}
+
+}
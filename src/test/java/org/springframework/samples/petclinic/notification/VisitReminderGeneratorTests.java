@@ -0,0 +1,163 @@
+package org.springframework.samples.petclinic.notification;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import jakarta.persistence.EntityManager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.samples.petclinic.owner.Visit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Tests for {@link VisitReminderGenerator}.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+class VisitReminderGeneratorTests {
+
+	@Autowired
+	private NotificationScheduleRepository schedules;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	private VisitReminderGenerator generator;
+
+	private final LocalDate from = LocalDate.of(2030, 1, 1);
+
+	private final LocalDate until = LocalDate.of(2030, 1, 31);
+
+	@BeforeEach
+	void setUp() {
+		// Chunks of a single visit, so every test walks several chunks
+		generator = new VisitReminderGenerator(schedules, transactionManager, List.of(7, 1), "Hello {petName}", 30, 1);
+
+		// Explicit ids, clear of the sample data
+		insertVisit(1001, LocalDate.of(2030, 1, 10));
+		insertVisit(1002, LocalDate.of(2030, 1, 20));
+		insertVisit(1003, LocalDate.of(2030, 1, 5));
+		insertVisit(1004, LocalDate.of(2030, 3, 1));
+	}
+
+	private void insertVisit(int id, LocalDate date) {
+		entityManager
+			.createNativeQuery("INSERT INTO visits (id, pet_id, visit_date, description) VALUES (?, 1, ?, 'check-up')")
+			.setParameter(1, id)
+			.setParameter(2, date)
+			.executeUpdate();
+	}
+
+	private List<NotificationSchedule> remindersOf(int visitId) {
+		entityManager.clear();
+		return schedules.findByVisit(entityManager.find(Visit.class, visitId));
+	}
+
+	@Test
+	void shouldCreateReminderForEachPolicy() {
+		// 1001 and 1002 get both reminders, 1003 is too close for the 7 day reminder
+		assertThat(generator.generate(from, until)).isEqualTo(5);
+
+		assertThat(remindersOf(1001)).hasSize(2).allSatisfy(schedule -> {
+			assertThat(schedule.getOwner().getId()).isEqualTo(1);
+			assertThat(schedule.getPet().getId()).isEqualTo(1);
+			assertThat(schedule.getType()).isEqualTo(NotificationType.APPOINTMENT_REMINDER);
+			assertThat(schedule.getMessageTemplate()).isEqualTo("Hello {petName}");
+			assertThat(schedule.isEnabled()).isTrue();
+		})
+			.extracting(NotificationSchedule::getScheduledTime)
+			.containsExactlyInAnyOrder(LocalDateTime.of(2030, 1, 3, 0, 0), LocalDateTime.of(2030, 1, 9, 0, 0));
+		assertThat(remindersOf(1003)).singleElement()
+			.satisfies(schedule -> assertThat(schedule.getDaysBefore()).isEqualTo(1));
+		assertThat(remindersOf(1004)).isEmpty();
+	}
+
+	@Test
+	void shouldNotDuplicateRemindersWhenRunAgain() {
+		generator.generate(from, until);
+
+		assertThat(generator.generate(from, until)).isZero();
+		assertThat(remindersOf(1001)).hasSize(2);
+	}
+
+	@Test
+	void shouldOnlyAddMissingReminders() {
+		generator.generate(from, until);
+		VisitReminderGenerator moreReminders = new VisitReminderGenerator(schedules, transactionManager,
+				List.of(7, 3, 1), "Hello {petName}", 30, 1);
+
+		// Only the new 3 day reminders are created
+		assertThat(moreReminders.generate(from, until)).isEqualTo(3);
+		assertThat(remindersOf(1001)).extracting(NotificationSchedule::getDaysBefore)
+			.containsExactlyInAnyOrder(7, 3, 1);
+	}
+
+	@Test
+	void shouldRemindAlongsideReminderOfAnotherType() {
+		// Given - staff scheduled a vaccination reminder the day before visit 1001
+		entityManager
+			.createNativeQuery("INSERT INTO notification_schedules (id, message_template, type, scheduled_time, "
+					+ "days_before, enabled, owner_id, pet_id, visit_id) "
+					+ "VALUES (1001, 'Vaccination tomorrow', 'VACCINATION_REMINDER', ?, 1, TRUE, 1, 1, 1001)")
+			.setParameter(1, LocalDateTime.of(2030, 1, 9, 0, 0))
+			.executeUpdate();
+
+		// When
+		assertThat(generator.generate(from, until)).isEqualTo(5);
+
+		// Then
+		assertThat(remindersOf(1001)).extracting(NotificationSchedule::getType, NotificationSchedule::getDaysBefore)
+			.containsExactlyInAnyOrder(tuple(NotificationType.VACCINATION_REMINDER, 1),
+					tuple(NotificationType.APPOINTMENT_REMINDER, 7), tuple(NotificationType.APPOINTMENT_REMINDER, 1));
+	}
+
+	@Test
+	void shouldRetryChunkThatRacedWithAnotherRun() {
+		NotificationScheduleRepository racing = mock(NotificationScheduleRepository.class);
+		when(racing.findVisitIds(any(), any(), anyInt(), any())).thenReturn(List.of(1001), List.of(1002), List.of());
+		// The first insert of the first chunk collides with a concurrent run
+		when(racing.insertVisitReminders(any(), any(), anyInt(), any(), any(), anyInt(), anyInt()))
+			.thenThrow(new DataIntegrityViolationException("Duplicate reminder"))
+			.thenReturn(1);
+		generator = new VisitReminderGenerator(racing, mock(PlatformTransactionManager.class), List.of(7, 1),
+				"Hello {petName}", 30, 1);
+
+		assertThat(generator.generate(from, until)).isEqualTo(4);
+		verify(racing, times(5)).insertVisitReminders(any(), any(), anyInt(), any(), any(), anyInt(), anyInt());
+	}
+
+	@Test
+	void shouldSkipChunkThatKeepsRacing() {
+		NotificationScheduleRepository racing = mock(NotificationScheduleRepository.class);
+		when(racing.findVisitIds(any(), any(), anyInt(), any())).thenReturn(List.of(1001), List.of(1002), List.of());
+		when(racing.insertVisitReminders(any(), any(), anyInt(), any(), any(), anyInt(), eq(1001)))
+			.thenThrow(new DataIntegrityViolationException("Duplicate reminder"));
+		when(racing.insertVisitReminders(any(), any(), anyInt(), any(), any(), anyInt(), eq(1002))).thenReturn(1);
+		generator = new VisitReminderGenerator(racing, mock(PlatformTransactionManager.class), List.of(7, 1),
+				"Hello {petName}", 30, 1);
+
+		// The second chunk is still created
+		assertThat(generator.generate(from, until)).isEqualTo(2);
+	}
+
+}
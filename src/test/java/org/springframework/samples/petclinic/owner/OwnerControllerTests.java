@@ -21,9 +21,13 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledInNativeImage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.samples.petclinic.model.PageCursor;
+import org.springframework.samples.petclinic.model.PersonCursor;
 import org.springframework.test.context.aot.DisabledInAotMode;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
@@ -40,10 +44,16 @@ import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -56,6 +66,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * @author Wick Dynex
  */
 @WebMvcTest(OwnerController.class)
+@Import(OwnerSearchCounts.class)
 @DisabledInNativeImage
 @DisabledInAotMode
 class OwnerControllerTests {
@@ -68,6 +79,9 @@ class OwnerControllerTests {
 	@MockitoBean
 	private OwnerRepository owners;
 
+	@MockitoBean
+	private OwnerNameIndex nameIndex;
+
 	private Owner george() {
 		Owner george = new Owner();
 		george.setId(TEST_OWNER_ID);
@@ -87,16 +101,21 @@ class OwnerControllerTests {
 		return george;
 	}
 
+	private OwnerSummary summary(Owner owner) {
+		return new OwnerSummary(owner.getId(), owner.getFirstName(), owner.getLastName(), owner.getAddress(),
+				owner.getCity(), owner.getTelephone(), owner.getEmail(), owner.getNotificationPreference(),
+				String.join(", ", owner.getPets().stream().map(Pet::getName).toList()));
+	}
+
 	@BeforeEach
 	void setup() {
 
 		Owner george = george();
-		given(this.owners.findByLastNameStartingWith(eq("Franklin"), any(Pageable.class)))
-			.willReturn(new PageImpl<>(List.of(george)));
-
-		given(this.owners.findAll(any(Pageable.class))).willReturn(new PageImpl<>(List.of(george)));
+		given(this.owners.findSummariesByLastNameStartingWith(eq("Franklin"), any(), any(), any(Pageable.class)))
+			.willReturn(new SliceImpl<>(List.of(summary(george))));
 
 		given(this.owners.findById(TEST_OWNER_ID)).willReturn(Optional.of(george));
+		given(this.owners.findWithPetsAndVisitsById(TEST_OWNER_ID)).willReturn(Optional.of(george));
 		Visit visit = new Visit();
 		visit.setDate(LocalDate.now());
 		george.getPet("Max").getVisits().add(visit);
@@ -122,6 +141,19 @@ class OwnerControllerTests {
 			.andExpect(status().is3xxRedirection());
 	}
 
+	@Test
+	void testProcessCreationFormIndexesOwner() throws Exception {
+		mockMvc
+			.perform(post("/owners/new").param("firstName", "Joe")
+				.param("lastName", "Bloggs")
+				.param("address", "123 Caramel Street")
+				.param("city", "London")
+				.param("telephone", "1316761638"))
+			.andExpect(status().is3xxRedirection());
+
+		verify(this.nameIndex).update(argThat(owner -> "Bloggs".equals(owner.getLastName())));
+	}
+
 	@Test
 	void testProcessCreationFormHasErrors() throws Exception {
 		mockMvc
@@ -143,15 +175,146 @@ class OwnerControllerTests {
 
 	@Test
 	void testProcessFindFormSuccess() throws Exception {
-		Page<Owner> tasks = new PageImpl<>(List.of(george(), new Owner()));
-		when(this.owners.findByLastNameStartingWith(anyString(), any(Pageable.class))).thenReturn(tasks);
+		Slice<OwnerSummary> tasks = new SliceImpl<>(List.of(summary(george()), summary(new Owner())),
+				PageRequest.of(0, 5), false);
+		when(this.owners.findSummariesByLastNameStartingWith(anyString(), any(), any(), any(Pageable.class)))
+			.thenReturn(tasks);
 		mockMvc.perform(get("/owners?page=1")).andExpect(status().isOk()).andExpect(view().name("owners/ownersList"));
 	}
 
+	@Test
+	void testProcessFindFormPagesWithCachedCount() throws Exception {
+		Slice<OwnerSummary> tasks = new SliceImpl<>(List.of(summary(george()), summary(new Owner())),
+				PageRequest.of(0, 5), true);
+		when(this.owners.findSummariesByLastNameStartingWith(anyString(), any(), any(), any(Pageable.class)))
+			.thenReturn(tasks);
+		given(this.owners.countByLastNameStartingWith("")).willReturn(12L);
+
+		for (int i = 0; i < 2; i++) {
+			mockMvc.perform(get("/owners?page=1"))
+				.andExpect(status().isOk())
+				.andExpect(model().attribute("totalItems", 12L))
+				.andExpect(model().attribute("totalPages", 3))
+				.andExpect(view().name("owners/ownersList"));
+		}
+		verify(this.owners, times(1)).countByLastNameStartingWith("");
+	}
+
+	@Test
+	void testProcessFindFormContinuesAfterCursor() throws Exception {
+		Owner george = george();
+		Slice<OwnerSummary> first = new SliceImpl<>(List.of(summary(george)), PageRequest.ofSize(1), true);
+		when(this.owners.findSummariesByLastNameStartingWith(eq(""), eq(null), eq(null), any(Pageable.class)))
+			.thenReturn(first);
+		Slice<OwnerSummary> second = new SliceImpl<>(List.of(summary(new Owner())), PageRequest.ofSize(1), false);
+		when(this.owners.findSummariesByLastNameStartingWith(eq(""), eq("Franklin"), eq(TEST_OWNER_ID),
+				any(Pageable.class)))
+			.thenReturn(second);
+		String nextCursor = PageCursor.after(new PersonCursor("Franklin", TEST_OWNER_ID), 2).encode();
+
+		mockMvc.perform(get("/owners"))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 1))
+			.andExpect(model().attribute("previousCursor", nullValue()))
+			.andExpect(model().attribute("nextCursor", nextCursor));
+		mockMvc.perform(get("/owners").param("cursor", nextCursor))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 2))
+			.andExpect(model().attribute("previousCursor", notNullValue()))
+			.andExpect(model().attribute("nextCursor", nullValue()))
+			.andExpect(model().attribute("totalPages", 2));
+	}
+
+	@Test
+	void testProcessFindFormTakesPageNumberFromCursor() throws Exception {
+		Slice<OwnerSummary> second = new SliceImpl<>(List.of(summary(new Owner())), PageRequest.ofSize(1), false);
+		when(this.owners.findSummariesByLastNameStartingWith(eq(""), eq("Franklin"), eq(TEST_OWNER_ID),
+				any(Pageable.class)))
+			.thenReturn(second);
+
+		// a page number in the query string is not trusted
+		mockMvc
+			.perform(get("/owners").param("page", "40")
+				.param("cursor", PageCursor.after(new PersonCursor("Franklin", TEST_OWNER_ID), 2).encode()))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 2))
+			.andExpect(model().attribute("totalItems", 6L));
+	}
+
+	@Test
+	void testProcessFindFormSeeksBackToPreviousPage() throws Exception {
+		Owner george = george();
+		Owner betty = new Owner();
+		betty.setId(2);
+		betty.setLastName("Davis");
+		// the owners before Franklin, nearest first, with more before them
+		Slice<OwnerSummary> previous = new SliceImpl<>(List.of(summary(george), summary(betty)), PageRequest.ofSize(2),
+				true);
+		when(this.owners.findPreviousSummariesByLastNameStartingWith(eq("F"), eq("Franklin"), eq(9),
+				any(Pageable.class)))
+			.thenReturn(previous);
+		given(this.owners.countByLastNameStartingWith("F")).willReturn(12L);
+
+		mockMvc
+			.perform(get("/owners").param("lastName", "F")
+				.param("cursor", PageCursor.before(new PersonCursor("Franklin", 9), 2).encode()))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 2))
+			.andExpect(model().attribute("listOwners", List.of(summary(betty), summary(george))))
+			.andExpect(model().attribute("previousCursor", PageCursor.before(new PersonCursor("Davis", 2), 1).encode()))
+			.andExpect(model().attribute("nextCursor",
+					PageCursor.after(new PersonCursor("Franklin", TEST_OWNER_ID), 3).encode()))
+			.andExpect(model().attribute("lastCursor", PageCursor.last(3).encode()));
+	}
+
+	@Test
+	void testProcessFindFormShowsLastPage() throws Exception {
+		Owner george = george();
+		Owner jean = new Owner();
+		jean.setId(5);
+		jean.setLastName("Coleman");
+		Slice<OwnerSummary> last = new SliceImpl<>(List.of(summary(george), summary(jean)), PageRequest.ofSize(2),
+				true);
+		when(this.owners.findPreviousSummariesByLastNameStartingWith(eq("F"), eq(null), eq(null), any(Pageable.class)))
+			.thenReturn(last);
+		given(this.owners.countByLastNameStartingWith("F")).willReturn(12L);
+
+		mockMvc.perform(get("/owners").param("lastName", "F").param("cursor", PageCursor.last(3).encode()))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 3))
+			.andExpect(model().attribute("listOwners", List.of(summary(jean), summary(george))))
+			.andExpect(model().attribute("totalItems", 12L))
+			.andExpect(model().attribute("nextCursor", nullValue()))
+			.andExpect(model().attribute("lastCursor", nullValue()));
+		// a full page is sought back from the end, whatever the count
+		verify(this.owners).findPreviousSummariesByLastNameStartingWith(eq("F"), eq(null), eq(null),
+				eq(PageRequest.ofSize(5)));
+	}
+
+	@Test
+	void testProcessFindFormRejectsInvalidCursor() throws Exception {
+		mockMvc.perform(get("/owners").param("cursor", "not a cursor")).andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void testListOwnersAsJson() throws Exception {
+		Slice<OwnerSummary> tasks = new SliceImpl<>(List.of(summary(george())), PageRequest.ofSize(1), true);
+		when(this.owners.findSummariesByLastNameStartingWith(eq("Frank"), eq(null), eq(null), any(Pageable.class)))
+			.thenReturn(tasks);
+
+		mockMvc.perform(get("/api/owners").param("lastName", "Frank").param("size", "1"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.content[0].id").value(TEST_OWNER_ID))
+			.andExpect(jsonPath("$.content[0].petNames").value("Max"))
+			.andExpect(jsonPath("$.nextCursor").value(new PersonCursor("Franklin", TEST_OWNER_ID).encode()));
+		mockMvc.perform(get("/api/owners").param("size", "0")).andExpect(status().isBadRequest());
+	}
+
 	@Test
 	void testProcessFindFormByLastName() throws Exception {
-		Page<Owner> tasks = new PageImpl<>(List.of(george()));
-		when(this.owners.findByLastNameStartingWith(eq("Franklin"), any(Pageable.class))).thenReturn(tasks);
+		Slice<OwnerSummary> tasks = new SliceImpl<>(List.of(summary(george())));
+		when(this.owners.findSummariesByLastNameStartingWith(eq("Franklin"), any(), any(), any(Pageable.class)))
+			.thenReturn(tasks);
 		mockMvc.perform(get("/owners?page=1").param("lastName", "Franklin"))
 			.andExpect(status().is3xxRedirection())
 			.andExpect(view().name("redirect:/owners/" + TEST_OWNER_ID));
@@ -159,8 +322,9 @@ class OwnerControllerTests {
 
 	@Test
 	void testProcessFindFormNoOwnersFound() throws Exception {
-		Page<Owner> tasks = new PageImpl<>(List.of());
-		when(this.owners.findByLastNameStartingWith(eq("Unknown Surname"), any(Pageable.class))).thenReturn(tasks);
+		Slice<OwnerSummary> tasks = new SliceImpl<>(List.of());
+		when(this.owners.findSummariesByLastNameStartingWith(eq("Unknown Surname"), any(), any(), any(Pageable.class)))
+			.thenReturn(tasks);
 		mockMvc.perform(get("/owners?page=1").param("lastName", "Unknown Surname"))
 			.andExpect(status().isOk())
 			.andExpect(model().attributeHasFieldErrors("owner", "lastName"))
@@ -169,6 +333,19 @@ class OwnerControllerTests {
 
 	}
 
+	@Test
+	void testSuggestOwners() throws Exception {
+		given(this.nameIndex.suggest("fra", 5))
+			.willReturn(List.of(new OwnerSuggestion(TEST_OWNER_ID, "George", "Franklin")));
+
+		mockMvc.perform(get("/api/owners/suggest").param("prefix", "fra").param("limit", "5"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[0].id").value(TEST_OWNER_ID))
+			.andExpect(jsonPath("$[0].lastName").value("Franklin"));
+		mockMvc.perform(get("/api/owners/suggest").param("prefix", "fra").param("limit", "51"))
+			.andExpect(status().isBadRequest());
+	}
+
 	@Test
 	void testInitUpdateOwnerForm() throws Exception {
 		mockMvc.perform(get("/owners/{ownerId}/edit", TEST_OWNER_ID))
@@ -215,6 +392,14 @@ class OwnerControllerTests {
 			.andExpect(view().name("owners/createOrUpdateOwnerForm"));
 	}
 
+	@Test
+	void testShowOwnerLoadsOwnerOnce() throws Exception {
+		mockMvc.perform(get("/owners/{ownerId}", TEST_OWNER_ID)).andExpect(status().isOk());
+
+		verify(this.owners).findWithPetsAndVisitsById(TEST_OWNER_ID);
+		verify(this.owners, never()).findById(TEST_OWNER_ID);
+	}
+
 	@Test
 	void testShowOwner() throws Exception {
 		mockMvc.perform(get("/owners/{ownerId}", TEST_OWNER_ID))
@@ -0,0 +1,141 @@
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Unit tests for {@link OwnerNameIndex}.
+ */
+@ExtendWith(MockitoExtension.class)
+class OwnerNameIndexTests {
+
+	@Mock
+	private OwnerRepository owners;
+
+	private OwnerNameIndex index;
+
+	private final OwnerSuggestion betty = new OwnerSuggestion(2, "Betty", "Davis");
+
+	private final OwnerSuggestion harold = new OwnerSuggestion(4, "Harold", "davis");
+
+	private final OwnerSuggestion peter = new OwnerSuggestion(5, "Peter", "McTavish");
+
+	// The owners as currently stored, by id
+	private final Map<Integer, OwnerSuggestion> stored = new HashMap<>();
+
+	@BeforeEach
+	void setUp() {
+		index = new OwnerNameIndex(owners, 2);
+		given(owners.findSuggestionsAfter(eq(0), any(Pageable.class))).willReturn(List.of(betty, harold));
+		List.of(betty, harold, peter).forEach(owner -> stored.put(owner.id(), owner));
+		lenient().when(owners.findSuggestions(anyCollection()))
+			.thenAnswer(invocation -> invocation.<Collection<Integer>>getArgument(0)
+				.stream()
+				.map(stored::get)
+				.filter(Objects::nonNull)
+				.toList());
+	}
+
+	@Test
+	void shouldSuggestOwnersByLastNamePrefixIgnoringCase() {
+		given(owners.findSuggestionsAfter(eq(4), any(Pageable.class))).willReturn(List.of(peter));
+
+		assertThat(index.rebuild()).isEqualTo(3);
+
+		assertThat(index.suggest("DAV", 10)).containsExactly(betty, harold);
+		assertThat(index.suggest("davis", 1)).containsExactly(betty);
+		assertThat(index.suggest("m", 10)).containsExactly(peter);
+		assertThat(index.suggest("Davies", 10)).isEmpty();
+		assertThat(index.suggest(" ", 10)).isEmpty();
+	}
+
+	@Test
+	void shouldMoveRenamedOwner() {
+		given(owners.findSuggestionsAfter(eq(4), any(Pageable.class))).willReturn(List.of(peter));
+		index.rebuild();
+
+		stored.put(4, new OwnerSuggestion(4, "Harold", "Black"));
+		index.update(owner(4, "Harold", "Black"));
+
+		assertThat(index.suggest("dav", 10)).containsExactly(betty);
+		assertThat(index.suggest("bl", 10)).containsExactly(new OwnerSuggestion(4, "Harold", "Black"));
+	}
+
+	@Test
+	void shouldDropOwnersRemovedByAnotherNode() {
+		given(owners.findSuggestionsAfter(eq(4), any(Pageable.class))).willReturn(List.of(peter));
+		index.rebuild();
+
+		stored.remove(2);
+
+		assertThat(index.suggest("dav", 1)).containsExactly(harold);
+		assertThat(index.suggest("dav", 10)).containsExactly(harold);
+		then(owners).should().findSuggestions(List.of(2));
+		then(owners).should(times(2)).findSuggestions(List.of(4));
+	}
+
+	@Test
+	void shouldKeepOwnersSavedDuringRebuild() {
+		given(owners.findSuggestionsAfter(eq(4), any(Pageable.class))).willAnswer(invocation -> {
+			stored.put(11, new OwnerSuggestion(11, "Mary", "Dawson"));
+			index.update(owner(11, "Mary", "Dawson"));
+			return List.of(peter);
+		});
+
+		index.rebuild();
+
+		assertThat(index.suggest("da", 10)).extracting(OwnerSuggestion::id).containsExactly(2, 4, 11);
+	}
+
+	@Test
+	void shouldReadOwnersAddedSinceLastRead() {
+		given(owners.findSuggestionsAfter(eq(4), any(Pageable.class))).willReturn(List.of(peter));
+		index.rebuild();
+		OwnerSuggestion jean = new OwnerSuggestion(12, "Jean", "Davis");
+		stored.put(12, jean);
+		given(owners.findSuggestionsAfter(eq(5), any(Pageable.class))).willReturn(List.of(jean));
+
+		assertThat(index.readNewOwners()).isEqualTo(1);
+
+		assertThat(index.suggest("davis", 10)).containsExactly(betty, harold, jean);
+	}
+
+	@Test
+	void shouldStartWithoutIndexWhenLoadingFails() {
+		given(owners.findSuggestionsAfter(eq(0), any(Pageable.class)))
+			.willThrow(new QueryTimeoutException("Owners could not be read"));
+
+		index.load();
+
+		assertThat(index.suggest("dav", 10)).isEmpty();
+	}
+
+	private Owner owner(int id, String firstName, String lastName) {
+		Owner owner = new Owner();
+		owner.setId(id);
+		owner.setFirstName(firstName);
+		owner.setLastName(lastName);
+		return owner;
+	}
+
+}
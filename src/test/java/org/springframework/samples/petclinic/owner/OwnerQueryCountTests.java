@@ -0,0 +1,124 @@
+package org.springframework.samples.petclinic.owner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+
+import java.util.List;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+/**
+ * Tests that the owner pages run a constant number of SQL statements, however many pets
+ * and visits the owners have. Only the statements of the request thread are counted, so
+ * the scheduled notification jobs do not interfere.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+		+ "org.springframework.samples.petclinic.owner.OwnerQueryCountTests$StatementCounter")
+@AutoConfigureMockMvc
+class OwnerQueryCountTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private OwnerSearchCounts searchCounts;
+
+	@BeforeEach
+	void setUp() {
+		searchCounts.invalidate();
+		StatementCounter.reset();
+	}
+
+	@Test
+	void shouldListPagesOfOwnersWithTheirPetsCountingThemOnce() throws Exception {
+		String cursor = null;
+		for (int page = 1; page <= 2; page++) {
+			StatementCounter.reset();
+
+			MockHttpServletRequestBuilder request = get("/owners").param("page", String.valueOf(page));
+			if (cursor != null) {
+				request.param("cursor", cursor);
+			}
+			MvcResult result = mockMvc.perform(request)
+				.andExpect(status().isOk())
+				.andExpect(view().name("owners/ownersList"))
+				.andReturn();
+
+			// The page of owners with their pet names; they are only counted for the
+			// first
+			assertThat(StatementCounter.count()).isEqualTo(page == 1 ? 2 : 1);
+			@SuppressWarnings("unchecked")
+			List<OwnerSummary> owners = (List<OwnerSummary>) result.getModelAndView().getModel().get("listOwners");
+			assertThat(owners).isNotEmpty().allSatisfy(owner -> assertThat(owner.petNames()).isNotBlank());
+			cursor = (String) result.getModelAndView().getModel().get("nextCursor");
+		}
+	}
+
+	@Test
+	void shouldShowOwnerWithPetsAndVisitsInOneStatement() throws Exception {
+		MvcResult result = mockMvc.perform(get("/owners/6"))
+			.andExpect(status().isOk())
+			.andExpect(view().name("owners/ownerDetails"))
+			.andReturn();
+
+		// The controller's owner model attribute, loaded with pets and visits
+		assertThat(StatementCounter.count()).isEqualTo(1);
+		Owner owner = (Owner) result.getModelAndView().getModel().get("owner");
+		assertThat(owner.getPets()).extracting(Pet::getName).containsExactly("Max", "Samantha");
+		assertThat(owner.getPet("Samantha").getVisits()).hasSize(2);
+	}
+
+	@Test
+	void shouldShowVisitFormInOneStatement() throws Exception {
+		mockMvc.perform(get("/owners/6/pets/7/visits/new"))
+			.andExpect(status().isOk())
+			.andExpect(view().name("pets/createOrUpdateVisitForm"));
+
+		assertThat(StatementCounter.count()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldSuggestOwnersWithoutStatements() throws Exception {
+		mockMvc.perform(get("/api/owners/suggest").param("prefix", "DAV"))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$[*].firstName").value(contains("Betty", "Harold")));
+
+		assertThat(StatementCounter.count()).isZero();
+	}
+
+	/**
+	 * Counts the SQL statements prepared on the current thread.
+	 */
+	public static class StatementCounter implements StatementInspector {
+
+		private static final ThreadLocal<Integer> COUNT = ThreadLocal.withInitial(() -> 0);
+
+		static void reset() {
+			COUNT.set(0);
+		}
+
+		static int count() {
+			return COUNT.get();
+		}
+
+		@Override
+		public String inspect(String sql) {
+			COUNT.set(COUNT.get() + 1);
+			return sql;
+		}
+
+	}
+
+}
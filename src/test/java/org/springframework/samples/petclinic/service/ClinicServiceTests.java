@@ -17,9 +17,14 @@
 package org.springframework.samples.petclinic.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
@@ -27,9 +32,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.samples.petclinic.owner.Owner;
+import org.springframework.samples.petclinic.owner.OwnerSummary;
 import org.springframework.samples.petclinic.owner.OwnerRepository;
 import org.springframework.samples.petclinic.owner.Pet;
 import org.springframework.samples.petclinic.owner.PetType;
@@ -81,14 +88,86 @@ class ClinicServiceTests {
 	Pageable pageable;
 
 	@Test
-	void shouldFindOwnersByLastName() {
-		Page<Owner> owners = this.owners.findByLastNameStartingWith("Davis", pageable);
-		assertThat(owners).hasSize(2);
+	void shouldCountOwnersByLastName() {
+		assertThat(this.owners.countByLastNameStartingWith("Davis")).isEqualTo(2);
+		assertThat(this.owners.countByLastNameStartingWith("Daviss")).isZero();
+	}
+
+	@Test
+	void shouldFindOwnerSummariesWithPetNamesByLastName() {
+		Slice<OwnerSummary> owners = this.owners.findSummariesByLastNameStartingWith("Davis", null, null, pageable);
+		assertThat(owners).extracting(OwnerSummary::firstName).containsExactly("Betty", "Harold");
+		assertThat(owners).extracting(OwnerSummary::petNames).containsExactly("Basil", "Iggy");
 
-		owners = this.owners.findByLastNameStartingWith("Daviss", pageable);
+		owners = this.owners.findSummariesByLastNameStartingWith("Rodriquez", null, null, pageable);
+		assertThat(owners.getContent().get(0).petNames()).isEqualTo("Jewel, Rosy");
+
+		owners = this.owners.findSummariesByLastNameStartingWith("Daviss", null, null, pageable);
 		assertThat(owners).isEmpty();
 	}
 
+	@Test
+	void shouldMatchWildcardsInLastNameLiterally() {
+		assertThat(this.owners.findSummariesByLastNameStartingWith("_", null, null, PageRequest.ofSize(5))).isEmpty();
+		assertThat(this.owners.findSummariesByLastNameStartingWith("%", null, null, PageRequest.ofSize(5))).isEmpty();
+		assertThat(this.owners.findSummariesByLastNameStartingWith("D_vis", null, null, PageRequest.ofSize(5)))
+			.isEmpty();
+		assertThat(this.owners.countByLastNameStartingWith("%")).isZero();
+	}
+
+	@Test
+	void shouldSliceOwnerSummariesWithoutCounting() {
+		Slice<OwnerSummary> owners = this.owners.findSummariesByLastNameStartingWith("", null, null,
+				PageRequest.of(0, 4));
+		assertThat(owners).hasSize(4);
+		assertThat(owners.hasNext()).isTrue();
+
+		owners = this.owners.findSummariesByLastNameStartingWith("Davis", null, null, PageRequest.of(0, 2));
+		assertThat(owners).hasSize(2);
+		assertThat(owners.hasNext()).isFalse();
+
+		assertThat(this.owners.countByLastNameStartingWith("Davis")).isEqualTo(2);
+	}
+
+	@Test
+	void shouldSeekThroughOwnerSummariesByLastName() {
+		List<OwnerSummary> seen = new ArrayList<>();
+		Slice<OwnerSummary> owners = this.owners.findSummariesByLastNameStartingWith("", null, null,
+				PageRequest.ofSize(3));
+		seen.addAll(owners.getContent());
+		while (owners.hasNext()) {
+			OwnerSummary last = seen.get(seen.size() - 1);
+			owners = this.owners.findSummariesByLastNameStartingWith("", last.lastName(), last.id(),
+					PageRequest.ofSize(3));
+			seen.addAll(owners.getContent());
+		}
+
+		assertThat(seen).hasSize((int) this.owners.countByLastNameStartingWith(""));
+		assertThat(seen).extracting(OwnerSummary::id).doesNotHaveDuplicates();
+		assertThat(seen).isSortedAccordingTo(Comparator.comparing(OwnerSummary::lastName, String.CASE_INSENSITIVE_ORDER)
+			.thenComparing(OwnerSummary::id));
+	}
+
+	@Test
+	void shouldSeekBackThroughOwnerSummariesByLastName() {
+		List<OwnerSummary> forward = this.owners
+			.findSummariesByLastNameStartingWith("", null, null, PageRequest.ofSize(100))
+			.getContent();
+		List<OwnerSummary> seen = new ArrayList<>();
+		Slice<OwnerSummary> owners = this.owners.findPreviousSummariesByLastNameStartingWith("", null, null,
+				PageRequest.ofSize(3));
+		seen.addAll(owners.getContent());
+		while (owners.hasNext()) {
+			OwnerSummary first = seen.get(seen.size() - 1);
+			owners = this.owners.findPreviousSummariesByLastNameStartingWith("", first.lastName(), first.id(),
+					PageRequest.ofSize(3));
+			seen.addAll(owners.getContent());
+		}
+
+		Collections.reverse(seen);
+		assertThat(seen).isEqualTo(forward);
+	}
+
 	@Test
 	void shouldFindSingleOwnerWithPet() {
 		Optional<Owner> optionalOwner = this.owners.findById(1);
@@ -96,15 +175,28 @@ class ClinicServiceTests {
 		Owner owner = optionalOwner.get();
 		assertThat(owner.getLastName()).startsWith("Franklin");
 		assertThat(owner.getPets()).hasSize(1);
-		assertThat(owner.getPets().get(0).getType()).isNotNull();
-		assertThat(owner.getPets().get(0).getType().getName()).isEqualTo("cat");
+		Pet pet = owner.getPets().iterator().next();
+		assertThat(pet.getType()).isNotNull();
+		assertThat(pet.getType().getName()).isEqualTo("cat");
+	}
+
+	@Test
+	void shouldExposePetsAsReadOnlyView() {
+		Owner owner = this.owners.findWithPetsById(6).orElseThrow();
+		Collection<Pet> pets = owner.getPets();
+		int found = pets.size();
+		assertThatExceptionOfType(UnsupportedOperationException.class).isThrownBy(() -> pets.add(new Pet()));
+
+		Pet pet = new Pet();
+		pet.setName("bowser");
+		owner.addPet(pet);
+		assertThat(pets).hasSize(found + 1).contains(pet);
 	}
 
 	@Test
 	@Transactional
 	void shouldInsertOwner() {
-		Page<Owner> owners = this.owners.findByLastNameStartingWith("Schultz", pageable);
-		int found = (int) owners.getTotalElements();
+		long found = this.owners.countByLastNameStartingWith("Schultz");
 
 		Owner owner = new Owner();
 		owner.setFirstName("Sam");
@@ -115,8 +207,7 @@ class ClinicServiceTests {
 		this.owners.save(owner);
 		assertThat(owner.getId()).isNotZero();
 
-		owners = this.owners.findByLastNameStartingWith("Schultz", pageable);
-		assertThat(owners.getTotalElements()).isEqualTo(found + 1);
+		assertThat(this.owners.countByLastNameStartingWith("Schultz")).isEqualTo(found + 1);
 	}
 
 	@Test
@@ -208,6 +299,31 @@ class ClinicServiceTests {
 		assertThat(vet.getSpecialties().get(1).getName()).isEqualTo("surgery");
 	}
 
+	@Test
+	void shouldSeekThroughVetsByLastName() {
+		Slice<Vet> vets = this.vets.findSliceAfter(null, null, PageRequest.ofSize(4));
+		assertThat(vets).extracting(Vet::getLastName).containsExactly("Carter", "Douglas", "Jenkins", "Leary");
+		assertThat(vets.hasNext()).isTrue();
+
+		Vet last = vets.getContent().get(3);
+		vets = this.vets.findSliceAfter(last.getLastName(), last.getId(), PageRequest.ofSize(4));
+		assertThat(vets).extracting(Vet::getLastName).containsExactly("Ortega", "Stevens");
+		assertThat(vets.hasNext()).isFalse();
+	}
+
+	@Test
+	void shouldSeekBackThroughVetsByLastName() {
+		Slice<Vet> vets = this.vets.findSliceBefore(null, null, PageRequest.ofSize(4));
+		assertThat(vets).extracting(Vet::getLastName).containsExactly("Stevens", "Ortega", "Leary", "Jenkins");
+		assertThat(vets.hasNext()).isTrue();
+
+		Vet first = vets.getContent().get(3);
+		vets = this.vets.findSliceBefore(first.getLastName(), first.getId(), PageRequest.ofSize(4));
+		assertThat(vets).extracting(Vet::getLastName).containsExactly("Douglas", "Carter");
+		assertThat(vets.hasNext()).isFalse();
+		assertThat(this.vets.count()).isEqualTo(6);
+	}
+
 	@Test
 	@Transactional
 	void shouldAddNewVisitForPet() {
@@ -22,17 +22,25 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.DisabledInNativeImage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
-import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.model.PageCursor;
+import org.springframework.samples.petclinic.model.PersonCursor;
 import org.springframework.test.context.aot.DisabledInAotMode;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -74,8 +82,10 @@ class VetControllerTests {
 	@BeforeEach
 	void setup() {
 		given(this.vets.findAll()).willReturn(Lists.newArrayList(james(), helen()));
-		given(this.vets.findAll(any(Pageable.class)))
-			.willReturn(new PageImpl<Vet>(Lists.newArrayList(james(), helen())));
+		given(this.vets.findSliceAfter(isNull(), isNull(), any(Pageable.class)))
+			.willReturn(new SliceImpl<>(Lists.newArrayList(james(), helen()), PageRequest.ofSize(2), true));
+		given(this.vets.findSliceAfter(eq("Leary"), eq(2), any(Pageable.class)))
+			.willReturn(new SliceImpl<>(Lists.newArrayList(), PageRequest.ofSize(2), false));
 
 	}
 
@@ -97,4 +107,59 @@ class VetControllerTests {
 			.andExpect(jsonPath("$.vetList[0].id").value(1));
 	}
 
+	@Test
+	void testShowVetListHtmlAfterCursor() throws Exception {
+		String nextCursor = PageCursor.after(new PersonCursor("Leary", 2), 2).encode();
+		mockMvc.perform(get("/vets.html"))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 1))
+			.andExpect(model().attribute("previousCursor", nullValue()))
+			.andExpect(model().attribute("nextCursor", nextCursor));
+		mockMvc.perform(get("/vets.html").param("page", "7").param("cursor", nextCursor))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 2))
+			.andExpect(model().attribute("nextCursor", nullValue()));
+	}
+
+	@Test
+	void testShowVetListHtmlBeforeCursor() throws Exception {
+		given(this.vets.count()).willReturn(12L);
+		// the vets before Leary, nearest first, with more before them
+		given(this.vets.findSliceBefore(eq("Leary"), eq(2), any(Pageable.class)))
+			.willReturn(new SliceImpl<>(Lists.newArrayList(james()), PageRequest.ofSize(5), true));
+
+		mockMvc.perform(get("/vets.html").param("cursor", PageCursor.before(new PersonCursor("Leary", 2), 2).encode()))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 2))
+			.andExpect(model().attribute("totalPages", 3))
+			.andExpect(
+					model().attribute("previousCursor", PageCursor.before(new PersonCursor("Carter", 1), 1).encode()))
+			.andExpect(model().attribute("nextCursor", PageCursor.after(new PersonCursor("Carter", 1), 3).encode()))
+			.andExpect(model().attribute("lastCursor", PageCursor.last(3).encode()));
+	}
+
+	@Test
+	void testShowVetListHtmlLastPage() throws Exception {
+		given(this.vets.count()).willReturn(7L);
+		given(this.vets.findSliceBefore(isNull(), isNull(), any(Pageable.class)))
+			.willReturn(new SliceImpl<>(Lists.newArrayList(helen(), james()), PageRequest.ofSize(2), true));
+
+		mockMvc.perform(get("/vets.html").param("cursor", PageCursor.last(2).encode()))
+			.andExpect(status().isOk())
+			.andExpect(model().attribute("currentPage", 2))
+			.andExpect(model().attribute("listVets", hasSize(2)))
+			.andExpect(model().attribute("nextCursor", nullValue()));
+		// a full page is sought back from the end, whatever the count
+		verify(this.vets).findSliceBefore(isNull(), isNull(), eq(PageRequest.ofSize(5)));
+	}
+
+	@Test
+	void testShowResourcesVetListPage() throws Exception {
+		mockMvc.perform(get("/vets").param("size", "2").accept(MediaType.APPLICATION_JSON))
+			.andExpect(status().isOk())
+			.andExpect(jsonPath("$.vetList.length()").value(2))
+			.andExpect(jsonPath("$.nextCursor").value(new PersonCursor("Leary", 2).encode()));
+		mockMvc.perform(get("/vets").param("cursor", "not a cursor")).andExpect(status().isBadRequest());
+	}
+
 }